@@ -0,0 +1,130 @@
+-- Benchmark of the date filtered reads of stock_card_line_items and calculated_stocks_on_hand.
+--
+-- Generates a synthetic history of :line_items line items (100M by default) and one calculated
+-- stock on hand per line item day, spread evenly over :cards stock cards and the years from
+-- :first_year to the current one, and then times the reads that filter by occurred date.
+-- Run it once against a database migrated up to the version before the partitioning migration
+-- and once against one migrated past it, and compare the plans (partitions scanned, buffers) and
+-- timings:
+--
+--   psql -U postgres -d open_lmis -f perf_test/partitioning_benchmark.sql
+--   psql -U postgres -d open_lmis -v line_items=10000000 -f perf_test/partitioning_benchmark.sql
+--
+-- The generated rows all belong to one made up facility and program and are left in place, so
+-- use a throwaway database. Generating 100M line items takes a while and about 25GB of disk.
+
+\set ON_ERROR_STOP on
+\timing on
+
+\if :{?line_items}
+\else
+  \set line_items 100000000
+\endif
+\if :{?cards}
+\else
+  \set cards 100000
+\endif
+\if :{?first_year}
+\else
+  \set first_year 2017
+\endif
+
+CREATE EXTENSION IF NOT EXISTS pgcrypto;
+
+SET search_path TO stockmanagement;
+
+-- Partitions of the generated years, when the tables are partitioned
+SELECT to_regproc('stockmanagement.create_yearly_partitions') IS NOT NULL AS partitioned \gset
+\if :partitioned
+  SELECT create_yearly_partitions(year::INTEGER)
+  FROM generate_series(:first_year, EXTRACT(YEAR FROM CURRENT_DATE)::INTEGER) AS year;
+\endif
+
+CREATE TEMPORARY TABLE benchmark AS
+SELECT gen_random_uuid() AS facilityid,
+    gen_random_uuid() AS programid,
+    gen_random_uuid() AS eventid,
+    make_date(:first_year, 1, 1) AS firstdate,
+    CURRENT_DATE - make_date(:first_year, 1, 1) AS days;
+
+INSERT INTO stock_events (id, facilityid, programid, processeddate, userid, documentnumber,
+    minoccurreddate, maxoccurreddate)
+SELECT eventid, facilityid, programid, NOW(), gen_random_uuid(), 'BENCHMARK',
+    firstdate, CURRENT_DATE
+FROM benchmark;
+
+INSERT INTO stock_cards (id, facilityid, programid, orderableid, origineventid)
+SELECT gen_random_uuid(), b.facilityid, b.programid, gen_random_uuid(), b.eventid
+FROM benchmark b, generate_series(1, :cards);
+
+CREATE TEMPORARY TABLE benchmark_cards AS
+SELECT row_number() OVER (ORDER BY c.id) AS n, c.id
+FROM stock_cards c JOIN benchmark b ON b.facilityid = c.facilityid;
+
+CREATE INDEX ON benchmark_cards (n);
+ANALYZE benchmark_cards;
+
+-- Every stock card gets line items evenly spread over the whole period
+INSERT INTO stock_card_line_items (id, occurreddate, processeddate, quantity, userid,
+    origineventid, stockcardid)
+SELECT gen_random_uuid(),
+    b.firstdate + ((i / :cards) * b.days / (:line_items / :cards))::INTEGER,
+    NOW(), 1, gen_random_uuid(), b.eventid, c.id
+FROM benchmark b, generate_series(0, :line_items - 1) AS i
+JOIN benchmark_cards c ON c.n = i % :cards + 1;
+
+INSERT INTO calculated_stocks_on_hand (id, stockonhand, occurreddate, stockcardid,
+    processeddate)
+SELECT gen_random_uuid(),
+    ROW_NUMBER() OVER (PARTITION BY li.stockcardid ORDER BY li.occurreddate),
+    li.occurreddate, li.stockcardid, NOW()
+FROM (SELECT DISTINCT items.stockcardid, items.occurreddate FROM stock_card_line_items items
+    JOIN benchmark_cards c ON c.id = items.stockcardid) AS li;
+
+VACUUM ANALYZE stock_card_line_items;
+VACUUM ANALYZE calculated_stocks_on_hand;
+
+-- Stock cards the reads below are run for
+CREATE TEMPORARY TABLE benchmark_sample AS
+SELECT id FROM benchmark_cards ORDER BY n LIMIT 100;
+
+\echo 'Calculated stock on hands of a date range (stock card range summaries)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM calculated_stocks_on_hand
+WHERE stockcardid IN (SELECT id FROM benchmark_sample)
+    AND occurreddate BETWEEN CURRENT_DATE - 90 AND CURRENT_DATE;
+
+\echo 'Latest calculated stock on hand as of a date'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM calculated_stocks_on_hand
+WHERE stockcardid = (SELECT id FROM benchmark_sample LIMIT 1)
+    AND occurreddate <= CURRENT_DATE - 365
+ORDER BY occurreddate DESC
+LIMIT 1;
+
+\echo 'Calculated stock on hands to recalculate after a backdated event'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM calculated_stocks_on_hand
+WHERE stockcardid IN (SELECT id FROM benchmark_sample)
+    AND occurreddate >= CURRENT_DATE - 30;
+
+\echo 'Line items of an event (event history detail), bounded by its occurred date range'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT stockcardid, COUNT(*) FROM stock_card_line_items
+WHERE origineventid = (SELECT eventid FROM benchmark)
+    AND occurreddate BETWEEN CURRENT_DATE - 7 AND CURRENT_DATE
+GROUP BY stockcardid;
+
+\echo 'Line items of stock cards in a date range'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM stock_card_line_items
+WHERE stockcardid IN (SELECT id FROM benchmark_sample)
+    AND occurreddate BETWEEN CURRENT_DATE - 90 AND CURRENT_DATE;
+
+\echo 'Sizes'
+SELECT c.relname, pg_size_pretty(pg_total_relation_size(c.oid))
+FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+WHERE n.nspname = 'stockmanagement'
+    AND (c.relname LIKE 'stock_card_line_items%' OR c.relname LIKE 'calculated_stocks_on_hand%')
+    AND c.relkind IN ('r', 'p')
+ORDER BY c.relname;
@@ -0,0 +1,83 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.openlmis.stockmanagement.datasource.ReadOnlyRoutingDataSource.ROUTED_METRIC;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.stockmanagement.BaseIntegrationTest;
+import org.openlmis.stockmanagement.repository.StockCardRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The test configuration enables the replica and points it at the same database as the primary,
+ * which is never in recovery and so never lagging.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ReadOnlyRoutingDataSourceIntegrationTest extends BaseIntegrationTest {
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private StockCardRepository stockCardRepository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private TransactionTemplate transactionTemplate;
+
+  @Before
+  public void setUp() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  @Test
+  public void shouldRouteReadOnlyTransactionToReplica() {
+    double before = routed("replica");
+
+    transactionTemplate.setReadOnly(true);
+    transactionTemplate.execute(status -> stockCardRepository.count());
+
+    assertEquals(before + 1, routed("replica"), 0);
+  }
+
+  @Test
+  public void shouldRouteReadWriteTransactionToPrimary() {
+    double before = routed("primary");
+
+    transactionTemplate.setReadOnly(false);
+    transactionTemplate.execute(status -> stockCardRepository.count());
+
+    assertEquals(before + 1, routed("primary"), 0);
+  }
+
+  private double routed(String pool) {
+    Counter counter = meterRegistry.find(ROUTED_METRIC).tag("pool", pool).counter();
+    return null == counter ? 0 : counter.count();
+  }
+}
@@ -16,6 +16,7 @@
 package org.openlmis.stockmanagement.repository;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItems;
@@ -29,6 +30,7 @@ import org.junit.Test;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.event.CalculatedStockOnHand;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
+import org.openlmis.stockmanagement.repository.custom.StockOnHandAnchor;
 import org.openlmis.stockmanagement.testutils.CalculatedStockOnHandDataBuilder;
 import org.openlmis.stockmanagement.testutils.StockCardDataBuilder;
 import org.openlmis.stockmanagement.testutils.StockEventDataBuilder;
@@ -47,6 +49,9 @@ public class CalculatedStockOnHandRepositoryIntegrationTest
   @Autowired
   private CalculatedStockOnHandRepository calculatedStockOnHandRepository;
 
+  @Autowired
+  private StockCardLineItemRepository stockCardLineItemRepository;
+
   @Override
   CrudRepository<CalculatedStockOnHand, UUID> getRepository() {
     return calculatedStockOnHandRepository;
@@ -136,4 +141,56 @@ public class CalculatedStockOnHandRepositoryIntegrationTest
     assertTrue(resultList4.isEmpty());
     assertEquals(resultList4.size(), 0);
   }
+
+  @Test
+  public void shouldFindStockOnHandAtEndOfLastDayBeforeDate() {
+    CalculatedStockOnHand earlier = this.generateInstance();
+    earlier.setOccurredDate(LocalDate.of(2010, 8, 1));
+    earlier.setStockOnHand(10);
+    calculatedStockOnHandRepository.save(earlier);
+
+    CalculatedStockOnHand later = new CalculatedStockOnHandDataBuilder()
+        .withoutId()
+        .withStockCard(earlier.getStockCard())
+        .withOccurredDate(LocalDate.of(2010, 9, 1))
+        .withStockOnHand(25)
+        .build();
+    calculatedStockOnHandRepository.save(later);
+
+    UUID stockCardId = earlier.getStockCard().getId();
+
+    List<StockOnHandAnchor> beforeLater = calculatedStockOnHandRepository
+        .findStockOnHandBefore(singletonList(stockCardId), LocalDate.of(2010, 9, 1));
+
+    assertEquals(1, beforeLater.size());
+    assertEquals(Integer.valueOf(10), beforeLater.get(0).getStockOnHand());
+    assertEquals(stockCardId, beforeLater.get(0).getStockCardId());
+
+    List<StockOnHandAnchor> afterLater = calculatedStockOnHandRepository
+        .findStockOnHandBefore(singletonList(stockCardId), LocalDate.of(2010, 9, 2));
+
+    assertEquals(Integer.valueOf(25), afterLater.get(0).getStockOnHand());
+
+    List<StockOnHandAnchor> beforeEarlier = calculatedStockOnHandRepository
+        .findStockOnHandBefore(singletonList(stockCardId), LocalDate.of(2010, 8, 1));
+
+    assertTrue(beforeEarlier.isEmpty());
+  }
+
+  @Test
+  public void shouldMoveRowsOfYearFromDefaultPartitionWhenCreatingYearlyPartitions() {
+    CalculatedStockOnHand calculatedStockOnHand = this.generateInstance();
+    calculatedStockOnHand.setOccurredDate(LocalDate.of(2090, 6, 1));
+    calculatedStockOnHandRepository.saveAndFlush(calculatedStockOnHand);
+
+    assertEquals(2, stockCardLineItemRepository.createYearlyPartitions(2090));
+    assertEquals(0, stockCardLineItemRepository.createYearlyPartitions(2090));
+
+    List<CalculatedStockOnHand> result = calculatedStockOnHandRepository
+        .findByStockCardIdInAndOccurredDateBetween(
+            singletonList(calculatedStockOnHand.getStockCard().getId()),
+            LocalDate.of(2090, 1, 1), LocalDate.of(2090, 12, 31));
+
+    assertEquals(singletonList(calculatedStockOnHand), result);
+  }
 }
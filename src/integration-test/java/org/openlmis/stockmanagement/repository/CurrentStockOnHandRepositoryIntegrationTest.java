@@ -0,0 +1,147 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.repository;
+
+import static java.util.Collections.singletonList;
+import static java.util.UUID.randomUUID;
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.event.CalculatedStockOnHand;
+import org.openlmis.stockmanagement.domain.event.CurrentStockOnHand;
+import org.openlmis.stockmanagement.domain.event.StockEvent;
+import org.openlmis.stockmanagement.repository.custom.NearExpiryStockCard;
+import org.openlmis.stockmanagement.testutils.CalculatedStockOnHandDataBuilder;
+import org.openlmis.stockmanagement.testutils.StockCardDataBuilder;
+import org.openlmis.stockmanagement.testutils.StockEventDataBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Transactional
+@ActiveProfiles("test-run")
+public class CurrentStockOnHandRepositoryIntegrationTest {
+
+  @Autowired
+  private StockCardRepository stockCardRepository;
+
+  @Autowired
+  private StockEventsRepository stockEventsRepository;
+
+  @Autowired
+  private CalculatedStockOnHandRepository calculatedStockOnHandRepository;
+
+  @Autowired
+  private CurrentStockOnHandRepository currentStockOnHandRepository;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Test
+  public void shouldFindOnlyStockCardsOfLotsWithCurrentStockOnHand() {
+    UUID lot = randomUUID();
+    StockCard inStock = saveStockCard(randomUUID(), randomUUID(), lot);
+    saveCurrentStockOnHand(inStock, 15);
+    StockCard stockedOut = saveStockCard(randomUUID(), randomUUID(), lot);
+    saveCurrentStockOnHand(stockedOut, 0);
+    StockCard otherLot = saveStockCard(randomUUID(), randomUUID(), randomUUID());
+    saveCurrentStockOnHand(otherLot, 20);
+
+    List<NearExpiryStockCard> found = currentStockOnHandRepository
+        .findInStockCardsOfLots(singletonList(lot), PageRequest.of(0, 10))
+        .getContent();
+
+    assertEquals(1, found.size());
+    assertEquals(inStock.getId(), found.get(0).getStockCardId());
+    assertEquals(lot, found.get(0).getLotId());
+    assertEquals(Integer.valueOf(15), found.get(0).getStockOnHand());
+  }
+
+  @Test
+  public void shouldRebuildFromLatestCalculatedStockOnHand() {
+    UUID facility = randomUUID();
+    UUID program = randomUUID();
+    StockCard stockCard = saveStockCard(facility, program, randomUUID());
+    saveCurrentStockOnHand(stockCard, 99);
+    saveCalculatedStockOnHand(stockCard, LocalDate.of(2010, 8, 1), 10);
+    saveCalculatedStockOnHand(stockCard, LocalDate.of(2010, 9, 1), 25);
+    StockCard withoutCurrent = saveStockCard(facility, program, randomUUID());
+    saveCalculatedStockOnHand(withoutCurrent, LocalDate.of(2010, 8, 1), 5);
+    StockCard otherProgram = saveStockCard(facility, randomUUID(), randomUUID());
+    saveCurrentStockOnHand(otherProgram, 7);
+    saveCalculatedStockOnHand(otherProgram, LocalDate.of(2010, 8, 1), 3);
+    entityManager.flush();
+
+    int rebuilt = currentStockOnHandRepository.rebuild(facility, program);
+    entityManager.clear();
+
+    assertEquals(2, rebuilt);
+    CurrentStockOnHand current = currentStockOnHandRepository.findById(stockCard.getId()).get();
+    assertEquals(Integer.valueOf(25), current.getStockOnHand());
+    assertEquals(LocalDate.of(2010, 9, 1), current.getOccurredDate());
+    assertEquals(Integer.valueOf(5), currentStockOnHandRepository
+        .findById(withoutCurrent.getId()).get().getStockOnHand());
+    assertEquals(Integer.valueOf(7), currentStockOnHandRepository
+        .findById(otherProgram.getId()).get().getStockOnHand());
+  }
+
+  private StockCard saveStockCard(UUID facility, UUID program, UUID lot) {
+    StockEvent event = stockEventsRepository.save(new StockEventDataBuilder()
+        .withoutId()
+        .withFacility(facility)
+        .withProgram(program)
+        .build());
+
+    return stockCardRepository.save(new StockCardDataBuilder(event)
+        .withoutId()
+        .withOrderableId(randomUUID())
+        .withLotId(lot)
+        .build());
+  }
+
+  private void saveCalculatedStockOnHand(StockCard stockCard, LocalDate occurredDate,
+      int stockOnHand) {
+    CalculatedStockOnHand calculated = new CalculatedStockOnHandDataBuilder()
+        .withoutId()
+        .withStockCard(stockCard)
+        .withOccurredDate(occurredDate)
+        .withStockOnHand(stockOnHand)
+        .build();
+    calculatedStockOnHandRepository.save(calculated);
+  }
+
+  private void saveCurrentStockOnHand(StockCard stockCard, int stockOnHand) {
+    CalculatedStockOnHand latest = new CalculatedStockOnHandDataBuilder()
+        .withStockCard(stockCard)
+        .withStockOnHand(stockOnHand)
+        .build();
+    CurrentStockOnHand current = new CurrentStockOnHand(stockCard.getId());
+    current.update(latest, null);
+    currentStockOnHandRepository.save(current);
+  }
+}
@@ -106,4 +106,15 @@ public class DocumentNumberSequenceRepositoryIntegrationTest
     assertEquals(10000, documentNumberSequenceRepository.nextSequenceNumber(facilityId, 2026, 5));
     assertEquals(10001, documentNumberSequenceRepository.nextSequenceNumber(facilityId, 2026, 5));
   }
+
+  @Test
+  public void shouldReserveConsecutiveBlocks() {
+    UUID facilityId = randomUUID();
+
+    assertEquals(10,
+        documentNumberSequenceRepository.reserveSequenceBlock(facilityId, 2026, 5, 10));
+    assertEquals(20,
+        documentNumberSequenceRepository.reserveSequenceBlock(facilityId, 2026, 5, 10));
+    assertEquals(21, documentNumberSequenceRepository.nextSequenceNumber(facilityId, 2026, 5));
+  }
 }
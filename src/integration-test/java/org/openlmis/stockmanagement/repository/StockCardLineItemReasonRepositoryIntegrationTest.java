@@ -114,6 +114,24 @@ public class StockCardLineItemReasonRepositoryIntegrationTest
     assertFalse(reasonRepository.existsByTag("some-not-existing-tag"));
   }
 
+  @Test
+  public void shouldFindAllReasonsWithTags() {
+    List<StockCardLineItemReason> reasons = reasonRepository.findAllWithTags();
+
+    assertThat(reasons, hasItems(firstReason, secondReason));
+    assertThat(reasons.size(), is(Sets.newHashSet(reasons).size()));
+  }
+
+  @Test
+  public void shouldBumpCatalogVersionWhenReasonsChange() {
+    long version = reasonRepository.findCatalogVersion();
+
+    secondReason.setTags(Lists.newArrayList("changedTag"));
+    reasonRepository.save(secondReason);
+
+    assertTrue(reasonRepository.findCatalogVersion() > version);
+  }
+
   @Override
   StockCardLineItemReason generateInstance() {
     int instanceNumber = getNextInstanceNumber();
@@ -161,6 +161,87 @@ public class StockEventsRepositoryIntegrationTest
     assertThat(result.getTotalElements(), is(1L));
   }
 
+  @Test
+  public void shouldNotMatchEventWhoseLineItemsOnlySurroundDateRange() {
+    UUID facility = randomUUID();
+    UUID program = randomUUID();
+
+    StockEvent event = new StockEventDataBuilder()
+        .withoutId().withFacility(facility).withProgram(program)
+        .withEventOrigin(EventOrigin.ISSUE).build();
+    event.setLineItems(asList(
+        lineItem(event, randomUUID(), LocalDate.of(2026, 1, 15)),
+        lineItem(event, randomUUID(), LocalDate.of(2026, 3, 15))));
+    repository.save(event);
+
+    StockEventSearchParams params = new StockEventSearchParams(facility, program,
+        asList(EventOrigin.ISSUE, EventOrigin.RECEIVE),
+        LocalDate.of(2026, 2, 1), LocalDate.of(2026, 2, 28), null);
+
+    assertThat(repository.search(params, pageable).getContent(), hasSize(0));
+  }
+
+  @Test
+  public void shouldStoreOccurredDateRangeOfLineItems() {
+    StockEvent event = new StockEventDataBuilder()
+        .withoutId().withEventOrigin(EventOrigin.ISSUE).build();
+    event.setLineItems(asList(
+        lineItem(event, randomUUID(), LocalDate.of(2026, 2, 20)),
+        lineItem(event, randomUUID(), LocalDate.of(2026, 2, 10))));
+
+    StockEvent saved = repository.findById(repository.save(event).getId()).get();
+
+    assertThat(saved.getMinOccurredDate(), is(LocalDate.of(2026, 2, 10)));
+    assertThat(saved.getMaxOccurredDate(), is(LocalDate.of(2026, 2, 20)));
+  }
+
+  @Test
+  public void shouldReturnEventsAfterCursor() {
+    UUID facility = randomUUID();
+    UUID program = randomUUID();
+
+    StockEvent older = saveWithDate(facility, program, ZonedDateTime.parse("2026-01-01T10:00:00Z"));
+    StockEvent middle =
+        saveWithDate(facility, program, ZonedDateTime.parse("2026-02-01T10:00:00Z"));
+    StockEvent newer = saveWithDate(facility, program, ZonedDateTime.parse("2026-03-01T10:00:00Z"));
+
+    StockEventSearchParams firstPage = new StockEventSearchParams(facility, program,
+        asList(EventOrigin.ISSUE, EventOrigin.RECEIVE), null, null, null);
+    Page<StockEvent> first = repository.search(firstPage, PageRequest.of(0, 1));
+    assertThat(ids(first), contains(newer.getId()));
+
+    StockEvent last = first.getContent().get(0);
+    StockEventSearchParams nextPage = new StockEventSearchParams(facility, program,
+        asList(EventOrigin.ISSUE, EventOrigin.RECEIVE), null, null, null,
+        last.getProcessedDate(), last.getId(), false);
+    Page<StockEvent> next = repository.search(nextPage, PageRequest.of(1, 2));
+
+    assertThat(ids(next), contains(middle.getId(), older.getId()));
+    assertThat(next.getTotalElements(), is(3L));
+  }
+
+  @Test
+  public void shouldOnlyTellWhetherThereIsNextPageWhenSkippingTotal() {
+    UUID facility = randomUUID();
+    UUID program = randomUUID();
+
+    for (int i = 0; i < 5; ++i) {
+      save(facility, program, EventOrigin.ISSUE);
+    }
+
+    StockEventSearchParams params = new StockEventSearchParams(facility, program,
+        asList(EventOrigin.ISSUE, EventOrigin.RECEIVE), null, null, null, null, null, true);
+
+    Page<StockEvent> first = repository.search(params, PageRequest.of(0, 2));
+    assertThat(first.getContent(), hasSize(2));
+    assertThat(first.hasNext(), is(true));
+
+    Page<StockEvent> last = repository.search(params, PageRequest.of(2, 2));
+    assertThat(last.getContent(), hasSize(1));
+    assertThat(last.hasNext(), is(false));
+    assertThat(last.getTotalElements(), is(5L));
+  }
+
   @Test
   public void shouldCountLineItemEntriesAndEarliestOccurredDate() {
     UUID facility = randomUUID();
@@ -18,6 +18,7 @@ package org.openlmis.stockmanagement.service;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.testutils.DatesUtil.getBaseDate;
 
@@ -38,11 +39,13 @@ import org.openlmis.stockmanagement.BaseIntegrationTest;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.domain.event.CalculatedStockOnHand;
+import org.openlmis.stockmanagement.domain.event.CurrentStockOnHand;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.CalculatedStockOnHandRepository;
+import org.openlmis.stockmanagement.repository.CurrentStockOnHandRepository;
 import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
@@ -69,6 +72,9 @@ public class CalculatedStockOnHandServiceIntegrationTest extends BaseIntegration
   @Autowired
   private CalculatedStockOnHandRepository calculatedStockOnHandRepository;
 
+  @Autowired
+  private CurrentStockOnHandRepository currentStockOnHandRepository;
+
   @Autowired
   private StockCardRepository stockCardRepository;
 
@@ -173,6 +179,29 @@ public class CalculatedStockOnHandServiceIntegrationTest extends BaseIntegration
     assertThat(foundStockCards.get(0).getOccurredDate(), is(newDate));
   }
 
+  @Test
+  public void shouldGetStockCardsWithCurrentStockOnHandIfItDidNotOccurAfterDate() {
+    LocalDate date = LocalDate.of(2018, 5, 10);
+    calculatedStockOnHandRepository.save(calculatedStockOnHandDataBuilder
+        .withOccurredDate(date)
+        .build());
+    // differs from the calculated stock on hand to tell which one was read
+    CurrentStockOnHand current = new CurrentStockOnHand(stockCard.getId());
+    current.update(calculatedStockOnHandDataBuilder
+        .withStockOnHand(quantity2)
+        .build(), null);
+    currentStockOnHandRepository.save(current);
+
+    List<StockCard> currentStockCards = calculatedStockOnHandService
+        .getStockCardsWithStockOnHand(program, facility);
+    List<StockCard> earlierStockCards = calculatedStockOnHandService
+        .getStockCardsWithStockOnHand(program, facility, date.minusDays(1));
+
+    assertThat(currentStockCards.get(0).getStockOnHand(), is(quantity2));
+    assertThat(currentStockCards.get(0).getOccurredDate(), is(date));
+    assertThat(earlierStockCards.get(0).getStockOnHand(), is(nullValue()));
+  }
+
   @Test
   public void shouldGetEmptyListIfStockCardsNotFound() {
     List<StockCard> foundStockCards = calculatedStockOnHandService
@@ -181,6 +210,59 @@ public class CalculatedStockOnHandServiceIntegrationTest extends BaseIntegration
     assertThat(foundStockCards.size(), is(0));
   }
 
+  @Test
+  public void shouldGetStockCardsWithStockOnHandOfSeveralFacilities() {
+    calculatedStockOnHandRepository.save(calculatedStockOnHandDataBuilder.build());
+    UUID otherFacility = randomUUID();
+    StockCard otherStockCard = prepareStockCard(prepareEvent(otherFacility, program), product, lot);
+    calculatedStockOnHandRepository.save(calculatedStockOnHandDataBuilder
+        .withStockCard(otherStockCard)
+        .withStockOnHand(quantity2)
+        .build());
+
+    List<StockCard> foundStockCards = calculatedStockOnHandService
+        .getStockCardsWithStockOnHandAtFacilities(Collections.singletonList(program),
+            Arrays.asList(facility, otherFacility), LocalDate.now());
+
+    assertThat(foundStockCards.size(), is(2));
+    assertThat(foundStockCards.stream()
+        .filter(card -> otherFacility.equals(card.getFacilityId()))
+        .findFirst().get().getStockOnHand(), is(quantity2));
+  }
+
+  @Test
+  public void shouldGetStockCardsWithStockOnHandOfSeveralFacilitiesAsOfPastDate() {
+    LocalDate asOfDate = LocalDate.now().minusDays(5);
+    calculatedStockOnHandRepository.save(calculatedStockOnHandDataBuilder
+        .withOccurredDate(asOfDate.minusDays(2))
+        .build());
+    calculatedStockOnHandRepository.save(calculatedStockOnHandDataBuilder
+        .withOccurredDate(asOfDate.plusDays(1))
+        .withStockOnHand(quantity2)
+        .build());
+    UUID otherFacility = randomUUID();
+    StockCard otherStockCard = prepareStockCard(prepareEvent(otherFacility, program), product, lot);
+    calculatedStockOnHandRepository.save(calculatedStockOnHandDataBuilder
+        .withStockCard(otherStockCard)
+        .withOccurredDate(asOfDate)
+        .withStockOnHand(quantity2)
+        .build());
+
+    List<StockCard> foundStockCards = calculatedStockOnHandService
+        .getStockCardsWithStockOnHandAtFacilities(Collections.singletonList(program),
+            Arrays.asList(facility, otherFacility), asOfDate);
+
+    assertThat(foundStockCards.size(), is(2));
+    StockCard found = foundStockCards.stream()
+        .filter(card -> facility.equals(card.getFacilityId()))
+        .findFirst().get();
+    assertThat(found.getStockOnHand(), is(quantity));
+    assertThat(found.getOccurredDate(), is(asOfDate.minusDays(2)));
+    assertThat(foundStockCards.stream()
+        .filter(card -> otherFacility.equals(card.getFacilityId()))
+        .findFirst().get().getStockOnHand(), is(quantity2));
+  }
+
   @Test
   public void shouldGetStockCardWithNullStockOnHandIfCalculatedStockOnHandNotFound() {
     calculatedStockOnHandService.fetchCurrentStockOnHand(stockCard);
@@ -234,6 +316,24 @@ public class CalculatedStockOnHandServiceIntegrationTest extends BaseIntegration
     assertThat(result.get(3).getStockOnHand(), is(45));
   }
 
+  @Test
+  public void shouldUpdateCurrentStockOnHandWhenRecalculating() {
+    final StockCardLineItem lineItem = createBaseLineItem(15, creditReason);
+
+    lineItemlist = createStockCardLineItemsList(lineItem, creditReason);
+    stockCard.setLineItems(lineItemlist);
+    stockCardRepository.save(stockCard);
+
+    calculatedStockOnHandService.recalculateStockOnHand(Collections.singletonList(lineItem));
+    calculatedStockOnHandService.recalculateStockOnHand(Collections.singletonList(lineItem));
+
+    CurrentStockOnHand current = currentStockOnHandRepository.findById(stockCard.getId()).get();
+    StockCardLineItem lastLineItem = lineItemlist.get(lineItemlist.size() - 1);
+    assertThat(current.getStockOnHand(), is(45));
+    assertThat(current.getOccurredDate(), is(lastLineItem.getOccurredDate()));
+    assertThat(current.getLastLineItemId(), is(lastLineItem.getId()));
+  }
+
   @Test
   public void shouldRecalculateStockOnHandWithDebitReason() {
     final StockCardLineItem lineItem = createBaseLineItem(5, debitReason);
@@ -0,0 +1,170 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.stockmanagement.BaseIntegrationTest;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryLineItemDto;
+import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
+import org.openlmis.stockmanagement.exception.VersionConflictException;
+import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
+import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs without a test transaction, so that two saves of the same draft run in transactions of
+ * their own and really compete for the draft row.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class PhysicalInventoryServiceConcurrencyIntegrationTest extends BaseIntegrationTest {
+
+  // replaced so that the saves are permitted without a user
+  @MockBean
+  @SuppressWarnings("PMD.UnusedPrivateField")
+  private PermissionService permissionService;
+
+  @MockBean
+  @SuppressWarnings("PMD.UnusedPrivateField")
+  private HomeFacilityPermissionService homeFacilityPermissionService;
+
+  @MockBean
+  private OrderableReferenceDataService orderableReferenceDataService;
+
+  @Autowired
+  private PhysicalInventoryService physicalInventoryService;
+
+  @Autowired
+  private PhysicalInventoriesRepository physicalInventoriesRepository;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private UUID orderableId = UUID.randomUUID();
+  private PhysicalInventory draft;
+
+  @Before
+  public void setUp() {
+    when(orderableReferenceDataService.findByIds(any()))
+        .thenReturn(singletonList(OrderableDto.builder().id(orderableId).build()));
+
+    PhysicalInventory inventory = new PhysicalInventory();
+    inventory.setProgramId(UUID.randomUUID());
+    inventory.setFacilityId(UUID.randomUUID());
+    inventory.setIsDraft(true);
+    draft = physicalInventoriesRepository.save(inventory);
+  }
+
+  @After
+  public void tearDown() {
+    physicalInventoriesRepository.deleteById(draft.getId());
+  }
+
+  @Test
+  public void shouldAcceptOnlyOneOfTwoConcurrentSavesOfSameVersion() throws Exception {
+    CountDownLatch firstSaved = new CountDownLatch(1);
+    CountDownLatch secondStarted = new CountDownLatch(1);
+
+    // the first save keeps its transaction open until the second one has started
+    CompletableFuture<PhysicalInventoryDto> first = CompletableFuture.supplyAsync(() ->
+        inTransaction(() -> {
+          final PhysicalInventoryDto saved = saveDraft(1);
+          firstSaved.countDown();
+          await(secondStarted);
+          sleep();
+          return saved;
+        }));
+
+    CompletableFuture<PhysicalInventoryDto> second = CompletableFuture.supplyAsync(() -> {
+      await(firstSaved);
+      secondStarted.countDown();
+      return inTransaction(() -> saveDraft(2));
+    });
+
+    assertThat(first.get(30, TimeUnit.SECONDS).getVersion(), is(1L));
+
+    try {
+      second.get(30, TimeUnit.SECONDS);
+      throw new AssertionError("the second save of version 0 should have been rejected");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause(), instanceOf(VersionConflictException.class));
+    }
+
+    PhysicalInventory saved = physicalInventoriesRepository.findById(draft.getId()).get();
+    assertThat(saved.getVersion(), is(1L));
+  }
+
+  private PhysicalInventoryDto saveDraft(int quantity) {
+    PhysicalInventoryDto dto = new PhysicalInventoryDto();
+    dto.setId(draft.getId());
+    dto.setProgramId(draft.getProgramId());
+    dto.setFacilityId(draft.getFacilityId());
+    dto.setIsDraft(true);
+    dto.setVersion(0L);
+    dto.setLineItems(singletonList(PhysicalInventoryLineItemDto.builder()
+        .orderableId(orderableId)
+        .quantity(quantity)
+        .build()));
+
+    return physicalInventoryService.saveDraft(dto, draft.getId());
+  }
+
+  private <T> T inTransaction(Supplier<T> action) {
+    return new TransactionTemplate(transactionManager).execute(status -> action.get());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(30, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  // gives the second save the time to block on the row locked by the first one
+  private static void sleep() {
+    try {
+      Thread.sleep(500);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -105,6 +105,9 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
   @Autowired
   private StockCardLineItemReasonRepository stockCardLineItemReasonRepository;
 
+  @Autowired
+  private ReasonCatalog reasonCatalog;
+
   @Autowired
   private ValidSourceAssignmentRepository validSourceAssignmentRepository;
 
@@ -152,6 +155,7 @@ public class StockCardServiceIntegrationTest extends BaseIntegrationTest {
     reason = new StockCardLineItemReason("reason", null, ReasonType.CREDIT,
         ReasonCategory.ADJUSTMENT, false, Collections.emptyList());
     stockCardLineItemReasonRepository.save(reason);
+    reasonCatalog.reload();
 
     when(homeFacilityPermissionService.checkFacilityAndHomeFacilityLinkage(any(UUID.class)))
             .thenReturn(false);
@@ -22,9 +22,14 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder.createStockEventDto;
+import static org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder.createStockEventLineItem;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.transaction.Transactional;
 import org.junit.After;
 import org.junit.Assert;
@@ -42,6 +47,7 @@ import org.openlmis.stockmanagement.domain.sourcedestination.Node;
 import org.openlmis.stockmanagement.domain.sourcedestination.Organization;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.repository.CalculatedStockOnHandRepository;
 import org.openlmis.stockmanagement.repository.NodeRepository;
 import org.openlmis.stockmanagement.repository.OrganizationRepository;
@@ -50,6 +56,9 @@ import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository
 import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -63,6 +72,10 @@ import org.springframework.test.context.junit4.SpringRunner;
 @Transactional
 public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
 
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(StockEventProcessorIntegrationTest.class);
+  private static final int BENCHMARK_LINE_ITEMS = 500;
+
   @MockBean
   private StockEventValidationsService stockEventValidationsService;
 
@@ -95,9 +108,15 @@ public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
   @Autowired
   private StockCardLineItemReasonRepository stockCardLineItemReasonRepository;
 
+  @Autowired
+  private ReasonCatalog reasonCatalog;
+
   @Autowired
   private CalculatedStockOnHandRepository calculatedStockOnHandRepository;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   @Mock
   private SecurityContext securityContext;
 
@@ -132,6 +151,7 @@ public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
     reason = new StockCardLineItemReason("reason", null, ReasonType.CREDIT,
         ReasonCategory.ADJUSTMENT, false, Collections.emptyList());
     stockCardLineItemReasonRepository.save(reason);
+    reasonCatalog.reload();
 
     SecurityContextHolder.setContext(securityContext);
     when(securityContext.getAuthentication()).thenReturn(authentication);
@@ -192,7 +212,7 @@ public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
 
     //then
     assertSize(cardSize + 1, eventSize + 1, lineItemSize + 1);
-    verify(stockEventNotificationProcessor).callAllNotifications(stockEventDto);
+    verify(stockEventNotificationProcessor).findStockedOutCards(stockEventDto);
   }
 
   @Test
@@ -241,7 +261,41 @@ public class StockEventProcessorIntegrationTest extends BaseIntegrationTest {
 
     //then
     verify(physicalInventoryService)
-        .submitPhysicalInventory(any(PhysicalInventoryDto.class), any(UUID.class));
+        .submitPhysicalInventory(any(PhysicalInventoryDto.class), any(UUID.class),
+        any(StockEventProcessContext.class));
+  }
+
+  @Test
+  public void shouldWriteLargePhysicalInventoryInJdbcBatches() {
+    StockEventDto stockEventDto = createStockEventDto();
+    List<StockEventLineItemDto> lineItems = new ArrayList<>();
+    for (int i = 0; i < BENCHMARK_LINE_ITEMS; i++) {
+      StockEventLineItemDto lineItem = createStockEventLineItem();
+      lineItem.setReasonId(null);
+      lineItem.setSourceId(null);
+      lineItem.setDestinationId(null);
+      lineItem.setQuantity(10);
+      lineItems.add(lineItem);
+    }
+    stockEventDto.setLineItems(lineItems);
+    stockEventDto.setUserId(userId);
+    setContext(stockEventDto);
+
+    long start = System.nanoTime();
+    stockEventProcessor.process(stockEventDto);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    double statements = meterRegistry.get(StockEventProcessor.STATEMENTS_METRIC)
+        .tag("physicalInventory", "true")
+        .summary().max();
+    LOGGER.info("Processed physical inventory with {} line items in {} ms using {} statements",
+        BENCHMARK_LINE_ITEMS, elapsedMillis, statements);
+
+    // Row by row, each line item alone takes four inserts (event line item, stock card, stock
+    // card line item and calculated stock on hand).
+    assertThat(statements < BENCHMARK_LINE_ITEMS, is(true));
+    assertSize(cardSize + BENCHMARK_LINE_ITEMS, eventSize + 1,
+        lineItemSize + BENCHMARK_LINE_ITEMS);
   }
 
   private void assertSize(long cardSize, long eventSize, long lineItemSize) {
@@ -31,6 +31,7 @@ import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder;
 import org.openlmis.stockmanagement.validators.DefaultAdjustmentReasonValidator;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,6 +48,9 @@ public class AdjustmentReasonValidatorIntegrationTest extends BaseIntegrationTes
   @Autowired
   private StockCardLineItemReasonRepository reasonRepository;
 
+  @Autowired
+  private ReasonCatalog reasonCatalog;
+
   @Rule
   public ExpectedException expectedEx = ExpectedException.none();
 
@@ -68,6 +72,7 @@ public class AdjustmentReasonValidatorIntegrationTest extends BaseIntegrationTes
         .build();
     StockEventDto stockEventDto = StockEventDtoDataBuilder.createNoSourceDestinationStockEventDto();
     stockEventDto.getLineItems().get(0).setReasonId(reasonRepository.save(reason).getId());
+    reasonCatalog.reload();
     setContext(stockEventDto);
 
     expectedEx.expect(ValidationMessageException.class);
@@ -92,6 +97,7 @@ public class AdjustmentReasonValidatorIntegrationTest extends BaseIntegrationTes
         .build();
     StockEventDto stockEventDto = StockEventDtoDataBuilder.createNoSourceDestinationStockEventDto();
     stockEventDto.getLineItems().get(0).setReasonId(reasonRepository.save(reason).getId());
+    reasonCatalog.reload();
     setContext(stockEventDto);
 
     expectedEx.expect(ValidationMessageException.class);
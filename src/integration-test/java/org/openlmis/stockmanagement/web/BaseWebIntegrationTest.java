@@ -40,6 +40,7 @@ import org.junit.runner.RunWith;
 import org.openlmis.stockmanagement.dto.referencedata.UserDto;
 import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.service.PermissionService;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.service.StockCardLineItemReasonService;
 import org.openlmis.stockmanagement.util.AuthenticationHelper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -80,6 +81,9 @@ public abstract class BaseWebIntegrationTest {
   @MockBean
   protected StockCardLineItemReasonRepository stockCardLineItemReasonRepository;
 
+  @MockBean
+  protected ReasonCatalog reasonCatalog;
+
   @MockBean
   protected PermissionService permissionService;
 
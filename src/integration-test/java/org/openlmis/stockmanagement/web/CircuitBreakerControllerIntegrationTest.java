@@ -0,0 +1,79 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+import org.junit.Test;
+import org.openlmis.stockmanagement.exception.PermissionMessageException;
+import org.openlmis.stockmanagement.http.CircuitBreaker;
+import org.openlmis.stockmanagement.http.RemoteCallGuard;
+import org.openlmis.stockmanagement.service.PermissionService;
+import org.openlmis.stockmanagement.util.Message;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.ResultActions;
+
+public class CircuitBreakerControllerIntegrationTest extends BaseWebTest {
+
+  private static final String CIRCUIT_BREAKERS_API = "/api/circuitBreakers";
+
+  @MockBean
+  private PermissionService permissionService;
+
+  @MockBean
+  private RemoteCallGuard remoteCallGuard;
+
+  @Test
+  public void shouldGetCircuitBreakers() throws Exception {
+    //given
+    when(remoteCallGuard.getCircuitBreakers()).thenReturn(Collections.singletonList(
+        new CircuitBreaker.Status("OrderableReferenceDataService", CircuitBreaker.State.OPEN,
+            10, 6, 60)));
+
+    //when
+    ResultActions resultActions = mvc.perform(get(CIRCUIT_BREAKERS_API)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$.[0].name", is("OrderableReferenceDataService")))
+        .andExpect(jsonPath("$.[0].state", is("OPEN")))
+        .andExpect(jsonPath("$.[0].failedCalls", is(6)));
+  }
+
+  @Test
+  public void shouldReturn403IfUserHasNoPermission() throws Exception {
+    //given
+    doThrow(new PermissionMessageException(new Message("some error")))
+        .when(permissionService).canManageSystemSettings();
+
+    //when
+    ResultActions resultActions = mvc.perform(get(CIRCUIT_BREAKERS_API)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+  }
+}
@@ -26,6 +26,7 @@ import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_IS_SUBMITTED;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_LINE_ITEMS_MISSING;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_NOT_FOUND;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_VERSION_CONFLICT;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PROGRAM_ID_MISSING;
 import static org.openlmis.stockmanagement.web.PhysicalInventoryController.PRINT_PI;
 
@@ -41,14 +42,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openlmis.stockmanagement.domain.JasperTemplate;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryDraftPatchDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryLineItemDto;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.exception.VersionConflictException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
 import org.openlmis.stockmanagement.service.JasperTemplateService;
 import org.openlmis.stockmanagement.service.PhysicalInventoryService;
 import org.openlmis.stockmanagement.service.report.ReportService;
+import org.openlmis.stockmanagement.util.Message;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpHeaders;
 
@@ -263,6 +267,62 @@ public class PhysicalInventoryControllerIntegrationTest extends BaseWebIntegrati
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
+  // PATCH /api/physicalInventories/{id}
+
+  @Test
+  public void shouldSaveDraftChangesAndReturnNewVersion() {
+    // given
+    UUID physicalInventoryId = UUID.randomUUID();
+    PhysicalInventoryDraftPatchDto patch = new PhysicalInventoryDraftPatchDto(
+        physicalInventoryId, 2L, generatePhysicalInventory().getLineItems(), null);
+    PhysicalInventoryDraftPatchDto saved = PhysicalInventoryDraftPatchDto.builder()
+        .id(physicalInventoryId)
+        .version(3L)
+        .build();
+    when(physicalInventoryService.patchDraft(patch, physicalInventoryId)).thenReturn(saved);
+
+    // when
+    PhysicalInventoryDraftPatchDto result = restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam("id", physicalInventoryId)
+        .contentType(APPLICATION_JSON)
+        .body(patch)
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(200)
+        .extract().as(PhysicalInventoryDraftPatchDto.class);
+
+    // then
+    assertEquals(saved, result);
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnConflictOnSaveDraftChangesWhenVersionIsOutdated() {
+    // given
+    UUID physicalInventoryId = UUID.randomUUID();
+    PhysicalInventoryDraftPatchDto patch = new PhysicalInventoryDraftPatchDto(
+        physicalInventoryId, 1L, generatePhysicalInventory().getLineItems(), null);
+    when(physicalInventoryService.patchDraft(patch, physicalInventoryId))
+        .thenThrow(new VersionConflictException(
+            new Message(ERROR_PHYSICAL_INVENTORY_VERSION_CONFLICT, 1L)));
+
+    // when
+    restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam("id", physicalInventoryId)
+        .contentType(APPLICATION_JSON)
+        .body(patch)
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(409);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   // DELETE /api/physicalInventories
 
   @Test
@@ -0,0 +1,164 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_NO_FOLLOWING_PERMISSION;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_FOUND;
+
+import guru.nidi.ramltester.junit.RamlMatchers;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus;
+import org.openlmis.stockmanagement.dto.PhysicalInventorySubmissionDto;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.exception.PermissionMessageException;
+import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.service.PhysicalInventoryService;
+import org.openlmis.stockmanagement.service.PhysicalInventorySubmissionService;
+import org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder;
+import org.openlmis.stockmanagement.util.Message;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+
+public class PhysicalInventorySubmissionControllerIntegrationTest
+    extends BaseWebIntegrationTest {
+
+  private static final String RESOURCE_URL = "/api/physicalInventories/submissions";
+  private static final String ID_URL = RESOURCE_URL + "/{id}";
+
+  @MockBean
+  private PhysicalInventorySubmissionService submissionService;
+
+  @MockBean
+  private PhysicalInventoryService physicalInventoryService;
+
+  @Before
+  public void setUp() {
+    mockUserAuthenticated();
+  }
+
+  @Test
+  public void shouldAcceptPhysicalInventorySubmission() {
+    // given
+    StockEventDto event = StockEventDtoDataBuilder.createNoSourceDestinationStockEventDto();
+    event.getLineItems().get(0).setReasonId(null);
+    PhysicalInventorySubmissionDto submission = newSubmission(event);
+    when(submissionService.submit(any(StockEventDto.class))).thenReturn(submission);
+
+    // when
+    PhysicalInventorySubmissionDto result = restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .contentType(APPLICATION_JSON)
+        .body(event)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(202)
+        .extract().as(PhysicalInventorySubmissionDto.class);
+
+    // then
+    assertEquals(submission.getId(), result.getId());
+    assertEquals(PhysicalInventorySubmissionStatus.QUEUED, result.getStatus());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnForbiddenWhenUserCannotSubmitPhysicalInventory() {
+    // given
+    StockEventDto event = StockEventDtoDataBuilder.createNoSourceDestinationStockEventDto();
+    event.getLineItems().get(0).setReasonId(null);
+    doThrow(new PermissionMessageException(new Message(ERROR_NO_FOLLOWING_PERMISSION)))
+        .when(physicalInventoryService)
+        .checkPermission(event.getProgramId(), event.getFacilityId());
+
+    // when
+    restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .contentType(APPLICATION_JSON)
+        .body(event)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(403);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldGetSubmission() {
+    // given
+    PhysicalInventorySubmissionDto submission =
+        newSubmission(StockEventDtoDataBuilder.createStockEventDto());
+    when(submissionService.findSubmission(submission.getId())).thenReturn(submission);
+
+    // when
+    PhysicalInventorySubmissionDto result = restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam("id", submission.getId())
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(200)
+        .extract().as(PhysicalInventorySubmissionDto.class);
+
+    // then
+    assertEquals(submission.getId(), result.getId());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnNotFoundWhenSubmissionDoesNotExist() {
+    // given
+    UUID submissionId = UUID.randomUUID();
+    when(submissionService.findSubmission(submissionId))
+        .thenThrow(new ResourceNotFoundException(
+            new Message(ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_FOUND, submissionId)));
+
+    // when
+    restAssured.given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam("id", submissionId)
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(404);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  private PhysicalInventorySubmissionDto newSubmission(StockEventDto event) {
+    ZonedDateTime now = ZonedDateTime.now();
+    return PhysicalInventorySubmissionDto.builder()
+        .id(UUID.randomUUID())
+        .programId(event.getProgramId())
+        .facilityId(event.getFacilityId())
+        .status(PhysicalInventorySubmissionStatus.QUEUED)
+        .totalLineItems(event.getLineItems().size())
+        .validatedLineItems(0)
+        .createdDate(now)
+        .modifiedDate(now)
+        .build();
+  }
+}
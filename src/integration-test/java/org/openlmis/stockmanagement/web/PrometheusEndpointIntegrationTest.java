@@ -0,0 +1,80 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.UUID;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.ResultActions;
+
+public class PrometheusEndpointIntegrationTest extends BaseWebTest {
+
+  private static final String PROMETHEUS = "/actuator/prometheus";
+
+  private static final String SERVICE_CHECK_RESULT = "{"
+      + "  \"aud\": [\"stockmanagement\"],"
+      + "  \"scope\": [\"read\", \"write\"],"
+      + "  \"exp\": 1474500343,"
+      + "  \"authorities\": [\"TRUSTED_CLIENT\"],"
+      + "  \"client_id\": \"trusted-client\""
+      + "}";
+
+  @Test
+  public void shouldRejectScrapeWithoutToken() throws Exception {
+    //when
+    ResultActions resultActions = mvc.perform(get(PROMETHEUS));
+
+    //then
+    resultActions.andExpect(status().isUnauthorized());
+  }
+
+  @Test
+  public void shouldRejectScrapeWithUserToken() throws Exception {
+    //when
+    ResultActions resultActions = mvc.perform(get(PROMETHEUS)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE));
+
+    //then
+    resultActions.andExpect(status().isForbidden());
+  }
+
+  @Test
+  public void shouldAllowScrapeWithServiceToken() throws Exception {
+    //given
+    String token = UUID.randomUUID().toString();
+    wireMockRule.stubFor(post(urlEqualTo("/api/oauth/check_token"))
+        .withRequestBody(containing(token))
+        .willReturn(aResponse()
+            .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .withBody(SERVICE_CHECK_RESULT)));
+
+    //when
+    ResultActions resultActions = mvc.perform(get(PROMETHEUS)
+        .header(AUTHORIZATION, "Bearer " + token));
+
+    //then
+    resultActions.andExpect(status().isOk());
+  }
+}
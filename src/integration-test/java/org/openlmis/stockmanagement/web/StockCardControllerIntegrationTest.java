@@ -22,6 +22,8 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.testutils.StockCardDtoDataBuilder.createStockCardDto;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -34,14 +36,17 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import com.google.common.collect.ImmutableSet;
 
 import java.util.Collections;
+import java.util.Optional;
 import java.util.UUID;
 import org.junit.Test;
 import org.openlmis.stockmanagement.dto.StockCardDto;
 import org.openlmis.stockmanagement.exception.PermissionMessageException;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.repository.custom.StockCardVersion;
 import org.openlmis.stockmanagement.service.PermissionService;
 import org.openlmis.stockmanagement.service.StockCardService;
 import org.openlmis.stockmanagement.service.StockCardSummariesService;
+import org.openlmis.stockmanagement.service.StockVersionService;
 import org.openlmis.stockmanagement.testutils.StockCardDtoDataBuilder;
 import org.openlmis.stockmanagement.util.Message;
 import org.slf4j.profiler.Profiler;
@@ -49,6 +54,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.ResultActions;
 
 
@@ -74,6 +80,9 @@ public class StockCardControllerIntegrationTest extends BaseWebTest {
   @MockBean
   private PermissionService permissionService;
 
+  @MockBean
+  private StockVersionService stockVersionService;
+
   @Test
   public void should404WhenStockCardNotFoundById() throws Exception {
     //given
@@ -120,6 +129,35 @@ public class StockCardControllerIntegrationTest extends BaseWebTest {
                 + "'quantity':1, 'stockOnHand':1}]}"));
   }
 
+  @Test
+  public void shouldReturn304WhenStockCardNotModified() throws Exception {
+    //given
+    UUID stockCardId = UUID.randomUUID();
+    UUID facilityId = UUID.randomUUID();
+    UUID programId = UUID.randomUUID();
+
+    when(stockCardService.findStockCardById(stockCardId)).thenReturn(createStockCardDto());
+    when(stockVersionService.findStockCardVersion(stockCardId)).thenReturn(
+        Optional.of(new StockCardVersion(stockCardId, facilityId, programId, 1L)));
+
+    String etag = mvc.perform(
+        get(API_STOCK_CARDS + stockCardId.toString())
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    //when
+    ResultActions resultActions = mvc.perform(
+        get(API_STOCK_CARDS + stockCardId.toString())
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .header(HttpHeaders.IF_NONE_MATCH, etag));
+
+    //then
+    resultActions.andExpect(status().isNotModified());
+    verify(stockCardService).validateViewRights(programId, facilityId);
+    verify(stockCardService, times(1)).findStockCardById(stockCardId);
+  }
+
   @Test
   public void shouldReturn403WhenUserDoesNotHavePermissionToViewCardSummaries()
       throws Exception {
@@ -40,7 +40,7 @@ public class StockCardLineItemReasonTagControllerIntegrationTest extends BaseWeb
         .mapToObj(RandomStringUtils::randomAlphanumeric)
         .collect(Collectors.toList());
 
-    when(stockCardLineItemReasonRepository.findTags()).thenReturn(tags);
+    when(reasonCatalog.findTags()).thenReturn(tags);
 
     //when
     List<String> response = restAssured
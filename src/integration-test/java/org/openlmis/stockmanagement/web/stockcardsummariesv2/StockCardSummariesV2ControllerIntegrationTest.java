@@ -21,14 +21,23 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_STOCK_CARD_SUMMARIES_INCOMPLETE;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
 import org.junit.Before;
 import org.junit.Test;
 import org.openlmis.stockmanagement.exception.PermissionMessageException;
+import org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesSearchParams;
+import org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesService;
 import org.openlmis.stockmanagement.service.StockCardSummaries;
 import org.openlmis.stockmanagement.service.StockCardSummariesService;
 import org.openlmis.stockmanagement.service.StockCardSummariesV2SearchParams;
@@ -41,11 +50,16 @@ import org.openlmis.stockmanagement.web.BaseWebTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+@SuppressWarnings("PMD.TooManyMethods")
 public class StockCardSummariesV2ControllerIntegrationTest extends BaseWebTest {
 
   private static final String API_STOCK_CARD_SUMMARIES = "/api/v2/stockCardSummaries";
+  private static final String API_MULTI_FACILITY_STOCK_CARD_SUMMARIES =
+      API_STOCK_CARD_SUMMARIES + "/facilities";
   private static final String PAGE = "page";
   private static final String SIZE = "size";
   private static final String PROGRAM_ID = "programId";
@@ -66,6 +80,9 @@ public class StockCardSummariesV2ControllerIntegrationTest extends BaseWebTest {
   @MockBean
   private StockCardSummariesV2DtoBuilder stockCardSummariesV2DtoBuilder;
 
+  @MockBean
+  private MultiFacilityStockCardSummariesService multiFacilityStockCardSummariesService;
+
   private StockCardSummaryV2Dto stockCardSummary = new StockCardSummaryV2DtoDataBuilder()
       .withCanFulfillForMe(new CanFulfillForMeEntryDtoDataBuilder().build())
       .build();
@@ -183,6 +200,48 @@ public class StockCardSummariesV2ControllerIntegrationTest extends BaseWebTest {
     resultActions.andExpect(status().isForbidden());
   }
 
+  @Test
+  public void shouldReturnNotModifiedBeforeBuildingSummariesIfUserCanViewAllPrograms()
+      throws Exception {
+    when(stockCardSummariesService.canViewStockCards(any(), any())).thenReturn(true);
+    String etag = mvc.perform(getStockCardSummaries())
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    mvc.perform(getStockCardSummaries().header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isNotModified());
+
+    verify(stockCardSummariesService, times(1))
+        .findStockCards(any(StockCardSummariesV2SearchParams.class));
+  }
+
+  @Test
+  public void shouldBuildSummariesOfConditionalRequestIfUserCannotViewAllPrograms()
+      throws Exception {
+    when(stockCardSummariesService.canViewStockCards(any(), any())).thenReturn(false);
+    String etag = mvc.perform(getStockCardSummaries())
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    mvc.perform(getStockCardSummaries().header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isNotModified());
+
+    verify(stockCardSummariesService, times(2))
+        .findStockCards(any(StockCardSummariesV2SearchParams.class));
+  }
+
+  @Test
+  public void shouldReturnForbiddenForConditionalRequestOnlyIfSummariesAreForbidden()
+      throws Exception {
+    when(stockCardSummariesService.canViewStockCards(any(), any())).thenReturn(false);
+    doThrow(new PermissionMessageException(new Message("no permission")))
+        .when(stockCardSummariesService)
+        .findStockCards(any(StockCardSummariesV2SearchParams.class));
+
+    mvc.perform(getStockCardSummaries().header(HttpHeaders.IF_NONE_MATCH, "\"any\""))
+        .andExpect(status().isForbidden());
+  }
+
   @Test
   public void shouldReturnNonEmptySummariesIfFlagIsSet() throws Exception {
     params.setNonEmptyOnly(true);
@@ -288,4 +347,95 @@ public class StockCardSummariesV2ControllerIntegrationTest extends BaseWebTest {
         .andExpect(jsonPath("$.content[1].orderable.id",
             is(stockCardSummary2.getOrderable().getId().toString())));
   }
+
+  @Test
+  public void shouldGetStockCardSummariesOfSeveralFacilities() throws Exception {
+    UUID otherFacilityId = UUID.randomUUID();
+    Map<UUID, StockCardSummaries> facilitySummaries = new LinkedHashMap<>();
+    facilitySummaries.put(params.getFacilityId(), summaries);
+    facilitySummaries.put(otherFacilityId, summaries);
+
+    when(multiFacilityStockCardSummariesService
+        .findStockCards(any(MultiFacilityStockCardSummariesSearchParams.class)))
+        .thenReturn(facilitySummaries.entrySet().stream());
+
+    ResultActions resultActions = mvc.perform(
+        get(API_MULTI_FACILITY_STOCK_CARD_SUMMARIES)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param(PROGRAM_ID, params.getProgramIds().get(0).toString())
+            .param(FACILITY_ID, params.getFacilityId().toString())
+            .param(FACILITY_ID, otherFacilityId.toString()));
+
+    resultActions
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].facilityId", is(params.getFacilityId().toString())))
+        .andExpect(jsonPath("$[0].summaries", hasSize(2)))
+        .andExpect(jsonPath("$[1].facilityId", is(otherFacilityId.toString())))
+        .andExpect(jsonPath("$[1].summaries[0].orderable.id",
+            is(stockCardSummary.getOrderable().getId().toString())));
+  }
+
+  @Test
+  public void shouldEndStockCardSummariesOfSeveralFacilitiesWithErrorIfOneFails()
+      throws Exception {
+    Map<UUID, StockCardSummaries> facilitySummaries = new LinkedHashMap<>();
+    facilitySummaries.put(params.getFacilityId(), summaries);
+
+    when(multiFacilityStockCardSummariesService
+        .findStockCards(any(MultiFacilityStockCardSummariesSearchParams.class)))
+        .thenReturn(Stream.concat(facilitySummaries.entrySet().stream(),
+            Stream.<Map.Entry<UUID, StockCardSummaries>>generate(() -> {
+              throw new IllegalStateException("stock cards unavailable");
+            }).limit(1)));
+
+    ResultActions resultActions = mvc.perform(
+        get(API_MULTI_FACILITY_STOCK_CARD_SUMMARIES)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param(PROGRAM_ID, params.getProgramIds().get(0).toString())
+            .param(FACILITY_ID, params.getFacilityId().toString())
+            .param(FACILITY_ID, UUID.randomUUID().toString()));
+
+    resultActions
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].facilityId", is(params.getFacilityId().toString())))
+        .andExpect(jsonPath("$[1].facilityId").doesNotExist())
+        .andExpect(jsonPath("$[1].error.messageKey",
+            is(ERROR_STOCK_CARD_SUMMARIES_INCOMPLETE)));
+  }
+
+  @Test
+  public void shouldReturnBadRequestIfNeitherFacilitiesNorSupervisoryNodeArePresent()
+      throws Exception {
+    ResultActions resultActions = mvc.perform(
+        get(API_MULTI_FACILITY_STOCK_CARD_SUMMARIES)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param(PROGRAM_ID, params.getProgramIds().get(0).toString()));
+
+    resultActions.andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void shouldReturnForbiddenIfNoPermissionForOneOfFacilities() throws Exception {
+    doThrow(new PermissionMessageException(new Message("no permission")))
+        .when(multiFacilityStockCardSummariesService)
+        .findStockCards(any(MultiFacilityStockCardSummariesSearchParams.class));
+
+    ResultActions resultActions = mvc.perform(
+        get(API_MULTI_FACILITY_STOCK_CARD_SUMMARIES)
+            .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+            .param(PROGRAM_ID, params.getProgramIds().get(0).toString())
+            .param("supervisoryNodeId", UUID.randomUUID().toString()));
+
+    resultActions.andExpect(status().isForbidden());
+  }
+
+  private MockHttpServletRequestBuilder getStockCardSummaries() {
+    return get(API_STOCK_CARD_SUMMARIES)
+        .param(ACCESS_TOKEN, ACCESS_TOKEN_VALUE)
+        .param(PROGRAM_ID, params.getProgramIds().get(0).toString())
+        .param(FACILITY_ID, params.getFacilityId().toString())
+        .param(AS_OF_DATE, params.getAsOfDate().toString());
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Creates the application data source. Without a replica this is the primary Hikari pool as
+ * Spring Boot would create it; with a replica, read-only transactions are routed to a second,
+ * read-only pool as long as its replication lag is within the configured limit.
+ */
+@Configuration
+public class DataSourceConfiguration {
+
+  static final String LAG_METRIC = "stockmanagement.datasource.replica.lag";
+
+  private static final String PRIMARY_POOL = "primary";
+  private static final String REPLICA_POOL = "replica";
+
+  /**
+   * DataSource bean initializer.
+   *
+   * @param properties      spring.datasource.* properties of the primary
+   * @param environment     environment used to bind spring.datasource.hikari.* to both pools
+   * @param meterRegistry   registry for the pool, routing and lag metrics
+   * @param replicaEnabled  whether read-only transactions may go to the replica
+   * @param replicaUrl      JDBC url of the replica
+   * @param replicaUsername user of the replica
+   * @param replicaPassword password of the replica
+   * @param replicaPoolSize maximum number of connections to the replica
+   * @param maxLagSeconds   replication lag above which reads go back to the primary
+   * @param lagCheckIntervalMillis minimum time between two replication lag checks
+   * @return data source
+   */
+  @Bean
+  public DataSource dataSource(DataSourceProperties properties, Environment environment,
+      MeterRegistry meterRegistry,
+      @Value("${stockmanagement.datasource.replica.enabled}") boolean replicaEnabled,
+      @Value("${stockmanagement.datasource.replica.url}") String replicaUrl,
+      @Value("${stockmanagement.datasource.replica.username}") String replicaUsername,
+      @Value("${stockmanagement.datasource.replica.password}") String replicaPassword,
+      @Value("${stockmanagement.datasource.replica.maximumPoolSize}") int replicaPoolSize,
+      @Value("${stockmanagement.datasource.replica.maxLagSeconds}") double maxLagSeconds,
+      @Value("${stockmanagement.datasource.replica.lagCheckIntervalMillis}")
+          long lagCheckIntervalMillis) {
+    HikariDataSource primary = createPool(properties.getUrl(), properties.getUsername(),
+        properties.getPassword(), PRIMARY_POOL, environment, meterRegistry);
+    primary.setDriverClassName(properties.determineDriverClassName());
+
+    if (!replicaEnabled) {
+      return primary;
+    }
+
+    HikariDataSource replica = createPool(replicaUrl, replicaUsername, replicaPassword,
+        REPLICA_POOL, environment, meterRegistry);
+    replica.setDriverClassName(properties.determineDriverClassName());
+    replica.setMaximumPoolSize(replicaPoolSize);
+    replica.setReadOnly(true);
+
+    ReplicationLagGuard lagGuard =
+        new ReplicationLagGuard(replica, maxLagSeconds, lagCheckIntervalMillis);
+    Gauge.builder(LAG_METRIC, lagGuard, ReplicationLagGuard::getLagSeconds)
+        .baseUnit("seconds")
+        .register(meterRegistry);
+
+    ReadOnlyRoutingDataSource routing =
+        new ReadOnlyRoutingDataSource(primary, replica, lagGuard, meterRegistry);
+    routing.afterPropertiesSet();
+
+    return new LazyConnectionDataSourceProxy(routing);
+  }
+
+  private HikariDataSource createPool(String url, String username, String password,
+      String poolName, Environment environment, MeterRegistry meterRegistry) {
+    HikariDataSource pool = new HikariDataSource();
+    Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+    pool.setJdbcUrl(url);
+    pool.setUsername(username);
+    pool.setPassword(password);
+    pool.setPoolName(poolName);
+    pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+    return pool;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends connections of read-only transactions to the replica while the {@link ReplicationLagGuard}
+ * allows it, and everything else to the primary.
+ *
+ * <p>The read-only flag of a transaction is only published after the transaction manager has
+ * begun it, so this data source has to be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} that postpones getting
+ * the physical connection until the first statement.
+ */
+public class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource {
+
+  static final String ROUTED_METRIC = "stockmanagement.datasource.connections.routed";
+
+  public enum Pool {
+    PRIMARY,
+    REPLICA
+  }
+
+  private final ReplicationLagGuard lagGuard;
+  private final Map<Pool, Counter> routedConnections = new EnumMap<>(Pool.class);
+
+  /**
+   * Creates a new routing data source.
+   *
+   * @param primary       data source of the primary
+   * @param replica       data source of the replica
+   * @param lagGuard      guard that tells whether the replica is fresh enough
+   * @param meterRegistry registry for the per-pool routing counters
+   */
+  public ReadOnlyRoutingDataSource(DataSource primary, DataSource replica,
+      ReplicationLagGuard lagGuard, MeterRegistry meterRegistry) {
+    this.lagGuard = lagGuard;
+
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(Pool.PRIMARY, primary);
+    targets.put(Pool.REPLICA, replica);
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+
+    for (Pool pool : Pool.values()) {
+      routedConnections.put(pool, meterRegistry.counter(ROUTED_METRIC,
+          "pool", pool.name().toLowerCase()));
+    }
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    Pool pool = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+        && lagGuard.isReplicaUsable()
+        ? Pool.REPLICA
+        : Pool.PRIMARY;
+
+    routedConnections.get(pool).increment();
+    return pool;
+  }
+}
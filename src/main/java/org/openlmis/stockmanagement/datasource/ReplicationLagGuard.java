@@ -0,0 +1,122 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.datasource;
+
+import com.google.common.base.Ticker;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides whether the replica is fresh enough to serve reads. The replication lag is checked on
+ * the replica itself at most once per check interval, by whichever request first finds the last
+ * result stale; all other requests use the last known result. Until the first check succeeds, and
+ * whenever the lag is above the limit or cannot be read, reads go to the primary.
+ */
+public class ReplicationLagGuard {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationLagGuard.class);
+
+  // a replica that has replayed everything it received is not lagging, even when the primary has
+  // been idle for a while and the last replayed transaction is old
+  static final String LAG_QUERY = "SELECT CASE"
+      + " WHEN NOT pg_is_in_recovery() THEN 0"
+      + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+      + " ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)"
+      + " END";
+
+  private final DataSource replica;
+  private final double maxLagSeconds;
+  private final long checkIntervalNanos;
+  private final Ticker ticker;
+  private final AtomicLong nextCheckNanos;
+
+  private volatile boolean replicaUsable;
+  private volatile double lagSeconds = Double.NaN;
+
+  /**
+   * Creates a new guard.
+   *
+   * @param replica         data source of the replica
+   * @param maxLagSeconds   maximum lag at which the replica is still used
+   * @param checkIntervalMillis minimum time between two lag checks
+   */
+  public ReplicationLagGuard(DataSource replica, double maxLagSeconds, long checkIntervalMillis) {
+    this(replica, maxLagSeconds, checkIntervalMillis, Ticker.systemTicker());
+  }
+
+  ReplicationLagGuard(DataSource replica, double maxLagSeconds, long checkIntervalMillis,
+      Ticker ticker) {
+    this.replica = replica;
+    this.maxLagSeconds = maxLagSeconds;
+    this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+    this.ticker = ticker;
+    this.nextCheckNanos = new AtomicLong(ticker.read());
+  }
+
+  /**
+   * Returns true if read-only work may be sent to the replica, refreshing the lag first if the
+   * last check is older than the check interval.
+   */
+  public boolean isReplicaUsable() {
+    long now = ticker.read();
+    long nextCheck = nextCheckNanos.get();
+
+    if (now - nextCheck >= 0 && nextCheckNanos.compareAndSet(nextCheck, now + checkIntervalNanos)) {
+      checkLag();
+    }
+
+    return replicaUsable;
+  }
+
+  /**
+   * Returns the replication lag seen by the last check, or NaN if it could not be read.
+   */
+  public double getLagSeconds() {
+    return lagSeconds;
+  }
+
+  private void checkLag() {
+    try (Connection connection = replica.getConnection();
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+      resultSet.next();
+      lagSeconds = resultSet.getDouble(1);
+    } catch (SQLException ex) {
+      LOGGER.warn("Could not read the replication lag, reading from the primary", ex);
+      lagSeconds = Double.NaN;
+      replicaUsable = false;
+      return;
+    }
+
+    boolean usable = lagSeconds <= maxLagSeconds;
+    if (!usable && replicaUsable) {
+      LOGGER.warn("Replication lag of {}s is above {}s, reading from the primary",
+          lagSeconds, maxLagSeconds);
+    } else if (usable && !replicaUsable) {
+      LOGGER.info("Replication lag of {}s is within {}s, reading from the replica",
+          lagSeconds, maxLagSeconds);
+    }
+    replicaUsable = usable;
+  }
+}
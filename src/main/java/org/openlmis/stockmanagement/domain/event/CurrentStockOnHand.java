@@ -0,0 +1,101 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.domain.event;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.Type;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * The current stock on hand of a stock card, i.e. its latest {@link CalculatedStockOnHand}, kept
+ * in one row per stock card. It is updated in the same transaction as the calculated stock on
+ * hands, and can be rebuilt from them.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@Table(name = "current_stocks_on_hand", schema = "stockmanagement")
+public class CurrentStockOnHand implements Persistable<UUID> {
+
+  @Id
+  @Type(type = "pg-uuid")
+  private UUID stockCardId;
+
+  @Column(nullable = false)
+  private Integer stockOnHand;
+
+  @Column(nullable = false)
+  private LocalDate occurredDate;
+
+  @Column(nullable = false, columnDefinition = "timestamp")
+  private ZonedDateTime processedDate;
+
+  @Column
+  private UUID lastLineItemId;
+
+  // the id is the stock card's, so it cannot tell a new row from an existing one
+  @Transient
+  private boolean newRow;
+
+  /**
+   * Creates the current stock on hand of a stock card that does not have one yet.
+   */
+  public CurrentStockOnHand(UUID stockCardId) {
+    this.stockCardId = stockCardId;
+    this.newRow = true;
+  }
+
+  /**
+   * Copies the given calculated stock on hand, the latest one of the stock card.
+   */
+  public void update(CalculatedStockOnHand latest, UUID lastLineItemId) {
+    this.stockOnHand = latest.getStockOnHand();
+    this.occurredDate = latest.getOccurredDate();
+    this.processedDate = latest.getProcessedDate();
+    this.lastLineItemId = lastLineItemId;
+  }
+
+  @Override
+  public UUID getId() {
+    return stockCardId;
+  }
+
+  @Override
+  public boolean isNew() {
+    return newRow;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markNotNew() {
+    this.newRow = false;
+  }
+}
@@ -17,14 +17,17 @@ package org.openlmis.stockmanagement.domain.event;
 
 import static javax.persistence.CascadeType.ALL;
 
+import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
 import javax.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -64,4 +67,40 @@ public class StockEvent extends BaseEntity {
   @ToString.Exclude
   @OneToMany(cascade = ALL, mappedBy = "stockEvent")
   private List<StockEventLineItem> lineItems;
+
+  // Earliest and latest occurred date of the line items, kept on the event so the history
+  // search can filter by date without joining the line items.
+  private LocalDate minOccurredDate;
+
+  private LocalDate maxOccurredDate;
+
+  /**
+   * Creates a new stock event. The occurred date range is derived from the line items when the
+   * event is persisted.
+   */
+  public StockEvent(UUID facilityId, UUID programId, UUID userId, ZonedDateTime processedDate,
+      boolean isActive, String signature, String documentNumber, EventOrigin eventOrigin,
+      List<StockEventLineItem> lineItems) {
+    this(facilityId, programId, userId, processedDate, isActive, signature, documentNumber,
+        eventOrigin, lineItems, null, null);
+  }
+
+  @PrePersist
+  void updateOccurredDateRange() {
+    if (null == lineItems) {
+      return;
+    }
+
+    lineItems.stream()
+        .map(StockEventLineItem::getOccurredDate)
+        .filter(Objects::nonNull)
+        .forEach(occurredDate -> {
+          if (null == minOccurredDate || occurredDate.isBefore(minOccurredDate)) {
+            minOccurredDate = occurredDate;
+          }
+          if (null == maxOccurredDate || occurredDate.isAfter(maxOccurredDate)) {
+            maxOccurredDate = occurredDate;
+          }
+        });
+  }
 }
@@ -49,6 +49,9 @@ public class PhysicalInventory extends BaseEntity {
   private String signature;
   private String documentNumber;
 
+  @Column(nullable = false)
+  private Long version = 0L;
+
   @LazyCollection(FALSE)
   @OneToMany(cascade = ALL, mappedBy = "physicalInventory", orphanRemoval = true)
   private List<PhysicalInventoryLineItem> lineItems;
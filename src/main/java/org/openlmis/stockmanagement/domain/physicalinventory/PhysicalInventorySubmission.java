@@ -0,0 +1,68 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.domain.physicalinventory;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+import lombok.Data;
+import org.openlmis.stockmanagement.domain.BaseEntity;
+
+/**
+ * Progress of a physical inventory submitted in the staged mode. The submitted stock event itself
+ * is not stored here, only what is needed to report how far its processing got.
+ */
+@Data
+@Entity
+@Table(name = "physical_inventory_submissions", schema = "stockmanagement")
+public class PhysicalInventorySubmission extends BaseEntity {
+
+  @Column(nullable = false)
+  private UUID programId;
+
+  @Column(nullable = false)
+  private UUID facilityId;
+
+  private UUID physicalInventoryId;
+
+  @Column(nullable = false, columnDefinition = TEXT_COLUMN_DEFINITION)
+  @Enumerated(value = EnumType.STRING)
+  private PhysicalInventorySubmissionStatus status;
+
+  @Column(nullable = false)
+  private Integer totalLineItems;
+
+  @Column(nullable = false)
+  private Integer validatedLineItems;
+
+  private UUID stockEventId;
+
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
+  private String errorMessageKey;
+
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
+  private String errorMessage;
+
+  @Column(nullable = false, columnDefinition = "timestamp")
+  private ZonedDateTime createdDate;
+
+  @Column(nullable = false, columnDefinition = "timestamp")
+  private ZonedDateTime modifiedDate;
+}
@@ -0,0 +1,47 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.dto;
+
+import java.util.List;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Partial save of a physical inventory draft. Line items are matched to the draft's line items by
+ * orderable and lot: changed line items replace (or are added as) the matching line item, removed
+ * line items are deleted, and all other line items of the draft are left untouched.
+ *
+ * <p>The version must be the version of the draft the changes are based on. The response carries
+ * the id and the new version of the draft only.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PhysicalInventoryDraftPatchDto {
+  private UUID id;
+
+  private Long version;
+
+  private List<PhysicalInventoryLineItemDto> lineItems;
+
+  // only the orderable and lot of removed line items are read
+  private List<PhysicalInventoryLineItemDto> removedLineItems;
+}
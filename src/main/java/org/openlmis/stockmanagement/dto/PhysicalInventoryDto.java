@@ -51,6 +51,8 @@ public class PhysicalInventoryDto {
 
   private Boolean isDraft;
 
+  private Long version;
+
   private List<PhysicalInventoryLineItemDto> lineItems;
 
   /**
@@ -112,6 +114,7 @@ public class PhysicalInventoryDto {
         .signature(inventory.getSignature())
         .isStarter(false)
         .isDraft(inventory.getIsDraft())
+        .version(inventory.getVersion())
         .lineItems(inventory.getLineItems().stream().map(
             PhysicalInventoryLineItemDto::from).collect(toList()))
         .build();
@@ -0,0 +1,67 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.dto;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmission;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhysicalInventorySubmissionDto {
+  private UUID id;
+  private UUID programId;
+  private UUID facilityId;
+  private UUID physicalInventoryId;
+  private PhysicalInventorySubmissionStatus status;
+  private Integer totalLineItems;
+  private Integer validatedLineItems;
+  private UUID stockEventId;
+  private String errorMessageKey;
+  private String errorMessage;
+  private ZonedDateTime createdDate;
+  private ZonedDateTime modifiedDate;
+
+  /**
+   * Create from jpa model.
+   *
+   * @param submission submission jpa model.
+   * @return created dto.
+   */
+  public static PhysicalInventorySubmissionDto from(PhysicalInventorySubmission submission) {
+    return PhysicalInventorySubmissionDto.builder()
+        .id(submission.getId())
+        .programId(submission.getProgramId())
+        .facilityId(submission.getFacilityId())
+        .physicalInventoryId(submission.getPhysicalInventoryId())
+        .status(submission.getStatus())
+        .totalLineItems(submission.getTotalLineItems())
+        .validatedLineItems(submission.getValidatedLineItems())
+        .stockEventId(submission.getStockEventId())
+        .errorMessageKey(submission.getErrorMessageKey())
+        .errorMessage(submission.getErrorMessage())
+        .createdDate(submission.getCreatedDate())
+        .modifiedDate(submission.getModifiedDate())
+        .build();
+  }
+}
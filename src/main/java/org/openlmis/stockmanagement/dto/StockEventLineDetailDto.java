@@ -65,10 +65,23 @@ public class StockEventLineDetailDto {
    */
   public static StockEventLineDetailDto newInstance(StockCardDto card,
       StockCardLineItemDto lineItem) {
+    return newInstance(card.getOrderable(), card.getLot(), lineItem);
+  }
+
+  /**
+   * Flattens one resolved stock card line item into a single transaction-history detail row.
+   *
+   * @param orderable the product of the stock card the line item belongs to.
+   * @param lot       the lot of that stock card, null if it has none.
+   * @param lineItem  the resolved line item DTO (carries SOH, source/destination, reason).
+   * @return the detail row.
+   */
+  public static StockEventLineDetailDto newInstance(OrderableDto orderable, LotDto lot,
+      StockCardLineItemDto lineItem) {
     StockCardLineItem item = lineItem.getLineItem();
     return StockEventLineDetailDto.builder()
-        .orderable(card.getOrderable())
-        .lot(card.getLot())
+        .orderable(orderable)
+        .lot(lot)
         .source(lineItem.getSource())
         .destination(lineItem.getDestination())
         .quantity(item.getQuantity())
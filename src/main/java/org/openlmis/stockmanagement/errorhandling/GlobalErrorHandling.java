@@ -31,6 +31,7 @@ import org.openlmis.stockmanagement.exception.PermissionMessageException;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.exception.StockEventCancellationException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.exception.VersionConflictException;
 import org.openlmis.stockmanagement.service.referencedata.DataRetrievalException;
 import org.openlmis.stockmanagement.util.ErrorResponse;
 import org.openlmis.stockmanagement.util.Message;
@@ -105,6 +106,19 @@ public class GlobalErrorHandling extends AbstractErrorHandling {
     return getLocalizedMessage(ex);
   }
 
+  /**
+   * Handles version conflicts and returns status 409 CONFLICT.
+   *
+   * @param ex the VersionConflictException to handle
+   * @return the error response for the user
+   */
+  @ExceptionHandler(VersionConflictException.class)
+  @ResponseStatus(HttpStatus.CONFLICT)
+  @ResponseBody
+  public Message.LocalizedMessage handleVersionConflictException(VersionConflictException ex) {
+    return getLocalizedMessage(ex);
+  }
+
   /**
    * Handles Message exceptions and returns status 400 Bad Request.
    *
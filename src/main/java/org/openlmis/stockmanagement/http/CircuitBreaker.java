@@ -0,0 +1,188 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Count based circuit breaker. The outcomes of the last {@code windowSize} calls are kept; once
+ * at least {@code minimumCalls} were recorded and the share of failed ones reaches
+ * {@code failureRateThreshold} percent, the breaker opens and rejects calls for
+ * {@code openDurationMillis}. After that a single trial call is let through (half open): if it
+ * succeeds the breaker closes with an empty window, otherwise it opens again.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long openDurationNanos;
+  private final Ticker ticker;
+
+  private final boolean[] outcomes;
+  private int next;
+  private int recorded;
+  private int failed;
+
+  private State state = State.CLOSED;
+  private long openedAtNanos;
+  private boolean trialInProgress;
+
+  /**
+   * Creates a new, closed breaker.
+   *
+   * @param name                 name of the guarded resource
+   * @param windowSize           number of most recent calls the failure rate is computed over
+   * @param minimumCalls         number of calls needed before the breaker can open
+   * @param failureRateThreshold failure rate, in percent, at which the breaker opens
+   * @param openDurationMillis   time the breaker stays open before a trial call
+   * @param ticker               source of the time
+   */
+  public CircuitBreaker(String name, int windowSize, int minimumCalls,
+      double failureRateThreshold, long openDurationMillis, Ticker ticker) {
+    this.name = name;
+    this.outcomes = new boolean[windowSize];
+    this.minimumCalls = Math.min(minimumCalls, windowSize);
+    this.failureRateThreshold = failureRateThreshold;
+    this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+    this.ticker = ticker;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns whether a call may be made now. Every permitted call has to be followed by either
+   * {@link #onSuccess()} or {@link #onFailure()}.
+   */
+  public synchronized boolean tryAcquirePermission() {
+    if (State.OPEN == state && ticker.read() - openedAtNanos >= openDurationNanos) {
+      state = State.HALF_OPEN;
+      trialInProgress = false;
+    }
+
+    switch (state) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (trialInProgress) {
+          return false;
+        }
+        trialInProgress = true;
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Gives back a permission without recording an outcome, for a call that was not made after all.
+   */
+  public synchronized void releasePermission() {
+    if (State.HALF_OPEN == state) {
+      trialInProgress = false;
+    }
+  }
+
+  /**
+   * Records a call that reached the resource and got a (non server error) response.
+   */
+  public synchronized void onSuccess() {
+    if (State.HALF_OPEN == state) {
+      close();
+    } else if (State.CLOSED == state) {
+      record(false);
+    }
+  }
+
+  /**
+   * Records a call that failed because of the resource, with an I/O error or a server error.
+   */
+  public synchronized void onFailure() {
+    if (State.HALF_OPEN == state) {
+      open();
+    } else if (State.CLOSED == state) {
+      record(true);
+
+      if (recorded >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+        open();
+      }
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Returns the current state and failure statistics of this breaker.
+   */
+  public synchronized Status getStatus() {
+    return new Status(name, state, recorded, failed, getFailureRate());
+  }
+
+  private void record(boolean failure) {
+    if (recorded == outcomes.length) {
+      if (outcomes[next]) {
+        failed--;
+      }
+    } else {
+      recorded++;
+    }
+
+    outcomes[next] = failure;
+    if (failure) {
+      failed++;
+    }
+    next = (next + 1) % outcomes.length;
+  }
+
+  private double getFailureRate() {
+    return 0 == recorded ? 0 : failed * 100.0 / recorded;
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAtNanos = ticker.read();
+    trialInProgress = false;
+  }
+
+  private void close() {
+    state = State.CLOSED;
+    trialInProgress = false;
+    next = 0;
+    recorded = 0;
+    failed = 0;
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static final class Status {
+    private final String name;
+    private final State state;
+    private final int bufferedCalls;
+    private final int failedCalls;
+    private final double failureRate;
+  }
+}
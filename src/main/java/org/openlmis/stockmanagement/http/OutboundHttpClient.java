@@ -0,0 +1,100 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Creates the RestTemplates used to call other services. All of them share one request factory,
+ * and so one pool of keep-alive connections, and every target service gets a limited number of
+ * concurrent requests so that a slow dependency can only tie up a bounded number of threads.
+ */
+public class OutboundHttpClient {
+
+  public static final String AUTH = "auth";
+  public static final String REFERENCEDATA = "referencedata";
+  public static final String NOTIFICATION = "notification";
+  public static final String REPORT = "report";
+
+  static final String NO_RESOURCE = "none";
+
+  static final String IN_FLIGHT_METRIC = "stockmanagement.http.client.inFlight";
+  static final String WAITING_METRIC = "stockmanagement.http.client.waiting";
+
+  private final ClientHttpRequestFactory requestFactory;
+  private final MeterRegistry meterRegistry;
+  private final int maxConcurrentRequests;
+  private final long permitTimeoutMillis;
+  private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new client.
+   *
+   * @param requestFactory        factory shared by all created RestTemplates
+   * @param meterRegistry         registry for the per target request metrics
+   * @param maxConcurrentRequests maximum number of concurrent requests to one target
+   * @param permitTimeoutMillis   time a request waits for one of its target's permits
+   */
+  public OutboundHttpClient(ClientHttpRequestFactory requestFactory, MeterRegistry meterRegistry,
+      int maxConcurrentRequests, long permitTimeoutMillis) {
+    this.requestFactory = requestFactory;
+    this.meterRegistry = meterRegistry;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.permitTimeoutMillis = permitTimeoutMillis;
+  }
+
+  /**
+   * Creates a RestTemplate for requests to the given target service. RestTemplates of the same
+   * target share its concurrency limit.
+   */
+  public RestTemplate createRestTemplate(String target) {
+    return createRestTemplate(target, target, NO_RESOURCE);
+  }
+
+  /**
+   * Creates a RestTemplate for requests to the given target service whose requests are timed
+   * with the name of the client that sends them and of the resource it reads.
+   */
+  public RestTemplate createRestTemplate(String target, String service, String resource) {
+    RestTemplate restTemplate = new RestTemplate(requestFactory);
+    restTemplate.getInterceptors().add(new TargetLimitInterceptor(meterRegistry, target,
+        service, resource, permits.computeIfAbsent(target, this::createPermits),
+        permitTimeoutMillis));
+    return restTemplate;
+  }
+
+  private Semaphore createPermits(String target) {
+    Semaphore semaphore = new Semaphore(maxConcurrentRequests, true);
+
+    Gauge.builder(IN_FLIGHT_METRIC, semaphore,
+        permits -> maxConcurrentRequests - permits.availablePermits())
+        .description("Requests to other services currently in progress")
+        .tag("target", target)
+        .register(meterRegistry);
+    Gauge.builder(WAITING_METRIC, semaphore, Semaphore::getQueueLength)
+        .description("Requests to other services waiting for the target's concurrency limit")
+        .tag("target", target)
+        .register(meterRegistry);
+
+    return semaphore;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * Creates the HTTP client of requests to other services: one pool of keep-alive connections,
+ * with connect, read and pool wait timeouts, that accepts gzip and deflate encoded responses.
+ */
+@Configuration
+public class OutboundHttpClientConfiguration {
+
+  static final String POOL_NAME = "outbound";
+
+  /**
+   * Pooled HTTP client bean initializer.
+   *
+   * @param meterRegistry        registry for the connection pool metrics
+   * @param maxConnections       maximum number of pooled connections, also per host
+   * @param connectTimeoutMillis time to establish a connection
+   * @param readTimeoutMillis    maximum time of inactivity while waiting for response data
+   * @param poolTimeoutMillis    time to wait for a connection from the pool
+   * @param idleTimeoutMillis    time after which idle connections are closed
+   * @return http client
+   */
+  @Bean(destroyMethod = "close")
+  public CloseableHttpClient outboundHttpComponentsClient(MeterRegistry meterRegistry,
+      @Value("${stockmanagement.httpClient.maxConnections}") int maxConnections,
+      @Value("${stockmanagement.httpClient.connectTimeoutMillis}") int connectTimeoutMillis,
+      @Value("${stockmanagement.httpClient.readTimeoutMillis}") int readTimeoutMillis,
+      @Value("${stockmanagement.httpClient.poolTimeoutMillis}") int poolTimeoutMillis,
+      @Value("${stockmanagement.httpClient.idleTimeoutMillis}") long idleTimeoutMillis) {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    // all services are usually reached through the same host, so the per host limit would only
+    // cap the total again; the per service limits are applied by OutboundHttpClient
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, POOL_NAME)
+        .bindTo(meterRegistry);
+
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(connectTimeoutMillis)
+        .setSocketTimeout(readTimeoutMillis)
+        .setConnectionRequestTimeout(poolTimeoutMillis)
+        .build();
+
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .evictExpiredConnections()
+        .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * OutboundHttpClient bean initializer.
+   *
+   * @param httpClient            pooled client all requests are sent with
+   * @param meterRegistry         registry for the per target request metrics
+   * @param maxConcurrentRequests maximum number of concurrent requests to one target service
+   * @param poolTimeoutMillis     time a request waits for its target's concurrency limit
+   * @return outbound http client
+   */
+  @Bean
+  public OutboundHttpClient outboundHttpClient(CloseableHttpClient httpClient,
+      MeterRegistry meterRegistry,
+      @Value("${stockmanagement.httpClient.maxConcurrentRequestsPerTarget}")
+          int maxConcurrentRequests,
+      @Value("${stockmanagement.httpClient.poolTimeoutMillis}") long poolTimeoutMillis) {
+    return new OutboundHttpClient(new HttpComponentsClientHttpRequestFactory(httpClient),
+        meterRegistry, maxConcurrentRequests, poolTimeoutMillis);
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import com.google.common.base.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Guards calls to other services with a circuit breaker and a bulkhead per resource. The breaker
+ * counts I/O errors (including timeouts) and 5xx responses as failures; any other outcome means
+ * the resource answered. The bulkhead limits the number of concurrent calls to one resource, so
+ * that a slow resource cannot use up the connections and threads the other resources of the same
+ * service need.
+ *
+ * <p>Breaker states are published in the {@code stockmanagement.circuitBreaker.state} gauge
+ * (0 closed, 1 open, 2 half open) and call outcomes in the
+ * {@code stockmanagement.circuitBreaker.calls} counter.
+ */
+@Component
+public class RemoteCallGuard {
+
+  static final String STATE_METRIC = "stockmanagement.circuitBreaker.state";
+  static final String CALLS_METRIC = "stockmanagement.circuitBreaker.calls";
+  static final String IN_FLIGHT_METRIC = "stockmanagement.bulkhead.inFlight";
+
+  static final String SUCCESS = "success";
+  static final String FAILURE = "failure";
+  static final String NOT_PERMITTED = "notPermitted";
+  static final String BULKHEAD_FULL = "bulkheadFull";
+
+  private final MeterRegistry meterRegistry;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long openDurationMillis;
+  private final int maxConcurrentCalls;
+  private final long maxWaitMillis;
+  private final Ticker ticker;
+
+  private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new guard.
+   *
+   * @param meterRegistry        registry for the breaker and bulkhead metrics
+   * @param windowSize           number of most recent calls the failure rate is computed over
+   * @param minimumCalls         number of calls needed before a breaker can open
+   * @param failureRateThreshold failure rate, in percent, at which a breaker opens
+   * @param openDurationMillis   time a breaker stays open before a trial call
+   * @param maxConcurrentCalls   maximum number of concurrent calls to one resource
+   * @param maxWaitMillis        time a call waits for the bulkhead of its resource
+   */
+  @Autowired
+  public RemoteCallGuard(MeterRegistry meterRegistry,
+      @Value("${stockmanagement.circuitBreaker.windowSize}") int windowSize,
+      @Value("${stockmanagement.circuitBreaker.minimumCalls}") int minimumCalls,
+      @Value("${stockmanagement.circuitBreaker.failureRateThreshold}")
+          double failureRateThreshold,
+      @Value("${stockmanagement.circuitBreaker.openDurationMillis}") long openDurationMillis,
+      @Value("${stockmanagement.bulkhead.maxConcurrentCalls}") int maxConcurrentCalls,
+      @Value("${stockmanagement.bulkhead.maxWaitMillis}") long maxWaitMillis) {
+    this(meterRegistry, windowSize, minimumCalls, failureRateThreshold, openDurationMillis,
+        maxConcurrentCalls, maxWaitMillis, Ticker.systemTicker());
+  }
+
+  RemoteCallGuard(MeterRegistry meterRegistry, int windowSize, int minimumCalls,
+      double failureRateThreshold, long openDurationMillis, int maxConcurrentCalls,
+      long maxWaitMillis, Ticker ticker) {
+    this.meterRegistry = meterRegistry;
+    this.windowSize = windowSize;
+    this.minimumCalls = minimumCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.openDurationMillis = openDurationMillis;
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.maxWaitMillis = maxWaitMillis;
+    this.ticker = ticker;
+  }
+
+  /**
+   * Makes the given call to the given resource, unless its breaker is open or its bulkhead is
+   * full.
+   *
+   * @throws CallNotPermittedException if the call was not made
+   */
+  public <T> T execute(String resource, Supplier<T> call) {
+    Guard guard = guards.computeIfAbsent(resource, this::createGuard);
+
+    if (!guard.breaker.tryAcquirePermission()) {
+      count(resource, NOT_PERMITTED);
+      throw new CallNotPermittedException("Circuit breaker of " + resource + " is open");
+    }
+
+    if (!acquire(guard.bulkhead)) {
+      guard.breaker.releasePermission();
+      count(resource, BULKHEAD_FULL);
+      throw new CallNotPermittedException("Too many concurrent calls to " + resource);
+    }
+
+    try {
+      T result = call.get();
+      guard.breaker.onSuccess();
+      count(resource, SUCCESS);
+      return result;
+    } catch (ResourceAccessException | HttpServerErrorException ex) {
+      guard.breaker.onFailure();
+      count(resource, FAILURE);
+      throw ex;
+    } catch (RuntimeException ex) {
+      guard.breaker.onSuccess();
+      count(resource, SUCCESS);
+      throw ex;
+    } finally {
+      guard.bulkhead.release();
+    }
+  }
+
+  /**
+   * Returns the state of the breakers of all resources called so far, ordered by resource.
+   */
+  public List<CircuitBreaker.Status> getCircuitBreakers() {
+    List<CircuitBreaker.Status> statuses = new ArrayList<>();
+    guards.values().forEach(guard -> statuses.add(guard.breaker.getStatus()));
+    statuses.sort(Comparator.comparing(CircuitBreaker.Status::getName));
+    return statuses;
+  }
+
+  private boolean acquire(Semaphore bulkhead) {
+    try {
+      return bulkhead.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void count(String resource, String outcome) {
+    Counter
+        .builder(CALLS_METRIC)
+        .description("Calls to other services by circuit breaker outcome")
+        .tag("resource", resource)
+        .tag("outcome", outcome)
+        .register(meterRegistry)
+        .increment();
+  }
+
+  private Guard createGuard(String resource) {
+    CircuitBreaker breaker = new CircuitBreaker(resource, windowSize, minimumCalls,
+        failureRateThreshold, openDurationMillis, ticker);
+    Semaphore bulkhead = new Semaphore(maxConcurrentCalls, true);
+
+    Gauge.builder(STATE_METRIC, breaker, cb -> cb.getState().ordinal())
+        .description("State of the circuit breaker: 0 closed, 1 open, 2 half open")
+        .tag("resource", resource)
+        .register(meterRegistry);
+    Gauge.builder(IN_FLIGHT_METRIC, bulkhead,
+        permits -> maxConcurrentCalls - permits.availablePermits())
+        .description("Calls to other services in progress per resource")
+        .tag("resource", resource)
+        .register(meterRegistry);
+
+    return new Guard(breaker, bulkhead);
+  }
+
+  private static final class Guard {
+    private final CircuitBreaker breaker;
+    private final Semaphore bulkhead;
+
+    private Guard(CircuitBreaker breaker, Semaphore bulkhead) {
+      this.breaker = breaker;
+      this.bulkhead = bulkhead;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces identical concurrent calls: while a call with a given key is in progress, callers
+ * with the same key wait for it and get its result (or exception) instead of making their own
+ * call. Nothing is kept once the call completes, so a later caller always makes a new call.
+ *
+ * <p>Coalesced callers share the result object, so it must not be modified by the caller.
+ * Coalesced calls are counted in {@code stockmanagement.http.client.coalesced}.
+ */
+@Component
+public class SingleFlight {
+
+  static final String COALESCED_METRIC = "stockmanagement.http.client.coalesced";
+
+  private final MeterRegistry meterRegistry;
+  private final ConcurrentMap<String, CompletableFuture<Object>> inFlight =
+      new ConcurrentHashMap<>();
+
+  @Autowired
+  public SingleFlight(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Makes the given call, or waits for the identical call already in progress.
+   *
+   * @param name name the coalesced calls are counted under
+   * @param key  key identifying identical calls
+   * @param call the call to make
+   * @return result of the call
+   */
+  public <T> T execute(String name, String key, Supplier<T> call) {
+    CompletableFuture<Object> own = new CompletableFuture<>();
+    CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+
+    if (null != existing) {
+      Counter
+          .builder(COALESCED_METRIC)
+          .description("Calls to other services answered by an identical call in progress")
+          .tag("name", name)
+          .register(meterRegistry)
+          .increment();
+      return await(existing);
+    }
+
+    try {
+      T result = call.get();
+      own.complete(result);
+      return result;
+    } catch (RuntimeException | Error ex) {
+      own.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T await(CompletableFuture<Object> call) {
+    try {
+      return (T) call.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+}
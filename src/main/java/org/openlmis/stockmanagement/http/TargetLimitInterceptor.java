@@ -0,0 +1,168 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Limits the number of concurrent requests to one target service and records them in the
+ * {@code stockmanagement.http.client.requests} timer, tagged with the target, the client class
+ * that sends them, the resource class it reads, the HTTP method and the response status. A
+ * permit is held until the response is closed, so reading the body counts against the limit;
+ * the time is measured until the response headers arrive. Requests that do not get a permit in
+ * time fail with an {@link IOException} without being sent.
+ */
+class TargetLimitInterceptor implements ClientHttpRequestInterceptor {
+
+  static final String REQUESTS_METRIC = "stockmanagement.http.client.requests";
+  static final String REJECTED_METRIC = "stockmanagement.http.client.rejected";
+  static final String IO_ERROR_STATUS = "IO_ERROR";
+
+  private final MeterRegistry meterRegistry;
+  private final String target;
+  private final String service;
+  private final String resource;
+  private final Semaphore permits;
+  private final long permitTimeoutMillis;
+
+  TargetLimitInterceptor(MeterRegistry meterRegistry, String target, String service,
+      String resource, Semaphore permits, long permitTimeoutMillis) {
+    this.meterRegistry = meterRegistry;
+    this.target = target;
+    this.service = service;
+    this.resource = resource;
+    this.permits = permits;
+    this.permitTimeoutMillis = permitTimeoutMillis;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+      ClientHttpRequestExecution execution) throws IOException {
+    acquirePermit();
+
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String status = IO_ERROR_STATUS;
+    boolean executed = false;
+
+    try {
+      ClientHttpResponse response = execution.execute(request, body);
+      status = String.valueOf(response.getRawStatusCode());
+      executed = true;
+      return new PermitReleasingResponse(response, permits);
+    } finally {
+      if (!executed) {
+        permits.release();
+      }
+
+      sample.stop(Timer
+          .builder(REQUESTS_METRIC)
+          .description("Duration of requests to other services")
+          .tag("target", target)
+          .tag("service", service)
+          .tag("resource", resource)
+          .tag("method", request.getMethodValue())
+          .tag("status", status)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+    }
+  }
+
+  private void acquirePermit() throws IOException {
+    boolean acquired;
+
+    try {
+      acquired = permits.tryAcquire(permitTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException interrupted =
+          new InterruptedIOException("Interrupted while waiting for a request to " + target);
+      interrupted.initCause(exp);
+      throw interrupted;
+    }
+
+    if (!acquired) {
+      Counter
+          .builder(REJECTED_METRIC)
+          .description("Requests to other services rejected by the target's concurrency limit")
+          .tag("target", target)
+          .register(meterRegistry)
+          .increment();
+
+      throw new IOException("Too many concurrent requests to " + target);
+    }
+  }
+
+  private static final class PermitReleasingResponse implements ClientHttpResponse {
+    private final ClientHttpResponse delegate;
+    private final Semaphore permits;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private PermitReleasingResponse(ClientHttpResponse delegate, Semaphore permits) {
+      this.delegate = delegate;
+      this.permits = permits;
+    }
+
+    @Override
+    public HttpStatus getStatusCode() throws IOException {
+      return delegate.getStatusCode();
+    }
+
+    @Override
+    public int getRawStatusCode() throws IOException {
+      return delegate.getRawStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return delegate.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      return delegate.getBody();
+    }
+
+    @Override
+    public void close() {
+      try {
+        delegate.close();
+      } finally {
+        if (released.compareAndSet(false, true)) {
+          permits.release();
+        }
+      }
+    }
+  }
+}
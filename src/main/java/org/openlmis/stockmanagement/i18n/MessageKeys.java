@@ -27,6 +27,8 @@ public abstract class MessageKeys {
       SERVICE_PREFIX + ".email.nearExpiry.subject";
   public static final String NOTIFICATION_NEAR_EXPIRY_CONTENT =
       SERVICE_PREFIX + ".email.nearExpiry.content";
+  public static final String NOTIFICATION_NEAR_EXPIRY_ITEM =
+      SERVICE_PREFIX + ".email.nearExpiry.item";
   //server errors
   public static final String SERVER_ERROR_SHALLOW_COPY
       = SERVICE_PREFIX + ".error.shallowCopy";
@@ -44,6 +46,10 @@ public abstract class MessageKeys {
       ERROR_PREFIX + ".facility.id.missing";
   public static final String ERROR_FACILITY_NOT_FOUND =
       ERROR_PREFIX + ".facility.id.notFound";
+  public static final String ERROR_SUPERVISORY_NODE_NOT_FOUND =
+      ERROR_PREFIX + ".supervisoryNode.notFound";
+  public static final String ERROR_STOCK_CARD_SUMMARIES_INCOMPLETE =
+      ERROR_PREFIX + ".stockCardSummaries.incomplete";
   public static final String ERROR_UUID_WRONG_FORMAT =
       ERROR_PREFIX + ".uuid.wrongFormat";
   public static final String ERROR_DATE_WRONG_FORMAT =
@@ -241,6 +247,10 @@ public abstract class MessageKeys {
       EVENT_ERROR_PREFIX + ".cannot.unpack.when.all.constituents.not.accounted.for";
   public static final String ERROR_EVENT_CANNOT_UNPACK_WHEN_EXTRA_CONSTITUENTS_CREDITED =
       EVENT_ERROR_PREFIX + ".cannot.unpack.when.extra.constituents.credited";
+
+  //stock events creation: batch
+  public static final String ERROR_EVENT_BATCH_EMPTY = EVENT_ERROR_PREFIX + ".batch.empty";
+  public static final String ERROR_EVENT_BATCH_TOO_LARGE = EVENT_ERROR_PREFIX + ".batch.tooLarge";
   private static final String PHYSICAL_INVENTORY_ERROR_PREFIX = ERROR_PREFIX + ".physicalInventory";
   //physical inventory
   public static final String ERROR_PHYSICAL_INVENTORY_LINE_ITEMS_MISSING =
@@ -269,6 +279,18 @@ public abstract class MessageKeys {
       PHYSICAL_INVENTORY_ERROR_PREFIX + ".draft.exists";
   public static final String ERROR_PHYSICAL_INVENTORY_DRAFT_SUBMIT =
       PHYSICAL_INVENTORY_ERROR_PREFIX + ".draft.submit";
+  public static final String ERROR_PHYSICAL_INVENTORY_VERSION_MISSING =
+      PHYSICAL_INVENTORY_ERROR_PREFIX + ".version.missing";
+  public static final String ERROR_PHYSICAL_INVENTORY_VERSION_CONFLICT =
+      PHYSICAL_INVENTORY_ERROR_PREFIX + ".version.conflict";
+  public static final String ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_FOUND =
+      PHYSICAL_INVENTORY_ERROR_PREFIX + ".submission.notFound";
+  public static final String ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_PHYSICAL_INVENTORY =
+      PHYSICAL_INVENTORY_ERROR_PREFIX + ".submission.notPhysicalInventory";
+  public static final String ERROR_PHYSICAL_INVENTORY_SUBMISSION_REJECTED =
+      PHYSICAL_INVENTORY_ERROR_PREFIX + ".submission.rejected";
+  public static final String ERROR_PHYSICAL_INVENTORY_SUBMISSION_FAILED =
+      PHYSICAL_INVENTORY_ERROR_PREFIX + ".submission.failed";
 
   public static final String ERROR_SIZE_NULL
           = ERROR_PREFIX + ".pageable.size.null";
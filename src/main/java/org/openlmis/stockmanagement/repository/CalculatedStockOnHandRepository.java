@@ -21,7 +21,9 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import org.openlmis.stockmanagement.domain.event.CalculatedStockOnHand;
+import org.openlmis.stockmanagement.repository.custom.StockOnHandAnchor;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 public interface CalculatedStockOnHandRepository
@@ -36,10 +38,44 @@ public interface CalculatedStockOnHandRepository
       findByStockCardIdAndOccurredDateGreaterThanEqualOrderByOccurredDateAsc(
           UUID stockCardId, LocalDate asOfDate);
 
+  List<CalculatedStockOnHand> findByStockCardIdInAndOccurredDateGreaterThanEqual(
+      Collection<UUID> stockCardId, LocalDate asOfDate);
+
   List<CalculatedStockOnHand> findByStockCardIdInAndOccurredDateBetween(
       Collection<UUID> stockCardId, LocalDate startDate, LocalDate endDate);
 
   List<CalculatedStockOnHand>
       findByStockCardIdInAndOccurredDateLessThanEqual(
         Collection<UUID> stockCardId, LocalDate endDate);
-}
\ No newline at end of file
+
+  /**
+   * Returns, for each of the given stock cards that has one, its latest calculated stock on hand
+   * that occurred on or before the given date.
+   */
+  @Query(value = "SELECT DISTINCT ON (soh.stockcardid) soh.*"
+      + " FROM stockmanagement.calculated_stocks_on_hand soh"
+      + " WHERE soh.stockcardid IN (:stockCardIds) AND soh.occurreddate <= :asOfDate"
+      + " ORDER BY soh.stockcardid, soh.occurreddate DESC",
+      nativeQuery = true)
+  List<CalculatedStockOnHand> findLatestByStockCardIdInAndOccurredDateLessThanEqual(
+      @Param("stockCardIds") Collection<UUID> stockCardIds,
+      @Param("asOfDate") LocalDate asOfDate);
+
+  /**
+   * Returns, for each of the given stock cards that has one, the calculated stock on hand at the
+   * end of the last day before the given date. Selected as a projection so that the stock cards
+   * (and their line items) are not loaded.
+   */
+  @Query("SELECT new org.openlmis.stockmanagement.repository.custom.StockOnHandAnchor("
+      + "calculated.stockCard.id, calculated.stockOnHand)"
+      + " FROM CalculatedStockOnHand calculated"
+      + " WHERE calculated.stockCard.id IN :stockCardIds"
+      + " AND calculated.occurredDate < :date"
+      + " AND calculated.occurredDate = ("
+      + "SELECT MAX(previous.occurredDate) FROM CalculatedStockOnHand previous"
+      + " WHERE previous.stockCard.id = calculated.stockCard.id"
+      + " AND previous.occurredDate < :date)")
+  List<StockOnHandAnchor> findStockOnHandBefore(
+      @Param("stockCardIds") Collection<UUID> stockCardIds, @Param("date") LocalDate date);
+
+}
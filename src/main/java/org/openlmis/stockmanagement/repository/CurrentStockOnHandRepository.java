@@ -0,0 +1,75 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.repository;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import org.openlmis.stockmanagement.domain.event.CurrentStockOnHand;
+import org.openlmis.stockmanagement.repository.custom.NearExpiryStockCard;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface CurrentStockOnHandRepository extends JpaRepository<CurrentStockOnHand, UUID> {
+
+  Optional<CurrentStockOnHand> findFirstBy();
+
+  /**
+   * Returns stock cards of the given lots whose current stock on hand is above zero, ordered by
+   * facility so that callers can process one facility at a time while paging. Returned as a slice
+   * so that no count query is run per page.
+   */
+  @Query("SELECT new org.openlmis.stockmanagement.repository.custom.NearExpiryStockCard("
+      + "card.id, card.facilityId, card.programId, card.orderableId, card.lotId,"
+      + " current.stockOnHand)"
+      + " FROM CurrentStockOnHand current, StockCard card"
+      + " WHERE card.id = current.stockCardId"
+      + " AND card.lotId IN :lotIds"
+      + " AND current.stockOnHand > 0"
+      + " ORDER BY card.facilityId, card.programId, card.id")
+  Slice<NearExpiryStockCard> findInStockCardsOfLots(
+      @Param("lotIds") Collection<UUID> lotIds, Pageable pageable);
+
+  /**
+   * Rebuilds the current stock on hand of every stock card of the given facility and program
+   * from its latest calculated stock on hand.
+   *
+   * @return number of rebuilt rows.
+   */
+  @Modifying
+  @Query(value = "INSERT INTO stockmanagement.current_stocks_on_hand"
+      + " (stockcardid, stockonhand, occurreddate, processeddate, lastlineitemid)"
+      + " SELECT DISTINCT ON (soh.stockcardid)"
+      + " soh.stockcardid, soh.stockonhand, soh.occurreddate, soh.processeddate,"
+      + " (SELECT li.id FROM stockmanagement.stock_card_line_items li"
+      + " WHERE li.stockcardid = soh.stockcardid"
+      + " ORDER BY li.occurreddate DESC, li.processeddate DESC, li.id DESC LIMIT 1)"
+      + " FROM stockmanagement.calculated_stocks_on_hand soh"
+      + " JOIN stockmanagement.stock_cards card ON card.id = soh.stockcardid"
+      + " WHERE card.facilityid = :facilityId AND card.programid = :programId"
+      + " ORDER BY soh.stockcardid, soh.occurreddate DESC"
+      + " ON CONFLICT (stockcardid) DO UPDATE SET"
+      + " stockonhand = EXCLUDED.stockonhand,"
+      + " occurreddate = EXCLUDED.occurreddate,"
+      + " processeddate = EXCLUDED.processeddate,"
+      + " lastlineitemid = EXCLUDED.lastlineitemid",
+      nativeQuery = true)
+  int rebuild(@Param("facilityId") UUID facilityId, @Param("programId") UUID programId);
+}
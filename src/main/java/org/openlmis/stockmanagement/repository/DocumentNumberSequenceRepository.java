@@ -20,6 +20,7 @@ import org.openlmis.stockmanagement.domain.event.DocumentNumberSequence;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 public interface DocumentNumberSequenceRepository
@@ -37,4 +38,24 @@ public interface DocumentNumberSequenceRepository
   int nextSequenceNumber(@Param("facilityId") UUID facilityId,
                          @Param("year") int year,
                          @Param("month") int month);
+
+  /**
+   * Reserves the next {@code blockSize} sequence numbers for the given facility and month and
+   * returns the last number of the reserved block. Runs in its own transaction so the row lock
+   * on the sequence row is released right away instead of being held until the calling event
+   * transaction ends.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  @Query(value = "INSERT INTO stockmanagement.document_number_sequences "
+      + "(id, facilityid, year, month, lastsequencenumber) "
+      + "VALUES (uuid_generate_v4(), :facilityId, :year, :month, :blockSize) "
+      + "ON CONFLICT ON CONSTRAINT document_number_sequences_facility_year_month_unique "
+      + "DO UPDATE SET lastsequencenumber = "
+      + "    stockmanagement.document_number_sequences.lastsequencenumber + :blockSize "
+      + "RETURNING lastsequencenumber",
+      nativeQuery = true)
+  int reserveSequenceBlock(@Param("facilityId") UUID facilityId,
+                           @Param("year") int year,
+                           @Param("month") int month,
+                           @Param("blockSize") int blockSize);
 }
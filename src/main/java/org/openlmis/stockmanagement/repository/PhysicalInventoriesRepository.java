@@ -18,8 +18,11 @@ package org.openlmis.stockmanagement.repository;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
+import org.openlmis.stockmanagement.repository.custom.PhysicalInventoryHeader;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -42,6 +45,32 @@ public interface PhysicalInventoriesRepository
       @Param(PROGRAM_ID) UUID programId,
       @Param(FACILITY_ID) UUID facilityId);
 
+  /**
+   * Returns the program, facility, draft flag and version of a physical inventory without loading
+   * its line items.
+   *
+   * @param id physical inventory id.
+   * @return the header, empty if the physical inventory does not exist.
+   */
+  @Query("SELECT new org.openlmis.stockmanagement.repository.custom.PhysicalInventoryHeader("
+      + "pi.id, pi.programId, pi.facilityId, pi.isDraft, pi.version)"
+      + " FROM PhysicalInventory pi"
+      + " WHERE pi.id = :id")
+  Optional<PhysicalInventoryHeader> findHeaderById(@Param("id") UUID id);
+
+  /**
+   * Moves a draft from the given version to the next one. Concurrent saves based on the same
+   * version are serialized by the row lock, so only one of them can succeed.
+   *
+   * @param id      physical inventory id.
+   * @param version version the changes are based on.
+   * @return 1 if the draft was at the given version, 0 otherwise.
+   */
+  @Modifying
+  @Query("UPDATE PhysicalInventory pi SET pi.version = pi.version + 1"
+      + " WHERE pi.id = :id AND pi.version = :version AND pi.isDraft = true")
+  int incrementDraftVersion(@Param("id") UUID id, @Param("version") Long version);
+
   /**
    * Finds submitted physical inventories for the given facility, program, orderable and lot that
    * occurred after the given date. Used to block cancellation of a movement whose product and lot
@@ -0,0 +1,38 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventoryLineItem;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+public interface PhysicalInventoryLineItemRepository
+    extends PagingAndSortingRepository<PhysicalInventoryLineItem, UUID> {
+
+  /**
+   * Returns the line items of the given physical inventory for any of the given orderables. Used
+   * to find the line items touched by a partial draft save without loading the whole draft.
+   *
+   * @param physicalInventoryId id of the physical inventory.
+   * @param orderableIds        ids of the orderables of the changed line items.
+   * @return the matching line items.
+   */
+  List<PhysicalInventoryLineItem> findByPhysicalInventoryIdAndOrderableIdIn(
+      UUID physicalInventoryId, Collection<UUID> orderableIds);
+}
@@ -44,4 +44,11 @@ public interface StockCardLineItemReasonRepository extends
       + " JOIN r.tags AS t"
       + " WHERE t = :tag")
   Boolean existsByTag(@Param("tag") String tag);
+
+  @Query("SELECT DISTINCT r FROM StockCardLineItemReason r LEFT JOIN FETCH r.tags")
+  List<StockCardLineItemReason> findAllWithTags();
+
+  @Query(value = "SELECT version FROM stockmanagement.reason_catalog_version",
+      nativeQuery = true)
+  long findCatalogVersion();
 }
@@ -15,9 +15,12 @@
 
 package org.openlmis.stockmanagement.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.repository.custom.StockCardLineItemRow;
+import org.openlmis.stockmanagement.repository.custom.StockEventCardLineCount;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -25,12 +28,63 @@ import org.springframework.data.repository.query.Param;
 public interface StockCardLineItemRepository
     extends PagingAndSortingRepository<StockCardLineItem, UUID> {
 
+  // Uncorrelated, so evaluated once before the scan and used to prune the yearly partitions.
+  String EVENT_MIN_OCCURRED_DATE =
+      "(SELECT event.minOccurredDate FROM StockEvent event WHERE event.id = :eventId)";
+  String EVENT_MAX_OCCURRED_DATE =
+      "(SELECT event.maxOccurredDate FROM StockEvent event WHERE event.id = :eventId)";
+
   /**
-   * Returns the ids of the stock cards touched by the given origin event. Uses a scalar
-   * projection on purpose: hydrating the line-item entities would trigger {@code StockCard}'s
+   * Returns the stock cards touched by the given origin event, with the number of line items the
+   * event created on each. Uses scalar projections on purpose: hydrating the line-item entities
+   * would load each parent {@code StockCard} with its whole history, and trigger its
    * {@code @PostLoad} reorder mid-load, which can NPE on a not-yet-set occurredDate.
+   *
+   * <p>The line items are also bounded by the event's occurred date range, so that only the
+   * partitions of the years the event touched are scanned.
+   */
+  @Query("SELECT new org.openlmis.stockmanagement.repository.custom.StockEventCardLineCount("
+      + "card.id, card.orderableId, card.lotId, COUNT(lineItem))"
+      + " FROM StockCardLineItem lineItem JOIN lineItem.stockCard card"
+      + " WHERE lineItem.originEvent.id = :eventId"
+      + " AND lineItem.occurredDate BETWEEN " + EVENT_MIN_OCCURRED_DATE
+      + " AND " + EVENT_MAX_OCCURRED_DATE
+      + " GROUP BY card.id, card.orderableId, card.lotId")
+  List<StockEventCardLineCount> countLineItemsByStockCardForOriginEvent(
+      @Param("eventId") UUID eventId);
+
+  /**
+   * Returns all line items (of any event) of the given stock cards that occurred on a day on
+   * which the given origin event also has a line item on the same card. Those are the line items
+   * that have to be walked, from the previous day's calculated stock on hand, to know the stock
+   * on hand after each of the event's line items.
+   */
+  @Query("SELECT new org.openlmis.stockmanagement.repository.custom.StockCardLineItemRow("
+      + "lineItem.id, lineItem.stockCard.id, lineItem.originEvent.id,"
+      + " lineItem.originEventLineItemId, lineItem.quantity, lineItem.occurredDate,"
+      + " lineItem.processedDate, lineItem.documentNumber, reason, sourceNode, destinationNode)"
+      + " FROM StockCardLineItem lineItem"
+      + " LEFT JOIN lineItem.reason reason"
+      + " LEFT JOIN lineItem.source sourceNode"
+      + " LEFT JOIN lineItem.destination destinationNode"
+      + " WHERE lineItem.stockCard.id IN :stockCardIds"
+      + " AND lineItem.occurredDate BETWEEN " + EVENT_MIN_OCCURRED_DATE
+      + " AND " + EVENT_MAX_OCCURRED_DATE
+      + " AND lineItem.occurredDate IN ("
+      + "SELECT eventLineItem.occurredDate FROM StockCardLineItem eventLineItem"
+      + " WHERE eventLineItem.originEvent.id = :eventId"
+      + " AND eventLineItem.stockCard.id = lineItem.stockCard.id"
+      + " AND eventLineItem.occurredDate BETWEEN " + EVENT_MIN_OCCURRED_DATE
+      + " AND " + EVENT_MAX_OCCURRED_DATE + ")")
+  List<StockCardLineItemRow> findSameDayLineItemsOfOriginEvent(
+      @Param("eventId") UUID eventId, @Param("stockCardIds") Collection<UUID> stockCardIds);
+
+  /**
+   * Creates the given year's partitions of the stock card line items and calculated stock on
+   * hands, unless they already exist.
+   *
+   * @return the number of partitions created.
    */
-  @Query("SELECT DISTINCT lineItem.stockCard.id FROM StockCardLineItem lineItem"
-      + " WHERE lineItem.originEvent.id = :eventId")
-  List<UUID> findStockCardIdsByOriginEvent(@Param("eventId") UUID eventId);
+  @Query(value = "SELECT stockmanagement.create_yearly_partitions(:year)", nativeQuery = true)
+  int createYearlyPartitions(@Param("year") int year);
 }
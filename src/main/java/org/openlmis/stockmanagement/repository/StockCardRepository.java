@@ -21,6 +21,7 @@ import java.util.UUID;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
+import org.openlmis.stockmanagement.repository.custom.FacilityProgram;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -63,7 +64,14 @@ public interface StockCardRepository extends JpaRepository<StockCard, UUID> {
   Page<StockCard> findByFacilityIdInAndProgramIdIn(Collection<UUID> facilityIds,
       Collection<UUID> programIds, Pageable pageable);
 
+  List<StockCard> findByFacilityIdInAndProgramIdIn(Collection<UUID> facilityIds,
+      Collection<UUID> programIds);
+
   Page<StockCard> findByIdIn(Collection<UUID> ids, Pageable pageable);
 
   List<StockCard> findByLotIdIn(Collection<UUID> lotIds);
+
+  @Query("SELECT DISTINCT new org.openlmis.stockmanagement.repository.custom.FacilityProgram("
+      + "s.facilityId, s.programId) FROM StockCard s")
+  List<FacilityProgram> findFacilityPrograms();
 }
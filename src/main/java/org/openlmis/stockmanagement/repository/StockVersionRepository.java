@@ -0,0 +1,55 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.openlmis.stockmanagement.domain.card.StockVersion;
+import org.openlmis.stockmanagement.repository.custom.StockCardVersion;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface StockVersionRepository extends PagingAndSortingRepository<StockVersion, UUID> {
+
+  List<StockVersion> findByFacilityId(UUID facilityId);
+
+  List<StockVersion> findByFacilityIdAndProgramIdIn(UUID facilityId, Collection<UUID> programIds);
+
+  @Query("SELECT new org.openlmis.stockmanagement.repository.custom.StockCardVersion("
+      + "c.id, c.facilityId, c.programId, v.version) FROM StockCard c "
+      + "LEFT JOIN StockVersion v ON v.facilityId = c.facilityId AND v.programId = c.programId "
+      + "WHERE c.id = :stockCardId")
+  Optional<StockCardVersion> findStockCardVersion(@Param("stockCardId") UUID stockCardId);
+
+  /**
+   * Increments the version of the given facility and program and returns the new version. Runs in
+   * the caller's transaction, so the new version becomes visible together with the change it
+   * stands for.
+   */
+  @Transactional
+  @Query(value = "INSERT INTO stockmanagement.stock_versions "
+      + "(id, facilityid, programid, version) "
+      + "VALUES (uuid_generate_v4(), :facilityId, :programId, 1) "
+      + "ON CONFLICT ON CONSTRAINT stock_versions_facility_program_unique "
+      + "DO UPDATE SET version = stockmanagement.stock_versions.version + 1 "
+      + "RETURNING version",
+      nativeQuery = true)
+  long increment(@Param("facilityId") UUID facilityId, @Param("programId") UUID programId);
+}
@@ -0,0 +1,71 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.repository.custom;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
+import org.openlmis.stockmanagement.domain.event.StockEvent;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.domain.sourcedestination.Node;
+
+/**
+ * Typed carrier for the columns of a stock card line item needed to order it and compute its
+ * stock on hand. Selected instead of the entity so that loading it does not pull in the parent
+ * {@code StockCard} and, through it, the card's whole history.
+ */
+@Getter
+@AllArgsConstructor
+public class StockCardLineItemRow {
+
+  private final UUID id;
+  private final UUID stockCardId;
+  private final UUID originEventId;
+  private final UUID originEventLineItemId;
+  private final Integer quantity;
+  private final LocalDate occurredDate;
+  private final ZonedDateTime processedDate;
+  private final String documentNumber;
+  private final StockCardLineItemReason reason;
+  private final Node source;
+  private final Node destination;
+
+  /**
+   * Creates a detached line item from this row. The stock card is not set; the origin event only
+   * carries its id.
+   */
+  public StockCardLineItem toLineItem() {
+    StockEvent originEvent = new StockEvent();
+    originEvent.setId(originEventId);
+
+    StockCardLineItem lineItem = StockCardLineItem.builder()
+        .originEvent(originEvent)
+        .originEventLineItemId(originEventLineItemId)
+        .quantity(quantity)
+        .occurredDate(occurredDate)
+        .processedDate(processedDate)
+        .documentNumber(documentNumber)
+        .reason(reason)
+        .source(source)
+        .destination(destination)
+        .build();
+    lineItem.setId(id);
+    return lineItem;
+  }
+}
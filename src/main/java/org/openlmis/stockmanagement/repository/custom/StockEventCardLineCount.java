@@ -0,0 +1,44 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.repository.custom;
+
+import java.util.UUID;
+import lombok.Getter;
+
+/**
+ * Typed carrier for one stock card touched by a stock event, with the number of line items the
+ * event created on it. Used to page the transaction detail view without loading the cards.
+ */
+@Getter
+public class StockEventCardLineCount {
+
+  private final UUID stockCardId;
+  private final UUID orderableId;
+  private final UUID lotId;
+  private final int lineItemCount;
+
+  /**
+   * Creates a count row; {@code lineItemCount} comes in as a {@link Long} (from
+   * {@code COUNT(...)}) and is narrowed to an int.
+   */
+  public StockEventCardLineCount(UUID stockCardId, UUID orderableId, UUID lotId,
+      Long lineItemCount) {
+    this.stockCardId = stockCardId;
+    this.orderableId = orderableId;
+    this.lotId = lotId;
+    this.lineItemCount = lineItemCount == null ? 0 : lineItemCount.intValue();
+  }
+}
@@ -16,6 +16,7 @@
 package org.openlmis.stockmanagement.repository.custom;
 
 import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.util.Collection;
 import java.util.UUID;
 import lombok.AllArgsConstructor;
@@ -32,4 +33,27 @@ public class StockEventSearchParams {
   private LocalDate occurredDateFrom;
   private LocalDate occurredDateTo;
   private String documentNumber;
+
+  // Keyset pagination: when set, only events older than this (processedDate, id) position are
+  // returned and the page offset is ignored.
+  private ZonedDateTime cursorProcessedDate;
+  private UUID cursorId;
+
+  // When true the total is not counted; the returned total is only a lower bound that tells
+  // whether there is a next page.
+  private boolean skipTotal;
+
+  /**
+   * Creates offset-paginated search params with an exact total.
+   */
+  public StockEventSearchParams(UUID facilityId, UUID programId,
+      Collection<EventOrigin> eventOrigins, LocalDate occurredDateFrom, LocalDate occurredDateTo,
+      String documentNumber) {
+    this(facilityId, programId, eventOrigins, occurredDateFrom, occurredDateTo, documentNumber,
+        null, null, false);
+  }
+
+  public boolean hasCursor() {
+    return null != cursorProcessedDate && null != cursorId;
+  }
 }
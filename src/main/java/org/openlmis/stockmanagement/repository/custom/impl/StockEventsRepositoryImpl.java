@@ -15,15 +15,17 @@
 
 package org.openlmis.stockmanagement.repository.custom.impl;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 import org.apache.commons.lang3.StringUtils;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
@@ -35,6 +37,12 @@ import org.springframework.data.domain.Pageable;
 
 public class StockEventsRepositoryImpl implements StockEventsRepositoryCustom {
 
+  private static final String PROCESSED_DATE = "processedDate";
+  private static final String ID = "id";
+  private static final String MIN_OCCURRED_DATE = "minOccurredDate";
+  private static final String MAX_OCCURRED_DATE = "maxOccurredDate";
+  private static final String OCCURRED_DATE = "occurredDate";
+
   @PersistenceContext
   private EntityManager entityManager;
 
@@ -44,15 +52,35 @@ public class StockEventsRepositoryImpl implements StockEventsRepositoryCustom {
 
     CriteriaQuery<StockEvent> query = builder.createQuery(StockEvent.class);
     Root<StockEvent> root = query.from(StockEvent.class);
-    query.where(toPredicates(builder, root, params));
-    query.orderBy(builder.desc(root.get("processedDate")), builder.desc(root.get("id")));
-    query.distinct(true);
+
+    List<Predicate> predicates = toPredicates(builder, query, root, params);
+    if (params.hasCursor()) {
+      predicates.add(afterCursor(builder, root, params));
+    }
+
+    query.where(predicates.toArray(new Predicate[0]));
+    query.orderBy(builder.desc(root.get(PROCESSED_DATE)), builder.desc(root.get(ID)));
+
+    // a cursor already points at the first row of the page
+    int offset = params.hasCursor() ? 0 : (int) pageable.getOffset();
+    // one extra row tells whether there is a next page when the total is not counted
+    int maxResults = params.isSkipTotal() ? pageable.getPageSize() + 1 : pageable.getPageSize();
 
     List<StockEvent> content = entityManager.createQuery(query)
-        .setFirstResult((int) pageable.getOffset())
-        .setMaxResults(pageable.getPageSize())
+        .setFirstResult(offset)
+        .setMaxResults(maxResults)
         .getResultList();
 
+    if (params.isSkipTotal()) {
+      boolean hasNext = content.size() > pageable.getPageSize();
+      List<StockEvent> pageContent = hasNext
+          ? content.subList(0, pageable.getPageSize())
+          : content;
+      long total = offset + pageContent.size() + (hasNext ? 1 : 0);
+
+      return new PageImpl<>(pageContent, pageable, total);
+    }
+
     Long total = countTotal(builder, params);
     return new PageImpl<>(content, pageable, total);
   }
@@ -60,14 +88,23 @@ public class StockEventsRepositoryImpl implements StockEventsRepositoryCustom {
   private Long countTotal(CriteriaBuilder builder, StockEventSearchParams params) {
     CriteriaQuery<Long> query = builder.createQuery(Long.class);
     Root<StockEvent> root = query.from(StockEvent.class);
-    query.select(builder.countDistinct(root));
-    query.where(toPredicates(builder, root, params));
+    query.select(builder.count(root));
+    query.where(toPredicates(builder, query, root, params).toArray(new Predicate[0]));
 
     return entityManager.createQuery(query).getSingleResult();
   }
 
-  private Predicate[] toPredicates(CriteriaBuilder builder, Root<StockEvent> root,
+  private Predicate afterCursor(CriteriaBuilder builder, Root<StockEvent> root,
       StockEventSearchParams params) {
+    return builder.or(
+        builder.lessThan(root.get(PROCESSED_DATE), params.getCursorProcessedDate()),
+        builder.and(
+            builder.equal(root.get(PROCESSED_DATE), params.getCursorProcessedDate()),
+            builder.lessThan(root.get(ID), params.getCursorId())));
+  }
+
+  private List<Predicate> toPredicates(CriteriaBuilder builder, CriteriaQuery<?> query,
+      Root<StockEvent> root, StockEventSearchParams params) {
     List<Predicate> predicates = new ArrayList<>();
     predicates.add(builder.equal(root.get("facilityId"), params.getFacilityId()));
     predicates.add(builder.equal(root.get("programId"), params.getProgramId()));
@@ -81,18 +118,32 @@ public class StockEventsRepositoryImpl implements StockEventsRepositoryCustom {
 
     // An event matches when any of its line items falls in the range; the row
     // still shows the whole event, so its date may fall outside that window.
-    if (params.getOccurredDateFrom() != null || params.getOccurredDateTo() != null) {
-      Join<StockEvent, StockEventLineItem> lineItems = root.join("lineItems");
-      if (params.getOccurredDateFrom() != null) {
-        predicates.add(builder.greaterThanOrEqualTo(
-            lineItems.get("occurredDate"), params.getOccurredDateFrom()));
-      }
-      if (params.getOccurredDateTo() != null) {
-        predicates.add(builder.lessThanOrEqualTo(
-            lineItems.get("occurredDate"), params.getOccurredDateTo()));
-      }
+    LocalDate from = params.getOccurredDateFrom();
+    LocalDate to = params.getOccurredDateTo();
+
+    if (from != null) {
+      predicates.add(builder.greaterThanOrEqualTo(root.get(MAX_OCCURRED_DATE), from));
+    }
+    if (to != null) {
+      predicates.add(builder.lessThanOrEqualTo(root.get(MIN_OCCURRED_DATE), to));
+    }
+    if (from != null && to != null) {
+      // The event's date range overlapping the window does not yet mean that one of its lines is
+      // in it. It does when the earliest or the latest line is inside; only otherwise the lines
+      // have to be checked.
+      Subquery<UUID> lineInRange = query.subquery(UUID.class);
+      Root<StockEventLineItem> lineItem = lineInRange.from(StockEventLineItem.class);
+      lineInRange.select(lineItem.get(ID));
+      lineInRange.where(
+          builder.equal(lineItem.get("stockEvent"), root),
+          builder.between(lineItem.get(OCCURRED_DATE), from, to));
+
+      predicates.add(builder.or(
+          builder.greaterThanOrEqualTo(root.get(MIN_OCCURRED_DATE), from),
+          builder.lessThanOrEqualTo(root.get(MAX_OCCURRED_DATE), to),
+          builder.exists(lineInRange)));
     }
 
-    return predicates.toArray(new Predicate[0]);
+    return predicates;
   }
 }
@@ -15,22 +15,69 @@
 
 package org.openlmis.stockmanagement.security;
 
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.RemoteTokenServices;
 
 public class CustomTokenServices extends RemoteTokenServices {
 
+  static final String EXPIRES_AT_EXTENSION = "expiresAt";
+
   private int invalidTokenRetryLimit;
+  private TokenIntrospectionCache cache;
 
   public CustomTokenServices(int invalidTokenRetryLimit) {
+    this(invalidTokenRetryLimit, null);
+  }
+
+  /**
+   * Creates token services that keep check_token results in the given cache. Passing null
+   * disables caching and every token is checked against the auth service.
+   */
+  public CustomTokenServices(int invalidTokenRetryLimit, TokenIntrospectionCache cache) {
     super();
     this.invalidTokenRetryLimit = invalidTokenRetryLimit;
+    this.cache = cache;
+    setAccessTokenConverter(new DefaultAccessTokenConverter());
+  }
+
+  @Override
+  public void setAccessTokenConverter(AccessTokenConverter accessTokenConverter) {
+    super.setAccessTokenConverter(new ExpiryRecordingAccessTokenConverter(accessTokenConverter));
   }
 
   @Override
   public OAuth2Authentication loadAuthentication(String accessToken) {
-    return loadAuthentication(accessToken, 0);
+    if (null == cache) {
+      return loadAuthentication(accessToken, 0);
+    }
+
+    OAuth2Authentication cached = cache.getValid(accessToken);
+    if (null != cached) {
+      return cached;
+    }
+
+    if (cache.isKnownInvalid(accessToken)) {
+      throw new InvalidTokenException(accessToken);
+    }
+
+    OAuth2Authentication authentication;
+    try {
+      authentication = loadAuthentication(accessToken, 0);
+    } catch (InvalidTokenException e) {
+      cache.putInvalid(accessToken);
+      throw e;
+    }
+
+    cache.putValid(accessToken, authentication, getExpiresIn(authentication));
+    return authentication;
   }
 
   private OAuth2Authentication loadAuthentication(String accessToken, int attempt) {
@@ -46,4 +93,60 @@ public class CustomTokenServices extends RemoteTokenServices {
       }
     }
   }
-}
\ No newline at end of file
+
+  private Long getExpiresIn(OAuth2Authentication authentication) {
+    Serializable expiresAt = authentication.getOAuth2Request()
+        .getExtensions()
+        .get(EXPIRES_AT_EXTENSION);
+
+    if (!(expiresAt instanceof Number)) {
+      return null;
+    }
+
+    return ((Number) expiresAt).longValue() - System.currentTimeMillis() / 1000;
+  }
+
+  /**
+   * Copies the token's exp claim from the check_token response into the request extensions, so
+   * that the cache can bound an entry by the token's own expiry.
+   */
+  private static final class ExpiryRecordingAccessTokenConverter implements AccessTokenConverter {
+    private final AccessTokenConverter delegate;
+
+    private ExpiryRecordingAccessTokenConverter(AccessTokenConverter delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Map<String, ?> convertAccessToken(OAuth2AccessToken token,
+        OAuth2Authentication authentication) {
+      return delegate.convertAccessToken(token, authentication);
+    }
+
+    @Override
+    public OAuth2AccessToken extractAccessToken(String value, Map<String, ?> map) {
+      return delegate.extractAccessToken(value, map);
+    }
+
+    @Override
+    public OAuth2Authentication extractAuthentication(Map<String, ?> map) {
+      OAuth2Authentication authentication = delegate.extractAuthentication(map);
+      Object exp = map.get(EXP);
+
+      if (!(exp instanceof Number)) {
+        return authentication;
+      }
+
+      OAuth2Request request = authentication.getOAuth2Request();
+      Map<String, Serializable> extensions = new HashMap<>(request.getExtensions());
+      extensions.put(EXPIRES_AT_EXTENSION, ((Number) exp).longValue());
+
+      OAuth2Request requestWithExpiry = new OAuth2Request(request.getRequestParameters(),
+          request.getClientId(), request.getAuthorities(), request.isApproved(),
+          request.getScope(), request.getResourceIds(), request.getRedirectUri(),
+          request.getResponseTypes(), extensions);
+
+      return new OAuth2Authentication(requestWithExpiry, authentication.getUserAuthentication());
+    }
+  }
+}
@@ -15,17 +15,22 @@
 
 package org.openlmis.stockmanagement.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.IOException;
 import java.util.Arrays;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.openlmis.stockmanagement.http.OutboundHttpClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -38,6 +43,8 @@ import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.RemoteTokenServices;
 import org.springframework.security.web.authentication.preauth.AbstractPreAuthenticatedProcessingFilter;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -84,6 +91,9 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
 
     http
             .authorizeRequests()
+            // the metrics are tagged with facility ids and endpoints, so only other services
+            // (e.g. the metrics scraper with its service token) may read them
+            .antMatchers("/actuator/prometheus").access("#oauth2.isClient()")
             .antMatchers(
                 "/actuator/health",
                 "/stockmanagement",
@@ -110,6 +120,8 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
    * @param checkTokenUrl url to check tokens against
    * @param clientId      client's id
    * @param clientSecret  client's secret
+   * @param tokenCache    cache of check_token results, null if caching is disabled
+   * @param outboundHttpClient client the check_token requests are sent with
    * @return token services
    */
   @Bean
@@ -118,15 +130,54 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
       @Value("${auth.server.url}") String checkTokenUrl,
       @Value("${auth.server.clientId}") String clientId,
       @Value("${auth.server.clientSecret}") String clientSecret,
-      @Value("${auth.server.invalidToken.retryLimit}") int invalidTokenRetryLimit) {
-    final RemoteTokenServices remoteTokenServices = new CustomTokenServices(invalidTokenRetryLimit);
+      @Value("${auth.server.invalidToken.retryLimit}") int invalidTokenRetryLimit,
+      @Autowired(required = false) TokenIntrospectionCache tokenCache,
+      OutboundHttpClient outboundHttpClient) {
+    final RemoteTokenServices remoteTokenServices =
+        new CustomTokenServices(invalidTokenRetryLimit, tokenCache);
     remoteTokenServices.setCheckTokenEndpointUrl(checkTokenUrl);
     remoteTokenServices.setClientId(clientId);
     remoteTokenServices.setClientSecret(clientSecret);
     remoteTokenServices.setAccessTokenConverter(accessTokenConverter());
+
+    // same as the default RemoteTokenServices template: a 400 response means an invalid token
+    // and is handled by the token services instead of the template
+    RestTemplate restTemplate = outboundHttpClient.createRestTemplate(OutboundHttpClient.AUTH);
+    restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+      @Override
+      public void handleError(ClientHttpResponse response) throws IOException {
+        if (response.getRawStatusCode() != HttpStatus.BAD_REQUEST.value()) {
+          super.handleError(response);
+        }
+      }
+    });
+    remoteTokenServices.setRestTemplate(restTemplate);
+
     return remoteTokenServices;
   }
 
+  /**
+   * TokenIntrospectionCache bean initializer. Not created when the cache is disabled.
+   *
+   * @param maxSize           maximum number of cached valid (and invalid) tokens
+   * @param maxTtlSeconds     maximum time a valid token is cached
+   * @param invalidTtlSeconds time an invalid token is cached
+   * @param meterRegistry     registry for the cache hit ratio metrics
+   * @return token introspection cache
+   */
+  @Bean
+  @ConditionalOnProperty(value = "auth.server.tokenCache.enabled", havingValue = "true")
+  public TokenIntrospectionCache tokenIntrospectionCache(
+      @Value("${auth.server.tokenCache.maxSize}") long maxSize,
+      @Value("${auth.server.tokenCache.maxTtlSeconds}") long maxTtlSeconds,
+      @Value("${auth.server.tokenCache.invalidTtlSeconds}") long invalidTtlSeconds,
+      MeterRegistry meterRegistry) {
+    TokenIntrospectionCache cache =
+        new TokenIntrospectionCache(maxSize, maxTtlSeconds, invalidTtlSeconds);
+    cache.bindTo(meterRegistry);
+    return cache;
+  }
+
   /**
    * CorsConfigurationSource bean initializer.
    * @return cors configuration
@@ -0,0 +1,157 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.security;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Local cache of check_token results. Entries are keyed by a SHA-256 hash of the access token so
+ * that raw tokens are never held in memory longer than the request that carried them.
+ *
+ * <p>A valid token is cached until the earlier of its own expiry and {@code maxTtl}; the max TTL
+ * bounds how long a revoked token can still be accepted by this node. Invalid tokens are cached
+ * for the (much shorter) {@code invalidTtl} so that a client hammering with a bad token does not
+ * cause a check_token round trip (and its retries) on every request.
+ */
+public class TokenIntrospectionCache {
+
+  static final String VALID_CACHE_NAME = "tokenIntrospection";
+  static final String INVALID_CACHE_NAME = "tokenIntrospection.invalid";
+
+  private final Cache<String, CachedAuthentication> validTokens;
+  private final Cache<String, Boolean> invalidTokens;
+  private final Ticker ticker;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxSize       maximum number of valid and of invalid tokens kept
+   * @param maxTtlSeconds maximum time a valid token is kept, regardless of its expiry
+   * @param invalidTtlSeconds time an invalid token is remembered as invalid
+   */
+  public TokenIntrospectionCache(long maxSize, long maxTtlSeconds, long invalidTtlSeconds) {
+    this(maxSize, maxTtlSeconds, invalidTtlSeconds, Ticker.systemTicker());
+  }
+
+  TokenIntrospectionCache(long maxSize, long maxTtlSeconds, long invalidTtlSeconds,
+      Ticker ticker) {
+    this.ticker = ticker;
+    this.validTokens = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(maxTtlSeconds, TimeUnit.SECONDS)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+    this.invalidTokens = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(invalidTtlSeconds, TimeUnit.SECONDS)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Registers hit/miss/eviction metrics of both caches in the given registry.
+   */
+  public void bindTo(MeterRegistry registry) {
+    GuavaCacheMetrics.monitor(registry, validTokens, VALID_CACHE_NAME);
+    GuavaCacheMetrics.monitor(registry, invalidTokens, INVALID_CACHE_NAME);
+  }
+
+  /**
+   * Returns a copy of the cached authentication for the given token, or null if the token is
+   * not cached or its own expiry has passed.
+   */
+  public OAuth2Authentication getValid(String accessToken) {
+    String key = hash(accessToken);
+    CachedAuthentication cached = validTokens.getIfPresent(key);
+
+    if (null == cached) {
+      return null;
+    }
+
+    if (cached.expiresAtNanos <= ticker.read()) {
+      validTokens.invalidate(key);
+      return null;
+    }
+
+    // OAuth2AuthenticationManager sets request details on the returned object, so every caller
+    // gets its own instance instead of sharing the cached one.
+    return new OAuth2Authentication(
+        cached.authentication.getOAuth2Request(), cached.authentication.getUserAuthentication());
+  }
+
+  public boolean isKnownInvalid(String accessToken) {
+    return null != invalidTokens.getIfPresent(hash(accessToken));
+  }
+
+  /**
+   * Caches a successfully introspected token.
+   *
+   * @param accessToken    token that was checked
+   * @param authentication result of the check
+   * @param expiresInSeconds seconds until the token expires, or null if unknown
+   */
+  public void putValid(String accessToken, OAuth2Authentication authentication,
+      Long expiresInSeconds) {
+    if (null != expiresInSeconds && expiresInSeconds <= 0) {
+      return;
+    }
+
+    long expiresAtNanos = null == expiresInSeconds
+        ? Long.MAX_VALUE
+        : ticker.read() + TimeUnit.SECONDS.toNanos(expiresInSeconds);
+
+    String key = hash(accessToken);
+    invalidTokens.invalidate(key);
+    validTokens.put(key, new CachedAuthentication(authentication, expiresAtNanos));
+  }
+
+  public void putInvalid(String accessToken) {
+    invalidTokens.put(hash(accessToken), Boolean.TRUE);
+  }
+
+  public void clear() {
+    validTokens.invalidateAll();
+    invalidTokens.invalidateAll();
+  }
+
+  double validHitRate() {
+    return validTokens.stats().hitRate();
+  }
+
+  private static String hash(String accessToken) {
+    return Hashing.sha256().hashString(accessToken, StandardCharsets.UTF_8).toString();
+  }
+
+  private static final class CachedAuthentication {
+    private final OAuth2Authentication authentication;
+    private final long expiresAtNanos;
+
+    private CachedAuthentication(OAuth2Authentication authentication, long expiresAtNanos) {
+      this.authentication = authentication;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+  }
+}
@@ -18,8 +18,11 @@ package org.openlmis.stockmanagement.service;
 import static org.openlmis.stockmanagement.util.RequestHelper.createUri;
 
 import java.util.Map;
+import javax.annotation.PostConstruct;
 import org.apache.commons.codec.binary.Base64;
+import org.openlmis.stockmanagement.http.OutboundHttpClient;
 import org.openlmis.stockmanagement.util.RequestParameters;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
@@ -29,7 +32,6 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
 @Service
 public class AuthService {
@@ -44,7 +46,15 @@ public class AuthService {
   @Value("${auth.server.authorizationUrl}")
   private String authorizationUrl;
 
-  private RestOperations restTemplate = new RestTemplate();
+  @Autowired
+  private OutboundHttpClient outboundHttpClient;
+
+  private RestOperations restTemplate;
+
+  @PostConstruct
+  void createRestTemplate() {
+    restTemplate = outboundHttpClient.createRestTemplate(OutboundHttpClient.AUTH);
+  }
 
   /**
    * Retrieves access token from the auth service.
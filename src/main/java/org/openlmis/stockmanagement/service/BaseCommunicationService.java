@@ -18,6 +18,9 @@ package org.openlmis.stockmanagement.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.MapType;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.lang.reflect.Array;
 import java.net.URI;
 import java.util.ArrayList;
@@ -28,10 +31,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
 import org.apache.commons.lang.StringUtils;
 import org.openlmis.stockmanagement.dto.referencedata.ResultDto;
+import org.openlmis.stockmanagement.http.CallNotPermittedException;
+import org.openlmis.stockmanagement.http.OutboundHttpClient;
+import org.openlmis.stockmanagement.http.RemoteCallGuard;
+import org.openlmis.stockmanagement.http.SingleFlight;
 import org.openlmis.stockmanagement.service.referencedata.DataRetrievalException;
 import org.openlmis.stockmanagement.util.DynamicPageTypeReference;
 import org.openlmis.stockmanagement.util.DynamicParametrizedTypeReference;
@@ -49,12 +59,15 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
 @SuppressWarnings("PMD.TooManyMethods")
 public abstract class BaseCommunicationService<T> {
+  static final String LAST_KNOWN_GOOD_METRIC = "stockmanagement.remote.lastKnownGood";
+
   protected final Logger logger = LoggerFactory.getLogger(getClass());
 
   @Autowired
@@ -63,13 +76,73 @@ public abstract class BaseCommunicationService<T> {
   @Autowired
   private ObjectMapper objectMapper;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private OutboundHttpClient outboundHttpClient;
+
+  @Autowired
+  private RemoteCallGuard remoteCallGuard;
+
+  @Autowired
+  private SingleFlight singleFlight;
+
   @Value("${request.maxUrlLength}")
   private int maxUrlLength;
 
-  private RestOperations restTemplate = new RestTemplate();
+  @Value("${stockmanagement.lastKnownGood.maxEntries}")
+  private long lastKnownGoodMaxEntries;
+
+  @Value("${stockmanagement.lastKnownGood.maxAgeSeconds}")
+  private long lastKnownGoodMaxAgeSeconds;
+
+  private RestOperations restTemplate;
+
+  private Cache<String, ResponseEntity<?>> lastKnownGood;
+
+  /**
+   * Creates the RestTemplate of this service on the shared outbound client and times its
+   * requests per service and resource class.
+   */
+  @PostConstruct
+  void instrumentRestTemplate() {
+    restTemplate = outboundHttpClient.createRestTemplate(getTargetName(),
+        getClass().getSimpleName(), getResultClass().getSimpleName());
+  }
+
+  /**
+   * Creates the cache of last known good responses, if this service serves them while its
+   * resource is unavailable.
+   */
+  @PostConstruct
+  void createLastKnownGoodCache() {
+    if (isLastKnownGoodFallbackEnabled()) {
+      lastKnownGood = CacheBuilder.newBuilder()
+          .maximumSize(lastKnownGoodMaxEntries)
+          .expireAfterWrite(lastKnownGoodMaxAgeSeconds, TimeUnit.SECONDS)
+          .build();
+    }
+  }
 
   protected abstract String getServiceUrl();
 
+  /**
+   * Returns the name of the service this one talks to, whose concurrency limit and metrics the
+   * requests count towards.
+   */
+  protected abstract String getTargetName();
+
+  /**
+   * Returns whether the last successful response of a GET request is served again when the same
+   * request fails with an I/O error or a server error, or is not made because the circuit breaker
+   * of this service is open. Only meant for resources that change rarely enough for a stale copy
+   * to be better than an error.
+   */
+  protected boolean isLastKnownGoodFallbackEnabled() {
+    return false;
+  }
+
   protected abstract String getUrl();
 
   protected abstract Class<T> getResultClass();
@@ -122,9 +195,11 @@ public abstract class BaseCommunicationService<T> {
         .init()
         .setAll(parameters);
 
+    URI uri = RequestHelper.createUri(url, params);
+
     try {
-      return runWithTokenRetry(() -> restTemplate.exchange(
-          RequestHelper.createUri(url, params),
+      return runWithTokenRetry(uri.toString(), () -> restTemplate.exchange(
+          uri,
           HttpMethod.GET,
           createEntity(),
           type)).getBody();
@@ -166,6 +241,7 @@ public abstract class BaseCommunicationService<T> {
 
     try {
       ResponseEntity<T[]> responseEntity = runWithTokenRetry(
+          RequestHelper.createUri(url, parameters).toString(),
           () -> doListRequest(url, parameters, HttpMethod.GET, getArrayResultClass())
       );
       return new ArrayList<>(Arrays.asList(responseEntity.getBody()));
@@ -181,9 +257,9 @@ public abstract class BaseCommunicationService<T> {
 
     try {
       RequestHeaders headers = RequestHeaders.init().setIfNoneMatch(etag);
-      ResponseEntity<P[]> response = restTemplate.exchange(
+      ResponseEntity<P[]> response = guard(() -> restTemplate.exchange(
           url, HttpMethod.GET, RequestHelper.createEntity(null, addAuthHeader(headers)), type
-      );
+      ));
       logger.info("permissionStrings responseEntity: {}", response);
 
       if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
@@ -251,8 +327,12 @@ public abstract class BaseCommunicationService<T> {
     String url = getServiceUrl() + getUrl() + resourceUrl;
 
     try {
+      // requests with a body are not identified by their url alone
+      String requestKey = HttpMethod.GET == method && null == payload
+          ? RequestHelper.createUri(url, parameters).toString()
+          : null;
       ResponseEntity<PageDto<P>> response = runWithTokenRetry(
-          () -> doPageRequest(url, parameters, payload, method, type)
+          requestKey, () -> doPageRequest(url, parameters, payload, method, type)
       );
       return response.getBody();
 
@@ -264,13 +344,15 @@ public abstract class BaseCommunicationService<T> {
   protected <P> ResultDto<P> getResult(String resourceUrl, RequestParameters parameters,
       Class<P> type) {
     String url = getServiceUrl() + getUrl() + resourceUrl;
+    URI uri = RequestHelper.createUri(url, parameters);
 
-    ResponseEntity<ResultDto<P>> response = runWithTokenRetry(() -> restTemplate.exchange(
-        RequestHelper.createUri(url, parameters),
-        HttpMethod.GET,
-        createEntity(),
-        new DynamicParametrizedTypeReference<>(type)
-    ));
+    ResponseEntity<ResultDto<P>> response = runWithTokenRetry(uri.toString(),
+        () -> restTemplate.exchange(
+            uri,
+            HttpMethod.GET,
+            createEntity(),
+            new DynamicParametrizedTypeReference<>(type)
+        ));
 
     return response.getBody();
   }
@@ -285,7 +367,9 @@ public abstract class BaseCommunicationService<T> {
     List<Map<K, V>> maps = new ArrayList<>();
 
     for (URI uri : RequestHelper.splitRequest(url, parameters, maxUrlLength)) {
-      ResponseEntity<Map> response = restTemplate.exchange(uri, HttpMethod.GET, entity, Map.class);
+      ResponseEntity<Map> response = singleFlight.execute(getClass().getSimpleName(),
+          getClass().getSimpleName() + " " + uri,
+          () -> guard(() -> restTemplate.exchange(uri, HttpMethod.GET, entity, Map.class)));
       Map<K, V> map = objectMapper.convertValue(response.getBody(), mapType);
       maps.add(map);
     }
@@ -339,6 +423,11 @@ public abstract class BaseCommunicationService<T> {
     return new DataRetrievalException(getResultClass().getSimpleName(), ex);
   }
 
+  private DataRetrievalException buildDataRetrievalException(CallNotPermittedException ex) {
+    return new DataRetrievalException(getResultClass().getSimpleName(),
+        HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+  }
+
   private <E> HttpEntity<E> createEntity(E payload) {
     if (payload == null) {
       return createEntity();
@@ -362,6 +451,69 @@ public abstract class BaseCommunicationService<T> {
   }
 
   protected <P> ResponseEntity<P> runWithTokenRetry(HttpTask<P> task) {
+    return runWithTokenRetry(null, task);
+  }
+
+  /**
+   * Runs the task through the circuit breaker of this service. A request key identifies a GET
+   * request without body: identical requests in progress at the same time are coalesced into
+   * one, and if the fallback is enabled, a successful response is remembered under the key and
+   * served again when the task fails because the resource is unavailable.
+   */
+  private <P> ResponseEntity<P> runWithTokenRetry(String requestKey, HttpTask<P> task) {
+    if (null == requestKey) {
+      return runWithFallback(null, task);
+    }
+
+    return singleFlight.execute(getClass().getSimpleName(),
+        getClass().getSimpleName() + " " + requestKey, () -> runWithFallback(requestKey, task));
+  }
+
+  private <P> ResponseEntity<P> runWithFallback(String requestKey, HttpTask<P> task) {
+    try {
+      ResponseEntity<P> response = remoteCallGuard.execute(getClass().getSimpleName(),
+          () -> runWithTokenRetryUnguarded(task));
+
+      if (null != lastKnownGood && null != requestKey) {
+        lastKnownGood.put(requestKey, response);
+      }
+
+      return response;
+    } catch (CallNotPermittedException | ResourceAccessException
+        | HttpServerErrorException ex) {
+      ResponseEntity<P> stale = null == lastKnownGood || null == requestKey
+          ? null
+          : getLastKnownGood(requestKey);
+
+      if (null != stale) {
+        logger.warn("Serving last known good {} for {}: {}",
+            getResultClass().getSimpleName(), requestKey, ex.getMessage());
+        meterRegistry.counter(LAST_KNOWN_GOOD_METRIC, "service", getClass().getSimpleName())
+            .increment();
+        return stale;
+      }
+
+      throw ex instanceof CallNotPermittedException
+          ? buildDataRetrievalException((CallNotPermittedException) ex)
+          : ex;
+    }
+  }
+
+  // a request key is only ever stored with the response of the same request, so of the same type
+  @SuppressWarnings("unchecked")
+  private <P> ResponseEntity<P> getLastKnownGood(String requestKey) {
+    return (ResponseEntity<P>) lastKnownGood.getIfPresent(requestKey);
+  }
+
+  private <P> P guard(Supplier<P> call) {
+    try {
+      return remoteCallGuard.execute(getClass().getSimpleName(), call);
+    } catch (CallNotPermittedException ex) {
+      throw buildDataRetrievalException(ex);
+    }
+  }
+
+  private <P> ResponseEntity<P> runWithTokenRetryUnguarded(HttpTask<P> task) {
     try {
       return task.run();
     } catch (HttpStatusCodeException ex) {
@@ -18,13 +18,15 @@ package org.openlmis.stockmanagement.service;
 import static java.util.Collections.singletonList;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_DEBIT_QUANTITY_EXCEED_SOH;
 
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -32,12 +34,16 @@ import javax.transaction.Transactional;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.domain.event.CalculatedStockOnHand;
+import org.openlmis.stockmanagement.domain.event.CurrentStockOnHand;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.CalculatedStockOnHandRepository;
+import org.openlmis.stockmanagement.repository.CurrentStockOnHandRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
+import org.openlmis.stockmanagement.repository.custom.StockOnHandAnchor;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -50,15 +56,24 @@ public class CalculatedStockOnHandService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CalculatedStockOnHandService.class);
 
+  static final String RECALCULATED_METRIC = "stockmanagement.stockonhand.recalculated";
+  static final int STOCK_ON_HAND_BATCH_SIZE = 10000;
+
   @Autowired
   private StockCardRepository stockCardRepository;
 
   @Autowired
   private CalculatedStockOnHandRepository calculatedStockOnHandRepository;
 
+  @Autowired
+  private CurrentStockOnHandRepository currentStockOnHandRepository;
+
   @Autowired
   private OrderableReferenceDataService orderableService;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   /**
    * Returns list of stock cards with fetched Stock on Hand values.
    *
@@ -74,15 +89,14 @@ public class CalculatedStockOnHandService {
           Set<UUID> lotCodeIds) {
 
     List<StockCard> stockCards = findStockCards(facilityId, orderableIds, programIds);
+    if (!lotCodeIds.isEmpty()) {
+      stockCards = stockCards.stream()
+          .filter(card -> lotCodeIds.contains(card.getLotId()))
+          .collect(Collectors.toList());
+    }
 
-    // FIXME: This most likely could be done as one SQL
-    stockCards.forEach(stockCard ->
-        fetchStockOnHand(stockCard, asOfDate != null ? asOfDate : LocalDate.now()));
-
-    return lotCodeIds.isEmpty()
-            ? stockCards
-            : stockCards.stream().filter(card -> lotCodeIds.contains(card.getLotId()))
-            .collect(Collectors.toList());
+    fetchStockOnHand(stockCards, asOfDate != null ? asOfDate : LocalDate.now());
+    return stockCards;
   }
 
   /**
@@ -140,6 +154,26 @@ public class CalculatedStockOnHandService {
     return getStockCardsWithStockOnHand(programId, facilityId, LocalDate.now(), orderableIds);
   }
 
+  /**
+   * Returns list of stock cards of several facilities with fetched Stock on Hand values. The
+   * cards of all facilities are read with one query and their stock on hands with one query per
+   * {@value #STOCK_ON_HAND_BATCH_SIZE} cards, also when the date is in the past.
+   *
+   * @param programIds  program ids to find stock cards
+   * @param facilityIds facility ids to find stock cards
+   * @param asOfDate    date used to get latest stock on hand before or equal specific date
+   * @return List of stock cards with SOH values, empty list if no stock cards were found.
+   */
+  public List<StockCard> getStockCardsWithStockOnHandAtFacilities(
+      Collection<UUID> programIds, Collection<UUID> facilityIds, LocalDate asOfDate) {
+
+    List<StockCard> stockCards = stockCardRepository
+        .findByFacilityIdInAndProgramIdIn(facilityIds, programIds);
+
+    fetchStockOnHand(stockCards, asOfDate != null ? asOfDate : LocalDate.now());
+    return stockCards;
+  }
+
 
   /**
    * Fetch stock on hand value for given stock card and current date.
@@ -147,7 +181,7 @@ public class CalculatedStockOnHandService {
    * @param stockCard stock card where the value will be set
    */
   public void fetchCurrentStockOnHand(StockCard stockCard) {
-    fetchStockOnHandForSpecificDate(stockCard, LocalDate.now());
+    fetchStockOnHand(singletonList(stockCard), LocalDate.now());
   }
 
   /**
@@ -159,61 +193,102 @@ public class CalculatedStockOnHandService {
    */
   public void fetchStockOnHandForSpecificDate(StockCard stockCard, LocalDate asOfDate) {
     LocalDate queryDate = null == asOfDate ? LocalDate.now() : asOfDate;
-    fetchStockOnHand(stockCard, queryDate);
+    fetchStockOnHand(singletonList(stockCard), queryDate);
   }
 
   /**
    * Recalculate values of stock on hand for the first line item from all different stock on hand,
    * which in result will update soh for all following line items from the list as well.
    *
+   * <p>Stock cards whose first line item occurred on the same date share the queries for their
+   * previous and following calculated stock on hands, and all recalculated entries are saved in
+   * one call, so that they can go out in JDBC batches. The number of saved entries is counted in
+   * {@code stockmanagement.stockonhand.recalculated}. The current stock on hand of every
+   * recalculated stock card is updated in the same transaction.
+   *
    * @param lineItems line items to recalculate the value for.
    */
   @Transactional
   public void recalculateStockOnHand(List<StockCardLineItem> lineItems) {
     Map<StockCard, List<StockCardLineItem>> map = mapStockCardsWithLineItems(lineItems);
+    Map<LocalDate, List<StockCardLineItem>> firstLineItemsByDate = new HashMap<>();
     map.forEach((key, value) -> {
       value.sort(StockCard.getLineItemsComparator());
       value.stream().findFirst()
-          .ifPresent(item -> recalculateStockOnHand(item.getStockCard(), item));
+          .ifPresent(item -> firstLineItemsByDate
+              .computeIfAbsent(item.getOccurredDate(), date -> new ArrayList<>())
+              .add(item));
     });
+
+    List<CalculatedStockOnHand> recalculated = new ArrayList<>();
+    Map<UUID, UUID> lastLineItemIds = new HashMap<>();
+    firstLineItemsByDate.forEach((occurredDate, firstLineItems) -> recalculated
+        .addAll(recalculateStockOnHand(occurredDate, firstLineItems, lastLineItemIds)));
+    calculatedStockOnHandRepository.saveAll(recalculated);
+    updateCurrentStockOnHands(recalculated, lastLineItemIds);
+    meterRegistry.counter(RECALCULATED_METRIC).increment(recalculated.size());
   }
 
   /**
-   * Recalculate values of stock on hand in all line items that happened after one given in a
-   * parameter.
+   * Recalculate values of stock on hand in all line items that happened after the given ones, each
+   * of them being the first line item to consider on its stock card.
    *
-   * @param stockCard stock card for which the value will be calculated.
-   * @param lineItem  first line item to consider in recalculation.
+   * @param occurredDate   occurred date of all the given line items.
+   * @param firstLineItems first line item to consider in recalculation, one per stock card.
+   * @param lastLineItemIds  collects the id of the last line item of each stock card.
+   * @return calculated stock on hands to save, both updated and new ones.
    */
-  private void recalculateStockOnHand(StockCard stockCard, StockCardLineItem lineItem) {
+  private List<CalculatedStockOnHand> recalculateStockOnHand(LocalDate occurredDate,
+      List<StockCardLineItem> firstLineItems, Map<UUID, UUID> lastLineItemIds) {
     Profiler profiler = new Profiler("RECALCULATE_STOCK_ON_HAND");
     profiler.setLogger(LOGGER);
 
+    Set<UUID> stockCardIds = firstLineItems.stream()
+        .map(item -> item.getStockCard().getId())
+        .collect(Collectors.toSet());
+
     profiler.start("GET_LINE_ITEMS_PREVIOUS_STOCK_ON_HAND");
-    int lineItemsPreviousStockOnHand = getPreviousStockOnHand(stockCard, lineItem);
+    Map<UUID, Integer> previousStockOnHands = calculatedStockOnHandRepository
+        .findStockOnHandBefore(stockCardIds, occurredDate)
+        .stream()
+        .collect(Collectors.toMap(StockOnHandAnchor::getStockCardId,
+            StockOnHandAnchor::getStockOnHand));
 
     // Update following entries in place instead of delete + re-insert, which caused the deadlock.
     profiler.start("GET_FOLLOWING_CALCULATED_STOCK_ON_HANDS");
-    Map<LocalDate, CalculatedStockOnHand> existingByDate = calculatedStockOnHandRepository
-        .findByStockCardIdAndOccurredDateGreaterThanEqualOrderByOccurredDateAsc(
-            stockCard.getId(), lineItem.getOccurredDate())
-        .stream()
-        .collect(Collectors.toMap(CalculatedStockOnHand::getOccurredDate, soh -> soh,
-            (left, right) -> left));
-
-    profiler.start("GET_FOLLOWING_STOCK_CARD_LINE_ITEMS");
-    List<StockCardLineItem> followingLineItems = getFollowingLineItems(stockCard, lineItem);
-
-    int lineItemsAtTheSameDay = countLineItemsBefore(followingLineItems, lineItem);
-    followingLineItems.add(lineItemsAtTheSameDay, lineItem);
-    profiler.start("SAVE_RECALCULATED_STOCK_ON_HANDS");
-    for (StockCardLineItem item : followingLineItems) {
-      Integer calculatedStockOnHand = calculateStockOnHand(item, lineItemsPreviousStockOnHand);
-      updateOrCreateCalculatedStockOnHand(existingByDate, item, calculatedStockOnHand, stockCard);
-      lineItemsPreviousStockOnHand = calculatedStockOnHand;
+    Map<UUID, Map<LocalDate, CalculatedStockOnHand>> existingByCardAndDate = new HashMap<>();
+    calculatedStockOnHandRepository
+        .findByStockCardIdInAndOccurredDateGreaterThanEqual(stockCardIds, occurredDate)
+        .forEach(soh -> existingByCardAndDate
+            .computeIfAbsent(soh.getStockCard().getId(), id -> new HashMap<>())
+            .putIfAbsent(soh.getOccurredDate(), soh));
+
+    profiler.start("RECALCULATE_FOLLOWING_STOCK_CARD_LINE_ITEMS");
+    List<CalculatedStockOnHand> recalculated = new ArrayList<>();
+    for (StockCardLineItem lineItem : firstLineItems) {
+      StockCard stockCard = lineItem.getStockCard();
+      Map<LocalDate, CalculatedStockOnHand> existingByDate = existingByCardAndDate
+          .computeIfAbsent(stockCard.getId(), id -> new HashMap<>());
+      int lineItemsPreviousStockOnHand =
+          previousStockOnHands.getOrDefault(stockCard.getId(), 0);
+
+      List<StockCardLineItem> followingLineItems = getFollowingLineItems(stockCard, lineItem);
+
+      int lineItemsAtTheSameDay = countLineItemsBefore(followingLineItems, lineItem);
+      followingLineItems.add(lineItemsAtTheSameDay, lineItem);
+      for (StockCardLineItem item : followingLineItems) {
+        Integer calculatedStockOnHand = calculateStockOnHand(item, lineItemsPreviousStockOnHand);
+        updateOrCreateCalculatedStockOnHand(existingByDate, item, calculatedStockOnHand,
+            stockCard);
+        lineItemsPreviousStockOnHand = calculatedStockOnHand;
+      }
+      lastLineItemIds.put(stockCard.getId(),
+          followingLineItems.get(followingLineItems.size() - 1).getId());
+      recalculated.addAll(existingByDate.values());
     }
-    calculatedStockOnHandRepository.saveAll(existingByDate.values());
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
+
+    return recalculated;
   }
 
   private List<StockCard> findStockCards(UUID facilityId,
@@ -233,16 +308,6 @@ public class CalculatedStockOnHandService {
     }
   }
 
-  private int getPreviousStockOnHand(StockCard stockCard, StockCardLineItem lineItem) {
-    return calculatedStockOnHandRepository
-        .findFirstByStockCardIdAndOccurredDateLessThanEqualOrderByOccurredDateDesc(
-            stockCard.getId(), lineItem.getOccurredDate().minusDays(1)).orElseGet(() -> {
-              CalculatedStockOnHand calculatedStockOnHand = new CalculatedStockOnHand();
-              calculatedStockOnHand.setStockOnHand(0);
-              return calculatedStockOnHand;
-            }).getStockOnHand();
-  }
-
   private int countLineItemsBefore(List<StockCardLineItem> followingLineItems,
       StockCardLineItem lineItem) {
     return (int) followingLineItems.stream()
@@ -271,17 +336,83 @@ public class CalculatedStockOnHandService {
     return map;
   }
 
-  private void fetchStockOnHand(StockCard stockCard, LocalDate asOfDate) {
-    Optional<CalculatedStockOnHand> calculatedStockOnHandOptional = calculatedStockOnHandRepository
-        .findFirstByStockCardIdAndOccurredDateLessThanEqualOrderByOccurredDateDesc(
-            stockCard.getId(), asOfDate);
+  /**
+   * Sets the stock on hand as of the given date on the given stock cards. The current stock on
+   * hand of a card is its latest calculated stock on hand, so it is used whenever it did not
+   * occur after the given date; otherwise, or if the card has none yet, the calculated stock on
+   * hands are queried. Both are read with one query per {@value #STOCK_ON_HAND_BATCH_SIZE} cards.
+   */
+  private void fetchStockOnHand(Collection<StockCard> stockCards, LocalDate asOfDate) {
+    if (stockCards.isEmpty()) {
+      return;
+    }
+
+    // in batches, as the cards of several facilities could exceed the bind parameter limit
+    Map<UUID, CurrentStockOnHand> currentStockOnHands = Lists
+        .partition(stockCards.stream().map(StockCard::getId).distinct()
+            .collect(Collectors.toList()), STOCK_ON_HAND_BATCH_SIZE)
+        .stream()
+        .flatMap(ids -> currentStockOnHandRepository.findAllById(ids).stream())
+        .collect(Collectors.toMap(CurrentStockOnHand::getStockCardId, current -> current));
+
+    List<StockCard> notCurrent = new ArrayList<>();
+    for (StockCard stockCard : stockCards) {
+      CurrentStockOnHand current = currentStockOnHands.get(stockCard.getId());
+      if (null != current && !current.getOccurredDate().isAfter(asOfDate)) {
+        stockCard.setStockOnHand(current.getStockOnHand());
+        stockCard.setOccurredDate(current.getOccurredDate());
+        stockCard.setProcessedDate(current.getProcessedDate());
+      } else {
+        notCurrent.add(stockCard);
+      }
+    }
+
+    if (notCurrent.isEmpty()) {
+      return;
+    }
+
+    Map<UUID, CalculatedStockOnHand> calculatedStockOnHands = Lists
+        .partition(notCurrent.stream().map(StockCard::getId).distinct()
+            .collect(Collectors.toList()), STOCK_ON_HAND_BATCH_SIZE)
+        .stream()
+        .flatMap(ids -> calculatedStockOnHandRepository
+            .findLatestByStockCardIdInAndOccurredDateLessThanEqual(ids, asOfDate).stream())
+        .collect(Collectors.toMap(calculated -> calculated.getStockCard().getId(),
+            calculated -> calculated));
+
+    for (StockCard stockCard : notCurrent) {
+      CalculatedStockOnHand calculated = calculatedStockOnHands.get(stockCard.getId());
+      if (null != calculated) {
+        stockCard.setStockOnHand(calculated.getStockOnHand());
+        stockCard.setOccurredDate(calculated.getOccurredDate());
+        stockCard.setProcessedDate(calculated.getProcessedDate());
+      }
+    }
+  }
 
-    if (calculatedStockOnHandOptional.isPresent()) {
-      CalculatedStockOnHand calculatedStockOnHand = calculatedStockOnHandOptional.get();
-      stockCard.setStockOnHand(calculatedStockOnHand.getStockOnHand());
-      stockCard.setOccurredDate(calculatedStockOnHand.getOccurredDate());
-      stockCard.setProcessedDate(calculatedStockOnHand.getProcessedDate());
+  // The latest of the recalculated entries of a card is its current stock on hand, since all
+  // entries from the recalculated date onwards have been loaded.
+  private void updateCurrentStockOnHands(List<CalculatedStockOnHand> recalculated,
+      Map<UUID, UUID> lastLineItemIds) {
+    Map<UUID, CalculatedStockOnHand> latestByCard = new HashMap<>();
+    for (CalculatedStockOnHand calculated : recalculated) {
+      latestByCard.merge(calculated.getStockCard().getId(), calculated,
+          (left, right) -> left.getOccurredDate().isAfter(right.getOccurredDate())
+              ? left : right);
     }
+
+    Map<UUID, CurrentStockOnHand> currentByCard = new HashMap<>();
+    currentStockOnHandRepository.findAllById(latestByCard.keySet())
+        .forEach(current -> currentByCard.put(current.getStockCardId(), current));
+
+    List<CurrentStockOnHand> updated = new ArrayList<>();
+    latestByCard.forEach((stockCardId, latest) -> {
+      CurrentStockOnHand current = currentByCard
+          .computeIfAbsent(stockCardId, CurrentStockOnHand::new);
+      current.update(latest, lastLineItemIds.get(stockCardId));
+      updated.add(current);
+    });
+    currentStockOnHandRepository.saveAll(updated);
   }
 
   // Update the day's entry in place or create it if absent; saved later in one batch.
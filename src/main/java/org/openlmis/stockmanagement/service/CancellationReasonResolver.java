@@ -37,7 +37,6 @@ import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockEventCancelLineItemDto;
 import org.openlmis.stockmanagement.dto.StockEventCancellationLineErrorDto;
 import org.openlmis.stockmanagement.exception.StockEventCancellationException;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.springframework.stereotype.Service;
 
 /**
@@ -49,7 +48,7 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class CancellationReasonResolver {
 
-  private final StockCardLineItemReasonRepository reasonRepository;
+  private final ReasonCatalog reasonCatalog;
 
   /**
    * Resolves the validated cancellation reason for each requested line item.
@@ -88,7 +87,7 @@ public class CancellationReasonResolver {
     if (reasonIds.isEmpty()) {
       return emptyMap();
     }
-    return reasonRepository.findByIdIn(reasonIds).stream()
+    return reasonCatalog.findByIdIn(reasonIds).stream()
         .collect(toMap(StockCardLineItemReason::getId, identity()));
   }
 
@@ -0,0 +1,93 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import java.util.List;
+import org.openlmis.stockmanagement.repository.CurrentStockOnHandRepository;
+import org.openlmis.stockmanagement.repository.StockCardRepository;
+import org.openlmis.stockmanagement.repository.custom.FacilityProgram;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.profiler.Profiler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Rebuilds the current stock on hand of all stock cards from their calculated stock on hands,
+ * one facility and program at a time. Each facility and program is rebuilt in its own transaction
+ * holding the exclusive event processing lock, so no event can change its stock on hand meanwhile.
+ *
+ * <p>Runs on the configured cron (disabled by default) and on startup when there is no current
+ * stock on hand at all, e.g. after demo data has been loaded.
+ */
+@Component
+@Order(10)
+public class CurrentStockOnHandRebuildJob implements CommandLineRunner {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CurrentStockOnHandRebuildJob.class);
+
+  @Autowired
+  private StockCardRepository stockCardRepository;
+
+  @Autowired
+  private CurrentStockOnHandRepository currentStockOnHandRepository;
+
+  @Autowired
+  private StockEventProcessingLock stockEventProcessingLock;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Override
+  public void run(String... args) {
+    if (!currentStockOnHandRepository.findFirstBy().isPresent()) {
+      rebuild();
+    }
+  }
+
+  /**
+   * Rebuilds the current stock on hand of all stock cards.
+   */
+  @Scheduled(cron = "${stockmanagement.currentStockOnHand.rebuildCron}", zone = "${time.zoneId}")
+  public void rebuild() {
+    Profiler profiler = new Profiler("REBUILD_CURRENT_STOCK_ON_HAND");
+    profiler.setLogger(LOGGER);
+
+    profiler.start("GET_FACILITY_PROGRAMS");
+    List<FacilityProgram> facilityPrograms = stockCardRepository.findFacilityPrograms();
+
+    profiler.start("REBUILD");
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    int rebuilt = 0;
+    for (FacilityProgram facilityProgram : facilityPrograms) {
+      rebuilt += transaction.execute(status -> {
+        stockEventProcessingLock
+            .acquire(facilityProgram.getFacilityId(), facilityProgram.getProgramId());
+        return currentStockOnHandRepository
+            .rebuild(facilityProgram.getFacilityId(), facilityProgram.getProgramId());
+      });
+    }
+
+    LOGGER.info("Rebuilt the current stock on hand of {} stock cards", rebuilt);
+    ProfilerMetrics.stopAndLog(profiler);
+  }
+}
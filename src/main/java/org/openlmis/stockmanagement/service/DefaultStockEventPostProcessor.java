@@ -17,6 +17,7 @@ package org.openlmis.stockmanagement.service;
 
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.extension.point.StockEventPostProcessor;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -35,7 +36,7 @@ public class DefaultStockEventPostProcessor implements StockEventPostProcessor {
 
     XLOGGER.info("This default processor does nothing, it is just a placeholder");
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit();
   }
 }
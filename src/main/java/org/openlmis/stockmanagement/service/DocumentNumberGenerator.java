@@ -15,9 +15,15 @@
 
 package org.openlmis.stockmanagement.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.time.Clock;
 import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.i18n.MessageKeys;
@@ -25,11 +31,28 @@ import org.openlmis.stockmanagement.repository.DocumentNumberSequenceRepository;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Generates document numbers for issue and receive events.
+ *
+ * <p>With {@code stockmanagement.documentNumber.blockSize} set to 1 every number is taken from the
+ * per facility/month sequence row inside the event transaction, so numbers are gap-free and
+ * follow the commit order. With a larger block size each node reserves a range of numbers at once
+ * (in a separate, short transaction, before the event transaction takes its connection; see
+ * {@link #reserve(UUID)}) and hands them out from memory. This removes the sequence row
+ * as a serialization point, but numbers are then only guaranteed to be unique: numbers of a
+ * reserved range that are not used before the node restarts or the month ends are skipped, numbers
+ * drawn by an event that is rolled back are not reused, and numbers from different nodes
+ * interleave rather than follow processing order.
+ */
 @Service
 public class DocumentNumberGenerator {
 
+  private static final long FACILITY_CODE_CACHE_SIZE = 10_000;
+  private static final long FACILITY_CODE_CACHE_TTL_MINUTES = 60;
+
   @Autowired
   private DocumentNumberSequenceRepository sequenceRepository;
 
@@ -39,24 +62,107 @@ public class DocumentNumberGenerator {
   @Autowired
   private Clock clock;
 
+  @Value("${stockmanagement.documentNumber.blockSize}")
+  private int blockSize;
+
+  private final Cache<UUID, String> facilityCodes = CacheBuilder.newBuilder()
+      .maximumSize(FACILITY_CODE_CACHE_SIZE)
+      .expireAfterWrite(FACILITY_CODE_CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+      .build();
+
+  private final Map<String, SequenceBlock> sequenceBlocks = new ConcurrentHashMap<>();
+
   /**
    * Generates the next document number for the given facility in the form
    * {@code {YEAR}-{MONTH}-{FACILITY_CODE}-{SEQ}}. Year and month are derived from the
    * application clock (configured via {@code time.zoneId}), not the facility's local time.
    */
   public String generate(UUID facilityId) {
-    FacilityDto facility = facilityReferenceDataService.findOne(facilityId);
-    if (facility == null) {
-      throw new ResourceNotFoundException(
-          new Message(MessageKeys.ERROR_FACILITY_NOT_FOUND, facilityId));
-    }
+    String facilityCode = getFacilityCode(facilityId);
 
     LocalDate today = LocalDate.now(clock);
     int year = today.getYear();
     int month = today.getMonthValue();
 
-    int sequence = sequenceRepository.nextSequenceNumber(facilityId, year, month);
+    int sequence = nextSequenceNumber(facilityId, year, month);
+
+    return String.format("%d-%02d-%s-%04d", year, month, facilityCode, sequence);
+  }
+
+  /**
+   * Prepares the document number of an event of the given facility before its write transaction
+   * starts, so that the transaction never waits for a second connection. Looks up the facility
+   * code and, with a block size above 1, generates the number itself, as reserving a new block
+   * runs in a transaction of its own. With a block size of 1 the number has to be taken in the
+   * event transaction by {@link #generate(UUID)}, and an empty optional is returned.
+   */
+  public Optional<String> reserve(UUID facilityId) {
+    if (blockSize <= 1) {
+      getFacilityCode(facilityId);
+      return Optional.empty();
+    }
+
+    return Optional.of(generate(facilityId));
+  }
+
+  private String getFacilityCode(UUID facilityId) {
+    String code = facilityCodes.getIfPresent(facilityId);
+
+    if (null == code) {
+      FacilityDto facility = facilityReferenceDataService.findOne(facilityId);
+      if (facility == null) {
+        throw new ResourceNotFoundException(
+            new Message(MessageKeys.ERROR_FACILITY_NOT_FOUND, facilityId));
+      }
+
+      code = facility.getCode();
+      facilityCodes.put(facilityId, code);
+    }
+
+    return code;
+  }
+
+  private int nextSequenceNumber(UUID facilityId, int year, int month) {
+    if (blockSize <= 1) {
+      return sequenceRepository.nextSequenceNumber(facilityId, year, month);
+    }
+
+    String key = facilityId + ":" + year + ":" + month;
+    SequenceBlock block = sequenceBlocks.get(key);
+
+    if (null == block) {
+      // a new month has started for this facility (or the node just started); ranges of the
+      // previous months can never be used again
+      String suffix = ":" + year + ":" + month;
+      sequenceBlocks.keySet().removeIf(existing -> !existing.endsWith(suffix));
+      block = sequenceBlocks.computeIfAbsent(key, k -> new SequenceBlock());
+    }
+
+    synchronized (block) {
+      if (block.isExhausted()) {
+        int last = sequenceRepository.reserveSequenceBlock(facilityId, year, month, blockSize);
+        block.reset(last - blockSize + 1, last);
+      }
 
-    return String.format("%d-%02d-%s-%04d", year, month, facility.getCode(), sequence);
+      return block.next();
+    }
+  }
+
+  private static final class SequenceBlock {
+    private int next = 1;
+    private int last;
+
+    boolean isExhausted() {
+      return next > last;
+    }
+
+    void reset(int first, int last) {
+      this.next = first;
+      this.last = last;
+    }
+
+    int next() {
+      return next++;
+    }
   }
 }
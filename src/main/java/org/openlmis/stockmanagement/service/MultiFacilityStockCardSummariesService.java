@@ -0,0 +1,268 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_FACILITY_NOT_FOUND;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_SUPERVISORY_NODE_NOT_FOUND;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.dto.BaseDto;
+import org.openlmis.stockmanagement.dto.referencedata.ApprovedProductDto;
+import org.openlmis.stockmanagement.dto.referencedata.BasicFacilityDto;
+import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
+import org.openlmis.stockmanagement.dto.referencedata.OrderableFulfillDto;
+import org.openlmis.stockmanagement.dto.referencedata.OrderablesAggregator;
+import org.openlmis.stockmanagement.dto.referencedata.RequisitionGroupDto;
+import org.openlmis.stockmanagement.dto.referencedata.SupervisoryNodeDto;
+import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.service.referencedata.ApprovedProductReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.OrderableFulfillReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.RequisitionGroupReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.SupervisoryNodeReferenceDataService;
+import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.profiler.Profiler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Retrieves the stock card summaries of several facilities at once, e.g. of all facilities
+ * supervised by a supervisory node. Instead of repeating the reads of a single facility summaries
+ * search for every facility, the approved products are read once per facility type, the
+ * orderable fulfills once for all approved products and the stock cards with their stock on hand
+ * once per chunk of facilities. The view rights checks and the approved products run
+ * concurrently on the {@link PrefetchExecutor}.
+ */
+@Service
+public class MultiFacilityStockCardSummariesService {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MultiFacilityStockCardSummariesService.class);
+
+  @Autowired
+  private StockCardSummariesService stockCardSummariesService;
+
+  @Autowired
+  private CalculatedStockOnHandService calculatedStockOnHandService;
+
+  @Autowired
+  private FacilityReferenceDataService facilityReferenceDataService;
+
+  @Autowired
+  private SupervisoryNodeReferenceDataService supervisoryNodeReferenceDataService;
+
+  @Autowired
+  private RequisitionGroupReferenceDataService requisitionGroupReferenceDataService;
+
+  @Autowired
+  private ApprovedProductReferenceDataService approvedProductReferenceDataService;
+
+  @Autowired
+  private OrderableFulfillReferenceDataService orderableFulfillService;
+
+  @Autowired
+  private PrefetchExecutor prefetchExecutor;
+
+  @Value("${stockmanagement.stockCardSummaries.facilityChunkSize}")
+  private int facilityChunkSize;
+
+  /**
+   * Get the stock card summaries of the facilities given by the search params. The view rights of
+   * every facility are checked, and the reference data of all facilities is read, before this
+   * method returns. The stock cards are read as the returned stream is consumed, for
+   * {@code facilityChunkSize} facilities at a time, so that the cards of all facilities are not
+   * held at once; the stream must be consumed within the caller's transaction.
+   *
+   * @param params multi facility stock card summaries search params.
+   * @return summaries by facility id, in the order the facilities were given in.
+   */
+  public Stream<Map.Entry<UUID, StockCardSummaries>> findStockCards(
+      MultiFacilityStockCardSummariesSearchParams params) {
+    Profiler profiler = new Profiler("FIND_MULTI_FACILITY_STOCK_CARD_SUMMARIES");
+    profiler.setLogger(LOGGER);
+
+    profiler.start("FIND_FACILITY_IDS");
+    Set<UUID> facilityIds = findFacilityIds(params);
+
+    if (facilityIds.isEmpty()) {
+      ProfilerMetrics.stopAndLog(profiler);
+      return Stream.empty();
+    }
+
+    profiler.start("START_PREFETCH");
+    final List<CompletableFuture<Boolean>> viewRightsFutures = facilityIds.stream()
+        .map(facilityId -> prefetchExecutor.supply("VALIDATE_VIEW_RIGHTS", () -> {
+          stockCardSummariesService.validateViewRights(params.getProgramIds(), facilityId);
+          return Boolean.TRUE;
+        }))
+        .collect(toList());
+
+    profiler.start("GET_FACILITIES");
+    Map<UUID, FacilityDto> facilities = facilityReferenceDataService.findByIds(facilityIds);
+
+    Map<UUID, CompletableFuture<OrderablesAggregator>> approvedProductsFutures =
+        getApprovedProducts(facilityIds, facilities, params.getProgramIds());
+
+    final CompletableFuture<Map<UUID, OrderableFulfillDto>> orderableFulfillFuture =
+        prefetchExecutor.then("FIND_ORDERABLE_FULFILL_BY_ID",
+            CompletableFuture.allOf(approvedProductsFutures.values()
+                .toArray(new CompletableFuture[0])),
+            ignored -> orderableFulfillService.findByIds(approvedProductsFutures.values()
+                .stream()
+                .distinct()
+                .flatMap(future -> future.join().getIdentifiers().stream())
+                .collect(toSet())));
+
+    profiler.start("VALIDATE_VIEW_RIGHTS");
+    viewRightsFutures.forEach(PrefetchExecutor::join);
+
+    profiler.start("GET_APPROVED_PRODUCTS");
+    Map<UUID, List<ApprovedProductDto>> approvedProducts = new HashMap<>();
+    approvedProductsFutures.forEach((facilityId, future) -> approvedProducts.put(facilityId,
+        PrefetchExecutor.join(future).getApprovedProducts().getContent()));
+
+    profiler.start("FIND_ORDERABLE_FULFILL_BY_ID");
+    Map<UUID, OrderableFulfillDto> orderableFulfillMap =
+        PrefetchExecutor.join(orderableFulfillFuture);
+
+    ProfilerMetrics.stopAndLog(profiler);
+    return Lists.partition(new ArrayList<>(facilityIds), facilityChunkSize)
+        .stream()
+        .flatMap(chunk -> findStockCards(params, chunk, approvedProducts, orderableFulfillMap)
+            .entrySet().stream());
+  }
+
+  private Map<UUID, StockCardSummaries> findStockCards(
+      MultiFacilityStockCardSummariesSearchParams params, List<UUID> facilityIds,
+      Map<UUID, List<ApprovedProductDto>> approvedProducts,
+      Map<UUID, OrderableFulfillDto> orderableFulfillMap) {
+    Map<UUID, List<StockCard>> stockCards = calculatedStockOnHandService
+        .getStockCardsWithStockOnHandAtFacilities(params.getProgramIds(), facilityIds,
+            params.getAsOfDate())
+        .stream()
+        .collect(groupingBy(StockCard::getFacilityId));
+
+    Map<UUID, StockCardSummaries> result = new LinkedHashMap<>();
+    for (UUID facilityId : facilityIds) {
+      List<ApprovedProductDto> facilityApprovedProducts = approvedProducts.get(facilityId);
+
+      result.put(facilityId, new StockCardSummaries(facilityApprovedProducts,
+          stockCards.getOrDefault(facilityId, Collections.emptyList()), orderableFulfillMap,
+          params.getAsOfDate(), (long) facilityApprovedProducts.size()));
+    }
+
+    return result;
+  }
+
+  // facilities of the same type share the approved products, so they are read for one facility
+  // of each type
+  private Map<UUID, CompletableFuture<OrderablesAggregator>> getApprovedProducts(
+      Collection<UUID> facilityIds, Map<UUID, FacilityDto> facilities,
+      Collection<UUID> programIds) {
+    Map<UUID, CompletableFuture<OrderablesAggregator>> byFacilityType = new HashMap<>();
+    Map<UUID, CompletableFuture<OrderablesAggregator>> byFacility = new HashMap<>();
+
+    for (UUID facilityId : facilityIds) {
+      FacilityDto facility = facilities.get(facilityId);
+
+      if (null == facility) {
+        throw new ResourceNotFoundException(
+            new Message(ERROR_FACILITY_NOT_FOUND, facilityId.toString()));
+      }
+
+      UUID facilityTypeId = null == facility.getType() ? facilityId : facility.getType().getId();
+      byFacility.put(facilityId, byFacilityType.computeIfAbsent(facilityTypeId,
+          type -> prefetchExecutor.supply("GET_APPROVED_PRODUCTS",
+              () -> approvedProductReferenceDataService
+                  .getApprovedProducts(facilityId, programIds, null, null, null))));
+    }
+
+    return byFacility;
+  }
+
+  private Set<UUID> findFacilityIds(MultiFacilityStockCardSummariesSearchParams params) {
+    Set<UUID> facilityIds = new LinkedHashSet<>(params.getFacilityIds());
+
+    if (null != params.getSupervisoryNodeId()) {
+      facilityIds.addAll(findSupervisedFacilityIds(params.getSupervisoryNodeId()));
+    }
+
+    return facilityIds;
+  }
+
+  // member facilities of the requisition groups of the node and all nodes below it
+  private List<UUID> findSupervisedFacilityIds(UUID supervisoryNodeId) {
+    List<UUID> facilityIds = new ArrayList<>();
+    Set<UUID> visited = new HashSet<>();
+    Deque<UUID> nodeIds = new ArrayDeque<>();
+    nodeIds.add(supervisoryNodeId);
+
+    while (!nodeIds.isEmpty()) {
+      UUID nodeId = nodeIds.poll();
+
+      if (!visited.add(nodeId)) {
+        continue;
+      }
+
+      SupervisoryNodeDto node = supervisoryNodeReferenceDataService.findOne(nodeId);
+
+      if (null == node) {
+        throw new ResourceNotFoundException(
+            new Message(ERROR_SUPERVISORY_NODE_NOT_FOUND, nodeId.toString()));
+      }
+
+      if (null != node.getRequisitionGroup()) {
+        RequisitionGroupDto group = requisitionGroupReferenceDataService
+            .findOne(node.getRequisitionGroup().getId());
+
+        if (null != group && null != group.getMemberFacilities()) {
+          group.getMemberFacilities().stream()
+              .map(BasicFacilityDto::getId)
+              .sorted()
+              .forEach(facilityIds::add);
+        }
+      }
+
+      if (null != node.getChildNodes()) {
+        node.getChildNodes().stream().map(BaseDto::getId).forEach(nodeIds::add);
+      }
+    }
+
+    return facilityIds;
+  }
+}
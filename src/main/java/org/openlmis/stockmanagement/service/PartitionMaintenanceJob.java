@@ -0,0 +1,79 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Creates the yearly partitions of the stock card line items and calculated stock on hands ahead
+ * of time, so that new rows do not end up in the default partition. Each year is created in its
+ * own transaction, as creating a partition briefly locks the partitioned table.
+ */
+@Component
+@Order(1)
+public class PartitionMaintenanceJob implements CommandLineRunner {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PartitionMaintenanceJob.class);
+
+  @Autowired
+  private StockCardLineItemRepository stockCardLineItemRepository;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private Clock clock;
+
+  @Value("${stockmanagement.partitions.yearsAhead}")
+  private int yearsAhead;
+
+  @Override
+  public void run(String... args) {
+    createPartitions();
+  }
+
+  /**
+   * Creates the partitions of the current year and of the configured number of following years,
+   * unless they already exist.
+   */
+  @Scheduled(cron = "${stockmanagement.partitions.cron}", zone = "${time.zoneId}")
+  public void createPartitions() {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    int currentYear = LocalDate.now(clock).getYear();
+
+    for (int year = currentYear; year <= currentYear + yearsAhead; ++year) {
+      int partitionYear = year;
+      Integer created = transaction.execute(status ->
+          stockCardLineItemRepository.createYearlyPartitions(partitionYear));
+
+      if (null != created && created > 0) {
+        LOGGER.info("Created {} partitions for year {}", created, partitionYear);
+      }
+    }
+  }
+}
@@ -121,6 +121,18 @@ public class PermissionService {
     hasPermission(STOCK_CARDS_VIEW, programId, facilityId, null);
   }
 
+  /**
+   * Returns whether current user has permission to view stock card, without failing if not.
+   *
+   * @param programId  program id.
+   * @param facilityId facility id.
+   */
+  public boolean hasViewStockCardRight(UUID programId, UUID facilityId) {
+    ResultDto<Boolean> result =
+        getRightResult(STOCK_CARDS_VIEW, programId, facilityId, null, false);
+    return null != result && result.getResult();
+  }
+
   /**
    * Checks if current user has permission to manage valid sources assignment.
    */
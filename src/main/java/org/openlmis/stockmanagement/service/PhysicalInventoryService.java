@@ -15,27 +15,39 @@
 
 package org.openlmis.stockmanagement.service;
 
-import static java.util.stream.Collectors.toMap;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_DRAFT_EXISTS;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_DRAFT_SUBMIT;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_IS_SUBMITTED;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_NOT_FOUND;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_VERSION_CONFLICT;
+import static org.springframework.util.CollectionUtils.isEmpty;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventoryLineItem;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventoryLineItemAdjustment;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryDraftPatchDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryLineItemDto;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.exception.VersionConflictException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
+import org.openlmis.stockmanagement.repository.PhysicalInventoryLineItemRepository;
+import org.openlmis.stockmanagement.repository.custom.PhysicalInventoryHeader;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.openlmis.stockmanagement.validators.PhysicalInventoryValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +55,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
+@SuppressWarnings("PMD.TooManyMethods")
 public class PhysicalInventoryService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PhysicalInventoryService.class);
@@ -50,6 +63,9 @@ public class PhysicalInventoryService {
   @Autowired
   private PhysicalInventoriesRepository physicalInventoriesRepository;
 
+  @Autowired
+  private PhysicalInventoryLineItemRepository physicalInventoryLineItemRepository;
+
   @Autowired
   private PhysicalInventoryValidator physicalInventoryValidator;
 
@@ -59,9 +75,6 @@ public class PhysicalInventoryService {
   @Autowired
   private HomeFacilityPermissionService homeFacilityPermissionService;
 
-  @Autowired
-  private CalculatedStockOnHandService calculatedStockOnHandService;
-
   /**
    * Find draft by program and facility.
    *
@@ -103,12 +116,15 @@ public class PhysicalInventoryService {
     dto.setId(null);
     PhysicalInventory save = physicalInventoriesRepository.save(dto.toEmptyPhysicalInventory());
     dto.setId(save.getId());
+    dto.setVersion(save.getVersion());
 
     return dto;
   }
 
   /**
-   * Save or update draft.
+   * Save or update draft. If the dto has a version, it must be the current version of the draft;
+   * the version is checked and incremented with one conditional update, so of two concurrent
+   * saves of the same version only one succeeds and the other fails with a version conflict.
    *
    * @param dto physical inventory dto.
    * @return the saved inventory.
@@ -120,10 +136,48 @@ public class PhysicalInventoryService {
 
     checkIfDraftExists(dto, id);
 
-    physicalInventoriesRepository.save(dto.toPhysicalInventoryForDraft());
+    PhysicalInventory inventory = dto.toPhysicalInventoryForDraft();
+    inventory.setVersion(incrementDraftVersion(id, dto.getVersion()));
+
+    physicalInventoriesRepository.save(inventory);
+    dto.setVersion(inventory.getVersion());
     return dto;
   }
 
+  /**
+   * Saves changes of some line items of a draft, leaving its other line items untouched. The
+   * changes must be based on the current version of the draft.
+   *
+   * @param patch changed and removed line items, and the version they are based on.
+   * @param id    physical inventory id.
+   * @return the id and the new version of the draft.
+   */
+  public PhysicalInventoryDraftPatchDto patchDraft(PhysicalInventoryDraftPatchDto patch,
+      UUID id) {
+    LOGGER.info("patch physical inventory draft");
+    PhysicalInventoryHeader header = physicalInventoriesRepository.findHeaderById(id)
+        .orElseThrow(() ->
+            new ResourceNotFoundException(new Message(ERROR_PHYSICAL_INVENTORY_NOT_FOUND, id)));
+    checkPermission(header.getProgramId(), header.getFacilityId());
+
+    if (!header.getIsDraft()) {
+      throw new ValidationMessageException(ERROR_PHYSICAL_INVENTORY_IS_SUBMITTED);
+    }
+    physicalInventoryValidator.validateDraftChanges(patch, id);
+
+    if (physicalInventoriesRepository.incrementDraftVersion(id, patch.getVersion()) == 0) {
+      throw new VersionConflictException(
+          new Message(ERROR_PHYSICAL_INVENTORY_VERSION_CONFLICT, patch.getVersion()));
+    }
+
+    applyLineItemChanges(id, patch);
+
+    return PhysicalInventoryDraftPatchDto.builder()
+        .id(id)
+        .version(patch.getVersion() + 1)
+        .build();
+  }
+
   /**
    * Delete draft.
    *
@@ -153,12 +207,16 @@ public class PhysicalInventoryService {
    *
    * @param inventoryDto inventoryDto.
    * @param eventId      eventId.
+   * @param context      context of the submitted event, its stock cards hold the stock on hand
+   *                     before the submission.
    */
-  void submitPhysicalInventory(PhysicalInventoryDto inventoryDto, UUID eventId) {
+  void submitPhysicalInventory(PhysicalInventoryDto inventoryDto, UUID eventId,
+      StockEventProcessContext context) {
     LOGGER.info("submit physical inventory");
 
     checkDraftIsSubmittable(inventoryDto);
     PhysicalInventory inventory = inventoryDto.toPhysicalInventoryForSubmit();
+    inventory.setVersion(incrementDraftVersion(inventoryDto.getId(), null));
 
     if (null != eventId) {
       StockEvent event = new StockEvent();
@@ -167,13 +225,10 @@ public class PhysicalInventoryService {
       inventory.setStockEvent(event);
     }
 
-    Map<OrderableLotIdentity, StockCard> cards = calculatedStockOnHandService
-        .getStockCardsWithStockOnHand(inventory.getProgramId(), inventory.getFacilityId())
-        .stream()
-        .collect(toMap(OrderableLotIdentity::identityOf, card -> card));
-
+    // the event context already holds the stock cards of the submitted orderables, there is no
+    // need to load (and calculate stock on hand of) every card of the facility again
     for (PhysicalInventoryLineItem line : inventory.getLineItems()) {
-      StockCard stockCard = cards.get(OrderableLotIdentity.identityOf(line));
+      StockCard stockCard = context.findCard(OrderableLotIdentity.identityOf(line));
       if (stockCard != null) {
         line.setPreviousStockOnHandWhenSubmitted(stockCard.getStockOnHand());
       }
@@ -182,6 +237,90 @@ public class PhysicalInventoryService {
     physicalInventoriesRepository.save(inventory);
   }
 
+  // The conditional update both checks the version and claims the next one, so of two writes
+  // based on the same version only the first succeeds; the other one waits for the row lock and
+  // then updates no row. Without an expected version, the current one is expected.
+  private long incrementDraftVersion(UUID id, Long expectedVersion) {
+    Optional<PhysicalInventoryHeader> header = null == id
+        ? Optional.empty()
+        : physicalInventoriesRepository.findHeaderById(id);
+
+    if (!header.isPresent()) {
+      return 0L;
+    }
+
+    Long version = null == expectedVersion ? header.get().getVersion() : expectedVersion;
+    if (physicalInventoriesRepository.incrementDraftVersion(id, version) == 0) {
+      throw new VersionConflictException(
+          new Message(ERROR_PHYSICAL_INVENTORY_VERSION_CONFLICT, version));
+    }
+
+    return version + 1;
+  }
+
+  private void applyLineItemChanges(UUID id, PhysicalInventoryDraftPatchDto patch) {
+    List<PhysicalInventoryLineItemDto> changed = isEmpty(patch.getLineItems())
+        ? Collections.emptyList()
+        : patch.getLineItems();
+    List<PhysicalInventoryLineItemDto> removed = isEmpty(patch.getRemovedLineItems())
+        ? Collections.emptyList()
+        : patch.getRemovedLineItems();
+
+    Set<UUID> orderableIds = new HashSet<>();
+    changed.forEach(line -> orderableIds.add(line.getOrderableId()));
+    removed.forEach(line -> orderableIds.add(line.getOrderableId()));
+    if (orderableIds.isEmpty()) {
+      return;
+    }
+
+    Map<OrderableLotIdentity, PhysicalInventoryLineItem> existing = new HashMap<>();
+    physicalInventoryLineItemRepository
+        .findByPhysicalInventoryIdAndOrderableIdIn(id, orderableIds)
+        .forEach(line -> existing.putIfAbsent(OrderableLotIdentity.identityOf(line), line));
+
+    List<PhysicalInventoryLineItem> toRemove = new ArrayList<>();
+    for (PhysicalInventoryLineItemDto line : removed) {
+      PhysicalInventoryLineItem found = existing.remove(OrderableLotIdentity.identityOf(line));
+      if (null != found) {
+        toRemove.add(found);
+      }
+    }
+    physicalInventoryLineItemRepository.deleteAll(toRemove);
+
+    // a stub is enough to reference the draft from new line items
+    PhysicalInventory inventory = new PhysicalInventory();
+    inventory.setId(id);
+
+    Map<OrderableLotIdentity, PhysicalInventoryLineItem> toSave = new HashMap<>();
+    for (PhysicalInventoryLineItemDto line : changed) {
+      OrderableLotIdentity identity = OrderableLotIdentity.identityOf(line);
+      PhysicalInventoryLineItem lineItem = existing.get(identity);
+
+      if (null == lineItem) {
+        lineItem = line.toPhysicalInventoryLineItem(inventory);
+        lineItem.setStockAdjustments(copyAdjustments(line.getStockAdjustments()));
+      } else {
+        lineItem.setQuantity(line.getQuantity());
+        lineItem.setExtraData(line.getExtraData());
+        lineItem.getStockAdjustments().clear();
+        lineItem.getStockAdjustments().addAll(copyAdjustments(line.getStockAdjustments()));
+      }
+      toSave.put(identity, lineItem);
+    }
+    physicalInventoryLineItemRepository.saveAll(toSave.values());
+  }
+
+  // adjustments are always re-created, so ids sent by the client must not be reused
+  private List<PhysicalInventoryLineItemAdjustment> copyAdjustments(
+      List<PhysicalInventoryLineItemAdjustment> adjustments) {
+    List<PhysicalInventoryLineItemAdjustment> copies = new ArrayList<>();
+    if (null != adjustments) {
+      adjustments.forEach(adjustment -> copies.add(new PhysicalInventoryLineItemAdjustment(
+          adjustment.getReason(), adjustment.getQuantity())));
+    }
+    return copies;
+  }
+
   private void checkIfDraftExists(PhysicalInventoryDto dto) {
     List<PhysicalInventory> found = physicalInventoriesRepository
         .findByProgramIdAndFacilityIdAndIsDraft(dto.getProgramId(), dto.getFacilityId(), true);
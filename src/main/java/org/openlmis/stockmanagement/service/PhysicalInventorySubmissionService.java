@@ -0,0 +1,310 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus.COMPLETED;
+import static org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus.FAILED;
+import static org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus.PERSISTING;
+import static org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus.QUEUED;
+import static org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus.VALIDATING;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_SUBMISSION_FAILED;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_FOUND;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_PHYSICAL_INVENTORY;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_SUBMISSION_REJECTED;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmission;
+import org.openlmis.stockmanagement.dto.PhysicalInventorySubmissionDto;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
+import org.openlmis.stockmanagement.exception.BaseMessageException;
+import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.i18n.MessageService;
+import org.openlmis.stockmanagement.repository.PhysicalInventorySubmissionRepository;
+import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.ext.XLogger;
+import org.slf4j.ext.XLoggerFactory;
+import org.slf4j.profiler.Profiler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Submits physical inventories in the staged mode. A submission is accepted right away and
+ * processed by a background worker: its line items are first validated in chunks, outside of the
+ * event processing lock and in a read-only transaction, and then the validated event is written
+ * by {@link StockEventProcessor#processValidated} in one transaction, which holds the processing
+ * lock for the writes only. How far the processing got is kept in a
+ * {@link PhysicalInventorySubmission}.
+ */
+@Service
+@SuppressWarnings("PMD.TooManyMethods")
+public class PhysicalInventorySubmissionService {
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(PhysicalInventorySubmissionService.class);
+  private static final XLogger XLOGGER =
+      XLoggerFactory.getXLogger(PhysicalInventorySubmissionService.class);
+
+  @Autowired
+  private PhysicalInventorySubmissionRepository submissionRepository;
+
+  @Autowired
+  private StockEventProcessContextBuilder contextBuilder;
+
+  @Autowired
+  private StockEventValidationsService stockEventValidationsService;
+
+  @Autowired
+  private StockEventProcessor stockEventProcessor;
+
+  @Autowired
+  private MessageService messageService;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private Clock clock;
+
+  @Value("${stockmanagement.physicalInventorySubmission.chunkSize}")
+  private int chunkSize;
+
+  @Value("${stockmanagement.physicalInventorySubmission.threads}")
+  private int threads;
+
+  @Value("${stockmanagement.physicalInventorySubmission.queueCapacity}")
+  private int queueCapacity;
+
+  private ThreadPoolTaskExecutor executor;
+
+  /**
+   * Starts the workers. The executor is deliberately not a bean, as a task executor bean would
+   * also take over running the {@code @Async} methods of the service.
+   */
+  @PostConstruct
+  public void startExecutor() {
+    executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("physical-inventory-submission-");
+    executor.initialize();
+  }
+
+  @PreDestroy
+  public void stopExecutor() {
+    executor.shutdown();
+  }
+
+  /**
+   * Accepts a physical inventory event for staged processing. Must not be called in a
+   * transaction, the submission has to be visible to the worker that picks it up.
+   *
+   * @param eventDto physical inventory stock event.
+   * @return the queued submission, or a failed one if no worker can take it.
+   */
+  public PhysicalInventorySubmissionDto submit(StockEventDto eventDto) {
+    if (!eventDto.isPhysicalInventory()) {
+      throw new ValidationMessageException(
+          ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_PHYSICAL_INVENTORY);
+    }
+
+    PhysicalInventorySubmission submission = submissionRepository.save(newSubmission(eventDto));
+    UUID submissionId = submission.getId();
+    Locale locale = LocaleContextHolder.getLocale();
+
+    try {
+      executor.execute(new DelegatingSecurityContextRunnable(() -> {
+        LocaleContextHolder.setLocale(locale);
+        try {
+          process(submissionId, eventDto);
+        } finally {
+          LocaleContextHolder.resetLocaleContext();
+        }
+      }));
+    } catch (TaskRejectedException ex) {
+      LOGGER.warn("Physical inventory submission {} rejected, all workers are busy", submissionId);
+      submission = fail(submissionId, new Message(ERROR_PHYSICAL_INVENTORY_SUBMISSION_REJECTED));
+    }
+
+    return PhysicalInventorySubmissionDto.from(submission);
+  }
+
+  /**
+   * Find a submission by id.
+   *
+   * @param submissionId submission id.
+   * @return the found submission.
+   */
+  public PhysicalInventorySubmissionDto findSubmission(UUID submissionId) {
+    return submissionRepository.findById(submissionId)
+        .map(PhysicalInventorySubmissionDto::from)
+        .orElseThrow(() -> new ResourceNotFoundException(
+            new Message(ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_FOUND, submissionId)));
+  }
+
+  void process(UUID submissionId, StockEventDto eventDto) {
+    XLOGGER.entry(submissionId);
+    Profiler profiler = new Profiler("PROCESS_PHYSICAL_INVENTORY_SUBMISSION");
+    profiler.setLogger(XLOGGER);
+
+    try {
+      profiler.start("VALIDATE_IN_CHUNKS");
+      update(submissionId, submission -> submission.setStatus(VALIDATING));
+      newTransaction(true).execute(status -> {
+        validateInChunks(submissionId, eventDto);
+        return null;
+      });
+
+      // the processor reuses the context the chunks were validated with, and only takes the
+      // processing lock for writing the event
+      profiler.start("PROCESS_EVENT");
+      update(submissionId, submission -> submission.setStatus(PERSISTING));
+      UUID eventId = stockEventProcessor.processValidated(eventDto);
+
+      update(submissionId, submission -> {
+        submission.setStatus(COMPLETED);
+        submission.setStockEventId(eventId);
+      });
+    } catch (BaseMessageException ex) {
+      fail(submissionId, ex.asMessage());
+    } catch (RuntimeException ex) {
+      LOGGER.error("Physical inventory submission {} failed", submissionId, ex);
+      fail(submissionId, new Message(ERROR_PHYSICAL_INVENTORY_SUBMISSION_FAILED));
+    }
+
+    ProfilerMetrics.stopAndLog(profiler);
+    XLOGGER.exit(submissionId);
+  }
+
+  // Validators only look at line items of the same orderable/lot together, so as long as such
+  // line items stay in one chunk, validating chunk by chunk finds the same errors as validating
+  // the whole event at once.
+  List<List<StockEventLineItemDto>> splitIntoChunks(List<StockEventLineItemDto> lineItems) {
+    List<List<StockEventLineItemDto>> chunks = new ArrayList<>();
+    List<StockEventLineItemDto> chunk = new ArrayList<>();
+
+    for (List<StockEventLineItemDto> group : lineItems.stream()
+        .collect(groupingBy(OrderableLotIdentity::identityOf, LinkedHashMap::new, toList()))
+        .values()) {
+      if (!chunk.isEmpty() && chunk.size() + group.size() > chunkSize) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>();
+      }
+      chunk.addAll(group);
+    }
+
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  // Leaves the context on the event, so that the processor does not build it again.
+  private void validateInChunks(UUID submissionId, StockEventDto eventDto) {
+    StockEventProcessContext context = contextBuilder.buildContext(eventDto);
+    eventDto.setContext(context);
+
+    List<List<StockEventLineItemDto>> chunks = splitIntoChunks(eventDto.getLineItems());
+    if (chunks.isEmpty()) {
+      // an event without line items still has to pass the event level validations
+      stockEventValidationsService.validate(eventDto);
+    }
+
+    int validated = 0;
+    for (List<StockEventLineItemDto> chunk : chunks) {
+      stockEventValidationsService.validate(new StockEventDto(eventDto.getResourceId(),
+          eventDto.getFacilityId(), eventDto.getProgramId(), eventDto.getSignature(),
+          eventDto.getDocumentNumber(), eventDto.getEventOrigin(), eventDto.getUserId(),
+          eventDto.isActive(), chunk, context));
+
+      validated += chunk.size();
+      final int validatedLineItems = validated;
+      update(submissionId, submission -> submission.setValidatedLineItems(validatedLineItems));
+    }
+  }
+
+  private PhysicalInventorySubmission newSubmission(StockEventDto eventDto) {
+    ZonedDateTime now = ZonedDateTime.now(clock);
+
+    PhysicalInventorySubmission submission = new PhysicalInventorySubmission();
+    submission.setProgramId(eventDto.getProgramId());
+    submission.setFacilityId(eventDto.getFacilityId());
+    submission.setPhysicalInventoryId(eventDto.getResourceId());
+    submission.setStatus(QUEUED);
+    submission.setTotalLineItems(eventDto.getLineItems().size());
+    submission.setValidatedLineItems(0);
+    submission.setCreatedDate(now);
+    submission.setModifiedDate(now);
+    return submission;
+  }
+
+  private PhysicalInventorySubmission fail(UUID submissionId, Message message) {
+    Message.LocalizedMessage localized = messageService.localize(message);
+
+    return update(submissionId, submission -> {
+      submission.setStatus(FAILED);
+      submission.setErrorMessageKey(localized.getMessageKey());
+      submission.setErrorMessage(localized.getMessage());
+    });
+  }
+
+  // Progress is committed on its own, so that it can be polled while the submission is still
+  // being validated or processed.
+  private PhysicalInventorySubmission update(UUID submissionId,
+      Consumer<PhysicalInventorySubmission> change) {
+    return newTransaction(false).execute(status -> {
+      PhysicalInventorySubmission submission = submissionRepository.findById(submissionId)
+          .orElseThrow(() -> new ResourceNotFoundException(
+              new Message(ERROR_PHYSICAL_INVENTORY_SUBMISSION_NOT_FOUND, submissionId)));
+      change.accept(submission);
+      submission.setModifiedDate(ZonedDateTime.now(clock));
+      return submissionRepository.save(submission);
+    });
+  }
+
+  private TransactionTemplate newTransaction(boolean readOnly) {
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    template.setReadOnly(readOnly);
+    return template;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs independent reads (mostly requests to other services) of one request concurrently on a
+ * bounded pool. Tasks run with the security context of the thread that submitted them, so that
+ * requests made on behalf of the user carry the user's token. When the pool and its queue are
+ * full, the task runs on the submitting thread, so a busy node falls back to doing the reads one
+ * after another instead of failing.
+ *
+ * <p>Tasks must not use the database: the transaction and persistence context of a request are
+ * bound to the request thread. Task durations are recorded in the
+ * {@code stockmanagement.prefetch.task} timer, tagged with the task name.
+ */
+@Component
+public class PrefetchExecutor {
+
+  static final String TASK_METRIC = "stockmanagement.prefetch.task";
+
+  private final MeterRegistry meterRegistry;
+  private final int threads;
+  private final int queueCapacity;
+
+  private ThreadPoolTaskExecutor pool;
+  private Executor executor;
+
+  /**
+   * Creates a new executor.
+   *
+   * @param meterRegistry registry for the task timer
+   * @param threads       number of pool threads
+   * @param queueCapacity number of tasks that can wait for a pool thread
+   */
+  @Autowired
+  public PrefetchExecutor(MeterRegistry meterRegistry,
+      @Value("${stockmanagement.prefetch.threads}") int threads,
+      @Value("${stockmanagement.prefetch.queueCapacity}") int queueCapacity) {
+    this.meterRegistry = meterRegistry;
+    this.threads = threads;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Starts the pool. The pool is deliberately not a bean, as a task executor bean would also take
+   * over running the {@code @Async} methods of the services.
+   */
+  @PostConstruct
+  public void start() {
+    pool = new ThreadPoolTaskExecutor();
+    pool.setCorePoolSize(threads);
+    pool.setMaxPoolSize(threads);
+    pool.setQueueCapacity(queueCapacity);
+    pool.setThreadNamePrefix("prefetch-");
+    pool.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    pool.initialize();
+    executor = new DelegatingSecurityContextExecutor(pool);
+  }
+
+  @PreDestroy
+  public void stop() {
+    pool.shutdown();
+  }
+
+  /**
+   * Starts the given task.
+   *
+   * @param name name the task duration is recorded under
+   * @param task the task to run
+   * @return future result of the task
+   */
+  public <T> CompletableFuture<T> supply(String name, Supplier<T> task) {
+    return CompletableFuture.supplyAsync(timed(name, task), executor);
+  }
+
+  /**
+   * Starts the given task once the given future completes successfully. If the future fails, the
+   * returned future fails with the same exception and the task is not run.
+   *
+   * @param name  name the task duration is recorded under
+   * @param input future the task depends on
+   * @param task  the task to run with the result of the future
+   * @return future result of the task
+   */
+  public <I, T> CompletableFuture<T> then(String name, CompletableFuture<I> input,
+      Function<? super I, T> task) {
+    return input.thenApplyAsync(value -> timed(name, () -> task.apply(value)).get(), executor);
+  }
+
+  /**
+   * Waits for the given future and returns its result. If the task failed, its exception is
+   * rethrown as is, so callers see the same exceptions as if they had run the task themselves.
+   */
+  public static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  private <T> Supplier<T> timed(String name, Supplier<T> task) {
+    Timer timer = Timer
+        .builder(TASK_METRIC)
+        .description("Duration of a read run concurrently with the other reads of a request")
+        .tag("task", name)
+        .register(meterRegistry);
+
+    return () -> timer.record(task);
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.domain.reason.ValidReasonAssignment;
+import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory copy of the stock card line item reasons and the valid reason assignments, indexed by
+ * id, name, tag and program/facility type. Lookups never hit the database once the catalog is
+ * loaded.
+ *
+ * <p>The catalog is an immutable snapshot that is replaced as a whole, so readers always see a
+ * consistent set of reasons and assignments. It is reloaded right after a reason or an assignment
+ * is saved or deleted through this node. Changes made by other nodes (or directly in the database)
+ * bump the version in {@code reason_catalog_version}, which every node compares with the version
+ * of its snapshot on {@code stockmanagement.reasonCatalog.versionCheckIntervalMillis}.
+ *
+ * <p>The returned reasons and assignments are detached copies shared by all callers; they may be
+ * referenced from new entities but must not be modified.
+ */
+@Component
+@SuppressWarnings("PMD.TooManyMethods")
+public class ReasonCatalog {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReasonCatalog.class);
+
+  @Autowired
+  private StockCardLineItemReasonRepository reasonRepository;
+
+  @Autowired
+  private ValidReasonAssignmentRepository validReasonAssignmentRepository;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+  public long getVersion() {
+    return getSnapshot().version;
+  }
+
+  public List<StockCardLineItemReason> findAll() {
+    return getSnapshot().reasons;
+  }
+
+  public StockCardLineItemReason findById(UUID id) {
+    return null == id ? null : getSnapshot().reasonsById.get(id);
+  }
+
+  /**
+   * Finds the reasons with the given ids; unknown ids are skipped.
+   */
+  public List<StockCardLineItemReason> findByIdIn(Collection<UUID> ids) {
+    Snapshot current = getSnapshot();
+    return ids.stream()
+        .filter(Objects::nonNull)
+        .distinct()
+        .map(current.reasonsById::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Finds the reasons with the given names; unknown names are skipped.
+   */
+  public List<StockCardLineItemReason> findByNameIn(Collection<String> names) {
+    Snapshot current = getSnapshot();
+    return names.stream()
+        .filter(Objects::nonNull)
+        .distinct()
+        .map(current.reasonsByName::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  public boolean existsByTag(String tag) {
+    return null != tag && getSnapshot().reasonsByTag.containsKey(tag);
+  }
+
+  public List<String> findTags() {
+    return getSnapshot().reasonsByTag.keySet().asList();
+  }
+
+  public List<ValidReasonAssignment> findByProgramIdAndFacilityTypeId(UUID programId,
+      UUID facilityTypeId) {
+    return getSnapshot().assignments.get(new ProgramFacilityTypeKey(programId, facilityTypeId));
+  }
+
+  /**
+   * Finds the assignment of the given reason to the program and facility type, or null if the
+   * reason is not valid for them.
+   */
+  public ValidReasonAssignment findByProgramIdAndFacilityTypeIdAndReasonId(UUID programId,
+      UUID facilityTypeId, UUID reasonId) {
+    return findByProgramIdAndFacilityTypeId(programId, facilityTypeId)
+        .stream()
+        .filter(assignment -> assignment.getReason().getId().equals(reasonId))
+        .findFirst()
+        .orElse(null);
+  }
+
+  /**
+   * Loads the reasons and assignments from the database and replaces the current snapshot, unless
+   * a concurrent reload has already installed a newer one.
+   */
+  public void reload() {
+    Snapshot loaded = load();
+    Snapshot installed = snapshot.accumulateAndGet(loaded, (current, next) ->
+        null != current && current.version > next.version ? current : next);
+
+    LOGGER.debug("Reason catalog version {} loaded with {} reasons", installed.version,
+        installed.reasons.size());
+  }
+
+  /**
+   * Reloads the catalog if the reasons or assignments were changed since it was loaded, for
+   * example by another node.
+   */
+  @Scheduled(fixedDelayString = "${stockmanagement.reasonCatalog.versionCheckIntervalMillis}")
+  public void checkVersion() {
+    Snapshot current = snapshot.get();
+
+    if (null == current) {
+      // not used yet, will be loaded on the first lookup
+      return;
+    }
+
+    Long version = newReadWriteTransaction()
+        .execute(status -> reasonRepository.findCatalogVersion());
+
+    if (null != version && version != current.version) {
+      LOGGER.info("Reason catalog changed from version {} to {}, reloading", current.version,
+          version);
+      reload();
+    }
+  }
+
+  private Snapshot getSnapshot() {
+    Snapshot current = snapshot.get();
+
+    if (null == current) {
+      reload();
+      current = snapshot.get();
+    }
+
+    return current;
+  }
+
+  private Snapshot load() {
+    return newReadWriteTransaction().execute(status -> {
+      long version = reasonRepository.findCatalogVersion();
+
+      Map<UUID, StockCardLineItemReason> reasons = new LinkedHashMap<>();
+      for (StockCardLineItemReason reason : reasonRepository.findAllWithTags()) {
+        reasons.put(reason.getId(), copy(reason));
+      }
+
+      List<ValidReasonAssignment> assignments = new ArrayList<>();
+      for (ValidReasonAssignment assignment : validReasonAssignmentRepository.findAll()) {
+        assignments.add(copy(assignment, reasons.get(assignment.getReason().getId())));
+      }
+
+      return new Snapshot(version, reasons.values(), assignments);
+    });
+  }
+
+  // The version check and the reload run in new read-write transactions, also when the catalog
+  // is first used inside a read-only one, so that they are never routed to a lagging replica.
+  private TransactionTemplate newReadWriteTransaction() {
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    template.setReadOnly(false);
+    return template;
+  }
+
+  private StockCardLineItemReason copy(StockCardLineItemReason reason) {
+    StockCardLineItemReason copy = new StockCardLineItemReason(reason.getName(),
+        reason.getDescription(), reason.getReasonType(), reason.getReasonCategory(),
+        reason.getIsFreeTextAllowed(), Collections.unmodifiableList(
+            new ArrayList<>(reason.getTags())));
+    copy.setId(reason.getId());
+    return copy;
+  }
+
+  private ValidReasonAssignment copy(ValidReasonAssignment assignment,
+      StockCardLineItemReason reason) {
+    ValidReasonAssignment copy = new ValidReasonAssignment(assignment.getProgramId(),
+        assignment.getFacilityTypeId(), assignment.getHidden(), reason);
+    copy.setId(assignment.getId());
+    return copy;
+  }
+
+  private static final class Snapshot {
+    private final long version;
+    private final List<StockCardLineItemReason> reasons;
+    private final ImmutableMap<UUID, StockCardLineItemReason> reasonsById;
+    private final ImmutableMap<String, StockCardLineItemReason> reasonsByName;
+    private final ImmutableListMultimap<String, StockCardLineItemReason> reasonsByTag;
+    private final ImmutableListMultimap<ProgramFacilityTypeKey, ValidReasonAssignment> assignments;
+
+    private Snapshot(long version, Collection<StockCardLineItemReason> reasons,
+        List<ValidReasonAssignment> assignments) {
+      this.version = version;
+      this.reasons = ImmutableList.copyOf(reasons);
+
+      ImmutableMap.Builder<UUID, StockCardLineItemReason> byId = ImmutableMap.builder();
+      ImmutableMap.Builder<String, StockCardLineItemReason> byName = ImmutableMap.builder();
+      ImmutableListMultimap.Builder<String, StockCardLineItemReason> byTag =
+          ImmutableListMultimap.builder();
+
+      for (StockCardLineItemReason reason : reasons) {
+        byId.put(reason.getId(), reason);
+        byName.put(reason.getName(), reason);
+        reason.getTags().forEach(tag -> byTag.put(tag, reason));
+      }
+
+      ImmutableListMultimap.Builder<ProgramFacilityTypeKey, ValidReasonAssignment> byProgram =
+          ImmutableListMultimap.builder();
+      assignments.forEach(assignment -> byProgram.put(new ProgramFacilityTypeKey(
+          assignment.getProgramId(), assignment.getFacilityTypeId()), assignment));
+
+      this.reasonsById = byId.build();
+      this.reasonsByName = byName.build();
+      this.reasonsByTag = byTag.build();
+      this.assignments = byProgram.build();
+    }
+  }
+
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static final class ProgramFacilityTypeKey {
+    private final UUID programId;
+    private final UUID facilityTypeId;
+  }
+}
@@ -19,14 +19,20 @@ import static org.openlmis.stockmanagement.dto.ValidSourceDestinationDto.createF
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_FACILITY_NOT_FOUND;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_SOURCE_DESTINATION_ASSIGNMENT_ID_MISSING;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import org.openlmis.stockmanagement.domain.sourcedestination.Node;
 import org.openlmis.stockmanagement.domain.sourcedestination.Organization;
 import org.openlmis.stockmanagement.domain.sourcedestination.SourceDestinationAssignment;
@@ -56,6 +62,25 @@ public abstract class SourceDestinationBaseService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(SourceDestinationBaseService.class);
 
+  // Assignments only change through this service, which invalidates the caches of this instance.
+  // The TTL bounds how long changes made on other instances, and changes of facilities' geographic
+  // zones in reference data, take to be seen.
+  private static final long ASSIGNMENT_CACHE_SIZE = 10_000;
+  private static final long ASSIGNMENT_CACHE_TTL_MINUTES = 5;
+
+  // (program, facility type) -> assignments
+  private final Cache<ProgramFacilityTypeKey, List<? extends SourceDestinationAssignment>>
+      assignmentCache = CacheBuilder.newBuilder()
+          .maximumSize(ASSIGNMENT_CACHE_SIZE)
+          .expireAfterWrite(ASSIGNMENT_CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+          .build();
+
+  // (program, facility) -> ids of the nodes of the assignments matching the geo level affinity
+  private final Cache<ProgramFacilityKey, Set<UUID>> validNodeIdCache = CacheBuilder.newBuilder()
+      .maximumSize(ASSIGNMENT_CACHE_SIZE)
+      .expireAfterWrite(ASSIGNMENT_CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+      .build();
+
   @Autowired
   private ProgramFacilityTypeExistenceService programFacilityTypeExistenceService;
 
@@ -82,6 +107,7 @@ public abstract class SourceDestinationBaseService {
       throw new ValidationMessageException(new Message(errorKey));
     }
     repository.deleteById(assignmentId);
+    invalidateCaches();
   }
 
   /**
@@ -170,11 +196,89 @@ public abstract class SourceDestinationBaseService {
     boolean isOrganization = organizationRepository.existsById(referenceId);
     if (isRefFacility || isOrganization) {
       assignment.setNode(findOrCreateNode(referenceId, isRefFacility));
-      return createAssignmentDto(repository.save(assignment), null);
+      T saved = repository.save(assignment);
+      invalidateCaches();
+      return createAssignmentDto(saved, null);
     }
     throw new ValidationMessageException(new Message(errorKey));
   }
 
+  /**
+   * Returns the assignments of the given program and facility type. The result is cached and
+   * must not be modified.
+   *
+   * @param programId      program id
+   * @param facilityTypeId facility type id
+   * @param repository     assignment repository
+   * @param <T>            assignment type
+   * @return a list of assignments, empty if there are none or the facility type is unknown.
+   */
+  @SuppressWarnings("unchecked")
+  protected <T extends SourceDestinationAssignment> List<T> findCachedAssignments(
+      UUID programId, UUID facilityTypeId, SourceDestinationAssignmentRepository<T> repository) {
+    if (null == programId || null == facilityTypeId) {
+      return Collections.emptyList();
+    }
+
+    // every subclass has its own cache and always passes its own repository
+    ProgramFacilityTypeKey key = new ProgramFacilityTypeKey(programId, facilityTypeId);
+    List<T> assignments = (List<T>) assignmentCache.getIfPresent(key);
+
+    if (null == assignments) {
+      assignments = Collections.unmodifiableList(repository.findByProgramIdInAndFacilityTypeId(
+          Collections.singletonList(programId), facilityTypeId, Pageable.unpaged()));
+      assignmentCache.put(key, assignments);
+    }
+
+    return assignments;
+  }
+
+  /**
+   * Returns the ids of the nodes that are valid for the given program and facility, i.e. the
+   * nodes of the assignments of the facility's type that match the geo level affinity with the
+   * facility. The result is cached and must not be modified.
+   *
+   * @param programId  program id
+   * @param facility   facility
+   * @param repository assignment repository
+   * @param <T>        assignment type
+   * @return a set of node ids.
+   */
+  protected <T extends SourceDestinationAssignment> Set<UUID> findCachedValidNodeIds(
+      UUID programId, FacilityDto facility, SourceDestinationAssignmentRepository<T> repository) {
+    ProgramFacilityKey key = new ProgramFacilityKey(programId, facility.getId());
+    Set<UUID> nodeIds = validNodeIdCache.getIfPresent(key);
+
+    if (null == nodeIds) {
+      List<T> assignments = findCachedAssignments(programId,
+          null == facility.getType() ? null : facility.getType().getId(), repository);
+
+      List<UUID> facilityIds = assignments.stream()
+          .filter(assignment -> null != assignment.getGeoLevelAffinityId())
+          .filter(assignment -> assignment.getNode().isRefDataFacility())
+          .map(assignment -> assignment.getNode().getReferenceId())
+          .distinct()
+          .collect(Collectors.toList());
+      Map<UUID, FacilityDto> facilitiesById = facilityIds.isEmpty()
+          ? Collections.emptyMap()
+          : facilityRefDataService.findByIds(facilityIds);
+
+      nodeIds = Collections.unmodifiableSet(assignments.stream()
+          .filter(assignment -> !assignment.getNode().isRefDataFacility()
+              || hasGeoAffinity(assignment, facility, facilitiesById))
+          .map(assignment -> assignment.getNode().getId())
+          .collect(Collectors.toSet()));
+      validNodeIdCache.put(key, nodeIds);
+    }
+
+    return nodeIds;
+  }
+
+  private void invalidateCaches() {
+    assignmentCache.invalidateAll();
+    validNodeIdCache.invalidateAll();
+  }
+
   private <T extends SourceDestinationAssignment> Node findExistingNode(
       T assignment, UUID programId, UUID facilityTypeId) {
     programFacilityTypeExistenceService.checkProgramAndFacilityTypeExist(programId,
@@ -210,6 +314,10 @@ public abstract class SourceDestinationBaseService {
     FacilityDto facilityDto = facilitiesById.get(assignment.getNode().getReferenceId());
     UUID geoLevelAffinity = assignment.getGeoLevelAffinityId();
 
+    if (null == facilityDto) {
+      return false;
+    }
+
     Map<UUID, UUID> facilityGeoLevelMap = getFacilityGeoLevelZoneMap(facility);
     Map<UUID, UUID> assignmentFacilityGeoLevelZoneMap = getFacilityGeoLevelZoneMap(facilityDto);
 
@@ -395,4 +503,18 @@ public abstract class SourceDestinationBaseService {
         .map(assignment -> assignment.getNode().getReferenceId())
         .collect(Collectors.toList());
   }
+
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static final class ProgramFacilityTypeKey {
+    private final UUID programId;
+    private final UUID facilityTypeId;
+  }
+
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static final class ProgramFacilityKey {
+    private final UUID programId;
+    private final UUID facilityId;
+  }
 }
@@ -44,6 +44,9 @@ public class StockCardLineItemReasonService {
   @Autowired
   private StockCardLineItemReasonRepository reasonRepository;
 
+  @Autowired
+  private ReasonCatalog reasonCatalog;
+
   /**
    * Save or update stock card line item reason.
    *
@@ -55,7 +58,9 @@ public class StockCardLineItemReasonService {
     validateReasonNameDuplicate(reason);
     verifyInvariants(reason);
     LOGGER.debug("Is going to save reason");
-    return reasonRepository.save(reason);
+    StockCardLineItemReason saved = reasonRepository.save(reason);
+    reasonCatalog.reload();
+    return saved;
   }
 
   /**
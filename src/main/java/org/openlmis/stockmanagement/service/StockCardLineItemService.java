@@ -18,6 +18,7 @@ package org.openlmis.stockmanagement.service;
 import static org.apache.commons.collections.CollectionUtils.isNotEmpty;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERRRO_EVENT_SOH_EXCEEDS_LIMIT;
 
+import java.util.List;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
@@ -42,13 +43,24 @@ public class StockCardLineItemService {
    * @param stockCard the stockCard
    */
   public void populateStockOnHandLineItems(StockCard stockCard) {
-    int previousSoH = 0;
-
     if (isNotEmpty(stockCard.getLineItems())) {
       stockCard.reorderLineItems();
-      for (StockCardLineItem lineItem : stockCard.getLineItems()) {
-        previousSoH = populateStockOnHandLineItems(lineItem, previousSoH);
-      }
+      populateStockOnHandLineItems(stockCard.getLineItems(), 0);
+    }
+  }
+
+  /**
+   * Populate stock on hand of line items that are already in the stock card order, starting from
+   * the given opening stock on hand instead of zero.
+   *
+   * @param lineItems          the ordered line items of a single stock card
+   * @param openingStockOnHand stock on hand before the first of the line items
+   */
+  public void populateStockOnHandLineItems(List<StockCardLineItem> lineItems,
+      int openingStockOnHand) {
+    int previousSoH = openingStockOnHand;
+    for (StockCardLineItem lineItem : lineItems) {
+      previousSoH = populateStockOnHandLineItems(lineItem, previousSoH);
     }
   }
 
@@ -26,10 +26,14 @@ import static org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity.
 import static org.openlmis.stockmanagement.domain.reason.ReasonCategory.PHYSICAL_INVENTORY;
 import static org.openlmis.stockmanagement.service.PermissionService.STOCK_CARDS_VIEW;
 
+import com.google.common.collect.Lists;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -45,6 +49,7 @@ import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.domain.sourcedestination.Node;
 import org.openlmis.stockmanagement.domain.sourcedestination.Organization;
 import org.openlmis.stockmanagement.dto.StockCardDto;
+import org.openlmis.stockmanagement.dto.StockCardLineItemDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
@@ -67,6 +72,7 @@ import org.openlmis.stockmanagement.web.Pagination;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -120,6 +126,12 @@ public class StockCardService extends StockCardBaseService {
   @Autowired
   private HomeFacilityPermissionService homeFacilityPermissionService;
 
+  @Autowired
+  private StockVersionService stockVersionService;
+
+  @Value("${stockmanagement.eventProcessing.cardBatchSize}")
+  private int cardBatchSize;
+
   /**
    * Generate stock card line items and stock cards based on event, and persist them.
    *
@@ -129,8 +141,10 @@ public class StockCardService extends StockCardBaseService {
   @Transactional
   void saveFromEvent(StockEventDto stockEventDto, UUID savedEventId) {
 
-    List<StockCard> cardsToUpdate = new ArrayList<>();
-    List<StockCardLineItem> existingLineItems = new ArrayList<>();
+    // keyed/identity based, so that large events (e.g. physical inventories of national stores)
+    // are not quadratic in the number of line items
+    Map<OrderableLotIdentity, StockCard> cardsToUpdate = new LinkedHashMap<>();
+    Set<StockCardLineItem> existingLineItems = Collections.newSetFromMap(new IdentityHashMap<>());
     ZonedDateTime processedDate = now();
 
     for (StockEventLineItemDto eventLineItem : stockEventDto.getLineItems()) {
@@ -141,11 +155,15 @@ public class StockCardService extends StockCardBaseService {
       createLineItemFrom(stockEventDto, eventLineItem, stockCard, savedEventId, processedDate);
     }
 
-    cardRepository.saveAll(cardsToUpdate);
-    cardRepository.flush();
+    // in batches, so that the line items of all cards are not flushed and recalculated at once
+    for (List<StockCard> batch : Lists.partition(
+        new ArrayList<>(cardsToUpdate.values()), cardBatchSize)) {
+      cardRepository.saveAll(batch);
+      cardRepository.flush();
 
-    calculatedStockOnHandService.recalculateStockOnHand(
-        getSavedButNewLineItems(cardsToUpdate, existingLineItems));
+      calculatedStockOnHandService.recalculateStockOnHand(
+          getSavedButNewLineItems(batch, existingLineItems));
+    }
 
     stockEventDto.getContext().refreshCards();
 
@@ -164,15 +182,10 @@ public class StockCardService extends StockCardBaseService {
       return null;
     }
     StockCard foundCard = card.shallowCopy();
-    OAuth2Authentication authentication =
-        (OAuth2Authentication) SecurityContextHolder.getContext().getAuthentication();
 
     LOGGER.debug("Stock card found");
 
-    if (!authentication.isClientOnly() && !homeFacilityPermissionService
-        .checkFacilityAndHomeFacilityLinkage(foundCard.getFacilityId())) {
-      permissionService.canViewStockCard(foundCard.getProgramId(), foundCard.getFacilityId());
-    }
+    validateViewRights(foundCard.getProgramId(), foundCard.getFacilityId());
 
     stockCardLineItemService.populateStockOnHandLineItems(foundCard);
 
@@ -187,6 +200,20 @@ public class StockCardService extends StockCardBaseService {
     return cardDto;
   }
 
+  /**
+   * Checks that the current user can view the stock cards of the given program and facility. Users
+   * can view all stock cards of their home facility; clients can view all stock cards.
+   */
+  public void validateViewRights(UUID programId, UUID facilityId) {
+    OAuth2Authentication authentication =
+        (OAuth2Authentication) SecurityContextHolder.getContext().getAuthentication();
+
+    if (!authentication.isClientOnly() && !homeFacilityPermissionService
+        .checkFacilityAndHomeFacilityLinkage(facilityId)) {
+      permissionService.canViewStockCard(programId, facilityId);
+    }
+  }
+
   /**
    * Resolves a batch of stock cards by id into fully populated DTOs (stock on hand, names),
    * batching the reference-data lookups instead of per card. Unlike
@@ -233,24 +260,50 @@ public class StockCardService extends StockCardBaseService {
       if (dto.hasLot()) {
         dto.setLot(lots.get(dto.getLot().getId()));
       }
-      dto.getLineItems().forEach(lineItemDto -> {
-        StockCardLineItem lineItem = lineItemDto.getLineItem();
-        assignReasonName(lineItem);
-        lineItemDto.setSource(resolveNodeFacility(lineItem.getSource(), facilities));
-        lineItemDto.setDestination(resolveNodeFacility(lineItem.getDestination(), facilities));
-      });
+      assignSourceDestinationReasonNames(dto.getLineItems(), facilities);
     });
 
     return dtos;
   }
 
+  /**
+   * Resolves source/destination facilities and physical inventory reason names of the given line
+   * item DTOs, batching the facility lookup.
+   *
+   * @param lineItems the line item DTOs, possibly of different stock cards.
+   */
+  public void assignSourceDestinationReasonNames(List<StockCardLineItemDto> lineItems) {
+    Set<UUID> facilityNodeIds = collectLineItemFacilityNodeIds(lineItems);
+    Map<UUID, FacilityDto> facilities = facilityNodeIds.isEmpty()
+        ? emptyMap()
+        : facilityRefDataService.findByIds(facilityNodeIds);
+
+    assignSourceDestinationReasonNames(lineItems, facilities);
+  }
+
+  private void assignSourceDestinationReasonNames(List<StockCardLineItemDto> lineItems,
+      Map<UUID, FacilityDto> facilities) {
+    lineItems.forEach(lineItemDto -> {
+      StockCardLineItem lineItem = lineItemDto.getLineItem();
+      assignReasonName(lineItem);
+      lineItemDto.setSource(resolveNodeFacility(lineItem.getSource(), facilities));
+      lineItemDto.setDestination(resolveNodeFacility(lineItem.getDestination(), facilities));
+    });
+  }
+
   private Set<UUID> collectFacilityNodeIds(List<StockCardDto> dtos) {
+    return collectLineItemFacilityNodeIds(dtos.stream()
+        .flatMap(dto -> dto.getLineItems().stream())
+        .collect(Collectors.toList()));
+  }
+
+  private Set<UUID> collectLineItemFacilityNodeIds(Collection<StockCardLineItemDto> lineItems) {
     Set<UUID> nodeIds = new HashSet<>();
-    dtos.forEach(dto -> dto.getLineItems().forEach(lineItemDto -> {
+    lineItems.forEach(lineItemDto -> {
       StockCardLineItem lineItem = lineItemDto.getLineItem();
       addFacilityNodeId(nodeIds, lineItem.getSource());
       addFacilityNodeId(nodeIds, lineItem.getDestination());
-    }));
+    });
     return nodeIds;
   }
 
@@ -322,7 +375,8 @@ public class StockCardService extends StockCardBaseService {
   }
 
   /**
-   * Set stock cards to inactive.
+   * Set stock cards to inactive. The stock versions of their facilities and programs are
+   * incremented, so cached summaries do not show them as active anymore.
    *
    * @param stockCardIds stock card ids.
    */
@@ -348,10 +402,11 @@ public class StockCardService extends StockCardBaseService {
 
     cardRepository.saveAll(stockCards);
     cardRepository.flush();
+    stockVersionService.increment(stockCards);
   }
 
-  private List<StockCardLineItem> getSavedButNewLineItems(List<StockCard> cardsToUpdate,
-      List<StockCardLineItem> existingLineItems) {
+  private List<StockCardLineItem> getSavedButNewLineItems(Collection<StockCard> cardsToUpdate,
+      Set<StockCardLineItem> existingLineItems) {
     return cardsToUpdate.stream()
         .flatMap(card -> card.getLineItems().stream())
         .filter(item -> !existingLineItems.contains(item))
@@ -359,25 +414,19 @@ public class StockCardService extends StockCardBaseService {
   }
 
   private StockCard findOrCreateCard(StockEventDto eventDto, StockEventLineItemDto eventLineItem,
-      UUID savedEventId, List<StockCard> cardsToUpdate) {
+      UUID savedEventId, Map<OrderableLotIdentity, StockCard> cardsToUpdate) {
     OrderableLotIdentity identity = identityOf(eventLineItem);
     StockCard card = eventDto.getContext().findCard(identity);
 
     if (null == card) {
-      card = cardsToUpdate
-          .stream()
-          .filter(elem -> identityOf(elem).equals(identity))
-          .findFirst()
-          .orElse(null);
+      card = cardsToUpdate.get(identity);
     }
 
     if (null == card) {
       card = createStockCardFrom(eventDto, eventLineItem, savedEventId);
     }
 
-    if (cardsToUpdate.stream().noneMatch(elem -> identityOf(elem).equals(identity))) {
-      cardsToUpdate.add(card);
-    }
+    cardsToUpdate.putIfAbsent(identity, card);
 
     if (null != card && eventLineItem.getQuantity() > 0 && !card.isActive()) {
       card.setActive(true);
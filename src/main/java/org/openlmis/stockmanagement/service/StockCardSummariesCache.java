@@ -0,0 +1,141 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local cache of stock card summaries. Every entry remembers the stock versions (see
+ * {@link StockVersionService}) of the facility and programs it was built from and is served only
+ * while they are still the current ones, so a summary is rebuilt after the first stock event or
+ * card deactivation that changed it, on this or any other node. Approved products and other data
+ * of the reference data service are not versioned; {@code ttlSeconds} bounds how long a change
+ * there can go unnoticed.
+ *
+ * <p>Whether a lookup was a hit, a miss or found an outdated entry is counted in the
+ * {@code stockmanagement.summaryCache.requests} counter, tagged with the result. Size and
+ * evictions are reported as the {@code stockCardSummaries} cache metrics.
+ */
+@Component
+public class StockCardSummariesCache {
+
+  static final String CACHE_NAME = "stockCardSummaries";
+  static final String REQUESTS_METRIC = "stockmanagement.summaryCache.requests";
+
+  private final StockVersionService stockVersionService;
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final Cache<Object, CachedSummaries> cache;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param stockVersionService service of the versions entries are validated against
+   * @param meterRegistry       registry for the cache metrics
+   * @param enabled             whether summaries are cached at all
+   * @param maxSize             maximum number of cached summaries
+   * @param ttlSeconds          maximum time a summary is cached
+   */
+  @Autowired
+  public StockCardSummariesCache(StockVersionService stockVersionService,
+      MeterRegistry meterRegistry,
+      @Value("${stockmanagement.summaryCache.enabled}") boolean enabled,
+      @Value("${stockmanagement.summaryCache.maxSize}") long maxSize,
+      @Value("${stockmanagement.summaryCache.ttlSeconds}") long ttlSeconds) {
+    this.stockVersionService = stockVersionService;
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    if (enabled) {
+      GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+  }
+
+  /**
+   * Returns the cached summaries of the given key if they are still current, or loads and caches
+   * them. Cached summaries are shared by all callers and must not be modified.
+   *
+   * @param key         key of the summaries, made of everything they depend on
+   * @param facilityId  facility of the summaries
+   * @param programIds  programs of the summaries, all programs of the facility if empty
+   * @param loader      loads the summaries
+   * @param onHit       called with the cached summaries before they are returned, to check
+   *                    what the cache must not skip (like the rights of the user)
+   * @return the summaries
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, UUID facilityId, Collection<UUID> programIds,
+      Supplier<T> loader, Consumer<T> onHit) {
+    if (!enabled) {
+      return loader.get();
+    }
+
+    // read before loading, so a change committed meanwhile makes the entry outdated right away
+    Map<UUID, Long> versions = stockVersionService.getVersions(facilityId, programIds);
+    CachedSummaries cached = cache.getIfPresent(key);
+
+    if (null != cached && cached.versions.equals(versions)) {
+      count("hit");
+      T summaries = (T) cached.summaries;
+      onHit.accept(summaries);
+      return summaries;
+    }
+
+    count(null == cached ? "miss" : "outdated");
+    T summaries = loader.get();
+    cache.put(key, new CachedSummaries(versions, summaries));
+    return summaries;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  private void count(String result) {
+    meterRegistry.counter(REQUESTS_METRIC, "result", result).increment();
+  }
+
+  private static final class CachedSummaries {
+    private final Map<UUID, Long> versions;
+    private final Object summaries;
+
+    private CachedSummaries(Map<UUID, Long> versions, Object summaries) {
+      this.versions = versions;
+      this.summaries = summaries;
+    }
+  }
+}
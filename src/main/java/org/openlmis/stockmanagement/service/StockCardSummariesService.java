@@ -26,14 +26,17 @@ import static org.apache.commons.collections.CollectionUtils.isEmpty;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.AllArgsConstructor;
@@ -57,6 +60,7 @@ import org.openlmis.stockmanagement.service.referencedata.ApprovedProductReferen
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableFulfillReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.openlmis.stockmanagement.util.RequestParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -104,6 +108,12 @@ public class StockCardSummariesService extends StockCardBaseService {
   @Autowired
   private HomeFacilityPermissionService homeFacilityPermissionService;
 
+  @Autowired
+  private PrefetchExecutor prefetchExecutor;
+
+  @Autowired
+  private StockCardSummariesCache summariesCache;
+
   /**
    * Get a map of stock cards assigned to orderable ids.
    * Stock cards are grouped using orderable fulfills endpoint.
@@ -143,75 +153,34 @@ public class StockCardSummariesService extends StockCardBaseService {
   /**
    * Get a page of stock cards.
    *
+   * <p>The reads that do not depend on each other run concurrently: approved products (followed
+   * by the view rights check and the orderable fulfills), the home facility linkage check and the
+   * lot code search run on the {@link PrefetchExecutor}, while the stock cards are read on the
+   * calling thread as soon as the lot code search completes. Profiler stages measure how long the
+   * calling thread spent on (or waited for) each step.
+   *
+   * <p>If the {@link StockCardSummariesCache} is enabled, the summaries of the same search are
+   * reused until the stock of the facility changes; the view rights are checked every time.
+   *
    * @param params stock cards summaries search params.
    * @return page of stock cards.
    */
   public StockCardSummaries findStockCards(StockCardSummariesV2SearchParams params) {
-    Profiler profiler = new Profiler("FIND_STOCK_CARD_SUMMARIES_FOR_PARAMS");
-    profiler.setLogger(LOGGER);
-    OAuth2Authentication authentication =
-        (OAuth2Authentication) SecurityContextHolder.getContext().getAuthentication();
-
-    profiler.start("GET_APPROVED_PRODUCTS");
-    OrderablesAggregator approvedProducts = approvedProductReferenceDataService
-        .getApprovedProducts(params.getFacilityId(), params.getProgramIds(),
-            params.getOrderableIds(), params.getOrderableCode(), params.getOrderableName());
-
-    if (!authentication.isClientOnly() && !homeFacilityPermissionService
-        .checkFacilityAndHomeFacilityLinkage(params.getFacilityId())) {
-      profiler.start("VALIDATE_VIEW_RIGHTS");
-      approvedProducts.getApprovedProducts().stream().map(ApprovedProductDto::getProgram)
-          .map(ProgramDto::getId).distinct().forEach(
-              programId -> permissionService.canViewStockCard(programId, params.getFacilityId()));
+    if (!summariesCache.isEnabled()) {
+      return loadStockCardSummaries(params);
     }
 
-    profiler.start("FIND_ORDERABLE_FULFILL_BY_ID");
-    Map<UUID, OrderableFulfillDto> orderableFulfillMap = orderableFulfillService.findByIds(
-        approvedProducts.getIdentifiers());
-
-    profiler.start("FIND_STOCK_CARD_BY_PROGRAM_AND_FACILITY");
-
-    List<UUID> orderableIdsForStockCard = Collections.emptyList();
-    Set<UUID> lotCodeIds = Collections.emptySet();
-    String lotCode = params.getLotCode();
-
-    if (!StringUtils.isBlank(lotCode)) {
-      RequestParameters searchParams = RequestParameters
-          .init()
-          .set("size", Integer.MAX_VALUE)
-          .set("lotCode", lotCode);
-
-      Page<LotDto> lotPage = lotReferenceDataService.getPage(searchParams);
-
-      List<UUID> tradeItemsMatchingLotCode = lotPage.map(LotDto::getTradeItemId)
-          .toList();
-
-      lotCodeIds = lotPage.map(LotDto::getId).toSet();
-
-      searchParams = RequestParameters
-          .init()
-          .set("size", tradeItemsMatchingLotCode.size())
-          .set("tradeItemId", tradeItemsMatchingLotCode);
-
-      orderableIdsForStockCard = orderableReferenceDataService.getPage(searchParams)
-          .stream()
-          .map(OrderableDto::getId)
-              .collect(toList());
-    }
-
-    // FIXME: Fix page retrieving/calculation,
-    //  page size may be wrong when there are orderables matching not only by lot codes
-    List<StockCard> stockCards = calculatedStockOnHandService
-        .getStockCardsWithStockOnHand(params.getProgramIds(), params.getFacilityId(),
-            params.getAsOfDate(), orderableIdsForStockCard, lotCodeIds);
-
-    Page<ApprovedProductDto> orderablesPage = approvedProducts.getApprovedProducts();
-    StockCardSummaries result = new StockCardSummaries(
-        orderablesPage.getContent(), stockCards, orderableFulfillMap,
-            params.getAsOfDate(), orderablesPage.getTotalElements());
-
-    profiler.stop().log();
-    return result;
+    // nonEmptyOnly only filters the built summaries, so it is not a part of the key
+    List<Object> key = Arrays.asList("v2", params.getFacilityId(),
+        new HashSet<>(params.getProgramIds()),
+        null != params.getAsOfDate() ? params.getAsOfDate() : LocalDate.now(),
+        null == params.getOrderableIds() ? null : new HashSet<>(params.getOrderableIds()),
+        params.getOrderableCode(), params.getOrderableName(), params.getLotCode());
+
+    return summariesCache.get(key, params.getFacilityId(), params.getProgramIds(),
+        () -> loadStockCardSummaries(params),
+        summaries -> validateViewRights(programsOf(summaries.getApprovedProducts()),
+            params.getFacilityId()));
   }
 
   /**
@@ -236,6 +205,13 @@ public class StockCardSummariesService extends StockCardBaseService {
    */
   public Page<StockCardDto> findStockCards(UUID programId, UUID facilityId, Pageable pageable,
                                            Profiler profiler) {
+    return summariesCache.get(Arrays.asList("v1", programId, facilityId, pageable),
+        facilityId, Collections.singleton(programId),
+        () -> loadStockCardPage(programId, facilityId, pageable, profiler), page -> { });
+  }
+
+  private Page<StockCardDto> loadStockCardPage(UUID programId, UUID facilityId,
+      Pageable pageable, Profiler profiler) {
     profiler.start("FIND_BY_PROGRAM_AND_FACILITY");
     Page<StockCard> pageOfCards = stockCardRepository
         .findByProgramIdAndFacilityId(programId, facilityId, pageable);
@@ -245,6 +221,64 @@ public class StockCardSummariesService extends StockCardBaseService {
     return new PageImpl<>(cardDtos, pageable, pageOfCards.getTotalElements());
   }
 
+  private StockCardSummaries loadStockCardSummaries(StockCardSummariesV2SearchParams params) {
+    Profiler profiler = new Profiler("FIND_STOCK_CARD_SUMMARIES_FOR_PARAMS");
+    profiler.setLogger(LOGGER);
+    OAuth2Authentication authentication =
+        (OAuth2Authentication) SecurityContextHolder.getContext().getAuthentication();
+
+    profiler.start("START_PREFETCH");
+    CompletableFuture<OrderablesAggregator> approvedProductsFuture = prefetchExecutor.supply(
+        "GET_APPROVED_PRODUCTS", () -> approvedProductReferenceDataService
+            .getApprovedProducts(params.getFacilityId(), params.getProgramIds(),
+                params.getOrderableIds(), params.getOrderableCode(), params.getOrderableName()));
+
+    CompletableFuture<Boolean> viewRightsFuture = authentication.isClientOnly()
+        ? CompletableFuture.completedFuture(Boolean.TRUE)
+        : validateViewRights(approvedProductsFuture, params.getFacilityId());
+
+    final CompletableFuture<Map<UUID, OrderableFulfillDto>> orderableFulfillFuture =
+        prefetchExecutor.then("FIND_ORDERABLE_FULFILL_BY_ID", approvedProductsFuture,
+            approvedProducts -> orderableFulfillService.findByIds(
+                approvedProducts.getIdentifiers()));
+
+    CompletableFuture<LotCodeMatches> lotCodeMatchesFuture = findLotCodeMatches(params);
+
+    profiler.start("FIND_STOCK_CARD_BY_PROGRAM_AND_FACILITY");
+    LotCodeMatches lotCodeMatches;
+    try {
+      lotCodeMatches = PrefetchExecutor.join(lotCodeMatchesFuture);
+    } catch (RuntimeException ex) {
+      // a missing right is reported rather than a failed lot search, as it was checked first
+      PrefetchExecutor.join(viewRightsFuture);
+      throw ex;
+    }
+
+    // FIXME: Fix page retrieving/calculation,
+    //  page size may be wrong when there are orderables matching not only by lot codes
+    final List<StockCard> stockCards = calculatedStockOnHandService
+        .getStockCardsWithStockOnHand(params.getProgramIds(), params.getFacilityId(),
+            params.getAsOfDate(), lotCodeMatches.getOrderableIds(), lotCodeMatches.getLotIds());
+
+    profiler.start("GET_APPROVED_PRODUCTS");
+    final OrderablesAggregator approvedProducts = PrefetchExecutor.join(approvedProductsFuture);
+
+    profiler.start("VALIDATE_VIEW_RIGHTS");
+    PrefetchExecutor.join(viewRightsFuture);
+
+    profiler.start("FIND_ORDERABLE_FULFILL_BY_ID");
+    Map<UUID, OrderableFulfillDto> orderableFulfillMap =
+        PrefetchExecutor.join(orderableFulfillFuture);
+
+    Page<ApprovedProductDto> orderablesPage = approvedProducts.getApprovedProducts();
+    StockCardSummaries result = new StockCardSummaries(
+        orderablesPage.getContent(), stockCards, orderableFulfillMap,
+            params.getAsOfDate(), orderablesPage.getTotalElements());
+
+    ProfilerMetrics.stopAndLog(profiler);
+    return result;
+  }
+
   /**
    * Create dummy cards for approved products and lots that don't have cards yet.
    *
@@ -396,6 +430,106 @@ public class StockCardSummariesService extends StockCardBaseService {
         new StockCardAggregate(stockCards, calculatedStockOnHands));
   }
 
+  /**
+   * Returns whether the current user can view the stock cards of all the given programs at the
+   * facility. This is at least as strict as the check of
+   * {@link #findStockCards(StockCardSummariesV2SearchParams)}, which only covers the programs
+   * that have approved products at the facility.
+   */
+  public boolean canViewStockCards(Collection<UUID> programIds, UUID facilityId) {
+    OAuth2Authentication authentication =
+        (OAuth2Authentication) SecurityContextHolder.getContext().getAuthentication();
+
+    return authentication.isClientOnly()
+        || homeFacilityPermissionService.checkFacilityAndHomeFacilityLinkage(facilityId)
+        || programIds.stream()
+            .allMatch(programId -> permissionService.hasViewStockCardRight(programId, facilityId));
+  }
+
+  /**
+   * Checks that the current user can view the stock cards of the given programs at the facility.
+   * Users can view all stock cards of their home facility; clients can view all stock cards.
+   */
+  public void validateViewRights(Collection<UUID> programIds, UUID facilityId) {
+    OAuth2Authentication authentication =
+        (OAuth2Authentication) SecurityContextHolder.getContext().getAuthentication();
+
+    if (!authentication.isClientOnly()) {
+      validateViewRights(
+          homeFacilityPermissionService.checkFacilityAndHomeFacilityLinkage(facilityId),
+          programIds, facilityId);
+    }
+  }
+
+  // the home facility linkage check runs alongside the approved products; the rights of each of
+  // their programs are checked once both are known
+  private CompletableFuture<Boolean> validateViewRights(
+      CompletableFuture<OrderablesAggregator> approvedProductsFuture, UUID facilityId) {
+    CompletableFuture<Boolean> linkedFuture = prefetchExecutor.supply(
+        "CHECK_HOME_FACILITY_LINKAGE",
+        () -> homeFacilityPermissionService.checkFacilityAndHomeFacilityLinkage(facilityId));
+
+    return prefetchExecutor.then("VALIDATE_VIEW_RIGHTS",
+        approvedProductsFuture.thenCombine(linkedFuture, ImmutablePair::of),
+        pair -> {
+          validateViewRights(pair.getRight(),
+              programsOf(pair.getLeft().getApprovedProducts().getContent()), facilityId);
+          return Boolean.TRUE;
+        });
+  }
+
+  private void validateViewRights(boolean linkedToHomeFacility, Collection<UUID> programIds,
+      UUID facilityId) {
+    if (!linkedToHomeFacility) {
+      programIds.forEach(programId -> permissionService.canViewStockCard(programId, facilityId));
+    }
+  }
+
+  private static List<UUID> programsOf(List<ApprovedProductDto> approvedProducts) {
+    return approvedProducts.stream().map(ApprovedProductDto::getProgram)
+        .map(ProgramDto::getId).distinct().collect(toList());
+  }
+
+  private CompletableFuture<LotCodeMatches> findLotCodeMatches(
+      StockCardSummariesV2SearchParams params) {
+    String lotCode = params.getLotCode();
+
+    if (StringUtils.isBlank(lotCode)) {
+      return CompletableFuture.completedFuture(
+          new LotCodeMatches(Collections.emptyList(), Collections.emptySet()));
+    }
+
+    CompletableFuture<Page<LotDto>> lotPageFuture = prefetchExecutor.supply(
+        "FIND_LOTS_BY_CODE", () -> lotReferenceDataService.getPage(RequestParameters
+            .init()
+            .set("size", Integer.MAX_VALUE)
+            .set("lotCode", lotCode)));
+
+    return prefetchExecutor.then("FIND_ORDERABLES_BY_TRADE_ITEM", lotPageFuture, lotPage -> {
+      List<UUID> tradeItemsMatchingLotCode = lotPage.map(LotDto::getTradeItemId)
+          .toList();
+
+      RequestParameters searchParams = RequestParameters
+          .init()
+          .set("size", tradeItemsMatchingLotCode.size())
+          .set("tradeItemId", tradeItemsMatchingLotCode);
+
+      List<UUID> orderableIds = orderableReferenceDataService.getPage(searchParams)
+          .stream()
+          .map(OrderableDto::getId)
+          .collect(toList());
+
+      return new LotCodeMatches(orderableIds, lotPage.map(LotDto::getId).toSet());
+    });
+  }
+
+  @AllArgsConstructor
+  @Getter
+  private static class LotCodeMatches {
+    private List<UUID> orderableIds;
+    private Set<UUID> lotIds;
+  }
+
   @AllArgsConstructor
   @Getter
   private static class OrderableLot implements IdentifiableByOrderableLot {
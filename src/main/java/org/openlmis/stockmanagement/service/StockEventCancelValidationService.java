@@ -46,7 +46,6 @@ import org.openlmis.stockmanagement.dto.StockEventCancellationLineErrorDto;
 import org.openlmis.stockmanagement.exception.StockEventCancellationException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.StockEventLineItemRepository;
 import org.openlmis.stockmanagement.util.Message;
 import org.springframework.stereotype.Service;
@@ -64,7 +63,7 @@ public class StockEventCancelValidationService {
 
   private final StockEventLineItemRepository stockEventLineItemRepository;
   private final PhysicalInventoriesRepository physicalInventoriesRepository;
-  private final StockCardLineItemReasonRepository reasonRepository;
+  private final ReasonCatalog reasonCatalog;
 
   /**
    * Validates that the selected line items of the given event can be cancelled. Collects every
@@ -149,7 +148,7 @@ public class StockEventCancelValidationService {
     if (reasonIds.isEmpty()) {
       return emptySet();
     }
-    return reasonRepository.findByIdIn(reasonIds).stream()
+    return reasonCatalog.findByIdIn(reasonIds).stream()
         .filter(reason -> reason.getTags().contains(CANCEL_TAG))
         .map(StockCardLineItemReason::getId)
         .collect(toSet());
@@ -17,7 +17,10 @@ package org.openlmis.stockmanagement.service;
 
 import static org.openlmis.stockmanagement.service.PermissionService.STOCK_INVENTORIES_EDIT;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import org.hibernate.Hibernate;
 import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.dto.StockEventDto;
@@ -25,6 +28,7 @@ import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.dto.referencedata.RightDto;
 import org.openlmis.stockmanagement.service.notifier.StockoutNotifier;
 import org.openlmis.stockmanagement.service.referencedata.RightReferenceDataService;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -53,27 +57,62 @@ public class StockEventNotificationProcessor {
    * @param eventDto the stock event to process
    */
   public void callAllNotifications(StockEventDto eventDto) {
-    RightDto right = rightReferenceDataService.findRight(STOCK_INVENTORIES_EDIT);
-    eventDto
-        .getLineItems()
-        .forEach(line -> callNotifications(eventDto, line, right.getId()));
+    notifyStockEditors(findStockedOutCards(eventDto));
   }
 
-  private void callNotifications(StockEventDto event, StockEventLineItemDto eventLine,
-      UUID rightId) {
-    XLOGGER.entry(event, eventLine);
-    Profiler profiler = new Profiler("CALL_NOTIFICATION_FOR_LINE_ITEM");
+  /**
+   * Finds the stock cards of the event's line items whose stock on hand has gone to zero, one per
+   * line item. Reads the stock cards only, so it belongs in the transaction that saved the event;
+   * their line items are loaded so that the cards can be used after it ended.
+   *
+   * @param eventDto the processed stock event
+   * @return the stocked out cards
+   */
+  public List<StockCard> findStockedOutCards(StockEventDto eventDto) {
+    XLOGGER.entry(eventDto);
+    Profiler profiler = new Profiler("FIND_STOCKED_OUT_CARDS");
     profiler.setLogger(XLOGGER);
 
-    profiler.start("COPY_STOCK_CARD");
-    OrderableLotIdentity identity = OrderableLotIdentity.identityOf(eventLine);
-    StockCard stockCard = event.getContext().findCard(identity);
+    List<StockCard> stockedOutCards = new ArrayList<>();
+
+    for (StockEventLineItemDto eventLine : eventDto.getLineItems()) {
+      StockCard stockCard = eventDto.getContext()
+          .findCard(OrderableLotIdentity.identityOf(eventLine));
+
+      if (stockCard.getStockOnHand() == 0) {
+        Hibernate.initialize(stockCard.getLineItems());
+        stockedOutCards.add(stockCard);
+      }
+    }
+
+    ProfilerMetrics.stopAndLog(profiler);
+    XLOGGER.exit(stockedOutCards);
+    return stockedOutCards;
+  }
 
-    if (stockCard.getStockOnHand() == 0) {
-      stockoutNotifier.notifyStockEditors(stockCard, rightId);
+  /**
+   * Sends a stockout notification to all editors of each of the given stock cards.
+   *
+   * @param stockedOutCards the cards found by {@link #findStockedOutCards(StockEventDto)}
+   */
+  public void notifyStockEditors(List<StockCard> stockedOutCards) {
+    if (stockedOutCards.isEmpty()) {
+      return;
     }
 
-    profiler.stop().log();
+    RightDto right = rightReferenceDataService.findRight(STOCK_INVENTORIES_EDIT);
+    stockedOutCards.forEach(stockCard -> callNotifications(stockCard, right.getId()));
+  }
+
+  private void callNotifications(StockCard stockCard, UUID rightId) {
+    XLOGGER.entry(stockCard);
+    Profiler profiler = new Profiler("CALL_NOTIFICATION_FOR_LINE_ITEM");
+    profiler.setLogger(XLOGGER);
+
+    profiler.start("NOTIFY_STOCK_EDITORS");
+    stockoutNotifier.notifyStockEditors(stockCard, rightId);
+
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit();
   }
 }
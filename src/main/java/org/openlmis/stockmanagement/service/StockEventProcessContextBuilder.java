@@ -15,17 +15,19 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static org.apache.commons.collections.CollectionUtils.isEmpty;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.slf4j.ext.XLoggerFactory.getXLogger;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import org.openlmis.stockmanagement.domain.card.StockCard;
@@ -42,10 +44,7 @@ import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import org.openlmis.stockmanagement.repository.NodeRepository;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
-import org.openlmis.stockmanagement.repository.ValidDestinationAssignmentRepository;
-import org.openlmis.stockmanagement.repository.ValidSourceAssignmentRepository;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
@@ -54,6 +53,7 @@ import org.openlmis.stockmanagement.util.AuthenticationHelper;
 import org.openlmis.stockmanagement.util.LazyGrouping;
 import org.openlmis.stockmanagement.util.LazyList;
 import org.openlmis.stockmanagement.util.LazyResource;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.openlmis.stockmanagement.util.ReferenceDataSupplier;
 import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.slf4j.Logger;
@@ -61,7 +61,6 @@ import org.slf4j.ext.XLogger;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.stereotype.Service;
@@ -78,6 +77,11 @@ public class StockEventProcessContextBuilder {
   private static final Logger LOGGER = getLogger(StockEventProcessContextBuilder.class);
   private static final XLogger XLOGGER = getXLogger(StockEventProcessContextBuilder.class);
 
+  public enum LoadMode {
+    LAZY,
+    EAGER_PARALLEL
+  }
+
   @Autowired
   private AuthenticationHelper authenticationHelper;
 
@@ -94,7 +98,7 @@ public class StockEventProcessContextBuilder {
   private LotReferenceDataService lotReferenceDataService;
 
   @Autowired
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   @Autowired
   private NodeRepository nodeRepository;
@@ -106,18 +110,30 @@ public class StockEventProcessContextBuilder {
   private CalculatedStockOnHandService calculatedStockOnHandService;
 
   @Autowired
-  private ValidSourceAssignmentRepository validSourceAssignmentRepository;
+  private ValidSourceService validSourceService;
 
   @Autowired
-  private ValidDestinationAssignmentRepository validDestinationAssignmentRepository;
+  private ValidDestinationService validDestinationService;
+
+  @Autowired
+  private PrefetchExecutor prefetchExecutor;
 
   @Value("${stockmanagement.kit.unpack.reasonId}")
   private UUID unpackReasonId;
 
+  @Value("${stockmanagement.eventProcessing.contextLoadMode}")
+  private LoadMode loadMode;
+
   /**
    * Before processing events, put all needed ref data into context so we don't have to do frequent
    * network requests.
    *
+   * <p>In {@link LoadMode#EAGER_PARALLEL} mode the resources every event needs are loaded before
+   * the context is returned: the requests to reference data (user, program, facility, orderables
+   * and lots) are started concurrently on the {@link PrefetchExecutor}, the database resources are
+   * loaded on the calling thread meanwhile, and then all of them are joined. Events without a
+   * program, facility or line items fail validation anyway, so their context is left lazy.
+   *
    * @param eventDto event dto.
    * @return a context object that includes all needed ref data.
    */
@@ -128,6 +144,7 @@ public class StockEventProcessContextBuilder {
 
     LOGGER.info("build stock event process context");
     StockEventProcessContext context = new StockEventProcessContext();
+    boolean prefetch = LoadMode.EAGER_PARALLEL == loadMode && canPrefetch(eventDto);
 
     profiler.start("CREATE_LAZY_USER");
     OAuth2Authentication authentication = (OAuth2Authentication) SecurityContextHolder
@@ -141,7 +158,8 @@ public class StockEventProcessContextBuilder {
     if (authentication.isClientOnly()) {
       userIdSupplier = eventDto::getUserId;
     } else {
-      userIdSupplier = () -> authenticationHelper.getCurrentUser().getId();
+      userIdSupplier = remote(context, prefetch, "USER",
+          () -> authenticationHelper.getCurrentUser().getId());
     }
 
     LazyResource<UUID> userId = new LazyResource<>(userIdSupplier);
@@ -149,17 +167,15 @@ public class StockEventProcessContextBuilder {
 
     profiler.start("CREATE_LAZY_PROGRAM");
     UUID programId = eventDto.getProgramId();
-    Supplier<ProgramDto> programSupplier = new ReferenceDataSupplier<>(
-        programService, programId
-    );
+    Supplier<ProgramDto> programSupplier = remote(context, prefetch, "PROGRAM",
+        new ReferenceDataSupplier<>(programService, programId));
     LazyResource<ProgramDto> program = new LazyResource<>(programSupplier);
     context.setProgram(program);
 
     profiler.start("CREATE_LAZY_FACILITY");
     UUID facilityId = eventDto.getFacilityId();
-    Supplier<FacilityDto> facilitySupplier = new ReferenceDataSupplier<>(
-        facilityService, facilityId
-    );
+    Supplier<FacilityDto> facilitySupplier = remote(context, prefetch, "FACILITY",
+        new ReferenceDataSupplier<>(facilityService, facilityId));
     LazyResource<FacilityDto> facility = new LazyResource<>(facilitySupplier);
     context.setFacility(facility);
 
@@ -168,20 +184,21 @@ public class StockEventProcessContextBuilder {
         .stream()
         .map(StockEventLineItemDto::getOrderableId)
         .collect(Collectors.toList());
-    Supplier<List<OrderableDto>> productsSupplier = () -> orderableReferenceDataService
-        .findByIds(orderableIds);
+    Supplier<List<OrderableDto>> productsSupplier = remote(context, prefetch, "ORDERABLES",
+        () -> orderableReferenceDataService.findByIds(orderableIds));
     LazyList<OrderableDto> products = new LazyList<>(productsSupplier);
     context.setAllApprovedProducts(products);
 
     profiler.start("CREATE_LAZY_LOTS");
-    Supplier<List<LotDto>> lotsSupplier = () -> getLots(eventDto);
+    Supplier<List<LotDto>> lotsSupplier = remote(context, prefetch, "LOTS",
+        () -> getLots(eventDto));
     LazyList<LotDto> lots = new LazyList<>(lotsSupplier);
     LazyGrouping<UUID, LotDto> lotsGroupedById = new LazyGrouping<>(lots, LotDto::getId);
     context.setLots(lotsGroupedById);
 
     profiler.start("CREATE_LAZY_EVENT_REASONS");
-    Supplier<List<StockCardLineItemReason>> eventReasonsSupplier = () -> reasonRepository
-        .findByIdIn(eventDto.getReasonIds());
+    Supplier<List<StockCardLineItemReason>> eventReasonsSupplier = context.timed("EVENT_REASONS",
+        () -> reasonCatalog.findByIdIn(eventDto.getReasonIds()));
     LazyList<StockCardLineItemReason> eventReasons = new LazyList<>(eventReasonsSupplier);
     LazyGrouping<UUID, StockCardLineItemReason> eventReasonsGroupedById = new LazyGrouping<>(
         eventReasons, StockCardLineItemReason::getId
@@ -189,16 +206,16 @@ public class StockEventProcessContextBuilder {
     context.setEventReasons(eventReasonsGroupedById);
 
     profiler.start("CREATE_LAZY_NODES");
-    Supplier<List<Node>> nodesSupplier = () -> nodeRepository
-        .findByIdIn(eventDto.getNodeIds());
+    Supplier<List<Node>> nodesSupplier = context.timed("NODES",
+        () -> nodeRepository.findByIdIn(eventDto.getNodeIds()));
     LazyList<Node> nodes = new LazyList<>(nodesSupplier);
     LazyGrouping<UUID, Node> nodesGroupedById = new LazyGrouping<>(nodes, Node::getId);
     context.setNodes(nodesGroupedById);
 
     profiler.start("CREATE_LAZY_STOCK_CARDS");
-    Supplier<List<StockCard>> cardsSupplier = () -> calculatedStockOnHandService
-        .getStockCardsWithStockOnHandByOrderableIds(eventDto.getProgramId(),
-            eventDto.getFacilityId(), orderableIds);
+    Supplier<List<StockCard>> cardsSupplier = context.timed("STOCK_CARDS",
+        () -> calculatedStockOnHandService.getStockCardsWithStockOnHandByOrderableIds(
+            eventDto.getProgramId(), eventDto.getFacilityId(), orderableIds));
     LazyList<StockCard> cards = new LazyList<>(cardsSupplier);
     LazyGrouping<OrderableLotIdentity, StockCard> cardsGroupedByIdentity = new LazyGrouping<>(
         cards, OrderableLotIdentity::identityOf
@@ -206,7 +223,8 @@ public class StockEventProcessContextBuilder {
     context.setCards(cardsGroupedByIdentity);
 
     profiler.start("CREATE_LAZY_CARD_REASONS");
-    Supplier<List<StockCardLineItemReason>> cardReasonsSupplier = () -> getCardReasons(eventDto);
+    Supplier<List<StockCardLineItemReason>> cardReasonsSupplier = context.timed("CARD_REASONS",
+        () -> getCardReasons(eventDto));
     LazyList<StockCardLineItemReason> cardReasons = new LazyList<>(cardReasonsSupplier);
     LazyGrouping<UUID, StockCardLineItemReason> cardReasonsGroupedById = new LazyGrouping<>(
         cardReasons, StockCardLineItemReason::getId
@@ -214,26 +232,65 @@ public class StockEventProcessContextBuilder {
     context.setCardReasons(cardReasonsGroupedById);
 
     profiler.start("CREATE_LAZY_SOURCES");
-    Supplier<List<ValidSourceAssignment>> sourcesSupplier = () -> validSourceAssignmentRepository
-        .findByProgramIdInAndFacilityTypeId(Collections.singletonList(eventDto.getProgramId()),
-            context.getFacilityTypeId(), Pageable.unpaged());
+    Supplier<List<ValidSourceAssignment>> sourcesSupplier = context.timed("SOURCES",
+        () -> validSourceService
+            .findSourceAssignments(eventDto.getProgramId(), context.getFacilityTypeId()));
     LazyList<ValidSourceAssignment> sources = new LazyList<>(sourcesSupplier);
     context.setSources(sources);
 
     profiler.start("CREATE_LAZY_DESTINATIONS");
-    Supplier<List<ValidDestinationAssignment>> destinationsSupplier = () ->
-        validDestinationAssignmentRepository
-        .findByProgramIdInAndFacilityTypeId(Collections.singletonList(eventDto.getProgramId()),
-            context.getFacilityTypeId(), Pageable.unpaged());
+    Supplier<List<ValidDestinationAssignment>> destinationsSupplier = context.timed(
+        "DESTINATIONS", () -> validDestinationService
+            .findDestinationAssignments(eventDto.getProgramId(), context.getFacilityTypeId()));
     LazyList<ValidDestinationAssignment> destinations = new LazyList<>(destinationsSupplier);
     context.setDestinations(destinations);
 
-    profiler.stop().log();
+    if (prefetch) {
+      // database resources first, so that they are loaded while the reference data requests are
+      // in flight; sources and destinations last, as they need the facility type. Card reasons
+      // are only needed by a few events and read the whole history of the facility, so they stay
+      // lazy.
+      profiler.start("PREFETCH");
+      Stream.of(cards, nodes, eventReasons, userId, program, facility, products, lots, sources,
+          destinations).forEach(this::prefetch);
+      LOGGER.debug("Prefetched stock event context resources in {} ms",
+          context.getResourceLoadTimes());
+    }
+
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(context);
 
     return context;
   }
 
+  private boolean canPrefetch(StockEventDto eventDto) {
+    return null != eventDto.getProgramId() && null != eventDto.getFacilityId()
+        && !isEmpty(eventDto.getLineItems());
+  }
+
+  // in eager mode the request is started right away and the lazy resource just waits for it
+  private <T> Supplier<T> remote(StockEventProcessContext context, boolean prefetch,
+      String resource, Supplier<T> loader) {
+    Supplier<T> timed = context.timed(resource, loader);
+
+    if (!prefetch) {
+      return timed;
+    }
+
+    CompletableFuture<T> future = prefetchExecutor.supply("EVENT_CONTEXT_" + resource, timed);
+    return () -> PrefetchExecutor.join(future);
+  }
+
+  // a resource that fails to load is left unretrieved, so that its exception is thrown by the
+  // validator that needs it, as in lazy mode
+  private void prefetch(LazyResource<?> resource) {
+    try {
+      resource.get();
+    } catch (RuntimeException ex) {
+      LOGGER.debug("Could not prefetch stock event context resource", ex);
+    }
+  }
+
   private List<LotDto> getLots(StockEventDto eventDto) {
     return eventDto
         .getLineItems()
@@ -256,6 +313,6 @@ public class StockEventProcessContextBuilder {
         .map(StockCardLineItemReason::getId)
         .collect(Collectors.toSet());
 
-    return reasonRepository.findByIdIn(reasonIds);
+    return reasonCatalog.findByIdIn(reasonIds);
   }
 }
@@ -0,0 +1,213 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity.identityOf;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Transaction scoped advisory locks that serialize stock event processing so that concurrent
+ * recalculations of the same stock cards cannot interleave or deadlock.
+ *
+ * <p>In {@link LockMode#FACILITY_PROGRAM} mode every event takes one exclusive lock on its
+ * facility and program. In {@link LockMode#STOCK_CARD} mode an event takes a shared lock on its
+ * facility and program plus an exclusive lock per orderable/lot it touches, so events on unrelated
+ * products of the same facility run in parallel. Physical inventories still take the exclusive
+ * facility/program lock in both modes, because they read the stock on hand of every card.
+ */
+@Component
+public class StockEventProcessingLock {
+
+  static final String LOCK_WAIT_METRIC = "stockmanagement.event.lock.wait";
+
+  // pg_advisory_xact_lock(bigint) and pg_advisory_xact_lock(int, int) use separate key spaces,
+  // so the facility/program locks never collide with the per-card ones.
+  private static final String FACILITY_PROGRAM_LOCK =
+      "SELECT pg_advisory_xact_lock(hashtext(?))";
+  private static final String FACILITY_PROGRAM_SHARED_LOCK =
+      "SELECT pg_advisory_xact_lock_shared(hashtext(?))";
+  private static final String STOCK_CARD_LOCK =
+      "SELECT pg_advisory_xact_lock(hashtext(?), ?)";
+
+  public enum LockMode {
+    FACILITY_PROGRAM,
+    STOCK_CARD
+  }
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${stockmanagement.eventProcessing.lockMode}")
+  private LockMode lockMode;
+
+  /**
+   * Acquires the locks required to process the given event. The locks are released when the
+   * current transaction ends.
+   *
+   * @param eventDto event that is going to be processed
+   */
+  public void acquire(StockEventDto eventDto) {
+    String facilityProgramKey = getFacilityProgramKey(eventDto.getFacilityId(),
+        eventDto.getProgramId());
+    long start = System.nanoTime();
+
+    // Raw JDBC: pg_advisory_xact_lock returns void (unmappable as a query result) and a "::" cast
+    // would clash with Hibernate's ":" parameters; the lock is transaction scoped via doWork.
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      if (LockMode.FACILITY_PROGRAM == lockMode || eventDto.isPhysicalInventory()) {
+        try (PreparedStatement statement = connection.prepareStatement(FACILITY_PROGRAM_LOCK)) {
+          statement.setString(1, facilityProgramKey);
+          statement.execute();
+        }
+        return;
+      }
+
+      try (PreparedStatement statement =
+          connection.prepareStatement(FACILITY_PROGRAM_SHARED_LOCK)) {
+        statement.setString(1, facilityProgramKey);
+        statement.execute();
+      }
+
+      // Every transaction takes its card locks in ascending key order, so two events touching
+      // overlapping cards can wait for each other but never deadlock.
+      try (PreparedStatement statement = connection.prepareStatement(STOCK_CARD_LOCK)) {
+        for (Integer cardKey : getStockCardKeys(eventDto)) {
+          statement.setString(1, facilityProgramKey);
+          statement.setInt(2, cardKey);
+          statement.execute();
+        }
+      }
+    });
+
+    Timer
+        .builder(LOCK_WAIT_METRIC)
+        .description("Time spent waiting for stock event processing locks")
+        .tag("facilityId", String.valueOf(eventDto.getFacilityId()))
+        .tag("mode", lockMode.name())
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Acquires the exclusive lock on the given facility and program, which waits for (and blocks)
+   * the processing of any event of them in either lock mode. The lock is released when the
+   * current transaction ends.
+   */
+  public void acquire(UUID facilityId, UUID programId) {
+    String facilityProgramKey = getFacilityProgramKey(facilityId, programId);
+
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(FACILITY_PROGRAM_LOCK)) {
+        statement.setString(1, facilityProgramKey);
+        statement.execute();
+      }
+    });
+  }
+
+  /**
+   * Acquires the locks required to process all the given events in one transaction, before any of
+   * them is processed. The locks are taken by facility and program in ascending key order and,
+   * within a facility and program, on the cards of all its events in ascending key order, so
+   * concurrent batches cannot deadlock whatever the order of their events. Processing the events
+   * afterwards re-acquires locks the transaction already holds, which does not wait.
+   *
+   * @param events events that are going to be processed in the current transaction
+   */
+  public void acquireAll(Collection<StockEventDto> events) {
+    Map<String, List<StockEventDto>> groups = events.stream()
+        .collect(Collectors.groupingBy(
+            event -> getFacilityProgramKey(event.getFacilityId(), event.getProgramId()),
+            TreeMap::new, Collectors.toList()));
+
+    for (Map.Entry<String, List<StockEventDto>> group : groups.entrySet()) {
+      boolean exclusive = LockMode.FACILITY_PROGRAM == lockMode
+          || group.getValue().stream().anyMatch(StockEventDto::isPhysicalInventory);
+      SortedSet<Integer> cardKeys = new TreeSet<>();
+      if (!exclusive) {
+        group.getValue().forEach(event -> cardKeys.addAll(getStockCardKeys(event)));
+      }
+
+      long start = System.nanoTime();
+      entityManager.unwrap(Session.class).doWork(connection -> {
+        try (PreparedStatement statement = connection.prepareStatement(exclusive
+            ? FACILITY_PROGRAM_LOCK : FACILITY_PROGRAM_SHARED_LOCK)) {
+          statement.setString(1, group.getKey());
+          statement.execute();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(STOCK_CARD_LOCK)) {
+          for (Integer cardKey : cardKeys) {
+            statement.setString(1, group.getKey());
+            statement.setInt(2, cardKey);
+            statement.execute();
+          }
+        }
+      });
+
+      Timer
+          .builder(LOCK_WAIT_METRIC)
+          .description("Time spent waiting for stock event processing locks")
+          .tag("facilityId", String.valueOf(group.getValue().get(0).getFacilityId()))
+          .tag("mode", lockMode.name())
+          .register(meterRegistry)
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Returns the key of the given facility and program. Anything that locks several facilities and
+   * programs in one transaction (these advisory locks, the stock version rows) does so in
+   * ascending order of this key, so concurrent transactions cannot deadlock on them.
+   */
+  public static String getFacilityProgramKey(UUID facilityId, UUID programId) {
+    return facilityId + ":" + programId;
+  }
+
+  static SortedSet<Integer> getStockCardKeys(StockEventDto eventDto) {
+    SortedSet<Integer> keys = new TreeSet<>();
+
+    if (null != eventDto.getLineItems()) {
+      for (StockEventLineItemDto lineItem : eventDto.getLineItems()) {
+        keys.add(identityOf(lineItem).hashCode());
+      }
+    }
+
+    return keys;
+  }
+}
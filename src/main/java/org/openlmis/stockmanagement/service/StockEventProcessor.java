@@ -17,13 +17,18 @@ package org.openlmis.stockmanagement.service;
 
 import static org.openlmis.stockmanagement.dto.PhysicalInventoryDto.fromEventDto;
 
-import java.sql.PreparedStatement;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import org.apache.commons.lang3.StringUtils;
-import org.hibernate.Session;
+import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.domain.event.StockEventLineItem;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
@@ -33,6 +38,8 @@ import org.openlmis.stockmanagement.extension.ExtensionManager;
 import org.openlmis.stockmanagement.extension.point.ExtensionPointId;
 import org.openlmis.stockmanagement.extension.point.StockEventPostProcessor;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
+import org.openlmis.stockmanagement.util.StatementCountingInspector;
 import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,17 +48,27 @@ import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * A service that is in charge of saving stock events and generating stock cards and line items from
  * stock events.
  */
 @Service
+@SuppressWarnings("PMD.TooManyMethods")
 public class StockEventProcessor {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(StockEventProcessor.class);
   private static final XLogger XLOGGER = XLoggerFactory.getXLogger(StockEventProcessor.class);
 
+  static final String STATEMENTS_METRIC = "stockmanagement.event.statements";
+  static final String EVENTS_METRIC = "stockmanagement.events";
+  static final String LINE_ITEMS_METRIC = "stockmanagement.event.lineitems";
+  static final String TRANSACTION_METRIC = "stockmanagement.event.transaction";
+
   @Autowired
   private StockEventProcessContextBuilder contextBuilder;
 
@@ -73,65 +90,189 @@ public class StockEventProcessor {
   @Autowired
   private ExtensionManager extensionManager;
 
-  @PersistenceContext
-  private EntityManager entityManager;
-  
+  @Autowired
+  private StockEventProcessingLock processingLock;
+
   @Autowired
   private DocumentNumberGenerator documentNumberGenerator;
 
+  @Autowired
+  private StockVersionService stockVersionService;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
   /**
-   * Validate and persist event and create stock card and line items from it.
+   * Validate and persist event and create stock card and line items from it. The number of JDBC
+   * statements this takes is recorded in the {@code stockmanagement.event.statements} summary,
+   * processed events and their line items are counted in {@code stockmanagement.events} and
+   * {@code stockmanagement.event.lineitems}.
+   *
+   * <p>The event is validated before a transaction is started and written in a transaction of its
+   * own (or the caller's, if there is one); stockout notifications are sent once it committed.
+   * The time the write transaction holds its connection is recorded in the
+   * {@code stockmanagement.event.transaction} timer. The stock version of the facility and program
+   * is incremented in the same transaction.
    *
    * @param eventDto stock event dto.
    * @return the persisted event ids.
    */
 
   public UUID process(StockEventDto eventDto) {
+    return processAndCount(eventDto, false);
+  }
+
+  /**
+   * Persist an event that has already been validated, with the context it was validated with set
+   * on it, and create stock card and line items from it. Used by staged physical inventory
+   * submissions, which validate their line items in chunks before, so that the context is not
+   * built and the event not validated a second time.
+   *
+   * @param eventDto validated stock event dto, with its context.
+   * @return the persisted event id.
+   */
+  public UUID processValidated(StockEventDto eventDto) {
+    return processAndCount(eventDto, true);
+  }
+
+  private UUID processAndCount(StockEventDto eventDto, boolean validated) {
+    Tags tags = Tags.of("physicalInventory", String.valueOf(eventDto.isPhysicalInventory()));
+
+    StatementCountingInspector.start();
+    try {
+      UUID eventId = processAndFlush(eventDto, validated);
+
+      meterRegistry.counter(EVENTS_METRIC, tags).increment();
+      meterRegistry.counter(LINE_ITEMS_METRIC, tags)
+          .increment(null == eventDto.getLineItems() ? 0 : eventDto.getLineItems().size());
+
+      return eventId;
+    } finally {
+      DistributionSummary
+          .builder(STATEMENTS_METRIC)
+          .description("Number of JDBC statements prepared while processing a stock event")
+          .tags(tags)
+          .register(meterRegistry)
+          .record(StatementCountingInspector.stop());
+    }
+  }
+
+  // Everything that calls other services or needs a connection of its own (context, validation,
+  // facility code and sequence block of the document number) runs before the write transaction
+  // starts, and the stockout notifications only once it has committed, so the connection and the
+  // processing lock are held for the writes only.
+  private UUID processAndFlush(StockEventDto eventDto, boolean validated) {
     XLOGGER.entry(eventDto);
     Profiler profiler = new Profiler("PROCESS");
     profiler.setLogger(XLOGGER);
 
-    profiler.start("ACQUIRE_PROCESSING_LOCK");
-    acquireProcessingLock(eventDto);
+    final StockEventProcessContext context;
+    if (validated) {
+      context = eventDto.getContext();
+    } else {
+      profiler.start("BUILD_CONTEXT");
+      context = contextBuilder.buildContext(eventDto);
+      eventDto.setContext(context);
+
+      profiler.start("VALIDATE");
+      stockEventValidationsService.validate(eventDto);
+    }
+
+    if (needsDocumentNumber(eventDto)) {
+      profiler.start("RESERVE_DOCUMENT_NUMBER");
+      documentNumberGenerator.reserve(eventDto.getFacilityId())
+          .ifPresent(documentNumber -> assignDocumentNumber(eventDto, documentNumber));
+    }
+
+    final UUID eventId = inWriteTransaction(eventDto, () -> {
+      profiler.start("ACQUIRE_PROCESSING_LOCK");
+      processingLock.acquire(eventDto);
+      // stock cards read before the lock was taken may already be outdated
+      context.refreshCards();
 
-    profiler.start("BUILD_CONTEXT");
-    StockEventProcessContext context = contextBuilder.buildContext(eventDto);
-    eventDto.setContext(context);
+      profiler.start("ASSIGN_DOCUMENT_NUMBER");
+      assignDocumentNumberIfNeeded(eventDto);
 
-    profiler.start("VALIDATE");
-    stockEventValidationsService.validate(eventDto);
+      final UUID savedEventId = saveEventAndGenerateLineItems(
+          eventDto, profiler.startNested("SAVE_AND_GENERATE_LINE_ITEMS")
+      );
 
-    profiler.start("ASSIGN_DOCUMENT_NUMBER");
-    assignDocumentNumberIfNeeded(eventDto);
+      StockEventPostProcessor stockEventPostProcessor = extensionManager.getExtension(
+          ExtensionPointId.STOCK_EVENT_POINT_ID, StockEventPostProcessor.class);
+      stockEventPostProcessor.process(eventDto);
 
-    UUID eventId = saveEventAndGenerateLineItems(
-        eventDto, profiler.startNested("SAVE_AND_GENERATE_LINE_ITEMS")
-    );
+      // Pending inserts and updates would otherwise be flushed on commit, outside of the
+      // statement count of this event.
+      profiler.start("FLUSH");
+      entityManager.flush();
 
-    StockEventPostProcessor stockEventPostProcessor = extensionManager.getExtension(
-        ExtensionPointId.STOCK_EVENT_POINT_ID, StockEventPostProcessor.class);
-    stockEventPostProcessor.process(eventDto);
+      profiler.start("FIND_STOCKED_OUT_CARDS");
+      List<StockCard> stockedOutCards = stockEventNotificationProcessor
+          .findStockedOutCards(eventDto);
+      afterCommit(() -> callNotifications(savedEventId, stockedOutCards));
 
-    profiler.stop().log();
+      // last statement of the transaction, the version row stays locked until it commits
+      profiler.start("INCREMENT_STOCK_VERSION");
+      stockVersionService.increment(eventDto.getFacilityId(), eventDto.getProgramId());
+
+      return savedEventId;
+    });
+
+    ProfilerMetrics.stopAndLog(profiler);
+    LOGGER.debug("Loaded context resources of stock event {} in {} ms", eventId,
+        context.getResourceLoadTimes());
     XLOGGER.exit(eventId);
 
     return eventId;
   }
 
-  /** Serializes event processing per facility and program so recalculations cannot deadlock. */
-  private void acquireProcessingLock(StockEventDto eventDto) {
-    String lockKey = eventDto.getFacilityId() + ":" + eventDto.getProgramId();
-    // Raw JDBC: pg_advisory_xact_lock returns void (unmappable as a query result) and a "::" cast
-    // would clash with Hibernate's ":" parameters; the lock is transaction scoped via doWork.
-    entityManager.unwrap(Session.class).doWork(connection -> {
-      try (PreparedStatement statement =
-          connection.prepareStatement("SELECT pg_advisory_xact_lock(hashtext(?))")) {
-        statement.setString(1, lockKey);
-        statement.execute();
+  // Joins the caller's transaction if there is one (a batch of events, a cancellation), so the
+  // recorded time is how long the event kept the connection of that transaction busy.
+  private UUID inWriteTransaction(StockEventDto eventDto, Supplier<UUID> writes) {
+    final long start = System.nanoTime();
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    try {
+      return transaction.execute(status -> writes.get());
+    } finally {
+      Timer
+          .builder(TRANSACTION_METRIC)
+          .description("Time a stock event held a database connection in its write transaction")
+          .tag("physicalInventory", String.valueOf(eventDto.isPhysicalInventory()))
+          .register(meterRegistry)
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void afterCommit(Runnable task) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      task.run();
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        task.run();
       }
     });
   }
 
+  // the event is already saved at this point, a failed notification must not fail the request
+  private void callNotifications(UUID eventId, List<StockCard> stockedOutCards) {
+    try {
+      stockEventNotificationProcessor.notifyStockEditors(stockedOutCards);
+    } catch (RuntimeException ex) {
+      LOGGER.error("Could not send stockout notifications of stock event {}", eventId, ex);
+    }
+  }
+
   private UUID saveEventAndGenerateLineItems(StockEventDto eventDto, Profiler profiler) {
     profiler.start("CONVERT_TO_EVENT");
     StockEvent stockEvent = eventDto.toEvent();
@@ -151,7 +292,8 @@ public class StockEventProcessor {
       PhysicalInventoryDto inventoryDto = fromEventDto(eventDto);
 
       profiler.start("SUBMIT_PHYSICAL_INVENTORY");
-      physicalInventoryService.submitPhysicalInventory(inventoryDto, savedEventId);
+      physicalInventoryService.submitPhysicalInventory(inventoryDto, savedEventId,
+          eventDto.getContext());
     }
     profiler.start("SORT_EVENT_LINE_ITEMS");
     sortEventDtos(eventDto);
@@ -159,9 +301,6 @@ public class StockEventProcessor {
     profiler.start("SAVE_FROM_EVENT");
     stockCardService.saveFromEvent(eventDto, savedEventId);
 
-    profiler.start("CALL_NOTIFICATIONS");
-    stockEventNotificationProcessor.callAllNotifications(eventDto);
-
     return savedEventId;
   }
 
@@ -189,13 +328,20 @@ public class StockEventProcessor {
     }
   }
 
+  private boolean needsDocumentNumber(StockEventDto eventDto) {
+    return eventDto.getEventOrigin() != null
+        && StringUtils.isBlank(eventDto.getDocumentNumber());
+  }
+
   private void assignDocumentNumberIfNeeded(StockEventDto eventDto) {
-    if (eventDto.getEventOrigin() != null
-        && StringUtils.isBlank(eventDto.getDocumentNumber())) {
-      String documentNumber = documentNumberGenerator.generate(eventDto.getFacilityId());
-      eventDto.setDocumentNumber(documentNumber);
-      LOGGER.debug("Generated document number {} for event with origin {}",
-          documentNumber, eventDto.getEventOrigin());
+    if (needsDocumentNumber(eventDto)) {
+      assignDocumentNumber(eventDto, documentNumberGenerator.generate(eventDto.getFacilityId()));
     }
   }
+
+  private void assignDocumentNumber(StockEventDto eventDto, String documentNumber) {
+    eventDto.setDocumentNumber(documentNumber);
+    LOGGER.debug("Generated document number {} for event with origin {}",
+        documentNumber, eventDto.getEventOrigin());
+  }
 }
\ No newline at end of file
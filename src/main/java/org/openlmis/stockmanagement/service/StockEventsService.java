@@ -15,9 +15,13 @@
 
 package org.openlmis.stockmanagement.service;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -25,18 +29,26 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockCardLineItem;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
-import org.openlmis.stockmanagement.dto.StockCardDto;
 import org.openlmis.stockmanagement.dto.StockCardLineItemDto;
 import org.openlmis.stockmanagement.dto.StockEventHistoryDto;
 import org.openlmis.stockmanagement.dto.StockEventLineDetailDto;
+import org.openlmis.stockmanagement.dto.referencedata.LotDto;
+import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.UserDto;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.i18n.MessageKeys;
+import org.openlmis.stockmanagement.repository.CalculatedStockOnHandRepository;
 import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
+import org.openlmis.stockmanagement.repository.custom.StockEventCardLineCount;
 import org.openlmis.stockmanagement.repository.custom.StockEventLineItemAggregate;
 import org.openlmis.stockmanagement.repository.custom.StockEventSearchParams;
+import org.openlmis.stockmanagement.repository.custom.StockOnHandAnchor;
+import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.UserReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
 import org.openlmis.stockmanagement.web.Pagination;
@@ -47,6 +59,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 @Service
+@SuppressWarnings("PMD.TooManyMethods")
 public class StockEventsService {
 
   @Autowired
@@ -61,6 +74,21 @@ public class StockEventsService {
   @Autowired
   private StockCardService stockCardService;
 
+  @Autowired
+  private StockCardLineItemService stockCardLineItemService;
+
+  @Autowired
+  private CalculatedStockOnHandRepository calculatedStockOnHandRepository;
+
+  @Autowired
+  private CancellationLinkResolver cancellationLinkResolver;
+
+  @Autowired
+  private OrderableReferenceDataService orderableReferenceDataService;
+
+  @Autowired
+  private LotReferenceDataService lotReferenceDataService;
+
   @Autowired
   private PermissionService permissionService;
 
@@ -127,6 +155,11 @@ public class StockEventsService {
    * Returns the line items of a single stock event (the transaction detail view), with stock
    * on hand and resolved names, paginated.
    *
+   * <p>Only the event's own line items are read, never the full history of the stock cards they
+   * belong to. The page is picked from per-card line counts, and only its cards' line items are
+   * loaded; the stock on hand after each of them is walked from the card's calculated stock on
+   * hand at the end of the previous day, over that day's line items only.
+   *
    * @param stockEventId the stock event id.
    * @param pageable     pagination.
    * @return a page of detail rows.
@@ -139,32 +172,164 @@ public class StockEventsService {
 
     permissionService.canViewStockCard(event.getProgramId(), event.getFacilityId());
 
-    List<UUID> cardIds = stockCardLineItemRepository.findStockCardIdsByOriginEvent(stockEventId);
+    List<StockEventCardLineCount> cards = new ArrayList<>(stockCardLineItemRepository
+        .countLineItemsByStockCardForOriginEvent(stockEventId));
+    int total = cards.stream().mapToInt(StockEventCardLineCount::getLineItemCount).sum();
+
+    Map<UUID, OrderableDto> orderables = findOrderables(cards);
+    Map<UUID, LotDto> lots = findLots(cards);
 
-    // Cards are resolved in one batch (stock on hand and names), then ordered to match the
-    // stockEvent.jrxml report (ORDER BY o.code, l.lotcode NULLS FIRST, rs.rn DESC): by product
-    // code, then lot code (nulls first), with the card id only as a final deterministic
-    // tiebreaker. Only the line items belonging to this event are kept.
-    Comparator<StockCardDto> byProductThenLot = Comparator
-        .comparing((StockCardDto card) -> card.getOrderable().getProductCode(),
+    // Cards are ordered to match the stockEvent.jrxml report (ORDER BY o.code, l.lotcode NULLS
+    // FIRST, rs.rn DESC): by product code, then lot code (nulls first), with the card id only as a
+    // final deterministic tiebreaker. The codes live in reference data, so this ordering (over
+    // the event's cards, not its line items) is the only part done in memory.
+    cards.sort(Comparator
+        .comparing((StockEventCardLineCount card) -> productCodeOf(orderables, card),
             Comparator.nullsLast(Comparator.naturalOrder()))
-        .thenComparing(card -> card.getLot() == null ? null : card.getLot().getLotCode(),
+        .thenComparing(card -> lotCodeOf(lots, card),
             Comparator.nullsFirst(Comparator.naturalOrder()))
-        .thenComparing(StockCardDto::getId);
+        .thenComparing(StockEventCardLineCount::getStockCardId));
+
+    Map<UUID, int[]> pageRanges = getPageRanges(cards, pageable);
+    if (pageRanges.isEmpty()) {
+      return Pagination.getPage(Collections.emptyList(), pageable, total);
+    }
+
+    Map<UUID, List<StockCardLineItem>> eventLineItems =
+        findEventLineItemsWithStockOnHand(stockEventId, pageRanges.keySet());
+
+    List<StockCardLineItemDto> lineItemDtos = new ArrayList<>();
+    List<StockEventCardLineCount> lineItemCards = new ArrayList<>();
+    for (StockEventCardLineCount card : cards) {
+      int[] range = pageRanges.get(card.getStockCardId());
+      if (range == null) {
+        continue;
+      }
+      List<StockCardLineItem> items =
+          eventLineItems.getOrDefault(card.getStockCardId(), Collections.emptyList());
+      // Present newest-first to match the stock card view
+      Collections.reverse(items);
+      for (StockCardLineItem item : items.subList(
+          Math.min(range[0], items.size()), Math.min(range[1], items.size()))) {
+        lineItemDtos.add(StockCardLineItemDto.createFrom(item));
+        lineItemCards.add(card);
+      }
+    }
+
+    stockCardService.assignSourceDestinationReasonNames(lineItemDtos);
+    cancellationLinkResolver.attachCancellationLinks(lineItemDtos);
+
     List<StockEventLineDetailDto> details = new ArrayList<>();
-    stockCardService.findStockCardsByIds(cardIds).stream()
-        .sorted(byProductThenLot)
-        .forEach(card -> {
-          List<StockCardLineItemDto> items = card.getLineItems().stream()
-              .filter(lineItem -> stockEventId.equals(lineItem.getOriginEventId()))
-              .collect(Collectors.toList());
-          // Present newest-first to match the stock card view
-          Collections.reverse(items);
-          items.forEach(lineItem ->
-              details.add(StockEventLineDetailDto.newInstance(card, lineItem)));
-        });
-
-    return Pagination.getPage(details, pageable);
+    for (int i = 0; i < lineItemDtos.size(); i++) {
+      StockEventCardLineCount card = lineItemCards.get(i);
+      details.add(StockEventLineDetailDto.newInstance(
+          orderables.get(card.getOrderableId()),
+          card.getLotId() == null ? null : lots.get(card.getLotId()),
+          lineItemDtos.get(i)));
+    }
+
+    return Pagination.getPage(details, pageable, total);
+  }
+
+  // stock card id -> [from, to) range of its (newest-first) event line items on the requested
+  // page, for the cards that have at least one line item on it, in card order.
+  private Map<UUID, int[]> getPageRanges(List<StockEventCardLineCount> cards,
+      Pageable pageable) {
+    boolean paged = pageable != null && pageable.isPaged();
+    long pageStart = paged ? pageable.getOffset() : 0;
+    long pageEnd = paged ? pageStart + pageable.getPageSize() : Long.MAX_VALUE;
+
+    Map<UUID, int[]> ranges = new LinkedHashMap<>();
+    long cardStart = 0;
+    for (StockEventCardLineCount card : cards) {
+      long cardEnd = cardStart + card.getLineItemCount();
+      if (cardEnd > pageStart && cardStart < pageEnd) {
+        ranges.put(card.getStockCardId(), new int[] {
+            (int) (Math.max(pageStart, cardStart) - cardStart),
+            (int) (Math.min(pageEnd, cardEnd) - cardStart)});
+      }
+      cardStart = cardEnd;
+    }
+    return ranges;
+  }
+
+  // stock card id -> the event's line items on that card, in the stock card order, with their
+  // stock on hand. Each (card, day) the event touched is walked over all of that day's line items
+  // from the calculated stock on hand at the end of the previous day.
+  private Map<UUID, List<StockCardLineItem>> findEventLineItemsWithStockOnHand(
+      UUID stockEventId, Collection<UUID> stockCardIds) {
+    Map<UUID, Map<LocalDate, List<StockCardLineItem>>> lineItemsByCardAndDay = new HashMap<>();
+    stockCardLineItemRepository.findSameDayLineItemsOfOriginEvent(stockEventId, stockCardIds)
+        .forEach(row -> lineItemsByCardAndDay
+            .computeIfAbsent(row.getStockCardId(), id -> new HashMap<>())
+            .computeIfAbsent(row.getOccurredDate(), date -> new ArrayList<>())
+            .add(row.toLineItem()));
+
+    Set<LocalDate> days = lineItemsByCardAndDay.values().stream()
+        .flatMap(byDay -> byDay.keySet().stream())
+        .collect(Collectors.toSet());
+    Map<LocalDate, Map<UUID, Integer>> openingStockOnHand = new HashMap<>();
+    for (LocalDate day : days) {
+      openingStockOnHand.put(day, calculatedStockOnHandRepository
+          .findStockOnHandBefore(stockCardIds, day).stream()
+          .collect(Collectors.toMap(StockOnHandAnchor::getStockCardId,
+              StockOnHandAnchor::getStockOnHand)));
+    }
+
+    Map<UUID, List<StockCardLineItem>> result = new HashMap<>();
+    lineItemsByCardAndDay.forEach((cardId, byDay) -> {
+      List<StockCardLineItem> eventItems = new ArrayList<>();
+      byDay.keySet().stream().sorted().forEach(day -> {
+        List<StockCardLineItem> dayItems = byDay.get(day);
+        dayItems.sort(StockCard.getLineItemsComparator());
+        Integer opening = openingStockOnHand.get(day).get(cardId);
+        stockCardLineItemService.populateStockOnHandLineItems(dayItems,
+            opening == null ? 0 : opening);
+        dayItems.stream()
+            .filter(item -> stockEventId.equals(item.getOriginEvent().getId()))
+            .forEach(eventItems::add);
+      });
+      result.put(cardId, eventItems);
+    });
+    return result;
+  }
+
+  private Map<UUID, OrderableDto> findOrderables(List<StockEventCardLineCount> cards) {
+    Set<UUID> orderableIds = cards.stream()
+        .map(StockEventCardLineCount::getOrderableId)
+        .collect(Collectors.toSet());
+
+    if (orderableIds.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    return orderableReferenceDataService.findByIds(orderableIds).stream()
+        .collect(Collectors.toMap(OrderableDto::getId, Function.identity()));
+  }
+
+  private Map<UUID, LotDto> findLots(List<StockEventCardLineCount> cards) {
+    Set<UUID> lotIds = cards.stream()
+        .map(StockEventCardLineCount::getLotId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+
+    if (lotIds.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    return lotReferenceDataService.findByIds(lotIds).stream()
+        .collect(Collectors.toMap(LotDto::getId, Function.identity()));
+  }
+
+  private static String productCodeOf(Map<UUID, OrderableDto> orderables,
+      StockEventCardLineCount card) {
+    OrderableDto orderable = orderables.get(card.getOrderableId());
+    return orderable == null ? null : orderable.getProductCode();
+  }
+
+  private static String lotCodeOf(Map<UUID, LotDto> lots, StockEventCardLineCount card) {
+    LotDto lot = card.getLotId() == null ? null : lots.get(card.getLotId());
+    return lot == null ? null : lot.getLotCode();
   }
 
   /**
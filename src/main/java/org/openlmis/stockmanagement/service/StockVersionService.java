@@ -0,0 +1,90 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toMap;
+import static org.apache.commons.collections.CollectionUtils.isEmpty;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.card.StockVersion;
+import org.openlmis.stockmanagement.repository.StockVersionRepository;
+import org.openlmis.stockmanagement.repository.custom.StockCardVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the version of the stock of each facility and program. The version is incremented in the
+ * transaction of every change of the stock cards of a facility and program, so anything derived
+ * from them (like cached summaries) can tell whether it is still current by comparing the version
+ * it was built from with the current one.
+ */
+@Service
+public class StockVersionService {
+
+  @Autowired
+  private StockVersionRepository stockVersionRepository;
+
+  /**
+   * Increments the version of the given facility and program. Must be called in the transaction
+   * that changes the stock, after its writes, as the version row stays locked until it ends.
+   */
+  public long increment(UUID facilityId, UUID programId) {
+    return stockVersionRepository.increment(facilityId, programId);
+  }
+
+  /**
+   * Increments the versions of the facilities and programs of the given stock cards, once each.
+   * The rows are locked in ascending order of
+   * {@link StockEventProcessingLock#getFacilityProgramKey}, the order in which a batch of events
+   * processes (and so versions) its facilities and programs, so the two cannot deadlock on them.
+   */
+  public void increment(Collection<StockCard> stockCards) {
+    stockCards.stream()
+        .map(card -> ImmutablePair.of(card.getFacilityId(), card.getProgramId()))
+        .distinct()
+        .sorted(comparing(pair -> StockEventProcessingLock.getFacilityProgramKey(
+            pair.getLeft(), pair.getRight())))
+        .forEach(pair -> increment(pair.getLeft(), pair.getRight()));
+  }
+
+  /**
+   * Returns the current versions of the given programs at the facility, or of all its programs if
+   * none are given. Programs whose stock never changed have no version.
+   */
+  public Map<UUID, Long> getVersions(UUID facilityId, Collection<UUID> programIds) {
+    List<StockVersion> versions = isEmpty(programIds)
+        ? stockVersionRepository.findByFacilityId(facilityId)
+        : stockVersionRepository.findByFacilityIdAndProgramIdIn(facilityId, programIds);
+
+    return versions.stream()
+        .collect(toMap(StockVersion::getProgramId, StockVersion::getVersion));
+  }
+
+  /**
+   * Returns the facility, program and current stock version of the given stock card, or an empty
+   * optional if there is no such card. Reads the card's index entry and the version row only.
+   */
+  public Optional<StockCardVersion> findStockCardVersion(UUID stockCardId) {
+    return stockVersionRepository.findStockCardVersion(stockCardId);
+  }
+}
@@ -20,11 +20,14 @@ import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_DESTINATION_NO
 import static org.slf4j.ext.XLoggerFactory.getXLogger;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import org.openlmis.stockmanagement.domain.sourcedestination.ValidDestinationAssignment;
 import org.openlmis.stockmanagement.dto.ValidSourceDestinationDto;
+import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.ValidDestinationAssignmentRepository;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -59,11 +62,37 @@ public class ValidDestinationService extends SourceDestinationBaseService {
 
     Page<ValidSourceDestinationDto> assignments = findAssignments(programIds, facilityId,
         geographicZoneId, validDestinationRepository, profiler, pageable);
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit();
     return assignments;
   }
 
+  /**
+   * Find destination assignments of a program and facility type. The result is cached until
+   * destination assignments change and must not be modified.
+   *
+   * @param programId program ID
+   * @param facilityTypeId facility type ID
+   * @return list of destination assignments
+   */
+  public List<ValidDestinationAssignment> findDestinationAssignments(UUID programId,
+      UUID facilityTypeId) {
+    return findCachedAssignments(programId, facilityTypeId, validDestinationRepository);
+  }
+
+  /**
+   * Find IDs of the nodes that are valid destinations for a program and facility, taking the geo
+   * level affinity of the assignments into account. The result is cached until destination
+   * assignments change and must not be modified.
+   *
+   * @param programId program ID
+   * @param facility facility
+   * @return set of node IDs
+   */
+  public Set<UUID> findValidDestinationNodeIds(UUID programId, FacilityDto facility) {
+    return findCachedValidNodeIds(programId, facility, validDestinationRepository);
+  }
+
   /**
    * Assign a destination to a program and facility type.
    *
@@ -20,12 +20,15 @@ import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_SOURCE_NOT_FOU
 import static org.slf4j.ext.XLoggerFactory.getXLogger;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.openlmis.stockmanagement.domain.sourcedestination.ValidSourceAssignment;
 import org.openlmis.stockmanagement.dto.ValidSourceDestinationDto;
+import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.ValidSourceAssignmentRepository;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -61,11 +64,37 @@ public class ValidSourceService extends SourceDestinationBaseService {
     Page<ValidSourceDestinationDto> sourceAssignments =
             findAssignments(programIds, facilityId, geographicZoneId,
                 validSourceRepository, profiler, pageable);
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit();
     return sourceAssignments;
   }
 
+  /**
+   * Find source assignments of a program and facility type. The result is cached until
+   * source assignments change and must not be modified.
+   *
+   * @param programId program ID
+   * @param facilityTypeId facility type ID
+   * @return list of source assignments
+   */
+  public List<ValidSourceAssignment> findSourceAssignments(UUID programId,
+      UUID facilityTypeId) {
+    return findCachedAssignments(programId, facilityTypeId, validSourceRepository);
+  }
+
+  /**
+   * Find IDs of the nodes that are valid sources for a program and facility, taking the geo
+   * level affinity of the assignments into account. The result is cached until source
+   * assignments change and must not be modified.
+   *
+   * @param programId program ID
+   * @param facility facility
+   * @return set of node IDs
+   */
+  public Set<UUID> findValidSourceNodeIds(UUID programId, FacilityDto facility) {
+    return findCachedValidNodeIds(programId, facility, validSourceRepository);
+  }
+
   /**
    * Assign a source to a program and facility type.
    *
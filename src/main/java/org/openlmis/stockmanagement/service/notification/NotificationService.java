@@ -19,7 +19,9 @@ import static org.openlmis.stockmanagement.service.notification.NotificationChan
 
 import java.util.HashMap;
 import java.util.Map;
+import javax.annotation.PostConstruct;
 import org.openlmis.stockmanagement.dto.referencedata.UserDto;
+import org.openlmis.stockmanagement.http.OutboundHttpClient;
 import org.openlmis.stockmanagement.service.AuthService;
 import org.openlmis.stockmanagement.util.RequestHelper;
 import org.slf4j.Logger;
@@ -29,7 +31,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
 @Service
 public class NotificationService {
@@ -41,7 +42,15 @@ public class NotificationService {
   @Value("${notification.url}")
   private String notificationUrl;
 
-  private RestOperations restTemplate = new RestTemplate();
+  @Autowired
+  private OutboundHttpClient outboundHttpClient;
+
+  private RestOperations restTemplate;
+
+  @PostConstruct
+  void createRestTemplate() {
+    restTemplate = outboundHttpClient.createRestTemplate(OutboundHttpClient.NOTIFICATION);
+  }
 
   /**
    * Send an email notification.
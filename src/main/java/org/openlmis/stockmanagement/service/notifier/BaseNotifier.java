@@ -20,8 +20,13 @@ import java.time.chrono.Chronology;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.format.FormatStyle;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
+import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.ProgramReferenceDataService;
@@ -64,6 +69,22 @@ public class BaseNotifier {
     return orderableReferenceDataService.findOne(orderableId).getFullProductName();
   }
 
+  Map<UUID, String> getProgramNames(Collection<UUID> programIds) {
+    Map<UUID, String> names = new HashMap<>();
+    for (ProgramDto program : programReferenceDataService.findByIds(programIds)) {
+      names.put(program.getId(), program.getName());
+    }
+    return names;
+  }
+
+  Map<UUID, String> getOrderableNames(Collection<UUID> orderableIds) {
+    Map<UUID, String> names = new HashMap<>();
+    for (OrderableDto orderable : orderableReferenceDataService.findByIds(orderableIds)) {
+      names.put(orderable.getId(), orderable.getFullProductName());
+    }
+    return names;
+  }
+
   String getUrlToViewBinCard(UUID stockCardId) {
     return MessageFormat.format(urlToViewBinCard, stockCardId);
   }
@@ -16,30 +16,44 @@
 package org.openlmis.stockmanagement.service.notifier;
 
 import static org.openlmis.stockmanagement.i18n.MessageKeys.NOTIFICATION_NEAR_EXPIRY_CONTENT;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.NOTIFICATION_NEAR_EXPIRY_ITEM;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.NOTIFICATION_NEAR_EXPIRY_SUBJECT;
 import static org.openlmis.stockmanagement.service.PermissionService.STOCK_INVENTORIES_EDIT;
 
+import java.time.Clock;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.apache.commons.lang.text.StrSubstitutor;
+import org.openlmis.stockmanagement.domain.notification.NearExpiryNotificationRun;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
-import org.openlmis.stockmanagement.dto.referencedata.RightDto;
+import org.openlmis.stockmanagement.dto.referencedata.UserDto;
 import org.openlmis.stockmanagement.i18n.MessageService;
-import org.openlmis.stockmanagement.repository.StockCardRepository;
+import org.openlmis.stockmanagement.repository.CurrentStockOnHandRepository;
+import org.openlmis.stockmanagement.repository.NearExpiryNotificationRunRepository;
+import org.openlmis.stockmanagement.repository.custom.NearExpiryStockCard;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.RightReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
+import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -55,62 +69,96 @@ public class NearExpiryNotifier {
   RightReferenceDataService rightReferenceDataService;
 
   @Autowired
-  StockCardRepository stockCardRepository;
-  
+  CurrentStockOnHandRepository currentStockOnHandRepository;
+
+  @Autowired
+  NearExpiryNotificationRunRepository notificationRunRepository;
+
   @Autowired
   StockCardNotifier stockCardNotifier;
 
   @Autowired
   private MessageService messageService;
 
-  @Value("${time.zoneId}")
-  private String timeZoneId;
+  @Autowired
+  private Clock clock;
+
+  @Value("${stockmanagement.nearExpiry.catchUpDays}")
+  private int catchUpDays;
 
-  private Map<UUID, LotDto> expiringLotMap;
-  
-  private LocalDate expirationDate;
+  @Value("${stockmanagement.nearExpiry.pageSize}")
+  private int pageSize;
 
   /**
-   * Check stock cards with lots that have a certain expiration date. If any are found, notify stock
-   * card owners.
+   * Check stock cards with lots that have a certain expiration date. If any of them still has
+   * stock, notify stock card owners with one digest per facility. Expiration dates skipped since
+   * the last run (at most catchUpDays of them) are checked as well.
    */
   @Scheduled(cron = "${stockmanagement.nearExpiry.cron}", zone = "${time.zoneId}")
   public void checkNearExpiryAndNotify() {
+    Profiler profiler = new Profiler("CHECK_NEAR_EXPIRY_AND_NOTIFY");
+    profiler.setLogger(XLOGGER);
+
+    profiler.start("GET_EXPIRING_LOTS");
     // Expiration of six months from today, OLMIS-3186
-    expirationDate = LocalDate.now(ZoneId.of(timeZoneId)).plusMonths(6);
-    XLOGGER.debug("Expiration date = {}", expirationDate);
-    expiringLotMap = lotReferenceDataService.getAllLotsExpiringOn(expirationDate)
-        .stream()
-        .collect(Collectors.toMap(LotDto::getId, Function.identity()));
-    Collection<UUID> expiringLotIds = expiringLotMap.keySet();
-    XLOGGER.debug("Expiring Lot IDs = {}", expiringLotIds);
-    
-    List<StockCard> expiringStockCards = stockCardRepository.findByLotIdIn(expiringLotIds);
-    XLOGGER.debug("Expiring Stock Card IDs = {}", expiringStockCards.stream()
-        .map(StockCard::getId)
-        .collect(Collectors.toList()));
-
-    RightDto right = rightReferenceDataService.findRight(STOCK_INVENTORIES_EDIT);
-    UUID rightId = right.getId();
-    expiringStockCards.forEach(card -> {
-      NotificationMessageParams params = new NotificationMessageParams(
-          getMessage(NOTIFICATION_NEAR_EXPIRY_SUBJECT),
-          getMessage(NOTIFICATION_NEAR_EXPIRY_CONTENT),
-          constructSubstitutionMap(card));
-      stockCardNotifier.notifyStockEditors(card, rightId, params);
-    });
+    List<LocalDate> expirationDates =
+        getExpirationDatesToCheck(LocalDate.now(clock).plusMonths(6));
+    XLOGGER.debug("Expiration dates = {}", expirationDates);
+
+    Map<UUID, LotDto> expiringLots = new HashMap<>();
+    for (LocalDate expirationDate : expirationDates) {
+      lotReferenceDataService.getAllLotsExpiringOn(expirationDate)
+          .forEach(lot -> expiringLots.put(lot.getId(), lot));
+    }
+    XLOGGER.debug("Expiring Lot IDs = {}", expiringLots.keySet());
+
+    if (!expiringLots.isEmpty()) {
+      profiler.start("NOTIFY_FACILITIES");
+      notifyFacilities(expiringLots);
+    }
+
+    profiler.start("RECORD_RUNS");
+    ZonedDateTime processedDate = ZonedDateTime.now(clock);
+    expirationDates.forEach(expirationDate -> notificationRunRepository
+        .save(new NearExpiryNotificationRun(expirationDate, processedDate)));
+
+    ProfilerMetrics.stopAndLog(profiler);
   }
 
-  Map<String, String> constructSubstitutionMap(StockCard stockCard) {
-    Map<String, String> valuesMap = new HashMap<>();
-    valuesMap.put("facilityName", stockCardNotifier.getFacilityName(stockCard.getFacilityId()));
-    valuesMap.put("programName", stockCardNotifier.getProgramName(stockCard.getProgramId()));
-    valuesMap.put("orderableName", stockCardNotifier.getOrderableName(stockCard.getOrderableId()));
-    LotDto lot = expiringLotMap.get(stockCard.getLotId());
-    valuesMap.put("lotCode", null != lot ? lot.getLotCode() : "");
-    valuesMap.put("expirationDate", stockCardNotifier.getDateFormatter().format(expirationDate));
-    valuesMap.put("urlToViewBinCard", stockCardNotifier.getUrlToViewBinCard(stockCard.getId()));
-    return valuesMap;
+  /**
+   * Returns the expiration dates that have not been checked yet, up to and including the given
+   * one. When the job did not run for some days (or six months from consecutive days skip a few
+   * days at the end of a month), the skipped dates are checked too, going back at most
+   * catchUpDays. On the very first run only the given date is checked.
+   */
+  List<LocalDate> getExpirationDatesToCheck(LocalDate expirationDate) {
+    LocalDate earliest = expirationDate.minusDays(catchUpDays);
+    LocalDate first = notificationRunRepository.findFirstByOrderByExpirationDateDesc()
+        .map(run -> run.getExpirationDate().plusDays(1))
+        .map(next -> next.isBefore(earliest) ? earliest : next)
+        .orElse(expirationDate);
+
+    List<LocalDate> dates = new ArrayList<>();
+    for (LocalDate date = first; !date.isAfter(expirationDate); date = date.plusDays(1)) {
+      dates.add(date);
+    }
+    return dates;
+  }
+
+  private void notifyFacilities(Map<UUID, LotDto> expiringLots) {
+    UUID rightId = rightReferenceDataService.findRight(STOCK_INVENTORIES_EDIT).getId();
+    FacilityDigests digests = new FacilityDigests(expiringLots, rightId);
+
+    Pageable pageable = PageRequest.of(0, pageSize);
+    Slice<NearExpiryStockCard> page;
+    do {
+      page = currentStockOnHandRepository
+          .findInStockCardsOfLots(expiringLots.keySet(), pageable);
+      page.forEach(digests::add);
+      pageable = page.nextPageable();
+    } while (page.hasNext());
+
+    digests.flush();
   }
 
   private String getMessage(String key) {
@@ -118,4 +166,126 @@ public class NearExpiryNotifier {
         .localize(new Message(key))
         .getMessage();
   }
+
+  /**
+   * Collects the stock cards of one facility at a time (they are read ordered by facility) and
+   * sends each home facility editor a single digest of the cards of programs they supervise.
+   * Program and orderable names are resolved in bulk and kept for the whole run.
+   */
+  private final class FacilityDigests {
+
+    private final Map<UUID, LotDto> expiringLots;
+    private final UUID rightId;
+    private final String subject = getMessage(NOTIFICATION_NEAR_EXPIRY_SUBJECT);
+    private final String content = getMessage(NOTIFICATION_NEAR_EXPIRY_CONTENT);
+    private final String item = getMessage(NOTIFICATION_NEAR_EXPIRY_ITEM);
+    private final DateTimeFormatter dateFormatter = stockCardNotifier.getDateFormatter();
+    private final Map<UUID, String> programNames = new HashMap<>();
+    private final Map<UUID, String> orderableNames = new HashMap<>();
+    private final List<NearExpiryStockCard> facilityCards = new ArrayList<>();
+
+    private FacilityDigests(Map<UUID, LotDto> expiringLots, UUID rightId) {
+      this.expiringLots = expiringLots;
+      this.rightId = rightId;
+    }
+
+    void add(NearExpiryStockCard card) {
+      if (!facilityCards.isEmpty()
+          && !facilityCards.get(0).getFacilityId().equals(card.getFacilityId())) {
+        flush();
+      }
+      facilityCards.add(card);
+    }
+
+    void flush() {
+      if (facilityCards.isEmpty()) {
+        return;
+      }
+
+      UUID facilityId = facilityCards.get(0).getFacilityId();
+      try {
+        notifyFacility(facilityId);
+      } catch (RuntimeException ex) {
+        // one facility with broken reference data should not stop the digests of the others
+        XLOGGER.error("Could not notify about near expiry stock at facility " + facilityId, ex);
+      } finally {
+        facilityCards.clear();
+      }
+    }
+
+    private void notifyFacility(UUID facilityId) {
+      Map<UUID, UserDto> recipients = new LinkedHashMap<>();
+      Map<UUID, List<NearExpiryStockCard>> cardsByRecipient = new HashMap<>();
+
+      Map<UUID, List<NearExpiryStockCard>> cardsByProgram = facilityCards.stream()
+          .collect(Collectors.groupingBy(NearExpiryStockCard::getProgramId, LinkedHashMap::new,
+              Collectors.toList()));
+      cardsByProgram.forEach((programId, programCards) -> {
+        for (UserDto editor : getHomeFacilityEditors(programId, facilityId)) {
+          recipients.putIfAbsent(editor.getId(), editor);
+          cardsByRecipient.computeIfAbsent(editor.getId(), id -> new ArrayList<>())
+              .addAll(programCards);
+        }
+      });
+
+      if (recipients.isEmpty()) {
+        return;
+      }
+
+      resolveNames(cardsByProgram.keySet(), programNames, stockCardNotifier::getProgramNames);
+      resolveNames(
+          facilityCards.stream().map(NearExpiryStockCard::getOrderableId)
+              .collect(Collectors.toSet()),
+          orderableNames, stockCardNotifier::getOrderableNames);
+      String facilityName = stockCardNotifier.getFacilityName(facilityId);
+
+      for (UserDto recipient : recipients.values()) {
+        Map<String, String> valuesMap = new HashMap<>();
+        valuesMap.put("facilityName", facilityName);
+        valuesMap.put("username", recipient.getUsername());
+        valuesMap.put("nearExpiryItems", cardsByRecipient.get(recipient.getId()).stream()
+            .map(card -> StrSubstitutor.replace(item, constructSubstitutionMap(card)))
+            .collect(Collectors.joining("\n")));
+
+        XLOGGER.debug("Recipient username = {}", recipient.getUsername());
+        StrSubstitutor sub = new StrSubstitutor(valuesMap);
+        stockCardNotifier.notify(recipient, sub.replace(subject), sub.replace(content));
+      }
+    }
+
+    private Collection<UserDto> getHomeFacilityEditors(UUID programId, UUID facilityId) {
+      try {
+        return stockCardNotifier.getEditors(programId, facilityId, rightId).stream()
+            .filter(editor -> facilityId.equals(editor.getHomeFacilityId()))
+            .collect(Collectors.toList());
+      } catch (IllegalArgumentException ex) {
+        XLOGGER.warn(ex.getMessage());
+        return new ArrayList<>();
+      }
+    }
+
+    private Map<String, String> constructSubstitutionMap(NearExpiryStockCard card) {
+      LotDto lot = expiringLots.get(card.getLotId());
+      Map<String, String> valuesMap = new HashMap<>();
+      valuesMap.put("programName", programNames.getOrDefault(card.getProgramId(), ""));
+      valuesMap.put("orderableName", orderableNames.getOrDefault(card.getOrderableId(), ""));
+      valuesMap.put("lotCode", null != lot ? lot.getLotCode() : "");
+      valuesMap.put("stockOnHand", String.valueOf(card.getStockOnHand()));
+      valuesMap.put("expirationDate", null != lot && null != lot.getExpirationDate()
+          ? dateFormatter.format(lot.getExpirationDate()) : "");
+      valuesMap.put("urlToViewBinCard",
+          stockCardNotifier.getUrlToViewBinCard(card.getStockCardId()));
+      return valuesMap;
+    }
+
+    private void resolveNames(Set<UUID> ids, Map<UUID, String> names,
+        Function<Collection<UUID>, Map<UUID, String>> resolver) {
+      Set<UUID> missing = ids.stream()
+          .filter(id -> !names.containsKey(id))
+          .collect(Collectors.toSet());
+      if (!missing.isEmpty()) {
+        names.putAll(resolver.apply(missing));
+      }
+    }
+  }
 }
@@ -25,6 +25,7 @@ import org.openlmis.stockmanagement.dto.referencedata.UserDto;
 import org.openlmis.stockmanagement.service.notification.NotificationService;
 import org.openlmis.stockmanagement.service.referencedata.SupervisingUsersReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.SupervisoryNodeReferenceDataService;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -76,22 +77,30 @@ public class StockCardNotifier extends BaseNotifier {
       }
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
   }
 
   private Collection<UserDto> getEditors(StockCard stockCard, UUID rightId) {
+    return getEditors(stockCard.getProgramId(), stockCard.getFacilityId(), rightId);
+  }
+
+  Collection<UserDto> getEditors(UUID programId, UUID facilityId, UUID rightId) {
     SupervisoryNodeDto supervisoryNode = supervisoryNodeReferenceDataService
-        .findSupervisoryNode(stockCard.getProgramId(), stockCard.getFacilityId());
+        .findSupervisoryNode(programId, facilityId);
 
     if (supervisoryNode == null) {
       throw new IllegalArgumentException(
           String.format("There is no supervisory node for program %s and facility %s",
-              stockCard.getProgramId(), stockCard.getFacilityId()));
+              programId, facilityId));
     }
     
     XLOGGER.debug("Supervisory node ID = {}", supervisoryNode.getId());
 
     return supervisingUsersReferenceDataService
-        .findAll(supervisoryNode.getId(), rightId, stockCard.getProgramId());
+        .findAll(supervisoryNode.getId(), rightId, programId);
+  }
+
+  void notify(UserDto recipient, String subject, String content) {
+    notificationService.notify(recipient, subject, content);
   }
 }
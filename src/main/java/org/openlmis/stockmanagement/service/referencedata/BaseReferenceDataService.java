@@ -15,6 +15,7 @@
 
 package org.openlmis.stockmanagement.service.referencedata;
 
+import org.openlmis.stockmanagement.http.OutboundHttpClient;
 import org.openlmis.stockmanagement.service.BaseCommunicationService;
 import org.springframework.beans.factory.annotation.Value;
 
@@ -26,6 +27,10 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
     return referenceDataUrl;
   }
 
+  protected String getTargetName() {
+    return OutboundHttpClient.REFERENCEDATA;
+  }
+
   protected abstract String getUrl();
 
   protected abstract Class<T> getResultClass();
@@ -43,6 +43,11 @@ public class FacilityReferenceDataService extends BaseReferenceDataService<Facil
   protected Class<FacilityDto[]> getArrayResultClass() {
     return FacilityDto[].class;
   }
+
+  @Override
+  protected boolean isLastKnownGoodFallbackEnabled() {
+    return true;
+  }
   
   /**
    * Finds facilities by their ids.
@@ -43,6 +43,11 @@ public class LotReferenceDataService extends BaseReferenceDataService<LotDto> {
     return LotDto[].class;
   }
 
+  @Override
+  protected boolean isLastKnownGoodFallbackEnabled() {
+    return true;
+  }
+
   /**
    * Search for lots under a specific trade item.
    *
@@ -43,6 +43,11 @@ public class OrderableReferenceDataService
     return OrderableDto[].class;
   }
 
+  @Override
+  protected boolean isLastKnownGoodFallbackEnabled() {
+    return true;
+  }
+
   /**
    * Finds orderables by their ids.
    *
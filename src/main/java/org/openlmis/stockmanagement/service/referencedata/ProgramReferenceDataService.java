@@ -45,6 +45,11 @@ public class ProgramReferenceDataService extends BaseReferenceDataService<Progra
     return ProgramDto[].class;
   }
 
+  @Override
+  protected boolean isLastKnownGoodFallbackEnabled() {
+    return true;
+  }
+
   /**
    * Find program by unique code.
    *
@@ -17,9 +17,11 @@ package org.openlmis.stockmanagement.service.report;
 
 import java.net.URI;
 import java.util.Map;
+import javax.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang.ArrayUtils;
 import org.openlmis.stockmanagement.domain.JasperTemplate;
+import org.openlmis.stockmanagement.http.OutboundHttpClient;
 import org.openlmis.stockmanagement.service.AuthService;
 import org.openlmis.stockmanagement.service.RequestHeaders;
 import org.openlmis.stockmanagement.util.RequestHelper;
@@ -32,7 +34,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
 /**
  * The Report service delegates the jasper report filling and generation to the report module.
@@ -47,7 +48,14 @@ public class ReportService {
 
   private final AuthService authService;
 
-  private final RestOperations restTemplate = new RestTemplate();
+  private final OutboundHttpClient outboundHttpClient;
+
+  private RestOperations restTemplate;
+
+  @PostConstruct
+  void createRestTemplate() {
+    restTemplate = outboundHttpClient.createRestTemplate(OutboundHttpClient.REPORT);
+  }
 
   /**
    * Generate report byte [ ].
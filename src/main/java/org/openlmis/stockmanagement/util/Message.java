@@ -102,6 +102,10 @@ public class Message {
       this.message = message;
     }
 
+    public String getMessageKey() {
+      return messageKey;
+    }
+
     public String getMessage() {
       return message;
     }
@@ -0,0 +1,113 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.slf4j.profiler.Profiler;
+import org.slf4j.profiler.TimeInstrument;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Turns the stages of a {@link Profiler} into latency histograms, so that the timings that are
+ * logged at debug level are also available as metrics.
+ *
+ * <p>Every stage is recorded in the {@code stockmanagement.profiler.stage} timer, tagged with the
+ * endpoint handling the current request, the profiler name and the stage name. Stages of nested
+ * profilers are named after their path, e.g. {@code SAVE_AND_GENERATE_LINE_ITEMS/SAVE_EVENT}, and
+ * the profiler as a whole is recorded as the {@code TOTAL} stage. Timers are registered in the
+ * global registry, to which Spring Boot adds the application's registry.
+ */
+public final class ProfilerMetrics {
+
+  static final String STAGE_METRIC = "stockmanagement.profiler.stage";
+  static final String TOTAL_STAGE = "TOTAL";
+  static final String NO_ENDPOINT = "NONE";
+
+  private static final String STAGE_SEPARATOR = "/";
+
+  private ProfilerMetrics() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops and logs the given profiler, as {@code profiler.stop().log()} does, and records its
+   * stages.
+   *
+   * @param profiler root profiler to stop.
+   */
+  public static void stopAndLog(Profiler profiler) {
+    profiler.stop().log();
+    record(profiler, Metrics.globalRegistry);
+  }
+
+  static void record(Profiler profiler, MeterRegistry registry) {
+    String endpoint = currentEndpoint();
+    String profilerName = profiler.getName();
+
+    timer(registry, endpoint, profilerName, TOTAL_STAGE).record(profiler.elapsedTime(),
+        TimeUnit.NANOSECONDS);
+    recordStages(profiler, "", registry, endpoint, profilerName);
+  }
+
+  private static void recordStages(Profiler profiler, String prefix, MeterRegistry registry,
+      String endpoint, String profilerName) {
+    for (TimeInstrument stage : profiler.getCopyOfChildTimeInstruments()) {
+      String stageName = prefix + stage.getName();
+      timer(registry, endpoint, profilerName, stageName)
+          .record(stage.elapsedTime(), TimeUnit.NANOSECONDS);
+
+      if (stage instanceof Profiler) {
+        recordStages((Profiler) stage, stageName + STAGE_SEPARATOR, registry, endpoint,
+            profilerName);
+      }
+    }
+  }
+
+  private static Timer timer(MeterRegistry registry, String endpoint, String profilerName,
+      String stage) {
+    return Timer
+        .builder(STAGE_METRIC)
+        .description("Duration of a profiled stage")
+        .tag("endpoint", endpoint)
+        .tag("profiler", profilerName)
+        .tag("stage", stage)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+
+  // the matched pattern (not the actual path) keeps the number of tag values bounded
+  private static String currentEndpoint() {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (!(attributes instanceof ServletRequestAttributes)) {
+      return NO_ENDPOINT;
+    }
+
+    HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+    return null == pattern
+        ? NO_ENDPOINT
+        : request.getMethod() + " " + pattern;
+  }
+}
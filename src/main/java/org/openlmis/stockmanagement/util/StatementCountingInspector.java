@@ -0,0 +1,57 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.util;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the JDBC statements Hibernate prepares on the current thread between {@link #start()} and
+ * {@link #stop()}. A JDBC batch is prepared once, so a batched insert of many rows counts as one
+ * statement per batch. Statements issued through raw JDBC work are not counted.
+ */
+public class StatementCountingInspector implements StatementInspector {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final ThreadLocal<long[]> COUNTER = new ThreadLocal<>();
+
+  /**
+   * Starts counting statements prepared on the current thread.
+   */
+  public static void start() {
+    COUNTER.set(new long[1]);
+  }
+
+  /**
+   * Stops counting statements on the current thread.
+   *
+   * @return number of statements prepared since {@link #start()}, 0 if counting was not started.
+   */
+  public static long stop() {
+    long[] counter = COUNTER.get();
+    COUNTER.remove();
+    return null == counter ? 0 : counter[0];
+  }
+
+  @Override
+  public String inspect(String sql) {
+    long[] counter = COUNTER.get();
+    if (null != counter) {
+      counter[0]++;
+    }
+    return sql;
+  }
+}
@@ -17,7 +17,11 @@ package org.openlmis.stockmanagement.util;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import lombok.Getter;
 import lombok.Setter;
 import org.openlmis.stockmanagement.domain.card.StockCard;
@@ -35,7 +39,10 @@ import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
  * Before processing a stock event, one instance of this class will be created to hold all things
  * needed from ref-data service. By doing this, all network traffic is concentrated in one place,
  * not scattered around in different places. All resources use lazy loading so they are retrieved
- * only when there is a need.
+ * only when there is a need, unless the context builder prefetches them.
+ *
+ * <p>The time each resource took to load is kept in {@link #getResourceLoadTimes()}, so that slow
+ * dependencies of an event can be told apart.
  */
 @Setter
 public class StockEventProcessContext {
@@ -57,6 +64,8 @@ public class StockEventProcessContext {
   @Getter
   private UUID unpackReasonId;
 
+  private final Map<String, Long> resourceLoadTimes = new ConcurrentHashMap<>();
+
   public UUID getCurrentUserId() {
     return currentUserId.get();
   }
@@ -109,4 +118,27 @@ public class StockEventProcessContext {
   public void refreshCards() {
     cards.refresh();
   }
+
+  /**
+   * Returns the load time in milliseconds of each resource loaded so far, by resource name.
+   */
+  public Map<String, Long> getResourceLoadTimes() {
+    return resourceLoadTimes;
+  }
+
+  /**
+   * Wraps the given loader so that the time it takes is recorded as the load time of the given
+   * resource.
+   */
+  public <T> Supplier<T> timed(String resource, Supplier<T> loader) {
+    return () -> {
+      long start = System.nanoTime();
+      try {
+        return loader.get();
+      } finally {
+        resourceLoadTimes.put(resource,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    };
+  }
 }
@@ -20,16 +20,16 @@ import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockCardLineItemReasonDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.i18n.MessageKeys;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.util.Message;
 
 public class ReasonByNameDeferredLoader
     extends DeferredLoader<StockCardLineItemReasonDto, String, ReasonByNameDeferredLoader.Handle> {
 
-  private final StockCardLineItemReasonRepository reasonRepository;
+  private final ReasonCatalog reasonCatalog;
 
-  public ReasonByNameDeferredLoader(StockCardLineItemReasonRepository reasonRepository) {
-    this.reasonRepository = reasonRepository;
+  public ReasonByNameDeferredLoader(ReasonCatalog reasonCatalog) {
+    this.reasonCatalog = reasonCatalog;
   }
 
   @Override
@@ -40,7 +40,7 @@ public class ReasonByNameDeferredLoader
   @Override
   public void loadDeferredObjects() {
     final List<StockCardLineItemReason> allDeferredReasons =
-        reasonRepository.findByNameIn(deferredObjects.keySet());
+        reasonCatalog.findByNameIn(deferredObjects.keySet());
 
     for (StockCardLineItemReason reason : allDeferredReasons) {
       deferredObjects.remove(reason.getName()).set(StockCardLineItemReasonDto.newInstance(reason));
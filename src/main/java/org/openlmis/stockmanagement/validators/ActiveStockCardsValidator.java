@@ -24,6 +24,7 @@ import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -57,7 +58,7 @@ public class ActiveStockCardsValidator implements StockEventValidator {
 
     checkAllStockCardsCovered(stockEventDto, profiler.startNested("CHECK_STOCK_CARDS"));
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 
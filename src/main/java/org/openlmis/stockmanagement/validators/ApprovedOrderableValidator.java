@@ -29,6 +29,7 @@ import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -76,7 +77,7 @@ public class ApprovedOrderableValidator implements StockEventValidator {
           new Message(ERROR_ORDERABLE_NOT_IN_APPROVED_LIST, codes));
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 
@@ -24,6 +24,7 @@ import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.extension.point.AdjustmentReasonValidator;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.stereotype.Component;
 
@@ -51,7 +52,7 @@ public class DefaultAdjustmentReasonValidator implements AdjustmentReasonValidat
       }
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 
@@ -28,6 +28,7 @@ import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.extension.point.FreeTextValidator;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.stereotype.Component;
 
@@ -67,7 +68,7 @@ public class DefaultFreeTextValidator implements FreeTextValidator {
       checkReasonFreeText(stockEventDto, eventLineItem);
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 
@@ -31,6 +31,7 @@ import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.stereotype.Component;
 
@@ -56,7 +57,7 @@ public class MandatoryFieldsValidator implements StockEventValidator {
     profiler.start("VALIDATE_QUANTITY");
     validateQuantity(stockEventDto);
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 
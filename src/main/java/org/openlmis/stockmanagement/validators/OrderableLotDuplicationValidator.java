@@ -24,6 +24,7 @@ import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.stereotype.Component;
 
@@ -59,7 +60,7 @@ public class OrderableLotDuplicationValidator implements StockEventValidator {
           new Message(ERROR_EVENT_ORDERABLE_LOT_DUPLICATION, duplicates));
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 }
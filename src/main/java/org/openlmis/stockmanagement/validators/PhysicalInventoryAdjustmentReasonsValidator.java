@@ -27,8 +27,9 @@ import org.openlmis.stockmanagement.dto.StockEventAdjustmentDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -42,7 +43,7 @@ import org.springframework.stereotype.Component;
 public class PhysicalInventoryAdjustmentReasonsValidator implements StockEventValidator {
 
   @Autowired
-  private ValidReasonAssignmentRepository validReasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   @Override
   public void validate(StockEventDto stockEventDto) {
@@ -57,7 +58,7 @@ public class PhysicalInventoryAdjustmentReasonsValidator implements StockEventVa
       }
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 
@@ -107,7 +108,7 @@ public class PhysicalInventoryAdjustmentReasonsValidator implements StockEventVa
 
   private boolean isReasonValid(UUID programId, UUID facilityTypeId, UUID reasonId) {
     ValidReasonAssignment validReason =
-        validReasonRepository.findByProgramIdAndFacilityTypeIdAndReasonId(
+        reasonCatalog.findByProgramIdAndFacilityTypeIdAndReasonId(
             programId, facilityTypeId, reasonId);
     return validReason != null;
   }
@@ -21,6 +21,7 @@ import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVEN
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_LINE_ITEMS_MISSING;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_ORDERABLE_DISABLED_VVM;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_ORDERABLE_MISSING;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PHYSICAL_INVENTORY_VERSION_MISSING;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PROGRAM_ID_MISSING;
 import static org.slf4j.ext.XLoggerFactory.getXLogger;
 import static org.springframework.util.CollectionUtils.isEmpty;
@@ -28,10 +29,12 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 import java.util.List;
 import java.util.UUID;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryDraftPatchDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryLineItemDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -78,10 +81,33 @@ public class PhysicalInventoryValidator {
     validateLineItems(lineItems);
     vvmValidator.validate(lineItems, ERROR_PHYSICAL_INVENTORY_ORDERABLE_DISABLED_VVM, false);
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(inventory);
   }
 
+  /**
+    * Check for validity of a partial draft save. Unlike {@link #validateDraft}, it neither loads
+    * the draft nor requires line items, as a partial save may only remove line items.
+    * Throws {@link ValidationMessageException} if an error found.
+    * @param patch changes to validate.
+    * @param id id of the changed draft.
+    */
+  public void validateDraftChanges(PhysicalInventoryDraftPatchDto patch, UUID id) {
+    if (null != patch.getId() && !patch.getId().equals(id)) {
+      throw new ValidationMessageException(ERROR_PHYSICAL_INVENTORY_ID_MISMATCH);
+    }
+    validateNotNull(patch.getVersion(), ERROR_PHYSICAL_INVENTORY_VERSION_MISSING);
+
+    if (!isEmpty(patch.getLineItems())) {
+      validateLineItems(patch.getLineItems());
+      vvmValidator.validate(patch.getLineItems(), ERROR_PHYSICAL_INVENTORY_ORDERABLE_DISABLED_VVM,
+          false);
+    }
+    if (!isEmpty(patch.getRemovedLineItems())) {
+      validateLineItems(patch.getRemovedLineItems());
+    }
+  }
+
   /**
     * Check for physical inventory dto's validity.
     * Throws {@link ValidationMessageException} if an error found.
@@ -26,6 +26,7 @@ import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.slf4j.profiler.Profiler;
 import org.springframework.stereotype.Component;
@@ -64,7 +65,7 @@ public class SourceDestinationAssignmentValidator implements StockEventValidator
           .forEach(eventLineItem -> checkExistingAssignment(eventDto, eventLineItem));
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(eventDto);
   }
 
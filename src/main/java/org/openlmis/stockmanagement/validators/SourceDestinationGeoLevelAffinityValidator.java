@@ -18,29 +18,26 @@ package org.openlmis.stockmanagement.validators;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_DESTINATION_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_SOURCE_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
-import org.openlmis.stockmanagement.dto.ValidSourceDestinationDto;
-import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.service.ValidDestinationService;
 import org.openlmis.stockmanagement.service.ValidSourceService;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
 /**
  * This validator check geo level affinity to make sure that chosen destination/source is correct.
  * Meaning that chosen source or destination must be from/to valid node which match the
  * the geography zone (of the affinity level) with provided facility.
+ * The valid nodes of a program and facility are cached by the source/destination services, so
+ * this is a set lookup unless the assignments changed.
  */
 @Component(value = "SourceDestinationGeoLevelAffinityValidator")
 public class SourceDestinationGeoLevelAffinityValidator implements StockEventValidator {
@@ -65,6 +62,11 @@ public class SourceDestinationGeoLevelAffinityValidator implements StockEventVal
       return;
     }
 
+    //facility not found in ref data is handled in other validators
+    if (null == stockEventDto.getContext().getFacility()) {
+      return;
+    }
+
     List<StockEventLineItemDto> stockEventLineItems = stockEventDto.getLineItems();
     
     if (stockEventLineItems.get(0).getSourceId() != null) {
@@ -74,78 +76,38 @@ public class SourceDestinationGeoLevelAffinityValidator implements StockEventVal
       validateDestinations(stockEventDto, profiler.startNested("VALIDATE_DESTINATIONS"));
     }
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     XLOGGER.exit(stockEventDto);
   }
 
-  private void  validateDestinations(StockEventDto stockEventDto, Profiler profiler) {
-    profiler.start("FIND_DESTINATIONS");
-    Page<ValidSourceDestinationDto> validDestinationDtos = validDestinationService
-        .findDestinations(Collections.singletonList(stockEventDto.getProgramId()),
-            stockEventDto.getFacilityId(), null, Pageable.unpaged());
-
-    profiler.start("GET_DESTINATION_IDS");
-    List<UUID> validDestinationDtoIds = getValidNodeIds(validDestinationDtos.getContent());
+  private void validateDestinations(StockEventDto stockEventDto, Profiler profiler) {
+    profiler.start("FIND_DESTINATION_IDS");
+    Set<UUID> validDestinationIds = validDestinationService.findValidDestinationNodeIds(
+        stockEventDto.getProgramId(), stockEventDto.getContext().getFacility());
 
     profiler.start("FIND_STOCK_EVENTS");
-    List<StockEventLineItemDto> stockEventLineItemsNotMatch =
-        findAllStockEventLineItemsWithNoAffinityMatch(stockEventDto.getLineItems(),
-          lineItem -> isNotGeoLevelAffinity(lineItem.getDestinationId(),
-          validDestinationDtoIds));
-
-    if (stockEventLineItemsNotMatch.isEmpty()) {
-      return;
-    }
-
-    UUID notValidNodeAssignmentId = stockEventLineItemsNotMatch.get(0).getDestinationId();
-    FacilityDto facilityDto = stockEventDto.getContext().getFacility();
-    throwError(ERROR_DESTINATION_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY,
-        notValidNodeAssignmentId, facilityDto.getName());
-
+    stockEventDto.getLineItems().stream()
+        .map(StockEventLineItemDto::getDestinationId)
+        .filter(destinationId -> !validDestinationIds.contains(destinationId))
+        .findFirst()
+        .ifPresent(destinationId -> throwError(
+            ERROR_DESTINATION_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY, destinationId,
+            stockEventDto.getContext().getFacility().getName()));
   }
 
-  private void  validateSources(StockEventDto stockEventDto, Profiler profiler) {
-    profiler.start("FIND_SOURCES");
-    Page<ValidSourceDestinationDto> validSourceDtos =
-        validSourceService.findSources(Collections.singletonList(stockEventDto.getProgramId()),
-        stockEventDto.getFacilityId(), null, Pageable.unpaged());
-
-    profiler.start("GET_SOURCE_IDS");
-    List<UUID> validSourceDtoIds = getValidNodeIds(validSourceDtos.getContent());
+  private void validateSources(StockEventDto stockEventDto, Profiler profiler) {
+    profiler.start("FIND_SOURCE_IDS");
+    Set<UUID> validSourceIds = validSourceService.findValidSourceNodeIds(
+        stockEventDto.getProgramId(), stockEventDto.getContext().getFacility());
 
     profiler.start("FIND_STOCK_EVENTS");
-    List<StockEventLineItemDto> stockEventLineItemsNotMatch =
-        findAllStockEventLineItemsWithNoAffinityMatch(stockEventDto.getLineItems(),
-          lineItem -> isNotGeoLevelAffinity(lineItem.getSourceId(), validSourceDtoIds));
-
-    if (stockEventLineItemsNotMatch.isEmpty()) {
-      return;
-    }
-
-    UUID notValidNodeAssignmentId = stockEventLineItemsNotMatch.get(0).getSourceId();
-    FacilityDto facilityDto = stockEventDto.getContext().getFacility();
-    throwError(ERROR_SOURCE_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY,
-        notValidNodeAssignmentId, facilityDto.getName());
-
-  }
-
-  private List<StockEventLineItemDto> findAllStockEventLineItemsWithNoAffinityMatch(
-      List<StockEventLineItemDto> stockEventLineItems,
-      Predicate<StockEventLineItemDto> checkGeoLevelAffinity) {
-    return stockEventLineItems.stream()
-        .filter(checkGeoLevelAffinity)
-        .collect(Collectors.toList());
-  }
-
-  private List<UUID> getValidNodeIds(List<ValidSourceDestinationDto> validSourceDtos) {
-    return validSourceDtos.stream()
-        .map(validSourceDestinationDto -> validSourceDestinationDto.getNode().getId())
-        .collect(Collectors.toList());
-  }
-
-  private boolean isNotGeoLevelAffinity(UUID nodeId,
-      List<UUID> sourceDestinationAssignments) {
-    return !sourceDestinationAssignments.contains(nodeId);
+    stockEventDto.getLineItems().stream()
+        .map(StockEventLineItemDto::getSourceId)
+        .filter(sourceId -> !validSourceIds.contains(sourceId))
+        .findFirst()
+        .ifPresent(sourceId -> throwError(
+            ERROR_SOURCE_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY, sourceId,
+            stockEventDto.getContext().getFacility().getName()));
   }
 
   private void throwError(String messageKey, Object... params) {
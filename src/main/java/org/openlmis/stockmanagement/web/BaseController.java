@@ -15,6 +15,7 @@
 
 package org.openlmis.stockmanagement.web;
 
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -32,7 +33,7 @@ public abstract class BaseController {
   }
 
   protected <T> T stopProfiler(Profiler profiler, T exitArg) {
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     extLogger.exit(exitArg);
 
     return exitArg;
@@ -0,0 +1,50 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import java.util.List;
+import org.openlmis.stockmanagement.http.CircuitBreaker;
+import org.openlmis.stockmanagement.http.RemoteCallGuard;
+import org.openlmis.stockmanagement.service.PermissionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Shows the state of the circuit breakers guarding the calls to other services.
+ */
+@RestController
+@RequestMapping("/api/circuitBreakers")
+public class CircuitBreakerController {
+
+  @Autowired
+  private PermissionService permissionService;
+
+  @Autowired
+  private RemoteCallGuard remoteCallGuard;
+
+  /**
+   * Returns the circuit breakers of all resources called since this node started. The permission
+   * check itself may need referencedata, so while its breaker is open the same information is
+   * only available through the {@code stockmanagement.circuitBreaker.state} metric.
+   */
+  @GetMapping
+  public List<CircuitBreaker.Status> getCircuitBreakers() {
+    permissionService.canManageSystemSettings();
+    return remoteCallGuard.getCircuitBreakers();
+  }
+}
@@ -35,6 +35,7 @@ import java.util.UUID;
 import lombok.RequiredArgsConstructor;
 import org.openlmis.stockmanagement.domain.JasperTemplate;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryDraftPatchDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
@@ -52,6 +53,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -99,6 +101,7 @@ public class PhysicalInventoryController {
    * @param facility facility ID.
    * @return returns found draft, if not found, returns empty draft.
    */
+  @Transactional(readOnly = true)
   @RequestMapping(method = GET)
   public ResponseEntity<List<PhysicalInventoryDto>> searchPhysicalInventory(
       @RequestParam UUID program,
@@ -117,6 +120,7 @@ public class PhysicalInventoryController {
    * @param id  physical inventory id.
    * @return returns found physical inventory, if not found, returns No Content.
    */
+  @Transactional(readOnly = true)
   @GetMapping(ID_PATH_VARIABLE)
   @ResponseStatus(OK)
   @ResponseBody
@@ -161,6 +165,22 @@ public class PhysicalInventoryController {
     return physicalInventoryService.saveDraft(dto, id);
   }
 
+  /**
+   * Save changed line items of a physical inventory draft.
+   *
+   * @param id physical inventory id.
+   * @param patch changed and removed line items with the draft version they are based on.
+   * @return physical inventory id with the new draft version.
+   */
+  @Transactional
+  @PatchMapping(ID_PATH_VARIABLE)
+  @ResponseStatus(OK)
+  @ResponseBody
+  public PhysicalInventoryDraftPatchDto patchPhysicalInventory(@PathVariable UUID id,
+      @RequestBody PhysicalInventoryDraftPatchDto patch) {
+    return physicalInventoryService.patchDraft(patch, id);
+  }
+
   /**
    * Delete a draft physical inventory.
    *
@@ -0,0 +1,98 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import static org.springframework.http.HttpStatus.ACCEPTED;
+import static org.springframework.http.HttpStatus.OK;
+
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import org.openlmis.stockmanagement.dto.PhysicalInventorySubmissionDto;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.service.PhysicalInventoryService;
+import org.openlmis.stockmanagement.service.PhysicalInventorySubmissionService;
+import org.slf4j.profiler.Profiler;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Controller used to submit large physical inventories in the staged mode and to follow the
+ * progress of such submissions. It is intentionally not transactional: a submission has to be
+ * committed before a background worker picks it up.
+ */
+@Controller
+@RequestMapping("/api/physicalInventories/submissions")
+@RequiredArgsConstructor
+public class PhysicalInventorySubmissionController extends BaseController {
+
+  private final PhysicalInventorySubmissionService submissionService;
+  private final PhysicalInventoryService physicalInventoryService;
+
+  /**
+   * Submit a physical inventory stock event in the staged mode.
+   *
+   * @param eventDto a physical inventory stock event bound to request body.
+   * @return the accepted submission, poll it to see when the stock event is created.
+   */
+  @PostMapping
+  @ResponseStatus(ACCEPTED)
+  @ResponseBody
+  public PhysicalInventorySubmissionDto submitPhysicalInventory(
+      @RequestBody StockEventDto eventDto) {
+    Profiler profiler = getProfiler("SUBMIT_PHYSICAL_INVENTORY_STAGED", eventDto.getFacilityId());
+
+    profiler.start("CHECK_PERMISSION");
+    checkPermission(eventDto.getProgramId(), eventDto.getFacilityId());
+
+    profiler.start("SUBMIT");
+    PhysicalInventorySubmissionDto submission = submissionService.submit(eventDto);
+
+    return stopProfiler(profiler, submission);
+  }
+
+  /**
+   * Get the status of a physical inventory submission.
+   *
+   * @param id submission id.
+   * @return the found submission.
+   */
+  @GetMapping("/{id}")
+  @ResponseStatus(OK)
+  @ResponseBody
+  public PhysicalInventorySubmissionDto getSubmission(@PathVariable UUID id) {
+    PhysicalInventorySubmissionDto submission = submissionService.findSubmission(id);
+    checkPermission(submission.getProgramId(), submission.getFacilityId());
+
+    return submission;
+  }
+
+  private void checkPermission(UUID programId, UUID facilityId) {
+    OAuth2Authentication authentication = (OAuth2Authentication) SecurityContextHolder
+        .getContext().getAuthentication();
+
+    if (!authentication.isClientOnly()) {
+      physicalInventoryService.checkPermission(programId, facilityId);
+    }
+  }
+}
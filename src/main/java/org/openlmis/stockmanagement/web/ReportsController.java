@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -55,6 +56,7 @@ public class ReportsController {
    * @param stockCardId stock card id.
    * @return generated PDF report
    */
+  @Transactional(readOnly = true)
   @GetMapping(value = "/stockCards/{id}/print")
   @ResponseBody
   public ResponseEntity<byte[]> getStockCard(@PathVariable("id") UUID stockCardId,
@@ -77,6 +79,7 @@ public class ReportsController {
    *
    * @return generated PDF report
    */
+  @Transactional(readOnly = true)
   @GetMapping(value = "/stockCardSummaries/print")
   @ResponseBody
   public ResponseEntity<byte[]> getStockCardSummaries(
@@ -106,6 +109,7 @@ public class ReportsController {
    * @param lang         the lang
    * @return the response entity
    */
+  @Transactional(readOnly = true)
   @GetMapping(value = "/stockEvents/{stockEventId}/print")
   @ResponseBody
   public ResponseEntity<byte[]> print(
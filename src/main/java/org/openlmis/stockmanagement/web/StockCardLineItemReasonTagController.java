@@ -16,7 +16,7 @@
 package org.openlmis.stockmanagement.web;
 
 import java.util.List;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -29,7 +29,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 public class StockCardLineItemReasonTagController extends BaseController {
 
   @Autowired
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   /**
    * Retrieve all stock card line item reason tags.
@@ -40,7 +40,7 @@ public class StockCardLineItemReasonTagController extends BaseController {
     Profiler profiler = getProfiler("GET_REASON_TAGS");
 
     profiler.start("DB_CALL");
-    List<String> tags = reasonRepository.findTags();
+    List<String> tags = reasonCatalog.findTags();
 
     return stopProfiler(profiler, tags);
   }
@@ -16,15 +16,20 @@
 package org.openlmis.stockmanagement.web;
 
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
 import static org.springframework.http.HttpStatus.OK;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import org.openlmis.stockmanagement.dto.StockCardDto;
+import org.openlmis.stockmanagement.repository.custom.StockCardVersion;
 import org.openlmis.stockmanagement.service.PermissionService;
 import org.openlmis.stockmanagement.service.StockCardService;
 import org.openlmis.stockmanagement.service.StockCardSummariesService;
+import org.openlmis.stockmanagement.service.StockVersionService;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.openlmis.stockmanagement.util.UuidUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +39,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -42,6 +48,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/api")
@@ -58,16 +65,39 @@ public class StockCardsController {
   @Autowired
   private StockCardSummariesService stockCardSummariesService;
 
+  @Autowired
+  private StockVersionService stockVersionService;
+
+  @Autowired
+  private StockETags stockETags;
+
   /**
-   * Get stock card by id.
+   * Get stock card by id. The response carries an ETag; if the request's {@code If-None-Match}
+   * matches it, only the view rights are checked and 304 Not Modified is returned without
+   * building the stock card.
    *
    * @param stockCardId stock card id.
    * @return found stock card.
    */
+  @Transactional(readOnly = true)
   @RequestMapping(value = "/stockCards/{stockCardId}")
-  public ResponseEntity<StockCardDto> getStockCard(@PathVariable("stockCardId") UUID stockCardId) {
+  public ResponseEntity<StockCardDto> getStockCard(@PathVariable("stockCardId") UUID stockCardId,
+      WebRequest request) {
     LOGGER.debug("Try to find stock card with id: {}", stockCardId);
 
+    Optional<StockCardVersion> version = stockVersionService.findStockCardVersion(stockCardId);
+    if (version.isPresent()) {
+      if (StockETags.isConditional(request)) {
+        stockCardService.validateViewRights(
+            version.get().getProgramId(), version.get().getFacilityId());
+      }
+
+      if (request.checkNotModified(stockETags.ofStockCard(version.get()))) {
+        LOGGER.debug("Stock card with id: {} not modified", stockCardId);
+        return new ResponseEntity<>(NOT_MODIFIED);
+      }
+    }
+
     StockCardDto stockCardDto = stockCardService.findStockCardById(stockCardId);
     if (stockCardDto == null) {
       LOGGER.debug("Not found stock card with id: {}", stockCardId);
@@ -85,6 +115,7 @@ public class StockCardsController {
    * @param pageable stock cards pagination parameters
    * @return found stock card.
    */
+  @Transactional(readOnly = true)
   @RequestMapping(value = "/stockCards")
   public Page<StockCardDto> search(@RequestParam MultiValueMap<String, String> params,
       Pageable pageable) {
@@ -96,6 +127,7 @@ public class StockCardsController {
    *
    * @return Stock card summaries.
    */
+  @Transactional(readOnly = true)
   @RequestMapping(value = "/stockCardSummaries")
   public Page<StockCardDto> getStockCardSummaries(
       @RequestParam() UUID program,
@@ -112,7 +144,7 @@ public class StockCardsController {
           .findStockCards(program, facility, pageable,
               profiler.startNested("FIND_STOCK_CARDS"));
     } finally {
-      profiler.stop().log();
+      ProfilerMetrics.stopAndLog(profiler);
     }
   }
 
@@ -121,6 +153,7 @@ public class StockCardsController {
    *
    * @return Stock card summaries.
    */
+  @Transactional(readOnly = true)
   @RequestMapping(value = "/stockCardSummaries/noCards")
   public List<StockCardDto> getStockCardSummariesFor(
       @RequestParam() UUID program,
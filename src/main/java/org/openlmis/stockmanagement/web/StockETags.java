@@ -0,0 +1,107 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openlmis.stockmanagement.repository.custom.StockCardVersion;
+import org.openlmis.stockmanagement.service.StockVersionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Builds strong ETags of stock card and summary responses from the stock versions (see
+ * {@link StockVersionService}) of their facility and programs, so that whether a client's copy is
+ * still current can be told from a single indexed lookup, before any of the response is built.
+ *
+ * <p>Besides the versions, a tag covers the resource, its request parameters and the current
+ * {@code maxAgeSeconds} period: orderables, lots and approved products come from the reference
+ * data service and are not versioned, so every tag changes at least that often.
+ */
+@Component
+public class StockETags {
+
+  @Autowired
+  private StockVersionService stockVersionService;
+
+  @Value("${stockmanagement.etag.maxAgeSeconds}")
+  private long maxAgeSeconds;
+
+  /**
+   * Returns whether the request carries an {@code If-None-Match} header, that is whether checking
+   * it before building the response can save any work.
+   */
+  public static boolean isConditional(WebRequest request) {
+    return null != request.getHeader(HttpHeaders.IF_NONE_MATCH);
+  }
+
+  /**
+   * Returns the ETag of the given stock card.
+   */
+  public String ofStockCard(StockCardVersion version) {
+    return tag(Stream.of("stockCard", version.getStockCardId(), version.getVersion()));
+  }
+
+  /**
+   * Returns the ETag of a resource built from the stock of the given facility and programs.
+   *
+   * @param resource   name of the resource
+   * @param facilityId facility of the resource
+   * @param programIds programs of the resource, all programs of the facility if empty
+   * @param parameters everything else the resource depends on, in a fixed order; collections
+   *                   may be given in any order
+   * @return the ETag
+   */
+  public String ofFacility(String resource, UUID facilityId, Collection<UUID> programIds,
+      Object... parameters) {
+    return tag(Stream.concat(
+        Stream.of(resource, facilityId,
+            new TreeMap<>(stockVersionService.getVersions(facilityId, programIds))),
+        Arrays.stream(parameters)));
+  }
+
+  private String tag(Stream<Object> parts) {
+    String value = parts
+        .map(StockETags::toTagValue)
+        .collect(Collectors.joining("|", "", "|" + currentPeriod()));
+
+    return '"' + Hashing.sha256().hashString(value, StandardCharsets.UTF_8).toString() + '"';
+  }
+
+  // collections are sorted, so the same ids given in another order make the same tag
+  private static String toTagValue(Object part) {
+    if (part instanceof Collection) {
+      return ((Collection<?>) part).stream()
+          .map(String::valueOf)
+          .sorted()
+          .collect(Collectors.joining(",", "[", "]"));
+    }
+    return String.valueOf(part);
+  }
+
+  private long currentPeriod() {
+    return System.currentTimeMillis() / 1000 / maxAgeSeconds;
+  }
+}
@@ -19,6 +19,7 @@ import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -58,10 +59,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 /**
- * Controller used to create stock event.
+ * Controller used to create stock event. Creating an event is not transactional here: the
+ * permission checks call other services, and {@link StockEventProcessor} starts the transaction
+ * for the writes itself.
  */
 @Controller
-@Transactional
 @RequestMapping("/api")
 public class StockEventsController extends BaseController {
   private static final Logger LOGGER = LoggerFactory.getLogger(StockEventsController.class);
@@ -112,6 +114,7 @@ public class StockEventsController extends BaseController {
    * @param request the line items to cancel with their cancellation reasons and the signature.
    * @return the created cancellation stock event's id.
    */
+  @Transactional
   @RequestMapping(value = "stockEvents/{id}/cancel", method = POST)
   public ResponseEntity<UUID> cancelStockEvent(
       @PathVariable UUID id, @RequestBody StockEventCancelDto request) {
@@ -124,6 +127,8 @@ public class StockEventsController extends BaseController {
 
   /**
    * Get a page of issue/receive stock events (transaction history) for a facility and program.
+   * Besides the usual page/size parameters the rows can be paged with a keyset cursor (the
+   * processed date and id of the last row of the previous page), which stays fast on deep pages.
    *
    * @return a page of stock event history rows.
    */
@@ -139,11 +144,16 @@ public class StockEventsController extends BaseController {
       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
           LocalDate endDate,
       @RequestParam(required = false) String documentNumber,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          ZonedDateTime cursorProcessedDate,
+      @RequestParam(required = false) UUID cursorId,
+      @RequestParam(required = false, defaultValue = "false") boolean skipTotal,
       Pageable pageable) {
     permissionService.canViewStockCard(programId, facilityId);
 
     StockEventSearchParams params = new StockEventSearchParams(
-        facilityId, programId, toEventOrigins(type), startDate, endDate, documentNumber);
+        facilityId, programId, toEventOrigins(type), startDate, endDate, documentNumber,
+        cursorProcessedDate, cursorId, skipTotal);
 
     return stockEventsService.search(params, pageable);
   }
@@ -34,8 +34,10 @@ import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
 import org.openlmis.stockmanagement.service.PermissionService;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.service.referencedata.ProgramFacilityTypeExistenceService;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -68,6 +70,9 @@ public class ValidReasonAssignmentController {
   @Autowired
   private ValidReasonAssignmentDtoBuilder reasonAssignmentDtoBuilder;
 
+  @Autowired
+  private ReasonCatalog reasonCatalog;
+
   private static final Logger LOGGER = LoggerFactory.getLogger(StockCardsController.class);
 
   /**
@@ -90,7 +95,7 @@ public class ValidReasonAssignmentController {
         params.getFacilityType(),
         params.getReasonType(), params.getReason());
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     return reasonAssignmentDtoBuilder.build(reasons);
   }
 
@@ -110,6 +115,7 @@ public class ValidReasonAssignmentController {
       throw new ValidationMessageException(new Message(ERROR_REASON_ASSIGNMENT_NOT_FOUND));
     }
     reasonAssignmentRepository.deleteById(assignmentId);
+    reasonCatalog.reload();
 
     return new ResponseEntity<>(null, NO_CONTENT);
   }
@@ -158,6 +164,7 @@ public class ValidReasonAssignmentController {
 
     ValidReasonAssignmentDto assignmentDto =
         reasonAssignmentDtoBuilder.build(reasonAssignmentRepository.save(assignment));
+    reasonCatalog.reload();
     return new ResponseEntity<>(assignmentDto, CREATED);
   }
 }
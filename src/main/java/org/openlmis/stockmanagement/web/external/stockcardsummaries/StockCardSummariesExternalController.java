@@ -34,6 +34,7 @@ import org.openlmis.stockmanagement.service.StockCardSummariesV2SearchParams;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.ProgramReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.openlmis.stockmanagement.web.Pagination;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -77,6 +79,7 @@ public class StockCardSummariesExternalController {
    * @param pageable   the page request, not null
    * @return the requested page of Stock Card summaries, never null
    */
+  @Transactional(readOnly = true)
   @GetMapping
   public Page<StockCardSummaryExternalDto> getStockCardSummaries(
       @RequestParam MultiValueMap<String, String> parameters,
@@ -98,7 +101,7 @@ public class StockCardSummariesExternalController {
     profiler.start("GET_PAGE");
     Page<StockCardSummaryExternalDto> page = Pagination.getPage(dtos, pageable);
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     return page;
   }
 
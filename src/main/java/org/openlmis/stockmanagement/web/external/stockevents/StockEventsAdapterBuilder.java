@@ -21,7 +21,10 @@ import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PROGRAM_CODE_N
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import javax.inject.Inject;
 import lombok.AllArgsConstructor;
@@ -35,12 +38,13 @@ import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.ProgramReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.openlmis.stockmanagement.util.deferredloading.LotByCodeDeferredLoader;
 import org.openlmis.stockmanagement.util.deferredloading.OrderableByCodeDeferredLoader;
 import org.openlmis.stockmanagement.util.deferredloading.ReasonByNameDeferredLoader;
@@ -61,7 +65,7 @@ public class StockEventsAdapterBuilder {
   private final ProgramReferenceDataService programReferenceDataService;
   private final OrderableReferenceDataService orderableReferenceDataService;
   private final LotReferenceDataService lotReferenceDataService;
-  private final StockCardLineItemReasonRepository reasonRepository;
+  private final ReasonCatalog reasonCatalog;
 
   /**
    * Initialize the bean.
@@ -70,19 +74,19 @@ public class StockEventsAdapterBuilder {
    * @param programReferenceDataService   the program reference data service
    * @param orderableReferenceDataService the orderable reference data service
    * @param lotReferenceDataService       the lot reference data service
-   * @param reasonRepository              the reason repository
+   * @param reasonCatalog                 the reason catalog
    */
   @Inject
   public StockEventsAdapterBuilder(FacilityReferenceDataService facilityReferenceDataService,
       ProgramReferenceDataService programReferenceDataService,
       OrderableReferenceDataService orderableReferenceDataService,
       LotReferenceDataService lotReferenceDataService,
-      StockCardLineItemReasonRepository reasonRepository) {
+      ReasonCatalog reasonCatalog) {
     this.facilityReferenceDataService = facilityReferenceDataService;
     this.programReferenceDataService = programReferenceDataService;
     this.orderableReferenceDataService = orderableReferenceDataService;
     this.lotReferenceDataService = lotReferenceDataService;
-    this.reasonRepository = reasonRepository;
+    this.reasonCatalog = reasonCatalog;
   }
 
   /**
@@ -92,40 +96,78 @@ public class StockEventsAdapterBuilder {
    * @return the StockEventDto, never null
    */
   public StockEventDto build(StockEventExternalDto externalDto) {
-    Profiler profiler = new Profiler("CONVERT_STOCK_EVENT_EXTERNAL_DTO_TO_REGULAR_DTO");
+    return build(Collections.singletonList(externalDto)).get(0);
+  }
+
+  /**
+   * Build StockEventDtos from a batch of StockEventExternalDtos. Each facility and program code is
+   * looked up once for the whole batch, and the orderables, lots and reasons of all events are
+   * loaded with one deferred loading pass per type.
+   *
+   * @param externalDtos the dtos, not null
+   * @return the StockEventDtos in the order of the given dtos, never null
+   */
+  public List<StockEventDto> build(List<StockEventExternalDto> externalDtos) {
+    Profiler profiler = new Profiler("CONVERT_STOCK_EVENT_EXTERNAL_DTOS_TO_REGULAR_DTOS");
     profiler.setLogger(LOGGER);
 
-    final FacilityDto facility = facilityReferenceDataService.findByCode(externalDto.getFacility())
-        .orElseThrow(() -> new ValidationMessageException(
-            new Message(ERROR_FACILITY_CODE_NOT_FOUND, externalDto.getFacility())));
+    profiler.start("FIND_FACILITIES_AND_PROGRAMS");
+    final Map<String, FacilityDto> facilities = new HashMap<>();
+    final Map<String, ProgramDto> programs = new HashMap<>();
+    for (StockEventExternalDto externalDto : externalDtos) {
+      facilities.computeIfAbsent(externalDto.getFacility(), this::findFacility);
+      programs.computeIfAbsent(externalDto.getProgram(), this::findProgram);
+    }
 
-    final ProgramDto program = programReferenceDataService.findByCode(externalDto.getProgram())
-        .orElseThrow(() -> new ValidationMessageException(
-            new Message(ERROR_PROGRAM_CODE_NOT_FOUND, externalDto.getProgram())));
+    final List<List<StockEventLineItemDto>> lineItems =
+        createAllStockEventLineItemDtos(externalDtos, profiler.startNested("CREATE_LINE_ITEMS"));
 
-    final List<StockEventLineItemDto> lineItems =
-        createAllStockEventLineItemDtos(externalDto, profiler.startNested("CREATE_LINE_ITEMS"));
+    profiler.start("CREATE_EVENTS");
+    final List<StockEventDto> events = new ArrayList<>(externalDtos.size());
+    for (int i = 0; i < externalDtos.size(); ++i) {
+      StockEventExternalDto externalDto = externalDtos.get(i);
+      events.add(new StockEventDto(null, facilities.get(externalDto.getFacility()).getId(),
+          programs.get(externalDto.getProgram()).getId(), externalDto.getSignature(),
+          externalDto.getDocumentNumber(), null, null, true, lineItems.get(i), null));
+    }
+
+    ProfilerMetrics.stopAndLog(profiler);
+    return events;
+  }
 
-    profiler.stop().log();
-    return new StockEventDto(null, facility.getId(), program.getId(), externalDto.getSignature(),
-        externalDto.getDocumentNumber(), null, null, true, lineItems, null);
+  private FacilityDto findFacility(String code) {
+    return facilityReferenceDataService.findByCode(code)
+        .orElseThrow(() -> new ValidationMessageException(
+            new Message(ERROR_FACILITY_CODE_NOT_FOUND, code)));
+  }
+
+  private ProgramDto findProgram(String code) {
+    return programReferenceDataService.findByCode(code)
+        .orElseThrow(() -> new ValidationMessageException(
+            new Message(ERROR_PROGRAM_CODE_NOT_FOUND, code)));
   }
 
-  private List<StockEventLineItemDto> createAllStockEventLineItemDtos(
-      StockEventExternalDto externalDto, Profiler profiler) {
+  private List<List<StockEventLineItemDto>> createAllStockEventLineItemDtos(
+      List<StockEventExternalDto> externalDtos, Profiler profiler) {
     final OrderableByCodeDeferredLoader orderableLoader =
         new OrderableByCodeDeferredLoader(orderableReferenceDataService);
     final LotByCodeDeferredLoader lotLoader = new LotByCodeDeferredLoader(lotReferenceDataService);
     final ReasonByNameDeferredLoader reasonLoader =
-        new ReasonByNameDeferredLoader(reasonRepository);
+        new ReasonByNameDeferredLoader(reasonCatalog);
 
-    final List<DeferredLineItem> deferredLineItems = new ArrayList<>();
+    final List<List<DeferredLineItem>> deferredLineItems = new ArrayList<>();
 
     profiler.start("PREPARE_DEFERRED");
-    for (StockEventLineItemExternalDto item : externalDto.getItems()) {
-      deferredLineItems.add(new DeferredLineItem(orderableLoader.deferredLoad(item.getOrderable()),
-          StringUtils.isBlank(item.getLot()) ? null : lotLoader.deferredLoad(item.getLot()),
-          item.getOccurredDate(), item.getQuantity(), reasonLoader.deferredLoad(item.getReason())));
+    for (StockEventExternalDto externalDto : externalDtos) {
+      List<DeferredLineItem> eventLineItems = new ArrayList<>();
+      for (StockEventLineItemExternalDto item : externalDto.getItems()) {
+        eventLineItems.add(new DeferredLineItem(
+            orderableLoader.deferredLoad(item.getOrderable()),
+            StringUtils.isBlank(item.getLot()) ? null : lotLoader.deferredLoad(item.getLot()),
+            item.getOccurredDate(), item.getQuantity(),
+            reasonLoader.deferredLoad(item.getReason())));
+      }
+      deferredLineItems.add(eventLineItems);
     }
 
     profiler.start("LOAD_DEFERRED");
@@ -134,11 +176,16 @@ public class StockEventsAdapterBuilder {
     reasonLoader.loadDeferredObjects();
 
     profiler.start("MAP_TO_DTO");
-    return deferredLineItems.stream().map(loadedLineItem -> StockEventLineItemDto.builder()
-        .orderableId(loadedLineItem.getOrderable().getId())
-        .lotId(loadedLineItem.getLot().map(LotDto::getId).orElse(null))
-        .occurredDate(loadedLineItem.getOccurredDate()).quantity(loadedLineItem.getQuantity())
-        .reasonId(loadedLineItem.getReason().getId()).build()).collect(toList());
+    return deferredLineItems.stream()
+        .map(eventLineItems -> eventLineItems.stream()
+            .map(loadedLineItem -> StockEventLineItemDto.builder()
+                .orderableId(loadedLineItem.getOrderable().getId())
+                .lotId(loadedLineItem.getLot().map(LotDto::getId).orElse(null))
+                .occurredDate(loadedLineItem.getOccurredDate())
+                .quantity(loadedLineItem.getQuantity())
+                .reasonId(loadedLineItem.getReason().getId()).build())
+            .collect(toList()))
+        .collect(toList());
   }
 
   @AllArgsConstructor
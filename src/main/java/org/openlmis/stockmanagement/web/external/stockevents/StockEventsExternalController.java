@@ -15,10 +15,26 @@
 
 package org.openlmis.stockmanagement.web.external.stockevents;
 
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_BATCH_EMPTY;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_EVENT_BATCH_TOO_LARGE;
+import static org.springframework.http.HttpStatus.CREATED;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.service.StockEventProcessingLock;
+import org.openlmis.stockmanagement.util.Message;
 import org.openlmis.stockmanagement.web.BaseController;
 import org.openlmis.stockmanagement.web.StockEventsController;
+import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -30,7 +46,6 @@ import org.springframework.web.bind.annotation.RestController;
  * Adapter Controller which converts {@link StockEventExternalDto} and delegates work to
  * {@link StockEventsExternalController}.
  */
-@Transactional
 @RestController
 @RequestMapping("/api/public/stockEvents")
 public class StockEventsExternalController extends BaseController {
@@ -41,8 +56,64 @@ public class StockEventsExternalController extends BaseController {
   @Autowired
   private StockEventsController stockEventsController;
 
+  @Autowired
+  private StockEventProcessingLock processingLock;
+
+  @Value("${stockmanagement.externalStockEvents.maxBatchSize}")
+  private int maxBatchSize;
+
   @PostMapping
   public ResponseEntity<UUID> createStockEvent(@RequestBody StockEventExternalDto eventDto) {
     return stockEventsController.createStockEvent(builder.build(eventDto));
   }
+
+  /**
+   * Create a batch of stock events. The codes and names referenced by the whole batch are
+   * resolved at once, then the processing locks of all the events are acquired up front, in one
+   * global order, so that concurrent batches cannot deadlock in either lock mode. The events are
+   * processed grouped by facility and program and in the given order within a group. The batch is
+   * processed in a single transaction: if any event is rejected, none of them is saved.
+   *
+   * @param eventDtos the stock events to create.
+   * @return the created stock events' IDs, in the order of the given events.
+   */
+  @Transactional
+  @PostMapping("/batch")
+  public ResponseEntity<List<UUID>> createStockEvents(
+      @RequestBody List<StockEventExternalDto> eventDtos) {
+    Profiler profiler = getProfiler("CREATE_STOCK_EVENTS_BATCH", eventDtos.size());
+
+    if (eventDtos.isEmpty()) {
+      throw new ValidationMessageException(new Message(ERROR_EVENT_BATCH_EMPTY));
+    }
+
+    if (eventDtos.size() > maxBatchSize) {
+      throw new ValidationMessageException(
+          new Message(ERROR_EVENT_BATCH_TOO_LARGE, eventDtos.size(), maxBatchSize));
+    }
+
+    profiler.start("BUILD_EVENTS");
+    List<StockEventDto> events = builder.build(eventDtos);
+
+    profiler.start("GROUP_BY_FACILITY_AND_PROGRAM");
+    final Map<String, List<Integer>> groups = IntStream.range(0, events.size())
+        .boxed()
+        .collect(Collectors.groupingBy(
+            index -> StockEventProcessingLock.getFacilityProgramKey(
+                events.get(index).getFacilityId(), events.get(index).getProgramId()),
+            TreeMap::new, Collectors.toList()));
+
+    profiler.start("ACQUIRE_LOCKS");
+    processingLock.acquireAll(events);
+
+    profiler.start("PROCESS");
+    UUID[] eventIds = new UUID[events.size()];
+    for (List<Integer> group : groups.values()) {
+      for (Integer index : group) {
+        eventIds[index] = stockEventsController.createStockEvent(events.get(index)).getBody();
+      }
+    }
+
+    return stopProfiler(profiler, new ResponseEntity<>(Arrays.asList(eventIds), CREATED));
+  }
 }
@@ -24,7 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import org.openlmis.stockmanagement.dto.ObjectReferenceDto;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.service.StockCardAggregate;
 import org.openlmis.stockmanagement.web.Pagination;
 import org.slf4j.Logger;
@@ -42,7 +42,7 @@ public class StockCardRangeSummaryBuilder {
   private static final Logger LOGGER = LoggerFactory.getLogger(StockCardRangeSummaryBuilder.class);
 
   @Autowired
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   static final String ORDERABLES = "orderables";
 
@@ -86,7 +86,7 @@ public class StockCardRangeSummaryBuilder {
     return new StockCardRangeSummaryDto(
         new ObjectReferenceDto(serviceUrl, ORDERABLES, orderableId),
         aggregate.getStockoutDays(startDate, endDate),
-        null != tag ? (reasonRepository.existsByTag(tag)
+        null != tag ? (reasonCatalog.existsByTag(tag)
             ? ImmutableMap.of(tag, aggregate.getAmount(tag, startDate, endDate))
             : new HashMap<>())
             : aggregate.getAmounts(startDate, endDate));
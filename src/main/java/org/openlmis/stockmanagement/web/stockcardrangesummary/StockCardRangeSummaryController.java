@@ -15,11 +15,14 @@
 
 package org.openlmis.stockmanagement.web.stockcardrangesummary;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
 import org.openlmis.stockmanagement.service.PermissionService;
 import org.openlmis.stockmanagement.service.StockCardAggregate;
 import org.openlmis.stockmanagement.service.StockCardSummariesService;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
+import org.openlmis.stockmanagement.web.StockETags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -27,11 +30,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/api/stockCardRangeSummaries")
@@ -49,15 +54,21 @@ public class StockCardRangeSummaryController {
   @Autowired
   private PermissionService permissionService;
 
+  @Autowired
+  private StockETags stockETags;
+
   /**
-   * Get stock card range summaries by program and facility.
+   * Get stock card range summaries by program and facility. The response carries an ETag; if the
+   * request's {@code If-None-Match} matches it, 304 Not Modified is returned right after the
+   * permission check.
    *
    * @return Stock card range summaries.
    */
+  @Transactional(readOnly = true)
   @GetMapping
   public Page<StockCardRangeSummaryDto> getStockCardRangeSummaries(
       @RequestParam MultiValueMap<String, String> parameters,
-      @PageableDefault(size = Integer.MAX_VALUE) Pageable pageable) {
+      @PageableDefault(size = Integer.MAX_VALUE) Pageable pageable, WebRequest request) {
 
     Profiler profiler = new Profiler("GET_STOCK_CARD_RANGE_SUMMARIES");
     profiler.setLogger(LOGGER);
@@ -68,6 +79,17 @@ public class StockCardRangeSummaryController {
     profiler.start("PERMISSION_CHECK");
     permissionService.canViewStockCard(params.getProgramId(), params.getFacilityId());
 
+    profiler.start("CHECK_ETAG");
+    String etag = stockETags.ofFacility("stockCardRangeSummaries", params.getFacilityId(),
+        Collections.singleton(params.getProgramId()), params.getProgramId(),
+        params.getOrderableIds(), params.getTag(), params.getStartDate(),
+        params.getEndDate(), pageable);
+
+    if (request.checkNotModified(etag)) {
+      ProfilerMetrics.stopAndLog(profiler);
+      return null;
+    }
+
     profiler.start("GET_STOCK_CARDS_SUMMARIES_SERVICE");
     Map<UUID, StockCardAggregate> groupedStockCards =
         stockCardSummariesService.getGroupedStockCards(
@@ -85,7 +107,7 @@ public class StockCardRangeSummaryController {
         params.getEndDate(),
         pageable);
 
-    profiler.stop().log();
+    ProfilerMetrics.stopAndLog(profiler);
     return page;
   }
 }
@@ -15,11 +15,28 @@
 
 package org.openlmis.stockmanagement.web.stockcardsummariesv2;
 
+import static org.apache.commons.collections.CollectionUtils.isEmpty;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_STOCK_CARD_SUMMARIES_INCOMPLETE;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.servlet.http.HttpServletResponse;
+import org.openlmis.stockmanagement.i18n.MessageService;
+import org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesSearchParams;
+import org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesService;
 import org.openlmis.stockmanagement.service.StockCardSummaries;
 import org.openlmis.stockmanagement.service.StockCardSummariesService;
 import org.openlmis.stockmanagement.service.StockCardSummariesV2SearchParams;
+import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.ProfilerMetrics;
 import org.openlmis.stockmanagement.web.Pagination;
+import org.openlmis.stockmanagement.web.StockETags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.profiler.Profiler;
@@ -27,11 +44,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/api/v2/stockCardSummaries")
@@ -46,15 +67,32 @@ public class StockCardSummariesV2Controller {
   @Autowired
   private StockCardSummariesV2DtoBuilder stockCardSummariesV2DtoBuilder;
 
+  @Autowired
+  private StockETags stockETags;
+
+  @Autowired
+  private MultiFacilityStockCardSummariesService multiFacilityStockCardSummariesService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private MessageService messageService;
+
   /**
-   * Get stock card summaries by program and facility.
+   * Get stock card summaries by program and facility. The response carries an ETag; if the
+   * request's {@code If-None-Match} matches it, 304 Not Modified is returned. When programs are
+   * given and the user can view all of them, that happens before the summaries are built.
+   * Otherwise the summaries are built first, so the view rights are checked on the programs with
+   * approved products at the facility, just like for an unconditional request.
    *
    * @return Stock card summaries.
    */
+  @Transactional(readOnly = true)
   @GetMapping
   public Page<StockCardSummaryV2Dto> getStockCardSummaries(
       @RequestParam MultiValueMap<String, String> parameters,
-      @PageableDefault(size = Integer.MAX_VALUE) Pageable pageable) {
+      @PageableDefault(size = Integer.MAX_VALUE) Pageable pageable, WebRequest request) {
 
     Profiler profiler = new Profiler("GET_STOCK_CARDS_V2");
     profiler.setLogger(LOGGER);
@@ -62,6 +100,24 @@ public class StockCardSummariesV2Controller {
     profiler.start("VALIDATE_PARAMS");
     StockCardSummariesV2SearchParams params = new StockCardSummariesV2SearchParams(parameters);
 
+    profiler.start("CHECK_ETAG");
+    String etag = stockETags.ofFacility("stockCardSummaries", params.getFacilityId(),
+        params.getProgramIds(), params.getProgramIds(),
+        null != params.getAsOfDate() ? params.getAsOfDate() : LocalDate.now(),
+        params.getOrderableIds(), params.isNonEmptyOnly(),
+        params.getOrderableCode(), params.getOrderableName(), params.getLotCode(), pageable);
+
+    // rights on all the requested programs cover the ones with approved products at the facility,
+    // which are the ones checked when the summaries are built
+    boolean rightsKnown = !isEmpty(params.getProgramIds()) && StockETags.isConditional(request)
+        && stockCardSummariesService.canViewStockCards(params.getProgramIds(),
+            params.getFacilityId());
+
+    if (rightsKnown && request.checkNotModified(etag)) {
+      ProfilerMetrics.stopAndLog(profiler);
+      return null;
+    }
+
     profiler.start("GET_STOCK_CARD_SUMMARIES");
     StockCardSummaries summaries = stockCardSummariesService.findStockCards(params);
 
@@ -75,7 +131,69 @@ public class StockCardSummariesV2Controller {
     profiler.start("GET_PAGE");
     Page<StockCardSummaryV2Dto> page = Pagination.getPage(dtos, pageable);
 
-    profiler.stop().log();
-    return page;
+    ProfilerMetrics.stopAndLog(profiler);
+    return !rightsKnown && request.checkNotModified(etag) ? null : page;
+  }
+
+  /**
+   * Get stock card summaries of several facilities, given by their ids or by a supervisory node.
+   * The view rights of all facilities are checked first; the response is then a JSON array that
+   * is written facility by facility, each entry holding the facility id and its summaries. As the
+   * status has already been sent by then, a failure while the entries are written is reported by
+   * a last entry holding only an error, after which the array is closed.
+   */
+  @Transactional(readOnly = true)
+  @GetMapping("/facilities")
+  public void getMultiFacilityStockCardSummaries(
+      @RequestParam MultiValueMap<String, String> parameters, HttpServletResponse response)
+      throws IOException {
+
+    Profiler profiler = new Profiler("GET_MULTI_FACILITY_STOCK_CARDS_V2");
+    profiler.setLogger(LOGGER);
+
+    profiler.start("VALIDATE_PARAMS");
+    MultiFacilityStockCardSummariesSearchParams params =
+        new MultiFacilityStockCardSummariesSearchParams(parameters);
+
+    profiler.start("GET_STOCK_CARD_SUMMARIES");
+    Iterator<Map.Entry<UUID, StockCardSummaries>> summaries =
+        multiFacilityStockCardSummariesService.findStockCards(params).iterator();
+
+    profiler.start("WRITE_SUMMARIES");
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    try (JsonGenerator generator = objectMapper.getFactory()
+        .createGenerator(response.getOutputStream())) {
+      generator.writeStartArray();
+
+      try {
+        while (summaries.hasNext()) {
+          Map.Entry<UUID, StockCardSummaries> entry = summaries.next();
+          List<StockCardSummaryV2Dto> facilitySummaries = stockCardSummariesV2DtoBuilder.build(
+              entry.getValue().getPageOfApprovedProducts(),
+              entry.getValue().getStockCardsForFulfillOrderables(),
+              entry.getValue().getOrderableFulfillMap(),
+              params.isNonEmptyOnly());
+
+          generator.writeStartObject();
+          generator.writeObjectField("facilityId", entry.getKey());
+          generator.writeObjectField("summaries", facilitySummaries);
+          generator.writeEndObject();
+          generator.flush();
+        }
+      } catch (RuntimeException ex) {
+        // an entry is only started once it has been built, so none is left open here; the
+        // transaction is rolled back quietly, as the response can no longer report its failure
+        LOGGER.error("Could not get stock card summaries of all facilities", ex);
+        TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        generator.writeStartObject();
+        generator.writeObjectField("error", messageService.localize(
+            new Message(ERROR_STOCK_CARD_SUMMARIES_INCOMPLETE)));
+        generator.writeEndObject();
+      }
+
+      generator.writeEndArray();
+    }
+
+    ProfilerMetrics.stopAndLog(profiler);
   }
 }
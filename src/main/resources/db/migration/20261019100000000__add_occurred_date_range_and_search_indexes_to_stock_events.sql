@@ -0,0 +1,33 @@
+-- The transaction history search filtered by occurred date through a join to the line items and
+-- paged with OFFSET over (processeddate, id). Keep each event's earliest/latest line item date on
+-- the event itself and index the columns the search filters, sorts and seeks on.
+ALTER TABLE stockmanagement.stock_events
+    ADD COLUMN minoccurreddate DATE NULL,
+    ADD COLUMN maxoccurreddate DATE NULL;
+
+UPDATE stockmanagement.stock_events AS se
+SET minoccurreddate = li.minoccurreddate,
+    maxoccurreddate = li.maxoccurreddate
+FROM (
+    SELECT stockeventid, MIN(occurreddate) AS minoccurreddate, MAX(occurreddate) AS maxoccurreddate
+    FROM stockmanagement.stock_event_line_items
+    GROUP BY stockeventid
+) AS li
+WHERE li.stockeventid = se.id;
+
+CREATE INDEX stock_events_facility_program_processed_id_idx
+    ON stockmanagement.stock_events (facilityid, programid, processeddate DESC, id DESC);
+
+-- The document number search is a case-insensitive "contains" match, which only a trigram index
+-- can serve. pg_trgm needs a role allowed to create extensions; without it the search keeps
+-- working, just without the index.
+DO $$
+BEGIN
+    CREATE EXTENSION IF NOT EXISTS pg_trgm;
+    CREATE INDEX stock_events_documentnumber_trgm_idx
+        ON stockmanagement.stock_events USING gin (lower(documentnumber) gin_trgm_ops);
+EXCEPTION
+    WHEN insufficient_privilege OR undefined_file OR undefined_object THEN
+        RAISE NOTICE 'pg_trgm is not available, document number search will not be indexed';
+END
+$$;
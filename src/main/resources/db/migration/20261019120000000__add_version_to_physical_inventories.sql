@@ -0,0 +1,8 @@
+-- Version of a physical inventory draft, incremented on every save. Partial draft saves must name
+-- the version they were based on, so that concurrent saves of the same draft cannot silently
+-- overwrite each other.
+ALTER TABLE stockmanagement.physical_inventories
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS phys_inv_line_item_phys_inv_orderable_idx
+    ON stockmanagement.physical_inventory_line_items (physicalinventoryid, orderableid);
@@ -0,0 +1,16 @@
+-- Progress of physical inventories submitted in the staged mode, polled by clients while the
+-- submission is validated and persisted in the background.
+CREATE TABLE stockmanagement.physical_inventory_submissions (
+    id UUID PRIMARY KEY,
+    programid UUID NOT NULL,
+    facilityid UUID NOT NULL,
+    physicalinventoryid UUID,
+    status TEXT NOT NULL,
+    totallineitems INTEGER NOT NULL,
+    validatedlineitems INTEGER NOT NULL,
+    stockeventid UUID,
+    errormessagekey TEXT,
+    errormessage TEXT,
+    createddate TIMESTAMP NOT NULL,
+    modifieddate TIMESTAMP NOT NULL
+);
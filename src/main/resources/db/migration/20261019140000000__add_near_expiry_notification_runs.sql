@@ -0,0 +1,8 @@
+-- Lot expiration dates the near expiry job has already notified about, so that a run can catch up
+-- on dates missed while the service was down without notifying about the same date twice.
+CREATE TABLE stockmanagement.near_expiry_notification_runs (
+    id UUID PRIMARY KEY,
+    expirationdate DATE NOT NULL,
+    processeddate TIMESTAMP NOT NULL,
+    CONSTRAINT near_expiry_notification_runs_expiration_date_unique UNIQUE (expirationdate)
+);
@@ -0,0 +1,28 @@
+-- One row per stock card with its current (latest) stock on hand, maintained together with
+-- calculated_stocks_on_hand so that "current stock on hand" reads are a primary key lookup.
+-- The foreign key is deferred because the entity only holds the stock card id, so Hibernate does
+-- not know to insert the stock card first when both are new in one flush.
+CREATE TABLE stockmanagement.current_stocks_on_hand (
+    stockcardid UUID PRIMARY KEY
+        REFERENCES stockmanagement.stock_cards (id) ON DELETE CASCADE
+        DEFERRABLE INITIALLY DEFERRED,
+    stockonhand INTEGER NOT NULL,
+    occurreddate DATE NOT NULL,
+    processeddate TIMESTAMP NOT NULL,
+    lastlineitemid UUID
+);
+
+INSERT INTO stockmanagement.current_stocks_on_hand
+    (stockcardid, stockonhand, occurreddate, processeddate, lastlineitemid)
+SELECT DISTINCT ON (soh.stockcardid)
+    soh.stockcardid,
+    soh.stockonhand,
+    soh.occurreddate,
+    soh.processeddate,
+    (SELECT li.id
+        FROM stockmanagement.stock_card_line_items li
+        WHERE li.stockcardid = soh.stockcardid
+        ORDER BY li.occurreddate DESC, li.processeddate DESC, li.id DESC
+        LIMIT 1)
+FROM stockmanagement.calculated_stocks_on_hand soh
+ORDER BY soh.stockcardid, soh.occurreddate DESC;
@@ -0,0 +1,107 @@
+-- Range partition stock_card_line_items and calculated_stocks_on_hand by occurred date, one
+-- partition per year plus a default partition, so that date filtered reads only scan the years
+-- they ask for and indexes and vacuum work per year instead of over the whole history.
+--
+-- A primary key of a partitioned table has to include the partition key, so both become
+-- (id, occurreddate). The id alone is no longer unique on the database side, which is why the
+-- foreign key from physical_inventory_line_item_adjustments to the line items is dropped.
+
+-- Creates the given year's partition of both tables if it does not exist yet. Rows of that year
+-- that ended up in the default partition are moved into the new partition first, as attaching it
+-- would fail otherwise. Returns the number of partitions created.
+CREATE OR REPLACE FUNCTION stockmanagement.create_yearly_partitions(partition_year INTEGER)
+RETURNS INTEGER AS $$
+DECLARE
+    parent TEXT;
+    yearly TEXT;
+    created INTEGER := 0;
+    range_start DATE := make_date(partition_year, 1, 1);
+    range_end DATE := make_date(partition_year + 1, 1, 1);
+BEGIN
+    FOREACH parent IN ARRAY ARRAY['stock_card_line_items', 'calculated_stocks_on_hand'] LOOP
+        yearly := parent || '_' || partition_year;
+        IF to_regclass('stockmanagement.' || yearly) IS NULL THEN
+            EXECUTE format('CREATE TABLE stockmanagement.%I'
+                || ' (LIKE stockmanagement.%I INCLUDING DEFAULTS)', yearly, parent);
+            EXECUTE format('WITH moved AS (DELETE FROM stockmanagement.%I'
+                || ' WHERE occurreddate >= %L AND occurreddate < %L RETURNING *)'
+                || ' INSERT INTO stockmanagement.%I SELECT * FROM moved',
+                parent || '_default', range_start, range_end, yearly);
+            EXECUTE format('ALTER TABLE stockmanagement.%I ATTACH PARTITION stockmanagement.%I'
+                || ' FOR VALUES FROM (%L) TO (%L)', parent, yearly, range_start, range_end);
+            created := created + 1;
+        END IF;
+    END LOOP;
+    RETURN created;
+END
+$$ LANGUAGE plpgsql;
+
+ALTER TABLE stockmanagement.physical_inventory_line_item_adjustments
+    DROP CONSTRAINT fk_phys_inv_adj_stock_card_item;
+
+ALTER TABLE stockmanagement.stock_card_line_items RENAME TO stock_card_line_items_old;
+ALTER TABLE stockmanagement.calculated_stocks_on_hand RENAME TO calculated_stocks_on_hand_old;
+
+CREATE TABLE stockmanagement.stock_card_line_items (
+    LIKE stockmanagement.stock_card_line_items_old INCLUDING DEFAULTS
+) PARTITION BY RANGE (occurreddate);
+
+CREATE TABLE stockmanagement.stock_card_line_items_default
+    PARTITION OF stockmanagement.stock_card_line_items DEFAULT;
+
+CREATE TABLE stockmanagement.calculated_stocks_on_hand (
+    LIKE stockmanagement.calculated_stocks_on_hand_old INCLUDING DEFAULTS
+) PARTITION BY RANGE (occurreddate);
+
+CREATE TABLE stockmanagement.calculated_stocks_on_hand_default
+    PARTITION OF stockmanagement.calculated_stocks_on_hand DEFAULT;
+
+-- Yearly partitions from the first recorded year up to the next one; the application creates the
+-- following years' partitions ahead of time. Years before 2000 (most likely mistyped dates) are
+-- left in the default partition rather than creating a partition for each of them.
+DO $$
+DECLARE
+    current_year INTEGER := EXTRACT(YEAR FROM CURRENT_DATE);
+    first_year INTEGER;
+BEGIN
+    SELECT EXTRACT(YEAR FROM MIN(occurreddate)) INTO first_year
+    FROM stockmanagement.stock_card_line_items_old;
+
+    FOR partition_year IN GREATEST(COALESCE(first_year, current_year), 2000) .. current_year + 1 LOOP
+        PERFORM stockmanagement.create_yearly_partitions(partition_year);
+    END LOOP;
+END
+$$;
+
+INSERT INTO stockmanagement.stock_card_line_items
+SELECT * FROM stockmanagement.stock_card_line_items_old;
+
+INSERT INTO stockmanagement.calculated_stocks_on_hand
+SELECT * FROM stockmanagement.calculated_stocks_on_hand_old;
+
+DROP TABLE stockmanagement.stock_card_line_items_old;
+DROP TABLE stockmanagement.calculated_stocks_on_hand_old;
+
+-- Constraints and indexes are added after the copy so each partition's index is built once.
+ALTER TABLE stockmanagement.stock_card_line_items ADD PRIMARY KEY (id, occurreddate);
+ALTER TABLE stockmanagement.stock_card_line_items
+    ADD FOREIGN KEY (stockcardid) REFERENCES stockmanagement.stock_cards (id);
+ALTER TABLE stockmanagement.stock_card_line_items
+    ADD FOREIGN KEY (origineventid) REFERENCES stockmanagement.stock_events (id);
+ALTER TABLE stockmanagement.stock_card_line_items
+    ADD FOREIGN KEY (reasonid) REFERENCES stockmanagement.stock_card_line_item_reasons (id);
+ALTER TABLE stockmanagement.stock_card_line_items
+    ADD FOREIGN KEY (sourceid) REFERENCES stockmanagement.nodes (id);
+ALTER TABLE stockmanagement.stock_card_line_items
+    ADD FOREIGN KEY (destinationid) REFERENCES stockmanagement.nodes (id);
+ALTER TABLE stockmanagement.stock_card_line_items
+    ADD FOREIGN KEY (origineventlineitemid)
+    REFERENCES stockmanagement.stock_event_line_items (id);
+CREATE INDEX ON stockmanagement.stock_card_line_items (stockcardid, occurreddate);
+CREATE INDEX ON stockmanagement.stock_card_line_items (origineventid);
+
+ALTER TABLE stockmanagement.calculated_stocks_on_hand ADD PRIMARY KEY (id, occurreddate);
+ALTER TABLE stockmanagement.calculated_stocks_on_hand
+    ADD FOREIGN KEY (stockcardid) REFERENCES stockmanagement.stock_cards (id);
+CREATE UNIQUE INDEX calculated_stocks_on_hand_card_date_unique_idx
+    ON stockmanagement.calculated_stocks_on_hand (stockcardid, occurreddate);
@@ -0,0 +1,29 @@
+-- Version of the reasons, their tags and the valid reason assignments, bumped by every statement
+-- that changes any of them. Each node keeps an in-memory copy of these tables and compares the
+-- version it loaded with this one to find out that another node (or a script) changed them.
+CREATE TABLE stockmanagement.reason_catalog_version (
+    version BIGINT NOT NULL
+);
+
+INSERT INTO stockmanagement.reason_catalog_version (version) VALUES (1);
+
+CREATE OR REPLACE FUNCTION stockmanagement.bump_reason_catalog_version()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE stockmanagement.reason_catalog_version SET version = version + 1;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER reason_catalog_version_on_reasons
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON stockmanagement.stock_card_line_item_reasons
+    FOR EACH STATEMENT EXECUTE PROCEDURE stockmanagement.bump_reason_catalog_version();
+
+CREATE TRIGGER reason_catalog_version_on_reason_tags
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE
+    ON stockmanagement.stock_card_line_item_reason_tags
+    FOR EACH STATEMENT EXECUTE PROCEDURE stockmanagement.bump_reason_catalog_version();
+
+CREATE TRIGGER reason_catalog_version_on_valid_reason_assignments
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON stockmanagement.valid_reason_assignments
+    FOR EACH STATEMENT EXECUTE PROCEDURE stockmanagement.bump_reason_catalog_version();
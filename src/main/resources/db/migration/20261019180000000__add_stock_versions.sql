@@ -0,0 +1,10 @@
+-- Version of the stock of each facility and program, incremented by every stock event (and card
+-- deactivation) that changes it. Cached stock card summaries remember the versions they were built
+-- from and are only served while those are still current.
+CREATE TABLE stockmanagement.stock_versions (
+    id UUID PRIMARY KEY,
+    facilityid UUID NOT NULL,
+    programid UUID NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT stock_versions_facility_program_unique UNIQUE (facilityid, programid)
+);
@@ -0,0 +1,100 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.datasource.ReadOnlyRoutingDataSource.ROUTED_METRIC;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReadOnlyRoutingDataSourceTest {
+
+  private static final String POOL = "pool";
+
+  @Mock
+  private DataSource primary;
+
+  @Mock
+  private DataSource replica;
+
+  @Mock
+  private Connection primaryConnection;
+
+  @Mock
+  private Connection replicaConnection;
+
+  @Mock
+  private ReplicationLagGuard lagGuard;
+
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private ReadOnlyRoutingDataSource dataSource;
+
+  @Before
+  public void setUp() throws SQLException {
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    when(replica.getConnection()).thenReturn(replicaConnection);
+
+    dataSource = new ReadOnlyRoutingDataSource(primary, replica, lagGuard, meterRegistry);
+    dataSource.afterPropertiesSet();
+  }
+
+  @After
+  public void tearDown() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+  }
+
+  @Test
+  public void shouldRouteReadOnlyTransactionToReplica() throws SQLException {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    when(lagGuard.isReplicaUsable()).thenReturn(true);
+
+    assertSame(replicaConnection, dataSource.getConnection());
+    assertEquals(1, meterRegistry.get(ROUTED_METRIC).tag(POOL, "replica").counter().count(), 0);
+  }
+
+  @Test
+  public void shouldRouteReadOnlyTransactionToPrimaryWhenReplicaLags() throws SQLException {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    when(lagGuard.isReplicaUsable()).thenReturn(false);
+
+    assertSame(primaryConnection, dataSource.getConnection());
+    assertEquals(1, meterRegistry.get(ROUTED_METRIC).tag(POOL, "primary").counter().count(), 0);
+  }
+
+  @Test
+  public void shouldRouteReadWriteWorkToPrimaryWithoutCheckingLag() throws SQLException {
+    assertSame(primaryConnection, dataSource.getConnection());
+
+    verify(lagGuard, never()).isReplicaUsable();
+  }
+}
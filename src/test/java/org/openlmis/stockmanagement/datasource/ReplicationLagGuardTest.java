@@ -0,0 +1,128 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReplicationLagGuardTest {
+
+  private static final double MAX_LAG = 10;
+  private static final long CHECK_INTERVAL_MILLIS = 5000;
+
+  @Mock
+  private DataSource replica;
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private Statement statement;
+
+  @Mock
+  private ResultSet resultSet;
+
+  private FakeTicker ticker = new FakeTicker();
+  private ReplicationLagGuard guard;
+
+  @Before
+  public void setUp() throws SQLException {
+    when(replica.getConnection()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.executeQuery(anyString())).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true);
+
+    guard = new ReplicationLagGuard(replica, MAX_LAG, CHECK_INTERVAL_MILLIS, ticker);
+  }
+
+  @Test
+  public void shouldUseReplicaWhenLagIsWithinLimit() throws SQLException {
+    when(resultSet.getDouble(1)).thenReturn(2.5);
+
+    assertTrue(guard.isReplicaUsable());
+    assertEquals(2.5, guard.getLagSeconds(), 0);
+  }
+
+  @Test
+  public void shouldNotUseReplicaWhenLagIsAboveLimit() throws SQLException {
+    when(resultSet.getDouble(1)).thenReturn(MAX_LAG + 1);
+
+    assertFalse(guard.isReplicaUsable());
+  }
+
+  @Test
+  public void shouldNotUseReplicaWhenLagCannotBeRead() throws SQLException {
+    when(replica.getConnection()).thenThrow(new SQLException("replica is down"));
+
+    assertFalse(guard.isReplicaUsable());
+    assertTrue(Double.isNaN(guard.getLagSeconds()));
+  }
+
+  @Test
+  public void shouldCheckLagAtMostOncePerInterval() throws SQLException {
+    when(resultSet.getDouble(1)).thenReturn(0.0);
+
+    guard.isReplicaUsable();
+    ticker.advance(CHECK_INTERVAL_MILLIS - 1);
+    guard.isReplicaUsable();
+
+    verify(statement, times(1)).executeQuery(ReplicationLagGuard.LAG_QUERY);
+  }
+
+  @Test
+  public void shouldRecheckLagAfterInterval() throws SQLException {
+    when(resultSet.getDouble(1)).thenReturn(0.0, MAX_LAG + 1);
+
+    assertTrue(guard.isReplicaUsable());
+    ticker.advance(CHECK_INTERVAL_MILLIS);
+    assertFalse(guard.isReplicaUsable());
+
+    verify(statement, times(2)).executeQuery(ReplicationLagGuard.LAG_QUERY);
+  }
+
+  private static final class FakeTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.domain.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.openlmis.stockmanagement.testutils.StockEventDataBuilder;
+
+public class StockEventTest {
+
+  @Test
+  public void shouldDeriveOccurredDateRangeFromLineItems() {
+    StockEvent event = new StockEventDataBuilder()
+        .withLineItems(Arrays.asList(
+            lineItem(LocalDate.of(2026, 2, 20)),
+            lineItem(null),
+            lineItem(LocalDate.of(2026, 2, 10)),
+            lineItem(LocalDate.of(2026, 2, 15))))
+        .build();
+
+    event.updateOccurredDateRange();
+
+    assertEquals(LocalDate.of(2026, 2, 10), event.getMinOccurredDate());
+    assertEquals(LocalDate.of(2026, 2, 20), event.getMaxOccurredDate());
+  }
+
+  @Test
+  public void shouldLeaveOccurredDateRangeEmptyWithoutLineItems() {
+    StockEvent event = new StockEventDataBuilder()
+        .withLineItems(Collections.emptyList())
+        .build();
+
+    event.updateOccurredDateRange();
+
+    assertNull(event.getMinOccurredDate());
+    assertNull(event.getMaxOccurredDate());
+  }
+
+  private StockEventLineItem lineItem(LocalDate occurredDate) {
+    return StockEventLineItem.builder()
+        .occurredDate(occurredDate)
+        .build();
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.stockmanagement.http.CircuitBreaker.State;
+
+@SuppressWarnings("PMD.TooManyMethods")
+public class CircuitBreakerTest {
+
+  private static final long OPEN_DURATION_MILLIS = 30000;
+
+  private FakeTicker ticker = new FakeTicker();
+  private CircuitBreaker breaker;
+
+  @Before
+  public void setUp() {
+    breaker = new CircuitBreaker("OrderableReferenceDataService", 4, 2, 50,
+        OPEN_DURATION_MILLIS, ticker);
+  }
+
+  @Test
+  public void shouldNotOpenBeforeMinimumNumberOfCalls() {
+    call(false);
+
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void shouldOpenWhenFailureRateReachesThreshold() {
+    call(false);
+    call(true);
+
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void shouldOnlyCountCallsOfTheWindow() {
+    breaker = new CircuitBreaker("LotReferenceDataService", 4, 4, 50, OPEN_DURATION_MILLIS,
+        ticker);
+
+    call(true);
+    call(false);
+    call(false);
+    call(false);
+    assertEquals(25, breaker.getStatus().getFailureRate(), 0);
+
+    call(false);
+
+    CircuitBreaker.Status status = breaker.getStatus();
+    assertEquals(State.CLOSED, status.getState());
+    assertEquals(4, status.getBufferedCalls());
+    assertEquals(0, status.getFailedCalls());
+    assertEquals(0, status.getFailureRate(), 0);
+  }
+
+  @Test
+  public void shouldLetSingleTrialCallThroughAfterOpenDuration() {
+    open();
+    ticker.advance(OPEN_DURATION_MILLIS);
+
+    assertTrue(breaker.tryAcquirePermission());
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void shouldCloseWhenTrialCallSucceeds() {
+    open();
+    ticker.advance(OPEN_DURATION_MILLIS);
+
+    breaker.tryAcquirePermission();
+    breaker.onSuccess();
+
+    assertEquals(State.CLOSED, breaker.getState());
+    assertEquals(0, breaker.getStatus().getBufferedCalls());
+  }
+
+  @Test
+  public void shouldOpenAgainWhenTrialCallFails() {
+    open();
+    ticker.advance(OPEN_DURATION_MILLIS);
+
+    breaker.tryAcquirePermission();
+    breaker.onFailure();
+
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void shouldAllowAnotherTrialWhenPermissionIsReleased() {
+    open();
+    ticker.advance(OPEN_DURATION_MILLIS);
+
+    breaker.tryAcquirePermission();
+    breaker.releasePermission();
+
+    assertTrue(breaker.tryAcquirePermission());
+  }
+
+  private void open() {
+    call(true);
+    call(true);
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  private void call(boolean failure) {
+    assertTrue(breaker.tryAcquirePermission());
+
+    if (failure) {
+      breaker.onFailure();
+    } else {
+      breaker.onSuccess();
+    }
+  }
+
+  private static final class FakeTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+}
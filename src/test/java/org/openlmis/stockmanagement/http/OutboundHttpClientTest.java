@@ -0,0 +1,86 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.openlmis.stockmanagement.http.OutboundHttpClient.IN_FLIGHT_METRIC;
+import static org.openlmis.stockmanagement.http.OutboundHttpClient.WAITING_METRIC;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+public class OutboundHttpClientTest {
+
+  private static final String URL = "http://localhost/api/facilities";
+
+  private MeterRegistry registry = new SimpleMeterRegistry();
+  private OutboundHttpClient client =
+      new OutboundHttpClient(new SimpleClientHttpRequestFactory(), registry, 2, 0);
+
+  @Test
+  public void shouldTimeRequestsPerTarget() {
+    RestTemplate restTemplate = client.createRestTemplate(OutboundHttpClient.REFERENCEDATA);
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server.expect(requestTo(URL)).andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+
+    restTemplate.getForObject(URL, String.class);
+
+    server.verify();
+    assertEquals(1, registry.get(TargetLimitInterceptor.REQUESTS_METRIC)
+        .tag("target", OutboundHttpClient.REFERENCEDATA)
+        .tag("service", OutboundHttpClient.REFERENCEDATA)
+        .tag("resource", OutboundHttpClient.NO_RESOURCE)
+        .tag("status", "200")
+        .timer().count());
+    assertEquals(0, registry.get(IN_FLIGHT_METRIC)
+        .tag("target", OutboundHttpClient.REFERENCEDATA).gauge().value(), 0);
+  }
+
+  @Test
+  public void shouldTimeRequestsPerServiceAndResource() {
+    RestTemplate restTemplate = client.createRestTemplate(OutboundHttpClient.REFERENCEDATA,
+        "FacilityReferenceDataService", "FacilityDto");
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server.expect(requestTo(URL)).andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+
+    restTemplate.getForObject(URL, String.class);
+
+    server.verify();
+    assertEquals(1, registry.get(TargetLimitInterceptor.REQUESTS_METRIC)
+        .tag("target", OutboundHttpClient.REFERENCEDATA)
+        .tag("service", "FacilityReferenceDataService")
+        .tag("resource", "FacilityDto")
+        .tag("status", "200")
+        .timer().count());
+  }
+
+  @Test
+  public void shouldShareConcurrencyLimitBetweenTemplatesOfSameTarget() {
+    client.createRestTemplate(OutboundHttpClient.REFERENCEDATA);
+    client.createRestTemplate(OutboundHttpClient.REFERENCEDATA);
+    client.createRestTemplate(OutboundHttpClient.REPORT);
+
+    assertEquals(2, registry.find(IN_FLIGHT_METRIC).gauges().size());
+    assertEquals(2, registry.find(WAITING_METRIC).gauges().size());
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.openlmis.stockmanagement.http.RemoteCallGuard.CALLS_METRIC;
+
+import com.google.common.base.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.openlmis.stockmanagement.http.CircuitBreaker.State;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+public class RemoteCallGuardTest {
+
+  private static final String RESOURCE = "OrderableReferenceDataService";
+
+  private MeterRegistry registry = new SimpleMeterRegistry();
+  private RemoteCallGuard guard =
+      new RemoteCallGuard(registry, 4, 2, 50, 60000, 1, 0, Ticker.systemTicker());
+
+  @Test
+  public void shouldOpenBreakerOnServerErrorsAndTimeouts() {
+    failWith(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+    failWith(new ResourceAccessException("Read timed out"));
+
+    assertEquals(State.OPEN, guard.getCircuitBreakers().get(0).getState());
+
+    try {
+      guard.execute(RESOURCE, () -> "not called");
+      fail("CallNotPermittedException expected");
+    } catch (CallNotPermittedException ex) {
+      assertEquals(2, count(RemoteCallGuard.FAILURE));
+      assertEquals(1, count(RemoteCallGuard.NOT_PERMITTED));
+    }
+  }
+
+  @Test
+  public void shouldNotOpenBreakerOnClientErrors() {
+    failWith(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+    failWith(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+
+    assertEquals("value", guard.execute(RESOURCE, () -> "value"));
+    assertEquals(State.CLOSED, guard.getCircuitBreakers().get(0).getState());
+    assertEquals(3, count(RemoteCallGuard.SUCCESS));
+  }
+
+  @Test
+  public void shouldRejectCallsOverBulkheadLimit() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      final Future<String> running = executor.submit(() -> guard.execute(RESOURCE, () -> {
+        started.countDown();
+        await(release);
+        return "first";
+      }));
+      started.await();
+
+      try {
+        guard.execute(RESOURCE, () -> "second");
+        fail("CallNotPermittedException expected");
+      } catch (CallNotPermittedException ex) {
+        assertEquals(1, count(RemoteCallGuard.BULKHEAD_FULL));
+      }
+
+      release.countDown();
+      assertEquals("first", running.get());
+      assertEquals("third", guard.execute(RESOURCE, () -> "third"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void failWith(RuntimeException exception) {
+    try {
+      guard.execute(RESOURCE, () -> {
+        throw exception;
+      });
+      fail(exception.getClass().getSimpleName() + " expected");
+    } catch (RuntimeException ex) {
+      assertEquals(exception, ex);
+    }
+  }
+
+  private long count(String outcome) {
+    return (long) registry.get(CALLS_METRIC)
+        .tag("resource", RESOURCE)
+        .tag("outcome", outcome)
+        .counter().count();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.openlmis.stockmanagement.http.SingleFlight.COALESCED_METRIC;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  private static final String NAME = "FacilityReferenceDataService";
+  private static final String KEY = NAME + " http://localhost/api/facilities/1";
+
+  private MeterRegistry registry = new SimpleMeterRegistry();
+  private SingleFlight singleFlight = new SingleFlight(registry);
+  private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldShareResultOfIdenticalCallInProgress() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Object result = new Object();
+
+    final Future<Object> first = executor.submit(() -> singleFlight.execute(NAME, KEY, () -> {
+      calls.incrementAndGet();
+      started.countDown();
+      await(release);
+      return result;
+    }));
+    started.await();
+    final Future<Object> second = executor.submit(() -> singleFlight.execute(NAME, KEY, () -> {
+      calls.incrementAndGet();
+      return new Object();
+    }));
+    awaitCoalesced();
+
+    release.countDown();
+
+    assertSame(result, first.get());
+    assertSame(result, second.get());
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void shouldShareExceptionOfIdenticalCallInProgress() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    IllegalStateException exception = new IllegalStateException("referencedata unavailable");
+
+    final Future<Object> first = executor.submit(() -> singleFlight.execute(NAME, KEY, () -> {
+      started.countDown();
+      await(release);
+      throw exception;
+    }));
+    started.await();
+    final Future<Object> second =
+        executor.submit(() -> singleFlight.execute(NAME, KEY, Object::new));
+    awaitCoalesced();
+
+    release.countDown();
+
+    assertSame(exception, getCause(first));
+    assertSame(exception, getCause(second));
+  }
+
+  @Test
+  public void shouldCallAgainOnceCallCompleted() {
+    AtomicInteger calls = new AtomicInteger();
+
+    singleFlight.execute(NAME, KEY, calls::incrementAndGet);
+    singleFlight.execute(NAME, KEY, calls::incrementAndGet);
+
+    assertEquals(2, calls.get());
+    assertNull(registry.find(COALESCED_METRIC).counter());
+  }
+
+  private void awaitCoalesced() throws InterruptedException {
+    // the coalesced call is counted right before it starts waiting
+    for (int attempt = 0; attempt < 500; attempt++) {
+      Counter coalesced = registry.find(COALESCED_METRIC).tag("name", NAME).counter();
+
+      if (null != coalesced && coalesced.count() > 0) {
+        return;
+      }
+
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+
+    fail("second call was not coalesced");
+  }
+
+  private static Throwable getCause(Future<Object> future) throws InterruptedException {
+    try {
+      future.get();
+      fail("exception expected");
+      return null;
+    } catch (ExecutionException ex) {
+      return ex.getCause();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
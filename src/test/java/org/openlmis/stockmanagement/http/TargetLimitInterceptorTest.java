@@ -0,0 +1,136 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.http.TargetLimitInterceptor.REJECTED_METRIC;
+import static org.openlmis.stockmanagement.http.TargetLimitInterceptor.REQUESTS_METRIC;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TargetLimitInterceptorTest {
+
+  private static final String TARGET = OutboundHttpClient.REFERENCEDATA;
+  private static final String SERVICE = "OrderableReferenceDataService";
+  private static final String RESOURCE = "OrderableDto";
+  private static final byte[] BODY = new byte[0];
+
+  @Mock
+  private HttpRequest request;
+
+  @Mock
+  private ClientHttpRequestExecution execution;
+
+  @Mock
+  private ClientHttpResponse response;
+
+  private MeterRegistry registry = new SimpleMeterRegistry();
+  private Semaphore permits = new Semaphore(1);
+  private TargetLimitInterceptor interceptor;
+
+  @Before
+  public void setUp() {
+    when(request.getMethodValue()).thenReturn(HttpMethod.GET.name());
+    interceptor = new TargetLimitInterceptor(registry, TARGET, SERVICE, RESOURCE, permits, 0);
+  }
+
+  @Test
+  public void shouldTimeRequestByTargetServiceResourceAndStatus() throws IOException {
+    when(execution.execute(request, BODY)).thenReturn(response);
+    when(response.getRawStatusCode()).thenReturn(200);
+
+    interceptor.intercept(request, BODY, execution).close();
+
+    assertEquals(1, timerCount("200"));
+    verify(response).close();
+  }
+
+  @Test
+  public void shouldHoldPermitUntilResponseIsClosed() throws IOException {
+    when(execution.execute(request, BODY)).thenReturn(response);
+    when(response.getRawStatusCode()).thenReturn(200);
+
+    ClientHttpResponse first = interceptor.intercept(request, BODY, execution);
+    assertEquals(0, permits.availablePermits());
+
+    first.close();
+    first.close();
+    assertEquals(1, permits.availablePermits());
+  }
+
+  @Test
+  public void shouldRejectRequestWhenTargetLimitIsReached() throws IOException {
+    when(execution.execute(request, BODY)).thenReturn(response);
+    when(response.getRawStatusCode()).thenReturn(200);
+
+    ClientHttpResponse first = interceptor.intercept(request, BODY, execution);
+
+    try {
+      interceptor.intercept(request, BODY, execution);
+      fail("IOException expected");
+    } catch (IOException ex) {
+      verify(execution, times(1)).execute(any(), any());
+      assertEquals(1, registry.get(REJECTED_METRIC).tag("target", TARGET).counter().count(), 0);
+    }
+
+    first.close();
+    interceptor.intercept(request, BODY, execution).close();
+    verify(execution, times(2)).execute(any(), any());
+  }
+
+  @Test
+  public void shouldReleasePermitWhenRequestFailed() throws IOException {
+    when(execution.execute(any(), any())).thenThrow(new IOException("connection refused"));
+
+    try {
+      interceptor.intercept(request, BODY, execution);
+      fail("IOException expected");
+    } catch (IOException ex) {
+      assertEquals(1, permits.availablePermits());
+      assertEquals(1, timerCount(TargetLimitInterceptor.IO_ERROR_STATUS));
+      verify(response, never()).close();
+    }
+  }
+
+  private long timerCount(String status) {
+    return registry.get(REQUESTS_METRIC)
+        .tag("target", TARGET)
+        .tag("service", SERVICE)
+        .tag("resource", RESOURCE)
+        .tag("method", "GET")
+        .tag("status", status)
+        .timer().count();
+  }
+}
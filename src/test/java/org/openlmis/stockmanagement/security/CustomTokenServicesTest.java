@@ -15,8 +15,11 @@
 
 package org.openlmis.stockmanagement.security;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.HashMap;
@@ -88,4 +91,62 @@ public class CustomTokenServicesTest {
     this.customTokenServices.setRestTemplate(restTemplate);
     this.customTokenServices.loadAuthentication(ACCESS_TOKEN);
   }
+
+  @Test
+  public void shouldUseCachedAuthenticationForRepeatedToken() throws Exception {
+    Map responseAttributes = new HashMap();
+    responseAttributes.put("active", true);
+    responseAttributes.put("client_id", CLIENT_ID);
+    responseAttributes.put("exp", System.currentTimeMillis() / 1000 + 3600);
+    ResponseEntity<Map> response = new ResponseEntity<>(responseAttributes, HttpStatus.OK);
+
+    when(restTemplate.exchange(
+        anyString(), Matchers.any(HttpMethod.class), Matchers.any(HttpEntity.class),
+        Matchers.any(Class.class)
+    )).thenReturn(response);
+
+    enableCache();
+    this.customTokenServices.loadAuthentication(ACCESS_TOKEN);
+    OAuth2Authentication authentication = this.customTokenServices.loadAuthentication(ACCESS_TOKEN);
+
+    assertNotNull(authentication);
+    assertEquals(CLIENT_ID, authentication.getOAuth2Request().getClientId());
+    verify(restTemplate, times(1)).exchange(
+        anyString(), Matchers.any(HttpMethod.class), Matchers.any(HttpEntity.class),
+        Matchers.any(Class.class));
+  }
+
+  @Test
+  public void shouldNotRetryTokenKnownToBeInvalid() throws Exception {
+    Map responseAttributes = new HashMap();
+    responseAttributes.put("error", "no_active_token");
+    ResponseEntity<Map> response = new ResponseEntity<>(responseAttributes, HttpStatus.OK);
+
+    when(restTemplate.exchange(
+        anyString(), Matchers.any(HttpMethod.class), Matchers.any(HttpEntity.class),
+        Matchers.any(Class.class)
+    )).thenReturn(response);
+
+    enableCache();
+    for (int i = 0; i < 2; ++i) {
+      try {
+        this.customTokenServices.loadAuthentication(ACCESS_TOKEN);
+      } catch (InvalidTokenException ex) {
+        assertEquals(ACCESS_TOKEN, ex.getMessage());
+      }
+    }
+
+    verify(restTemplate, times(INVALID_TOKEN_RETRY_LIMIT + 1)).exchange(
+        anyString(), Matchers.any(HttpMethod.class), Matchers.any(HttpEntity.class),
+        Matchers.any(Class.class));
+  }
+
+  private void enableCache() {
+    this.customTokenServices = new CustomTokenServices(INVALID_TOKEN_RETRY_LIMIT,
+        new TokenIntrospectionCache(10, 60, 10));
+    this.customTokenServices.setClientId(CLIENT_ID);
+    this.customTokenServices.setClientSecret(CLIENT_SECRET);
+    this.customTokenServices.setCheckTokenEndpointUrl(CLIENT_CHECK_TOKEN_ENDPOINT_URI);
+    this.customTokenServices.setRestTemplate(restTemplate);
+  }
 }
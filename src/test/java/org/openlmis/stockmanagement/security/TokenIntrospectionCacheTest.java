@@ -0,0 +1,148 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+public class TokenIntrospectionCacheTest {
+
+  private static final String TOKEN = "token";
+  private static final long MAX_TTL = 60;
+  private static final long INVALID_TTL = 10;
+
+  private FakeTicker ticker = new FakeTicker();
+  private TokenIntrospectionCache cache;
+  private OAuth2Authentication authentication;
+
+  @Before
+  public void setUp() {
+    cache = new TokenIntrospectionCache(2, MAX_TTL, INVALID_TTL, ticker);
+    authentication = new OAuth2Authentication(new OAuth2Request(Collections.emptyMap(),
+        "client", Collections.emptyList(), true, Collections.emptySet(),
+        Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap()), null);
+  }
+
+  @Test
+  public void shouldReturnCopyOfCachedAuthentication() {
+    cache.putValid(TOKEN, authentication, 3600L);
+
+    OAuth2Authentication result = cache.getValid(TOKEN);
+
+    assertNotNull(result);
+    assertNotSame(authentication, result);
+    assertEquals(authentication.getOAuth2Request(), result.getOAuth2Request());
+  }
+
+  @Test
+  public void shouldNotReturnTokenAfterItsOwnExpiry() {
+    cache.putValid(TOKEN, authentication, 30L);
+
+    ticker.advance(31);
+
+    assertNull(cache.getValid(TOKEN));
+  }
+
+  @Test
+  public void shouldNotReturnTokenAfterMaxTtl() {
+    cache.putValid(TOKEN, authentication, 3600L);
+
+    ticker.advance(MAX_TTL + 1);
+
+    assertNull(cache.getValid(TOKEN));
+  }
+
+  @Test
+  public void shouldNotCacheAlreadyExpiredToken() {
+    cache.putValid(TOKEN, authentication, 0L);
+
+    assertNull(cache.getValid(TOKEN));
+  }
+
+  @Test
+  public void shouldRememberInvalidTokenForInvalidTtl() {
+    cache.putInvalid(TOKEN);
+    assertTrue(cache.isKnownInvalid(TOKEN));
+
+    ticker.advance(INVALID_TTL + 1);
+    assertFalse(cache.isKnownInvalid(TOKEN));
+  }
+
+  @Test
+  public void shouldForgetInvalidMarkWhenTokenTurnsOutValid() {
+    cache.putInvalid(TOKEN);
+    cache.putValid(TOKEN, authentication, null);
+
+    assertFalse(cache.isKnownInvalid(TOKEN));
+    assertNotNull(cache.getValid(TOKEN));
+  }
+
+  @Test
+  public void shouldEvictWhenSizeLimitIsReached() {
+    cache.putValid("a", authentication, null);
+    cache.putValid("b", authentication, null);
+    cache.putValid("c", authentication, null);
+
+    int cached = 0;
+    for (String token : new String[]{"a", "b", "c"}) {
+      cached += null == cache.getValid(token) ? 0 : 1;
+    }
+
+    assertEquals(2, cached);
+  }
+
+  @Test
+  public void shouldExposeHitRatio() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+
+    cache.putValid(TOKEN, authentication, null);
+    cache.getValid(TOKEN);
+    cache.getValid("other");
+
+    assertEquals(0.5, cache.validHitRate(), 0.001);
+    assertNotNull(registry.find("cache.gets")
+        .tag("cache", TokenIntrospectionCache.VALID_CACHE_NAME)
+        .tag("result", "hit")
+        .functionCounter());
+  }
+
+  private static final class FakeTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long seconds) {
+      nanos += TimeUnit.SECONDS.toNanos(seconds);
+    }
+  }
+}
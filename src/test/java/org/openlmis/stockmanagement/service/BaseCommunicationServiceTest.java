@@ -27,6 +27,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.net.URI;
 import java.util.UUID;
 import org.junit.After;
@@ -39,6 +40,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.http.RemoteCallGuard;
+import org.openlmis.stockmanagement.http.SingleFlight;
 import org.openlmis.stockmanagement.service.referencedata.DataRetrievalException;
 import org.openlmis.stockmanagement.testutils.ObjectGenerator;
 import org.openlmis.stockmanagement.util.DynamicPageTypeReference;
@@ -125,6 +128,10 @@ public abstract class BaseCommunicationServiceTest<T> {
     ReflectionTestUtils.setField(service, "authService", authService);
     ReflectionTestUtils.setField(service, "restTemplate", restTemplate);
     ReflectionTestUtils.setField(service, "maxUrlLength", 2000);
+    ReflectionTestUtils.setField(service, "remoteCallGuard",
+        new RemoteCallGuard(new SimpleMeterRegistry(), 20, 10, 50, 30000, 20, 0));
+    ReflectionTestUtils.setField(service, "singleFlight",
+        new SingleFlight(new SimpleMeterRegistry()));
 
     return service;
   }
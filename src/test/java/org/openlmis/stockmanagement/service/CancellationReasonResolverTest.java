@@ -42,13 +42,12 @@ import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockEventCancelLineItemDto;
 import org.openlmis.stockmanagement.dto.StockEventCancellationLineErrorDto;
 import org.openlmis.stockmanagement.exception.StockEventCancellationException;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CancellationReasonResolverTest {
 
   @Mock
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   @InjectMocks
   private CancellationReasonResolver resolver;
@@ -57,7 +56,7 @@ public class CancellationReasonResolverTest {
   public void shouldResolveReasonThatCountersIssue() {
     StockEventLineItem issue = issueLineItem();
     StockCardLineItemReason reason = reason(ReasonType.CREDIT, CANCEL_TAG);
-    when(reasonRepository.findByIdIn(anyCollection())).thenReturn(singletonList(reason));
+    when(reasonCatalog.findByIdIn(anyCollection())).thenReturn(singletonList(reason));
 
     Map<UUID, StockCardLineItemReason> resolved =
         resolver.resolve(singletonList(requested(issue.getId(), reason.getId())),
@@ -78,7 +77,7 @@ public class CancellationReasonResolverTest {
   public void shouldThrowWhenReasonIsNotCancelTagged() {
     StockEventLineItem issue = issueLineItem();
     StockCardLineItemReason reason = reason(ReasonType.CREDIT);
-    when(reasonRepository.findByIdIn(anyCollection())).thenReturn(singletonList(reason));
+    when(reasonCatalog.findByIdIn(anyCollection())).thenReturn(singletonList(reason));
 
     resolver.resolve(singletonList(requested(issue.getId(), reason.getId())),
         singletonMap(issue.getId(), issue));
@@ -88,7 +87,7 @@ public class CancellationReasonResolverTest {
   public void shouldThrowWhenReasonTypeDoesNotCounterMovement() {
     StockEventLineItem issue = issueLineItem();
     StockCardLineItemReason reason = reason(ReasonType.DEBIT, CANCEL_TAG);
-    when(reasonRepository.findByIdIn(anyCollection())).thenReturn(singletonList(reason));
+    when(reasonCatalog.findByIdIn(anyCollection())).thenReturn(singletonList(reason));
 
     resolver.resolve(singletonList(requested(issue.getId(), reason.getId())),
         singletonMap(issue.getId(), issue));
@@ -99,7 +98,7 @@ public class CancellationReasonResolverTest {
     StockEventLineItem missingReason = issueLineItem();
     StockEventLineItem wrongType = issueLineItem();
     StockCardLineItemReason debit = reason(ReasonType.DEBIT, CANCEL_TAG);
-    when(reasonRepository.findByIdIn(anyCollection())).thenReturn(singletonList(debit));
+    when(reasonCatalog.findByIdIn(anyCollection())).thenReturn(singletonList(debit));
 
     Map<UUID, StockEventLineItem> originals = new HashMap<>();
     originals.put(missingReason.getId(), missingReason);
@@ -0,0 +1,91 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.event.CurrentStockOnHand;
+import org.openlmis.stockmanagement.repository.CurrentStockOnHandRepository;
+import org.openlmis.stockmanagement.repository.StockCardRepository;
+import org.openlmis.stockmanagement.repository.custom.FacilityProgram;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CurrentStockOnHandRebuildJobTest {
+
+  @Mock
+  private StockCardRepository stockCardRepository;
+
+  @Mock
+  private CurrentStockOnHandRepository currentStockOnHandRepository;
+
+  @Mock
+  private StockEventProcessingLock stockEventProcessingLock;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @InjectMocks
+  private CurrentStockOnHandRebuildJob rebuildJob;
+
+  @Test
+  public void shouldRebuildEachFacilityProgramUnderLock() {
+    FacilityProgram first = new FacilityProgram(UUID.randomUUID(), UUID.randomUUID());
+    FacilityProgram second = new FacilityProgram(UUID.randomUUID(), UUID.randomUUID());
+    when(stockCardRepository.findFacilityPrograms()).thenReturn(asList(first, second));
+
+    rebuildJob.rebuild();
+
+    verify(stockEventProcessingLock).acquire(first.getFacilityId(), first.getProgramId());
+    verify(currentStockOnHandRepository).rebuild(first.getFacilityId(), first.getProgramId());
+    verify(stockEventProcessingLock).acquire(second.getFacilityId(), second.getProgramId());
+    verify(currentStockOnHandRepository).rebuild(second.getFacilityId(), second.getProgramId());
+    verify(transactionManager, times(2)).commit(any());
+  }
+
+  @Test
+  public void shouldRebuildOnStartupIfThereIsNoCurrentStockOnHand() {
+    when(currentStockOnHandRepository.findFirstBy()).thenReturn(Optional.empty());
+    when(stockCardRepository.findFacilityPrograms()).thenReturn(emptyList());
+
+    rebuildJob.run();
+
+    verify(stockCardRepository).findFacilityPrograms();
+  }
+
+  @Test
+  public void shouldNotRebuildOnStartupIfThereIsCurrentStockOnHand() {
+    when(currentStockOnHandRepository.findFirstBy())
+        .thenReturn(Optional.of(new CurrentStockOnHand(UUID.randomUUID())));
+
+    rebuildJob.run();
+
+    verify(stockCardRepository, never()).findFacilityPrograms();
+  }
+}
@@ -16,15 +16,19 @@
 package org.openlmis.stockmanagement.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.Clock;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Optional;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Rule;
@@ -43,6 +47,11 @@ import org.springframework.test.util.ReflectionTestUtils;
 @RunWith(MockitoJUnitRunner.class)
 public class DocumentNumberGeneratorTest {
 
+  private static final String FACILITY_CODE = "FAC001";
+  private static final String FIRST_NUMBER = "2026-05-FAC001-0001";
+  private static final String SECOND_NUMBER = "2026-05-FAC001-0002";
+  private static final String BLOCK_SIZE = "blockSize";
+
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
 
@@ -67,18 +76,18 @@ public class DocumentNumberGeneratorTest {
 
   @Test
   public void formatsNumberWithZeroPaddedMonthAndFourDigitSequence() {
-    FacilityDto facility = FacilityDto.builder().id(facilityId).code("FAC001").build();
+    FacilityDto facility = FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build();
     when(facilityReferenceDataService.findOne(facilityId)).thenReturn(facility);
     when(sequenceRepository.nextSequenceNumber(facilityId, 2026, 5)).thenReturn(1);
 
     String result = generator.generate(facilityId);
 
-    assertEquals("2026-05-FAC001-0001", result);
+    assertEquals(FIRST_NUMBER, result);
   }
 
   @Test
   public void preservesMultiDigitSequenceBeyondFourDigits() {
-    FacilityDto facility = FacilityDto.builder().id(facilityId).code("FAC001").build();
+    FacilityDto facility = FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build();
     when(facilityReferenceDataService.findOne(facilityId)).thenReturn(facility);
     when(sequenceRepository.nextSequenceNumber(facilityId, 2026, 5)).thenReturn(10000);
 
@@ -89,7 +98,7 @@ public class DocumentNumberGeneratorTest {
 
   @Test
   public void requestsSequenceForCurrentYearAndMonthFromClock() {
-    FacilityDto facility = FacilityDto.builder().id(facilityId).code("FAC001").build();
+    FacilityDto facility = FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build();
     when(facilityReferenceDataService.findOne(facilityId)).thenReturn(facility);
     when(sequenceRepository.nextSequenceNumber(any(UUID.class), anyInt(), anyInt()))
         .thenReturn(42);
@@ -106,4 +115,74 @@ public class DocumentNumberGeneratorTest {
     expectedException.expect(ResourceNotFoundException.class);
     generator.generate(facilityId);
   }
+
+  @Test
+  public void looksUpFacilityCodeOnlyOnce() {
+    FacilityDto facility = FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build();
+    when(facilityReferenceDataService.findOne(facilityId)).thenReturn(facility);
+    when(sequenceRepository.nextSequenceNumber(facilityId, 2026, 5)).thenReturn(1, 2);
+
+    generator.generate(facilityId);
+    String result = generator.generate(facilityId);
+
+    assertEquals(SECOND_NUMBER, result);
+    verify(facilityReferenceDataService, times(1)).findOne(facilityId);
+  }
+
+  @Test
+  public void handsOutNumbersFromReservedBlock() {
+    ReflectionTestUtils.setField(generator, BLOCK_SIZE, 3);
+    FacilityDto facility = FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build();
+    when(facilityReferenceDataService.findOne(facilityId)).thenReturn(facility);
+    when(sequenceRepository.reserveSequenceBlock(facilityId, 2026, 5, 3)).thenReturn(3, 9);
+
+    assertEquals(FIRST_NUMBER, generator.generate(facilityId));
+    assertEquals(SECOND_NUMBER, generator.generate(facilityId));
+    assertEquals("2026-05-FAC001-0003", generator.generate(facilityId));
+    assertEquals("2026-05-FAC001-0007", generator.generate(facilityId));
+
+    verify(sequenceRepository, times(2)).reserveSequenceBlock(facilityId, 2026, 5, 3);
+    verify(sequenceRepository, never()).nextSequenceNumber(any(UUID.class), anyInt(), anyInt());
+  }
+
+  @Test
+  public void keepsSeparateBlocksPerFacility() {
+    ReflectionTestUtils.setField(generator, BLOCK_SIZE, 10);
+    UUID otherFacilityId = UUID.randomUUID();
+    when(facilityReferenceDataService.findOne(facilityId))
+        .thenReturn(FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build());
+    when(facilityReferenceDataService.findOne(otherFacilityId))
+        .thenReturn(FacilityDto.builder().id(otherFacilityId).code("FAC002").build());
+    when(sequenceRepository.reserveSequenceBlock(facilityId, 2026, 5, 10)).thenReturn(10);
+    when(sequenceRepository.reserveSequenceBlock(otherFacilityId, 2026, 5, 10)).thenReturn(20);
+
+    assertEquals(FIRST_NUMBER, generator.generate(facilityId));
+    assertEquals("2026-05-FAC002-0011", generator.generate(otherFacilityId));
+    assertEquals(SECOND_NUMBER, generator.generate(facilityId));
+  }
+
+  @Test
+  public void reservesOnlyFacilityCodeAheadWhenBlockSizeIsOne() {
+    ReflectionTestUtils.setField(generator, BLOCK_SIZE, 1);
+    when(facilityReferenceDataService.findOne(facilityId))
+        .thenReturn(FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build());
+
+    assertFalse(generator.reserve(facilityId).isPresent());
+
+    verify(facilityReferenceDataService).findOne(facilityId);
+    verify(sequenceRepository, never()).nextSequenceNumber(any(UUID.class), anyInt(), anyInt());
+  }
+
+  @Test
+  public void reservesNumberFromBlockAheadWhenBlockSizeIsLarger() {
+    ReflectionTestUtils.setField(generator, BLOCK_SIZE, 3);
+    when(facilityReferenceDataService.findOne(facilityId))
+        .thenReturn(FacilityDto.builder().id(facilityId).code(FACILITY_CODE).build());
+    when(sequenceRepository.reserveSequenceBlock(facilityId, 2026, 5, 3)).thenReturn(3);
+
+    assertEquals(Optional.of(FIRST_NUMBER), generator.reserve(facilityId));
+    assertEquals(Optional.of(SECOND_NUMBER), generator.reserve(facilityId));
+
+    verify(sequenceRepository, times(1)).reserveSequenceBlock(facilityId, 2026, 5, 3);
+  }
 }
@@ -0,0 +1,117 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_FACILITY_ID_MISSING;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_PROGRAM_ID_MISSING;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.ERROR_UUID_WRONG_FORMAT;
+import static org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesSearchParams.AS_OF_DATE;
+import static org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesSearchParams.FACILITY_ID;
+import static org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesSearchParams.NON_EMPTY_ONLY;
+import static org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesSearchParams.PROGRAM_ID;
+import static org.openlmis.stockmanagement.service.MultiFacilityStockCardSummariesSearchParams.SUPERVISORY_NODE_ID;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+public class MultiFacilityStockCardSummariesSearchParamsTest {
+
+  @Rule
+  public ExpectedException exception = ExpectedException.none();
+
+  private UUID facilityId = UUID.randomUUID();
+  private UUID otherFacilityId = UUID.randomUUID();
+  private UUID programId = UUID.randomUUID();
+
+  @Test
+  public void shouldCreateParamsFromMultiValueMap() {
+    MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+    parameters.add(FACILITY_ID, facilityId.toString());
+    parameters.add(FACILITY_ID, otherFacilityId.toString());
+    parameters.add(FACILITY_ID, facilityId.toString());
+    parameters.add(PROGRAM_ID, programId.toString());
+    parameters.add(AS_OF_DATE, "2017-10-10");
+    parameters.add(NON_EMPTY_ONLY, "true");
+
+    MultiFacilityStockCardSummariesSearchParams params =
+        new MultiFacilityStockCardSummariesSearchParams(parameters);
+
+    assertEquals(asList(facilityId, otherFacilityId), params.getFacilityIds());
+    assertNull(params.getSupervisoryNodeId());
+    assertEquals(singletonList(programId), params.getProgramIds());
+    assertEquals(LocalDate.of(2017, 10, 10), params.getAsOfDate());
+    assertTrue(params.isNonEmptyOnly());
+  }
+
+  @Test
+  public void shouldAcceptSupervisoryNodeInsteadOfFacilities() {
+    UUID supervisoryNodeId = UUID.randomUUID();
+    MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+    parameters.add(SUPERVISORY_NODE_ID, supervisoryNodeId.toString());
+    parameters.add(PROGRAM_ID, programId.toString());
+
+    MultiFacilityStockCardSummariesSearchParams params =
+        new MultiFacilityStockCardSummariesSearchParams(parameters);
+
+    assertTrue(params.getFacilityIds().isEmpty());
+    assertEquals(supervisoryNodeId, params.getSupervisoryNodeId());
+  }
+
+  @Test
+  public void shouldThrowExceptionIfNeitherFacilitiesNorSupervisoryNodeAreSet() {
+    exception.expect(ValidationMessageException.class);
+    exception.expectMessage(ERROR_FACILITY_ID_MISSING);
+
+    MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+    parameters.add(PROGRAM_ID, programId.toString());
+
+    new MultiFacilityStockCardSummariesSearchParams(parameters);
+  }
+
+  @Test
+  public void shouldThrowExceptionIfProgramIdIsNotSet() {
+    exception.expect(ValidationMessageException.class);
+    exception.expectMessage(ERROR_PROGRAM_ID_MISSING);
+
+    MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+    parameters.add(FACILITY_ID, facilityId.toString());
+
+    new MultiFacilityStockCardSummariesSearchParams(parameters);
+  }
+
+  @Test
+  public void shouldThrowExceptionIfFacilityIdHasWrongFormat() {
+    exception.expect(ValidationMessageException.class);
+    exception.expectMessage(ERROR_UUID_WRONG_FORMAT);
+
+    MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+    parameters.add(FACILITY_ID, "123-456");
+    parameters.add(PROGRAM_ID, programId.toString());
+
+    new MultiFacilityStockCardSummariesSearchParams(parameters);
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.dto.ObjectReferenceDto;
+import org.openlmis.stockmanagement.dto.referencedata.ApprovedProductDto;
+import org.openlmis.stockmanagement.dto.referencedata.BasicFacilityDto;
+import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
+import org.openlmis.stockmanagement.dto.referencedata.FacilityTypeDto;
+import org.openlmis.stockmanagement.dto.referencedata.OrderableFulfillDto;
+import org.openlmis.stockmanagement.dto.referencedata.OrderablesAggregator;
+import org.openlmis.stockmanagement.dto.referencedata.RequisitionGroupDto;
+import org.openlmis.stockmanagement.dto.referencedata.SupervisoryNodeDto;
+import org.openlmis.stockmanagement.exception.PermissionMessageException;
+import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.service.referencedata.ApprovedProductReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.OrderableFulfillReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.RequisitionGroupReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.SupervisoryNodeReferenceDataService;
+import org.openlmis.stockmanagement.testutils.ApprovedProductDtoDataBuilder;
+import org.openlmis.stockmanagement.testutils.OrderableFulfillDtoDataBuilder;
+import org.openlmis.stockmanagement.util.Message;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("PMD.TooManyMethods")
+public class MultiFacilityStockCardSummariesServiceTest {
+
+  @Mock
+  private StockCardSummariesService stockCardSummariesService;
+
+  @Mock
+  private CalculatedStockOnHandService calculatedStockOnHandService;
+
+  @Mock
+  private FacilityReferenceDataService facilityReferenceDataService;
+
+  @Mock
+  private SupervisoryNodeReferenceDataService supervisoryNodeReferenceDataService;
+
+  @Mock
+  private RequisitionGroupReferenceDataService requisitionGroupReferenceDataService;
+
+  @Mock
+  private ApprovedProductReferenceDataService approvedProductReferenceDataService;
+
+  @Mock
+  private OrderableFulfillReferenceDataService orderableFulfillService;
+
+  @InjectMocks
+  private MultiFacilityStockCardSummariesService multiFacilityStockCardSummariesService;
+
+  private final PrefetchExecutor prefetchExecutor =
+      new PrefetchExecutor(new SimpleMeterRegistry(), 4, 10);
+
+  private UUID programId = UUID.randomUUID();
+  private UUID healthCenterType = UUID.randomUUID();
+  private UUID warehouseType = UUID.randomUUID();
+  private FacilityDto healthCenter = facility(healthCenterType);
+  private FacilityDto otherHealthCenter = facility(healthCenterType);
+  private FacilityDto warehouse = facility(warehouseType);
+
+  private ApprovedProductDto healthCenterProduct = new ApprovedProductDtoDataBuilder().build();
+  private ApprovedProductDto warehouseProduct = new ApprovedProductDtoDataBuilder().build();
+  private Map<UUID, OrderableFulfillDto> orderableFulfills = ImmutableMap.of(
+      healthCenterProduct.getId(), new OrderableFulfillDtoDataBuilder().build());
+
+  @Before
+  public void setUp() {
+    prefetchExecutor.start();
+    ReflectionTestUtils.setField(multiFacilityStockCardSummariesService, "prefetchExecutor",
+        prefetchExecutor);
+    ReflectionTestUtils.setField(multiFacilityStockCardSummariesService, "facilityChunkSize", 2);
+
+    when(facilityReferenceDataService.findByIds(anyCollectionOf(UUID.class)))
+        .thenReturn(ImmutableMap.of(healthCenter.getId(), healthCenter,
+            otherHealthCenter.getId(), otherHealthCenter, warehouse.getId(), warehouse));
+    when(approvedProductReferenceDataService.getApprovedProducts(
+        eq(healthCenter.getId()), eq(singletonList(programId)), isNull(), isNull(), isNull()))
+        .thenReturn(new OrderablesAggregator(new ArrayList<>(asList(healthCenterProduct))));
+    when(approvedProductReferenceDataService.getApprovedProducts(
+        eq(warehouse.getId()), eq(singletonList(programId)), isNull(), isNull(), isNull()))
+        .thenReturn(new OrderablesAggregator(new ArrayList<>(asList(warehouseProduct))));
+    when(orderableFulfillService.findByIds(anyCollectionOf(UUID.class)))
+        .thenReturn(orderableFulfills);
+  }
+
+  @After
+  public void tearDown() {
+    prefetchExecutor.stop();
+  }
+
+  @Test
+  public void shouldShareReadsOfAllFacilities() {
+    StockCard healthCenterCard = card(healthCenter);
+    StockCard otherHealthCenterCard = card(otherHealthCenter);
+    when(calculatedStockOnHandService.getStockCardsWithStockOnHandAtFacilities(
+        eq(singletonList(programId)), any(), any()))
+        .thenReturn(asList(healthCenterCard, otherHealthCenterCard));
+
+    Map<UUID, StockCardSummaries> result =
+        find(params(healthCenter, otherHealthCenter, warehouse));
+
+    assertThat(result.keySet(), contains(healthCenter.getId(), otherHealthCenter.getId(),
+        warehouse.getId()));
+    assertThat(result.get(healthCenter.getId()).getApprovedProducts(),
+        contains(healthCenterProduct));
+    assertThat(result.get(otherHealthCenter.getId()).getApprovedProducts(),
+        contains(healthCenterProduct));
+    assertThat(result.get(otherHealthCenter.getId()).getStockCardsForFulfillOrderables(),
+        contains(otherHealthCenterCard));
+    assertThat(result.get(warehouse.getId()).getApprovedProducts(), contains(warehouseProduct));
+    assertThat(result.get(warehouse.getId()).getStockCardsForFulfillOrderables(), hasSize(0));
+    assertThat(result.get(warehouse.getId()).getOrderableFulfillMap(), is(orderableFulfills));
+
+    // one approved products read per facility type, one read of everything else
+    verify(approvedProductReferenceDataService, times(2))
+        .getApprovedProducts(any(), any(), any(), any(), any());
+    verify(orderableFulfillService).findByIds(
+        Sets.newHashSet(healthCenterProduct.getId(), warehouseProduct.getId()));
+    verify(stockCardSummariesService, times(3)).validateViewRights(any(), any());
+  }
+
+  @Test
+  public void shouldReadStockCardsOfFacilityChunksAsSummariesAreConsumed() {
+    when(calculatedStockOnHandService.getStockCardsWithStockOnHandAtFacilities(
+        eq(singletonList(programId)), any(), any()))
+        .thenReturn(Collections.emptyList());
+
+    Iterator<Map.Entry<UUID, StockCardSummaries>> result = multiFacilityStockCardSummariesService
+        .findStockCards(params(healthCenter, otherHealthCenter, warehouse))
+        .iterator();
+
+    verify(stockCardSummariesService, times(3)).validateViewRights(any(), any());
+    verify(calculatedStockOnHandService, never())
+        .getStockCardsWithStockOnHandAtFacilities(any(), any(), any());
+
+    assertThat(result.next().getKey(), is(healthCenter.getId()));
+    verify(calculatedStockOnHandService).getStockCardsWithStockOnHandAtFacilities(
+        singletonList(programId), asList(healthCenter.getId(), otherHealthCenter.getId()),
+        null);
+
+    result.next();
+    assertThat(result.next().getKey(), is(warehouse.getId()));
+    verify(calculatedStockOnHandService).getStockCardsWithStockOnHandAtFacilities(
+        singletonList(programId), singletonList(warehouse.getId()), null);
+    assertThat(result.hasNext(), is(false));
+  }
+
+  @Test
+  public void shouldFindFacilitiesOfSupervisoryNodeAndItsChildNodes() {
+    SupervisoryNodeDto child = node(group(otherHealthCenter, warehouse));
+    SupervisoryNodeDto parent = node(group(healthCenter));
+    parent.setChildNodes(Collections.singleton(reference(child.getId())));
+    // a cycle in the hierarchy does not make the search loop forever
+    child.setChildNodes(Collections.singleton(reference(parent.getId())));
+
+    MultiFacilityStockCardSummariesSearchParams params = params();
+    params.setSupervisoryNodeId(parent.getId());
+
+    Map<UUID, StockCardSummaries> result = find(params);
+
+    assertThat(result.keySet(), containsInAnyOrder(healthCenter.getId(),
+        otherHealthCenter.getId(), warehouse.getId()));
+    verify(supervisoryNodeReferenceDataService).findOne(parent.getId());
+    verify(supervisoryNodeReferenceDataService).findOne(child.getId());
+  }
+
+  @Test(expected = ResourceNotFoundException.class)
+  public void shouldThrowExceptionIfSupervisoryNodeIsNotFound() {
+    MultiFacilityStockCardSummariesSearchParams params = params();
+    params.setSupervisoryNodeId(UUID.randomUUID());
+
+    multiFacilityStockCardSummariesService.findStockCards(params);
+  }
+
+  @Test(expected = ResourceNotFoundException.class)
+  public void shouldThrowExceptionIfFacilityIsNotFound() {
+    multiFacilityStockCardSummariesService.findStockCards(params(healthCenter, facility(null)));
+  }
+
+  @Test(expected = PermissionMessageException.class)
+  public void shouldThrowExceptionIfUserCannotViewStockCardsOfOneOfFacilities() {
+    doThrow(new PermissionMessageException(new Message("no permission")))
+        .when(stockCardSummariesService)
+        .validateViewRights(singletonList(programId), warehouse.getId());
+
+    multiFacilityStockCardSummariesService.findStockCards(params(healthCenter, warehouse));
+  }
+
+  @Test
+  public void shouldReturnNothingIfSupervisoryNodeHasNoFacilities() {
+    SupervisoryNodeDto node = node(null);
+    MultiFacilityStockCardSummariesSearchParams params = params();
+    params.setSupervisoryNodeId(node.getId());
+
+    Map<UUID, StockCardSummaries> result = find(params);
+
+    assertThat(result.size(), is(0));
+    verify(calculatedStockOnHandService, never())
+        .getStockCardsWithStockOnHandAtFacilities(any(), any(), any());
+  }
+
+  private Map<UUID, StockCardSummaries> find(MultiFacilityStockCardSummariesSearchParams params) {
+    Map<UUID, StockCardSummaries> result = new LinkedHashMap<>();
+    multiFacilityStockCardSummariesService.findStockCards(params)
+        .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+    return result;
+  }
+
+  private MultiFacilityStockCardSummariesSearchParams params(FacilityDto... facilities) {
+    List<UUID> facilityIds = new ArrayList<>();
+    for (FacilityDto facility : facilities) {
+      facilityIds.add(facility.getId());
+    }
+    return new MultiFacilityStockCardSummariesSearchParams(facilityIds, null,
+        singletonList(programId), null, false);
+  }
+
+  private FacilityDto facility(UUID typeId) {
+    FacilityTypeDto type = new FacilityTypeDto();
+    type.setId(typeId);
+    return FacilityDto.builder().id(UUID.randomUUID()).type(type).build();
+  }
+
+  private StockCard card(FacilityDto facility) {
+    return StockCard.builder()
+        .facilityId(facility.getId())
+        .programId(programId)
+        .orderableId(healthCenterProduct.getId())
+        .stockOnHand(10)
+        .occurredDate(LocalDate.now())
+        .build();
+  }
+
+  private RequisitionGroupDto group(FacilityDto... facilities) {
+    RequisitionGroupDto group = new RequisitionGroupDto();
+    group.setId(UUID.randomUUID());
+    group.setMemberFacilities(Sets.newLinkedHashSet());
+    for (FacilityDto facility : facilities) {
+      group.getMemberFacilities().add(BasicFacilityDto.builder().id(facility.getId()).build());
+    }
+    when(requisitionGroupReferenceDataService.findOne(group.getId())).thenReturn(group);
+    return group;
+  }
+
+  private SupervisoryNodeDto node(RequisitionGroupDto group) {
+    SupervisoryNodeDto node = new SupervisoryNodeDto();
+    node.setId(UUID.randomUUID());
+    if (null != group) {
+      node.setRequisitionGroup(reference(group.getId()));
+    }
+    when(supervisoryNodeReferenceDataService.findOne(node.getId())).thenReturn(node);
+    return node;
+  }
+
+  private ObjectReferenceDto reference(UUID id) {
+    return new ObjectReferenceDto("http://localhost", "resource", id);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartitionMaintenanceJobTest {
+
+  @Mock
+  private StockCardLineItemRepository stockCardLineItemRepository;
+
+  @Mock
+  @SuppressWarnings("PMD.UnusedPrivateField")
+  private PlatformTransactionManager transactionManager;
+
+  @InjectMocks
+  private PartitionMaintenanceJob partitionMaintenanceJob;
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(partitionMaintenanceJob, "clock",
+        Clock.fixed(Instant.parse("2026-10-19T10:00:00Z"), ZoneOffset.UTC));
+    ReflectionTestUtils.setField(partitionMaintenanceJob, "yearsAhead", 2);
+  }
+
+  @Test
+  public void shouldCreatePartitionsOfCurrentAndFollowingYears() {
+    partitionMaintenanceJob.createPartitions();
+
+    verify(stockCardLineItemRepository).createYearlyPartitions(2026);
+    verify(stockCardLineItemRepository).createYearlyPartitions(2027);
+    verify(stockCardLineItemRepository).createYearlyPartitions(2028);
+    verify(stockCardLineItemRepository, times(3)).createYearlyPartitions(anyInt());
+  }
+
+  @Test
+  public void shouldCreatePartitionsOnStartup() {
+    partitionMaintenanceJob.run();
+
+    verify(stockCardLineItemRepository).createYearlyPartitions(2026);
+  }
+}
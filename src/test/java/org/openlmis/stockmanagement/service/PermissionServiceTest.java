@@ -17,6 +17,8 @@ package org.openlmis.stockmanagement.service;
 
 import static java.util.UUID.randomUUID;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.inOrder;
@@ -229,6 +231,22 @@ public class PermissionServiceTest {
     permissionService.canViewStockCard(programId, facilityId);
   }
 
+  @Test
+  public void hasViewStockCardRight() {
+    hasRight(rightId, programId, facilityId, true);
+
+    assertTrue(permissionService.hasViewStockCardRight(programId, facilityId));
+
+    verifyUserRight(STOCK_CARDS_VIEW, rightId, programId, facilityId);
+  }
+
+  @Test
+  public void hasNoViewStockCardRight() {
+    hasRight(rightId, programId, facilityId, false);
+
+    assertFalse(permissionService.hasViewStockCardRight(programId, facilityId));
+  }
+
   @Test
   public void canManageStockSources() {
     hasRight(rightId, true);
@@ -15,6 +15,7 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.UUID.randomUUID;
@@ -25,6 +26,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -45,14 +47,22 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.identity.OrderableLotIdentity;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventoryLineItem;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventoryLineItemAdjustment;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryDraftPatchDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryLineItemDto;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.exception.VersionConflictException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
+import org.openlmis.stockmanagement.repository.PhysicalInventoryLineItemRepository;
+import org.openlmis.stockmanagement.repository.custom.PhysicalInventoryHeader;
 import org.openlmis.stockmanagement.testutils.SaveAnswer;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
 import org.openlmis.stockmanagement.validators.PhysicalInventoryValidator;
 
 @SuppressWarnings("PMD.TooManyMethods")
@@ -61,12 +71,18 @@ public class PhysicalInventoryServiceTest {
   @Captor
   private ArgumentCaptor<PhysicalInventory> inventoryArgumentCaptor;
 
+  @Captor
+  private ArgumentCaptor<Iterable<PhysicalInventoryLineItem>> lineItemsCaptor;
+
   @Mock
   private PhysicalInventoryValidator validator;
 
   @Mock
   private PhysicalInventoriesRepository physicalInventoryRepository;
 
+  @Mock
+  private PhysicalInventoryLineItemRepository lineItemRepository;
+
   @Mock
   private HomeFacilityPermissionService homeFacilityPermissionService;
 
@@ -74,7 +90,7 @@ public class PhysicalInventoryServiceTest {
   private PermissionService permissionService;
 
   @Mock
-  private CalculatedStockOnHandService calculatedStockOnHandService;
+  private StockEventProcessContext context;
 
   @InjectMocks
   private PhysicalInventoryService physicalInventoryService;
@@ -89,15 +105,11 @@ public class PhysicalInventoryServiceTest {
   public void shouldSubmitPhysicalInventory() {
     PhysicalInventoryDto physicalInventoryDto = newInventoryForSubmit();
     int previousSoH = new Random().nextInt();
-    when(calculatedStockOnHandService.getStockCardsWithStockOnHand(
-        physicalInventoryDto.getProgramId(),
-        physicalInventoryDto.getFacilityId()))
-        .thenReturn(singletonList(stockCard));
-    when(stockCard.getOrderableId()).thenReturn(lineItemDto.getOrderableId());
-    when(stockCard.getLotId()).thenReturn(lineItemDto.getLotId());
+    when(context.findCard(OrderableLotIdentity.identityOf(lineItemDto))).thenReturn(stockCard);
     when(stockCard.getStockOnHand()).thenReturn(previousSoH);
 
-    physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID());
+    physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID(),
+        context);
 
     verify(physicalInventoryRepository, times(1)).save(inventoryArgumentCaptor.capture());
 
@@ -108,15 +120,11 @@ public class PhysicalInventoryServiceTest {
   public void shouldSubmitPhysicalInventoryWhenNoDraftExists() {
     PhysicalInventoryDto physicalInventoryDto = newInventoryForSubmitWithoutId();
     int previousSoH = new Random().nextInt();
-    when(calculatedStockOnHandService.getStockCardsWithStockOnHand(
-        physicalInventoryDto.getProgramId(),
-        physicalInventoryDto.getFacilityId()))
-        .thenReturn(singletonList(stockCard));
-    when(stockCard.getOrderableId()).thenReturn(lineItemDto.getOrderableId());
-    when(stockCard.getLotId()).thenReturn(lineItemDto.getLotId());
+    when(context.findCard(OrderableLotIdentity.identityOf(lineItemDto))).thenReturn(stockCard);
     when(stockCard.getStockOnHand()).thenReturn(previousSoH);
 
-    physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID());
+    physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID(),
+        context);
 
     verify(physicalInventoryRepository, times(1)).save(inventoryArgumentCaptor.capture());
 
@@ -126,12 +134,8 @@ public class PhysicalInventoryServiceTest {
   @Test
   public void shouldLeavePreviousSohAsNullWhenSubmitPhysicalInventoryIfNoStockCardFound() {
     PhysicalInventoryDto physicalInventoryDto = newInventoryForSubmit();
-    when(calculatedStockOnHandService.getStockCardsWithStockOnHand(
-        physicalInventoryDto.getProgramId(),
-        physicalInventoryDto.getFacilityId()))
-        .thenReturn(emptyList());
-
-    physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID());
+    physicalInventoryService.submitPhysicalInventory(physicalInventoryDto, UUID.randomUUID(),
+        context);
 
     verify(physicalInventoryRepository, times(1)).save(inventoryArgumentCaptor.capture());
     verify(stockCard, never()).shallowCopy();
@@ -222,7 +226,7 @@ public class PhysicalInventoryServiceTest {
         .findById(piDto.getId()))
         .thenReturn(Optional.of(submittedPhysicalInventory));
 
-    physicalInventoryService.submitPhysicalInventory(piDto, null);
+    physicalInventoryService.submitPhysicalInventory(piDto, null, context);
   }
 
   @Test
@@ -276,6 +280,145 @@ public class PhysicalInventoryServiceTest {
     physicalInventoryService.saveDraft(piDto, piDto.getId());
   }
 
+  @Test
+  public void shouldIncrementVersionWhenSaveDraft() {
+    PhysicalInventoryDto piDto = createInventoryDto(programId, facilityId);
+    piDto.setVersion(3L);
+    mockHeader(piDto.getId(), true, 3L);
+    when(physicalInventoryRepository.incrementDraftVersion(piDto.getId(), 3L)).thenReturn(1);
+
+    final PhysicalInventoryDto saved = physicalInventoryService.saveDraft(piDto, piDto.getId());
+
+    verify(physicalInventoryRepository).incrementDraftVersion(piDto.getId(), 3L);
+    verify(physicalInventoryRepository).save(inventoryArgumentCaptor.capture());
+    assertEquals(Long.valueOf(4L), inventoryArgumentCaptor.getValue().getVersion());
+    assertEquals(Long.valueOf(4L), saved.getVersion());
+  }
+
+  @Test
+  public void shouldExpectCurrentVersionWhenSaveDraftWithoutVersion() {
+    PhysicalInventoryDto piDto = createInventoryDto(programId, facilityId);
+    mockHeader(piDto.getId(), true, 3L);
+    when(physicalInventoryRepository.incrementDraftVersion(piDto.getId(), 3L)).thenReturn(1);
+
+    PhysicalInventoryDto saved = physicalInventoryService.saveDraft(piDto, piDto.getId());
+
+    assertEquals(Long.valueOf(4L), saved.getVersion());
+  }
+
+  @Test(expected = VersionConflictException.class)
+  public void shouldThrowExceptionWhenSaveDraftLosesRaceForSameVersion() {
+    PhysicalInventoryDto piDto = createInventoryDto(programId, facilityId);
+    piDto.setVersion(3L);
+    // the header still shows version 3, but another save has claimed version 4 in the meantime
+    mockHeader(piDto.getId(), true, 3L);
+    when(physicalInventoryRepository.incrementDraftVersion(piDto.getId(), 3L)).thenReturn(0);
+
+    try {
+      physicalInventoryService.saveDraft(piDto, piDto.getId());
+    } finally {
+      verify(physicalInventoryRepository, never()).save(any(PhysicalInventory.class));
+    }
+  }
+
+  @Test(expected = VersionConflictException.class)
+  public void shouldThrowExceptionWhenSaveDraftWithOutdatedVersion() {
+    PhysicalInventoryDto piDto = createInventoryDto(programId, facilityId);
+    piDto.setVersion(2L);
+    mockHeader(piDto.getId(), true, 3L);
+
+    physicalInventoryService.saveDraft(piDto, piDto.getId());
+  }
+
+  @Test
+  public void shouldUpsertAndRemoveOnlyChangedLineItemsWhenPatchDraft() {
+    UUID inventoryId = randomUUID();
+    mockHeader(inventoryId, true, 5L);
+    when(physicalInventoryRepository.incrementDraftVersion(inventoryId, 5L)).thenReturn(1);
+
+    PhysicalInventoryLineItem existing = PhysicalInventoryLineItem.builder()
+        .orderableId(randomUUID())
+        .quantity(1)
+        .stockAdjustments(new ArrayList<>())
+        .build();
+    PhysicalInventoryLineItem removed = PhysicalInventoryLineItem.builder()
+        .orderableId(randomUUID())
+        .stockAdjustments(new ArrayList<>())
+        .build();
+    when(lineItemRepository.findByPhysicalInventoryIdAndOrderableIdIn(
+        any(UUID.class), anyCollection()))
+        .thenReturn(asList(existing, removed));
+
+    PhysicalInventoryLineItemAdjustment adjustment =
+        new PhysicalInventoryLineItemAdjustment(new StockCardLineItemReason(), 2);
+    adjustment.setId(randomUUID());
+    PhysicalInventoryLineItemDto changed = PhysicalInventoryLineItemDto.builder()
+        .orderableId(existing.getOrderableId())
+        .quantity(7)
+        .stockAdjustments(singletonList(adjustment))
+        .build();
+    PhysicalInventoryLineItemDto added = generateLineItem();
+    PhysicalInventoryLineItemDto removedDto = PhysicalInventoryLineItemDto.builder()
+        .orderableId(removed.getOrderableId())
+        .build();
+
+    PhysicalInventoryDraftPatchDto result = physicalInventoryService.patchDraft(
+        new PhysicalInventoryDraftPatchDto(inventoryId, 5L, asList(changed, added),
+            singletonList(removedDto)), inventoryId);
+
+    assertEquals(inventoryId, result.getId());
+    assertEquals(Long.valueOf(6L), result.getVersion());
+    verify(validator).validateDraftChanges(any(PhysicalInventoryDraftPatchDto.class),
+        any(UUID.class));
+    verify(permissionService).canEditPhysicalInventory(programId, facilityId);
+    verify(lineItemRepository).deleteAll(singletonList(removed));
+    verify(lineItemRepository).saveAll(lineItemsCaptor.capture());
+
+    List<PhysicalInventoryLineItem> saved = new ArrayList<>();
+    lineItemsCaptor.getValue().forEach(saved::add);
+    assertEquals(2, saved.size());
+    assertThat(saved.contains(existing), is(true));
+    assertEquals(Integer.valueOf(7), existing.getQuantity());
+    assertEquals(1, existing.getStockAdjustments().size());
+    assertNull(existing.getStockAdjustments().get(0).getId());
+
+    PhysicalInventoryLineItem inserted = saved.get(1 - saved.indexOf(existing));
+    assertEquals(added.getOrderableId(), inserted.getOrderableId());
+    assertEquals(inventoryId, inserted.getPhysicalInventory().getId());
+  }
+
+  @Test(expected = VersionConflictException.class)
+  public void shouldThrowExceptionWhenPatchDraftWithOutdatedVersion() {
+    UUID inventoryId = randomUUID();
+    mockHeader(inventoryId, true, 5L);
+    when(physicalInventoryRepository.incrementDraftVersion(inventoryId, 4L)).thenReturn(0);
+
+    try {
+      physicalInventoryService.patchDraft(new PhysicalInventoryDraftPatchDto(
+          inventoryId, 4L, singletonList(generateLineItem()), null), inventoryId);
+    } finally {
+      verify(lineItemRepository, never()).saveAll(any());
+    }
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void shouldThrowExceptionWhenPatchSubmittedInventory() {
+    UUID inventoryId = randomUUID();
+    mockHeader(inventoryId, false, 5L);
+
+    physicalInventoryService.patchDraft(new PhysicalInventoryDraftPatchDto(
+        inventoryId, 5L, singletonList(generateLineItem()), null), inventoryId);
+  }
+
+  @Test(expected = ResourceNotFoundException.class)
+  public void shouldThrowExceptionWhenPatchIfInventoryNotFound() {
+    UUID inventoryId = randomUUID();
+    when(physicalInventoryRepository.findHeaderById(inventoryId)).thenReturn(Optional.empty());
+
+    physicalInventoryService.patchDraft(new PhysicalInventoryDraftPatchDto(
+        inventoryId, 5L, emptyList(), null), inventoryId);
+  }
+
   @Test
   public void shouldDeleteDraftWhenPassValidations() {
     UUID programId = UUID.randomUUID();
@@ -313,6 +456,12 @@ public class PhysicalInventoryServiceTest {
     physicalInventoryService.deletePhysicalInventory(physicalInventoryId);
   }
 
+  private void mockHeader(UUID inventoryId, boolean isDraft, Long version) {
+    when(physicalInventoryRepository.findHeaderById(inventoryId))
+        .thenReturn(Optional.of(
+            new PhysicalInventoryHeader(inventoryId, programId, facilityId, isDraft, version)));
+  }
+
   private PhysicalInventoryDto newInventoryForSubmit() {
     PhysicalInventoryDto inventory = new PhysicalInventoryDto();
     inventory.setId(randomUUID());
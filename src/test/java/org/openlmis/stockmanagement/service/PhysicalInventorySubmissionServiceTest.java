@@ -0,0 +1,188 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus.COMPLETED;
+import static org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmissionStatus.FAILED;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventorySubmission;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
+import org.openlmis.stockmanagement.exception.ValidationMessageException;
+import org.openlmis.stockmanagement.i18n.MessageService;
+import org.openlmis.stockmanagement.repository.PhysicalInventorySubmissionRepository;
+import org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder;
+import org.openlmis.stockmanagement.util.Message;
+import org.openlmis.stockmanagement.util.StockEventProcessContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PhysicalInventorySubmissionServiceTest {
+
+  private static final String ERROR_KEY = "some.error";
+
+  @Mock
+  private PhysicalInventorySubmissionRepository submissionRepository;
+
+  @Mock
+  private StockEventProcessContextBuilder contextBuilder;
+
+  @Mock
+  private StockEventValidationsService stockEventValidationsService;
+
+  @Mock
+  private StockEventProcessor stockEventProcessor;
+
+  @Mock
+  private MessageService messageService;
+
+  @SuppressWarnings("PMD.UnusedPrivateField")
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private StockEventProcessContext context;
+
+  @InjectMocks
+  private PhysicalInventorySubmissionService submissionService;
+
+  private PhysicalInventorySubmission submission = new PhysicalInventorySubmission();
+  private UUID submissionId = randomUUID();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(submissionService, "clock", Clock.systemUTC());
+    ReflectionTestUtils.setField(submissionService, "chunkSize", 2);
+
+    submission.setId(submissionId);
+    lenient().when(submissionRepository.findById(submissionId))
+        .thenReturn(Optional.of(submission));
+    lenient().when(submissionRepository.save(any(PhysicalInventorySubmission.class)))
+        .then(returnsFirstArg());
+  }
+
+  @Test
+  public void shouldKeepLineItemsOfOneOrderableLotInOneChunk() {
+    StockEventLineItemDto first = newLineItem(randomUUID());
+    StockEventLineItemDto second = newLineItem(randomUUID());
+    StockEventLineItemDto third = newLineItem(first.getOrderableId());
+    StockEventLineItemDto fourth = newLineItem(randomUUID());
+
+    List<List<StockEventLineItemDto>> chunks =
+        submissionService.splitIntoChunks(asList(first, second, third, fourth));
+
+    assertEquals(asList(asList(first, third), asList(second, fourth)), chunks);
+  }
+
+  @Test
+  public void shouldValidateInChunksAndThenProcessWholeEvent() {
+    StockEventDto event = newPhysicalInventory(3);
+    UUID eventId = randomUUID();
+    when(contextBuilder.buildContext(event)).thenReturn(context);
+    when(stockEventProcessor.processValidated(event)).thenReturn(eventId);
+
+    submissionService.process(submissionId, event);
+
+    verify(contextBuilder, times(1)).buildContext(any(StockEventDto.class));
+    verify(stockEventValidationsService, times(2)).validate(any(StockEventDto.class));
+    verify(stockEventProcessor).processValidated(event);
+    verify(stockEventProcessor, never()).process(any(StockEventDto.class));
+    assertSame(context, event.getContext());
+    assertEquals(COMPLETED, submission.getStatus());
+    assertEquals(eventId, submission.getStockEventId());
+    assertEquals(Integer.valueOf(3), submission.getValidatedLineItems());
+  }
+
+  @Test
+  public void shouldValidateWholeEventWhenItHasNoLineItems() {
+    StockEventDto event = newPhysicalInventory(1);
+    event.setLineItems(new ArrayList<>());
+    when(contextBuilder.buildContext(event)).thenReturn(context);
+
+    submissionService.process(submissionId, event);
+
+    verify(stockEventValidationsService).validate(event);
+    verify(stockEventProcessor).processValidated(event);
+  }
+
+  @Test
+  public void shouldFailWithoutProcessingWhenChunkIsInvalid() {
+    StockEventDto event = newPhysicalInventory(3);
+    doThrow(new ValidationMessageException(ERROR_KEY))
+        .when(stockEventValidationsService).validate(any(StockEventDto.class));
+    when(messageService.localize(new Message(ERROR_KEY)))
+        .thenReturn(new Message(ERROR_KEY).new LocalizedMessage("invalid"));
+
+    submissionService.process(submissionId, event);
+
+    verify(stockEventProcessor, never()).processValidated(any(StockEventDto.class));
+    assertEquals(FAILED, submission.getStatus());
+    assertEquals(ERROR_KEY, submission.getErrorMessageKey());
+    assertEquals("invalid", submission.getErrorMessage());
+    assertEquals(Integer.valueOf(0), submission.getValidatedLineItems());
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void shouldRejectEventThatIsNotPhysicalInventory() {
+    submissionService.submit(StockEventDtoDataBuilder.createStockEventDto());
+  }
+
+  private StockEventDto newPhysicalInventory(int lineItems) {
+    StockEventDto event = StockEventDtoDataBuilder.createNoSourceDestinationStockEventDto();
+    event.getLineItems().get(0).setReasonId(null);
+
+    List<StockEventLineItemDto> items = new ArrayList<>(event.getLineItems());
+    for (int i = 1; i < lineItems; i++) {
+      items.add(newLineItem(randomUUID()));
+    }
+    event.setLineItems(items);
+    submission.setValidatedLineItems(0);
+    return event;
+  }
+
+  private StockEventLineItemDto newLineItem(UUID orderableId) {
+    StockEventLineItemDto lineItem = new StockEventLineItemDto();
+    lineItem.setOrderableId(orderableId);
+    lineItem.setQuantity(1);
+    lineItem.setOccurredDate(LocalDate.now());
+    return lineItem;
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.openlmis.stockmanagement.service.PrefetchExecutor.TASK_METRIC;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class PrefetchExecutorTest {
+
+  private MeterRegistry registry = new SimpleMeterRegistry();
+  private PrefetchExecutor prefetchExecutor = new PrefetchExecutor(registry, 1, 1);
+
+  @Before
+  public void setUp() {
+    prefetchExecutor.start();
+  }
+
+  @After
+  public void tearDown() {
+    prefetchExecutor.stop();
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  public void shouldRunTasksWithSecurityContextOfCaller() {
+    Authentication authentication = new TestingAuthenticationToken("admin", "password");
+    SecurityContextHolder.getContext().setAuthentication(authentication);
+
+    CompletableFuture<Authentication> first = prefetchExecutor.supply("FIRST",
+        () -> SecurityContextHolder.getContext().getAuthentication());
+    CompletableFuture<Authentication> second = prefetchExecutor.then("SECOND", first,
+        ignored -> SecurityContextHolder.getContext().getAuthentication());
+
+    assertSame(authentication, PrefetchExecutor.join(first));
+    assertSame(authentication, PrefetchExecutor.join(second));
+    assertEquals(1, registry.find(TASK_METRIC).tag("task", "SECOND").timer().count());
+  }
+
+  @Test
+  public void shouldRethrowExceptionOfTask() {
+    IllegalStateException exception = new IllegalStateException("referencedata unavailable");
+    AtomicBoolean dependentRun = new AtomicBoolean();
+
+    CompletableFuture<Object> failed = prefetchExecutor.supply("FAILED", () -> {
+      throw exception;
+    });
+    CompletableFuture<Boolean> dependent = prefetchExecutor.then("DEPENDENT", failed,
+        ignored -> dependentRun.getAndSet(true));
+
+    try {
+      PrefetchExecutor.join(dependent);
+      fail("exception expected");
+    } catch (IllegalStateException ex) {
+      assertSame(exception, ex);
+    }
+    assertFalse(dependentRun.get());
+  }
+
+  @Test
+  public void shouldRunTaskOnCallerWhenPoolIsFull() {
+    CountDownLatch release = new CountDownLatch(1);
+
+    final CompletableFuture<Boolean> running = prefetchExecutor.supply("RUNNING",
+        () -> await(release));
+    final CompletableFuture<Boolean> queued = prefetchExecutor.supply("QUEUED", () -> true);
+    Thread caller = Thread.currentThread();
+    CompletableFuture<Boolean> rejected = prefetchExecutor.supply("REJECTED",
+        () -> Thread.currentThread() == caller);
+
+    assertTrue(rejected.isDone());
+    assertTrue(PrefetchExecutor.join(rejected));
+
+    release.countDown();
+    assertTrue(PrefetchExecutor.join(running));
+    assertTrue(PrefetchExecutor.join(queued));
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
+import org.openlmis.stockmanagement.domain.reason.ValidReasonAssignment;
+import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
+import org.openlmis.stockmanagement.testutils.StockCardLineItemReasonDataBuilder;
+import org.openlmis.stockmanagement.testutils.ValidReasonAssignmentDataBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("PMD.TooManyMethods")
+public class ReasonCatalogTest {
+
+  private static final String CONSUMED = "consumed";
+  private static final String RECEIVED = "received";
+
+  @Mock
+  private StockCardLineItemReasonRepository reasonRepository;
+
+  @Mock
+  private ValidReasonAssignmentRepository validReasonAssignmentRepository;
+
+  @Mock
+  @SuppressWarnings("PMD.UnusedPrivateField")
+  private PlatformTransactionManager transactionManager;
+
+  @InjectMocks
+  private ReasonCatalog reasonCatalog;
+
+  private StockCardLineItemReason consumed = new StockCardLineItemReasonDataBuilder()
+      .withName("Consumed")
+      .withTags(singletonList(CONSUMED))
+      .build();
+
+  private StockCardLineItemReason received = new StockCardLineItemReasonDataBuilder()
+      .withName("Received")
+      .withTags(asList(RECEIVED, "other"))
+      .build();
+
+  private ValidReasonAssignment assignment = new ValidReasonAssignmentDataBuilder()
+      .withReason(consumed)
+      .build();
+
+  @Before
+  public void setUp() {
+    when(reasonRepository.findCatalogVersion()).thenReturn(1L);
+    when(reasonRepository.findAllWithTags()).thenReturn(asList(consumed, received));
+    when(validReasonAssignmentRepository.findAll()).thenReturn(singletonList(assignment));
+  }
+
+  @Test
+  public void shouldLoadCatalogOnceOnFirstLookup() {
+    reasonCatalog.findByIdIn(singletonList(consumed.getId()));
+    reasonCatalog.findByNameIn(singletonList(consumed.getName()));
+    reasonCatalog.existsByTag(CONSUMED);
+
+    verify(reasonRepository, times(1)).findAllWithTags();
+    verify(validReasonAssignmentRepository, times(1)).findAll();
+  }
+
+  @Test
+  public void shouldFindReasonsByIdsAndNames() {
+    assertThat(reasonCatalog.findByIdIn(asList(consumed.getId(), UUID.randomUUID())),
+        contains(consumed));
+    assertThat(reasonCatalog.findByNameIn(asList(received.getName(), "unknown")),
+        contains(received));
+    assertThat(reasonCatalog.findById(received.getId()), is(received));
+    assertThat(reasonCatalog.findById(UUID.randomUUID()), is(nullValue()));
+  }
+
+  @Test
+  public void shouldReturnCopiesOfLoadedReasons() {
+    StockCardLineItemReason found = reasonCatalog.findById(consumed.getId());
+
+    assertThat(found, is(not(sameInstance(consumed))));
+    assertThat(found.getTags(), contains(CONSUMED));
+  }
+
+  @Test
+  public void shouldIndexReasonsByTag() {
+    assertThat(reasonCatalog.existsByTag(RECEIVED), is(true));
+    assertThat(reasonCatalog.existsByTag("unknown"), is(false));
+    assertThat(reasonCatalog.findTags(), containsInAnyOrder(CONSUMED, RECEIVED, "other"));
+  }
+
+  @Test
+  public void shouldFindValidReasonAssignments() {
+    UUID programId = assignment.getProgramId();
+    UUID facilityTypeId = assignment.getFacilityTypeId();
+
+    assertThat(reasonCatalog.findByProgramIdAndFacilityTypeId(programId, facilityTypeId),
+        contains(assignment));
+    assertThat(reasonCatalog.findByProgramIdAndFacilityTypeIdAndReasonId(
+        programId, facilityTypeId, consumed.getId()), is(assignment));
+    assertThat(reasonCatalog.findByProgramIdAndFacilityTypeIdAndReasonId(
+        programId, facilityTypeId, received.getId()), is(nullValue()));
+    assertThat(reasonCatalog.findByProgramIdAndFacilityTypeId(programId, UUID.randomUUID()),
+        is(empty()));
+  }
+
+  @Test
+  public void shouldReloadWhenVersionChanged() {
+    reasonCatalog.findAll();
+
+    StockCardLineItemReason added = new StockCardLineItemReasonDataBuilder()
+        .withName("Added")
+        .build();
+    when(reasonRepository.findCatalogVersion()).thenReturn(2L);
+    when(reasonRepository.findAllWithTags()).thenReturn(asList(consumed, received, added));
+
+    reasonCatalog.checkVersion();
+
+    assertThat(reasonCatalog.getVersion(), is(2L));
+    assertThat(reasonCatalog.findById(added.getId()), is(added));
+  }
+
+  @Test
+  public void shouldNotReloadWhenVersionIsUnchanged() {
+    reasonCatalog.findAll();
+    reasonCatalog.checkVersion();
+
+    verify(reasonRepository, times(1)).findAllWithTags();
+  }
+
+  @Test
+  public void shouldLoadCatalogInReadWriteTransactionWhenUsedInReadOnlyTransaction() {
+    PlatformTransactionManager synchronizingManager = new SynchronizingTransactionManager();
+    ReflectionTestUtils.setField(reasonCatalog, "transactionManager", synchronizingManager);
+    List<Boolean> readOnly = new ArrayList<>();
+    when(reasonRepository.findCatalogVersion()).then(invocation -> {
+      readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+      return 1L;
+    });
+
+    TransactionTemplate readOnlyTransaction = new TransactionTemplate(synchronizingManager);
+    readOnlyTransaction.setReadOnly(true);
+    readOnlyTransaction.execute(status -> {
+      reasonCatalog.findAll();
+      reasonCatalog.checkVersion();
+      assertThat(TransactionSynchronizationManager.isCurrentTransactionReadOnly(), is(true));
+      return null;
+    });
+
+    assertThat(readOnly, contains(false, false));
+  }
+
+  @Test
+  public void shouldNotCheckVersionBeforeCatalogIsUsed() {
+    reasonCatalog.checkVersion();
+
+    verify(reasonRepository, never()).findCatalogVersion();
+    verify(reasonRepository, never()).findAllWithTags();
+  }
+
+  @Test
+  public void shouldKeepNewerCatalogWhenReloadReturnsOlderVersion() {
+    reasonCatalog.findAll();
+    when(reasonRepository.findCatalogVersion()).thenReturn(0L);
+    when(reasonRepository.findAllWithTags()).thenReturn(singletonList(consumed));
+
+    reasonCatalog.reload();
+
+    assertThat(reasonCatalog.getVersion(), is(1L));
+    assertThat(reasonCatalog.findAll().size(), is(2));
+  }
+
+  // Keeps the transaction state in TransactionSynchronizationManager like the JPA transaction
+  // manager does, without a database.
+  private static class SynchronizingTransactionManager
+      extends AbstractPlatformTransactionManager {
+
+    @Override
+    protected Object doGetTransaction() {
+      return new Object();
+    }
+
+    @Override
+    protected boolean isExistingTransaction(Object transaction) {
+      return TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+      // nothing to begin
+    }
+
+    @Override
+    protected Object doSuspend(Object transaction) {
+      return transaction;
+    }
+
+    @Override
+    protected void doResume(Object transaction, Object suspendedResources) {
+      // nothing to resume
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+      // nothing to commit
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+      // nothing to roll back
+    }
+  }
+}
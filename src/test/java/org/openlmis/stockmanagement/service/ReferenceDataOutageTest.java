@@ -0,0 +1,159 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
+import org.openlmis.stockmanagement.http.OutboundHttpClient;
+import org.openlmis.stockmanagement.http.RemoteCallGuard;
+import org.openlmis.stockmanagement.http.SingleFlight;
+import org.openlmis.stockmanagement.service.referencedata.DataRetrievalException;
+import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.UserReferenceDataService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Runs reference data services against a WireMock stand-in of referencedata that starts failing.
+ */
+public class ReferenceDataOutageTest {
+
+  private static final String ORDERABLES_URL = "/api/orderables/.*";
+  private static final String USERS_URL = "/api/users/.*";
+
+  @Rule
+  public WireMockRule referenceData = new WireMockRule(wireMockConfig().dynamicPort());
+
+  private MeterRegistry registry = new SimpleMeterRegistry();
+  private OrderableReferenceDataService orderableService = new OrderableReferenceDataService();
+  private UserReferenceDataService userService = new UserReferenceDataService();
+
+  private UUID orderableId = UUID.randomUUID();
+
+  @Before
+  public void setUp() {
+    AuthService authService = mock(AuthService.class);
+    when(authService.obtainAccessToken()).thenReturn(UUID.randomUUID().toString());
+
+    OutboundHttpClient outboundHttpClient =
+        new OutboundHttpClient(new SimpleClientHttpRequestFactory(), registry, 5, 0);
+    // opens once half of at least two calls failed
+    RemoteCallGuard remoteCallGuard = new RemoteCallGuard(registry, 4, 2, 50, 60000, 5, 0);
+
+    for (BaseCommunicationService<?> service : new BaseCommunicationService<?>[]{
+        orderableService, userService}) {
+      ReflectionTestUtils.setField(service, "authService", authService);
+      ReflectionTestUtils.setField(service, "meterRegistry", registry);
+      ReflectionTestUtils.setField(service, "outboundHttpClient", outboundHttpClient);
+      ReflectionTestUtils.setField(service, "remoteCallGuard", remoteCallGuard);
+      ReflectionTestUtils.setField(service, "singleFlight", new SingleFlight(registry));
+      ReflectionTestUtils.setField(service, "maxUrlLength", 2000);
+      ReflectionTestUtils.setField(service, "lastKnownGoodMaxEntries", 100);
+      ReflectionTestUtils.setField(service, "lastKnownGoodMaxAgeSeconds", 3600);
+      ReflectionTestUtils.setField(service, "referenceDataUrl",
+          "http://localhost:" + referenceData.port());
+      service.instrumentRestTemplate();
+      service.createLastKnownGoodCache();
+    }
+  }
+
+  @Test
+  public void shouldServeLastKnownGoodOrderablesWhileReferenceDataFails() {
+    stubOrderables(200, "{\"content\": [{\"id\": \"" + orderableId + "\", "
+        + "\"productCode\": \"C100\"}], \"totalElements\": 1, \"totalPages\": 1, "
+        + "\"number\": 0, \"size\": 1, \"numberOfElements\": 1}");
+    assertEquals(orderableId, findOrderables().get(0).getId());
+
+    stubOrderables(500, "{}");
+
+    for (int attempt = 0; attempt < 5; attempt++) {
+      List<OrderableDto> orderables = findOrderables();
+      assertEquals(1, orderables.size());
+      assertEquals("C100", orderables.get(0).getProductCode());
+    }
+
+    // one of two calls failing opened the breaker, later lookups did not reach referencedata
+    referenceData.verify(2, getRequestedFor(urlMatching(ORDERABLES_URL)));
+    assertEquals(5, registry.get(BaseCommunicationService.LAST_KNOWN_GOOD_METRIC)
+        .tag("service", "OrderableReferenceDataService")
+        .counter().count(), 0);
+  }
+
+  @Test
+  public void shouldFailFastWhileBreakerIsOpen() {
+    referenceData.stubFor(get(urlMatching(USERS_URL))
+        .willReturn(aResponse().withStatus(503)));
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, findUserAndFail());
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, findUserAndFail());
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, findUserAndFail());
+
+    referenceData.verify(2, getRequestedFor(urlMatching(USERS_URL)));
+  }
+
+  @Test
+  public void shouldNotOpenBreakerOnClientErrors() {
+    referenceData.stubFor(get(urlMatching(USERS_URL))
+        .willReturn(aResponse().withStatus(404)));
+
+    for (int attempt = 0; attempt < 5; attempt++) {
+      assertEquals(null, userService.findOne(UUID.randomUUID()));
+    }
+
+    referenceData.verify(5, getRequestedFor(urlMatching(USERS_URL)));
+  }
+
+  private List<OrderableDto> findOrderables() {
+    return orderableService.findByIds(singleton(orderableId));
+  }
+
+  private HttpStatus findUserAndFail() {
+    try {
+      userService.findOne(UUID.randomUUID());
+      fail("DataRetrievalException expected");
+      return null;
+    } catch (DataRetrievalException ex) {
+      return ex.getStatus();
+    }
+  }
+
+  private void stubOrderables(int status, String body) {
+    referenceData.stubFor(get(urlMatching(ORDERABLES_URL))
+        .willReturn(aResponse()
+            .withStatus(status)
+            .withHeader("Content-Type", "application/json")
+            .withBody(body)));
+  }
+}
@@ -36,12 +36,14 @@ import static org.openlmis.stockmanagement.testutils.ValidSourceDestinationDataB
 import static org.openlmis.stockmanagement.testutils.ValidSourceDestinationDataBuilder.createOrganizationDestination;
 import static org.openlmis.stockmanagement.testutils.ValidSourceDestinationDataBuilder.createOrganizationSourceAssignment;
 
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.Test;
@@ -701,6 +703,97 @@ public class SourceDestinationBaseServiceTest {
     verify(destinationRepository, times(1)).deleteById(assignmentId);
   }
 
+  @Test
+  public void shouldCacheValidDestinationNodeIdsUntilAssignmentsChange() {
+    //given
+    UUID programId = randomUUID();
+    UUID facilityTypeId = randomUUID();
+    UUID regionGeoLevelId = randomUUID();
+    UUID regionGeoZoneId = randomUUID();
+
+    FacilityDto facilityDto = createFacilityDtoWithFacilityType(randomUUID(), facilityTypeId);
+    facilityDto.setGeographicZone(generateGeographicZone(randomUUID(), regionGeoLevelId,
+        randomUUID(), randomUUID(), regionGeoZoneId, randomUUID()));
+
+    Node organizationNode = createNode(randomUUID(), false);
+    Node matchingNode = createNode(randomUUID(), true);
+    Node notMatchingNode = createNode(randomUUID(), true);
+    when(destinationRepository.findByProgramIdInAndFacilityTypeId(
+        singletonList(programId), facilityTypeId, Pageable.unpaged()))
+        .thenReturn(asList(
+            createOrganizationDestination(organizationNode),
+            createFacilityDestinationWithGeoLevelAffinity(matchingNode, regionGeoLevelId),
+            createFacilityDestinationWithGeoLevelAffinity(notMatchingNode, randomUUID())));
+
+    Map<UUID, FacilityDto> facilities = new HashMap<>();
+    for (Node node : asList(matchingNode, notMatchingNode)) {
+      FacilityDto destination = createFacilityDtoWithFacilityType(node.getReferenceId(),
+          randomUUID());
+      destination.setGeographicZone(generateGeographicZone(randomUUID(), regionGeoLevelId,
+          randomUUID(), randomUUID(), regionGeoZoneId, randomUUID()));
+      facilities.put(node.getReferenceId(), destination);
+    }
+    when(facilityReferenceDataService.findByIds(anyListOf(UUID.class))).thenReturn(facilities);
+
+    //when
+    validDestinationService.findValidDestinationNodeIds(programId, facilityDto);
+    Set<UUID> nodeIds = validDestinationService
+        .findValidDestinationNodeIds(programId, facilityDto);
+
+    //then
+    assertThat(nodeIds, is(ImmutableSet.of(organizationNode.getId(), matchingNode.getId())));
+    verify(destinationRepository, times(1)).findByProgramIdInAndFacilityTypeId(
+        singletonList(programId), facilityTypeId, Pageable.unpaged());
+    verify(facilityReferenceDataService, times(1)).findByIds(anyListOf(UUID.class));
+
+    //when
+    UUID assignmentId = randomUUID();
+    when(destinationRepository.existsById(assignmentId)).thenReturn(true);
+    validDestinationService.deleteDestinationAssignmentById(assignmentId);
+    validDestinationService.findValidDestinationNodeIds(programId, facilityDto);
+
+    //then
+    verify(destinationRepository, times(2)).findByProgramIdInAndFacilityTypeId(
+        singletonList(programId), facilityTypeId, Pageable.unpaged());
+    verify(facilityReferenceDataService, times(2)).findByIds(anyListOf(UUID.class));
+  }
+
+  @Test
+  public void shouldCacheSourceAssignmentsUntilSourceIsAssigned() {
+    //given
+    UUID programId = randomUUID();
+    UUID facilityTypeId = randomUUID();
+    UUID sourceId = randomUUID();
+    ValidSourceAssignment assignment = createSourceAssignment(programId, facilityTypeId,
+        createNode(sourceId, false));
+    when(sourceRepository.findByProgramIdInAndFacilityTypeId(
+        singletonList(programId), facilityTypeId, Pageable.unpaged()))
+        .thenReturn(singletonList(assignment));
+
+    //when
+    validSourceService.findSourceAssignments(programId, facilityTypeId);
+    List<ValidSourceAssignment> assignments = validSourceService
+        .findSourceAssignments(programId, facilityTypeId);
+
+    //then
+    assertThat(assignments, is(singletonList(assignment)));
+    verify(sourceRepository, times(1)).findByProgramIdInAndFacilityTypeId(
+        singletonList(programId), facilityTypeId, Pageable.unpaged());
+
+    //when
+    Organization organization = new Organization();
+    organization.setName(ORGANIZATION_NAME);
+    when(organizationRepository.existsById(sourceId)).thenReturn(true);
+    when(organizationRepository.findById(sourceId)).thenReturn(Optional.of(organization));
+    when(sourceRepository.save(any(ValidSourceAssignment.class))).thenReturn(assignment);
+    validSourceService.assignSource(createSource(programId, facilityTypeId, sourceId));
+    validSourceService.findSourceAssignments(programId, facilityTypeId);
+
+    //then
+    verify(sourceRepository, times(2)).findByProgramIdInAndFacilityTypeId(
+        singletonList(programId), facilityTypeId, Pageable.unpaged());
+  }
+
   private Node createNode(UUID referenceId, boolean isRefDataFacility) {
     Node node = new Node();
     node.setReferenceId(referenceId);
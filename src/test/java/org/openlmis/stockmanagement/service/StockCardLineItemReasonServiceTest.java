@@ -51,6 +51,9 @@ public class StockCardLineItemReasonServiceTest {
   @Mock
   private StockCardLineItemReasonRepository reasonRepository;
 
+  @Mock
+  private ReasonCatalog reasonCatalog;
+
   @InjectMocks
   private StockCardLineItemReasonService reasonService;
 
@@ -184,6 +187,7 @@ public class StockCardLineItemReasonServiceTest {
 
     //then
     verify(reasonRepository, times(1)).save(reason);
+    verify(reasonCatalog).reload();
   }
 
   @Test
@@ -46,6 +46,7 @@ import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.dto.StockCardDto;
 import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import org.openlmis.stockmanagement.dto.referencedata.UserDto;
@@ -66,6 +67,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @RunWith(MockitoJUnitRunner.class)
 public class StockCardServiceTest {
@@ -114,6 +116,9 @@ public class StockCardServiceTest {
   @Mock
   private OAuth2Authentication authentication;
 
+  @Mock
+  private StockVersionService stockVersionService;
+
   private UUID id = UUID.randomUUID();
   private UUID facilityId = UUID.randomUUID();
   private UUID programId = UUID.randomUUID();
@@ -125,6 +130,8 @@ public class StockCardServiceTest {
 
   @Before
   public void setUp() {
+    ReflectionTestUtils.setField(stockCardService, "cardBatchSize", 500);
+
     when(user.getId()).thenReturn(userId);
     when(authenticationHelper.getCurrentUser()).thenReturn(user);
 
@@ -179,6 +186,35 @@ public class StockCardServiceTest {
     assertThat(card.getLineItems(), hasSize(2));
   }
 
+  @Test
+  public void shouldSaveCardsOfEventInBatches() {
+    ReflectionTestUtils.setField(stockCardService, "cardBatchSize", 2);
+
+    StockEventDto event = StockEventDtoDataBuilder.createStockEventDtoWithTwoLineItems();
+    StockEventLineItemDto lineItem = event.getLineItems().get(0);
+    StockEventLineItemDto otherLineItem = new StockEventLineItemDto();
+    otherLineItem.setOrderableId(UUID.randomUUID());
+    otherLineItem.setQuantity(lineItem.getQuantity());
+    otherLineItem.setOccurredDate(lineItem.getOccurredDate());
+    otherLineItem.setReasonId(lineItem.getReasonId());
+    StockEventLineItemDto anotherLineItem = new StockEventLineItemDto();
+    anotherLineItem.setOrderableId(UUID.randomUUID());
+    anotherLineItem.setQuantity(lineItem.getQuantity());
+    anotherLineItem.setOccurredDate(lineItem.getOccurredDate());
+    anotherLineItem.setReasonId(lineItem.getReasonId());
+    event.setLineItems(Arrays.asList(lineItem, otherLineItem, anotherLineItem));
+    event.setContext(mock(StockEventProcessContext.class));
+
+    stockCardService.saveFromEvent(event, UUID.randomUUID());
+
+    verify(cardRepository, times(2)).saveAll(cardCaptor.capture());
+    verify(cardRepository, times(2)).flush();
+    verify(calculatedStockOnHandService, times(2)).recalculateStockOnHand(any());
+
+    assertThat(cardCaptor.getAllValues().get(0), hasSize(2));
+    assertThat(cardCaptor.getAllValues().get(1), hasSize(1));
+  }
+
   @Test
   public void shouldGetStockCardsBasedOnPermissionString() {
     when(cardRepository.findByFacilityIdInAndProgramIdIn(facilityIds, programIds, pageable))
@@ -269,6 +305,7 @@ public class StockCardServiceTest {
       List<?> list = (List<?>) arg;
       return list.size() == 2 && list.stream().noneMatch(c -> ((StockCard)c).isActive());
     }));
+    verify(stockVersionService).increment(Arrays.asList(card1, card2));
   }
 
   @Test(expected = ResourceNotFoundException.class)
@@ -0,0 +1,109 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StockCardSummariesCacheTest {
+
+  private static final String KEY = "key";
+
+  private final UUID facilityId = UUID.randomUUID();
+  private final UUID programId = UUID.randomUUID();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private StockVersionService stockVersionService = mock(StockVersionService.class);
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private StockCardSummariesCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new StockCardSummariesCache(stockVersionService, meterRegistry, true, 10, 60);
+  }
+
+  @Test
+  public void shouldReturnCachedSummariesWhileVersionsAreCurrent() {
+    givenVersion(1L);
+
+    assertEquals(1, get());
+    assertEquals(1, get());
+
+    assertEquals(1, count("miss"), 0);
+    assertEquals(1, count("hit"), 0);
+  }
+
+  @Test
+  public void shouldReloadSummariesWhenVersionChanged() {
+    givenVersion(1L);
+    get();
+
+    givenVersion(2L);
+
+    assertEquals(2, get());
+    assertEquals(1, count("outdated"), 0);
+  }
+
+  @Test
+  public void shouldCallOnHitOnlyForCachedSummaries() {
+    @SuppressWarnings("unchecked")
+    Consumer<Integer> onHit = mock(Consumer.class);
+    givenVersion(1L);
+
+    cache.get(KEY, facilityId, singleton(programId), loads::incrementAndGet, onHit);
+    verify(onHit, never()).accept(1);
+
+    cache.get(KEY, facilityId, singleton(programId), loads::incrementAndGet, onHit);
+    verify(onHit).accept(1);
+  }
+
+  @Test
+  public void shouldAlwaysLoadSummariesWhenDisabled() {
+    cache = new StockCardSummariesCache(stockVersionService, meterRegistry, false, 10, 60);
+
+    assertEquals(1, get());
+    assertEquals(2, get());
+
+    verify(stockVersionService, never()).getVersions(facilityId, singleton(programId));
+  }
+
+  private int get() {
+    return cache.get(KEY, facilityId, singleton(programId), loads::incrementAndGet, value -> { });
+  }
+
+  private void givenVersion(long version) {
+    when(stockVersionService.getVersions(facilityId, singleton(programId)))
+        .thenReturn(singletonMap(programId, version));
+  }
+
+  private double count(String result) {
+    return meterRegistry.get(StockCardSummariesCache.REQUESTS_METRIC)
+        .tag("result", result)
+        .counter().count();
+  }
+}
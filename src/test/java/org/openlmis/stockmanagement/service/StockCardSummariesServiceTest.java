@@ -17,6 +17,7 @@ package org.openlmis.stockmanagement.service;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.UUID.fromString;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.CoreMatchers.hasItems;
@@ -27,16 +28,23 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -47,7 +55,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -89,6 +100,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @SuppressWarnings("PMD.TooManyMethods")
 @RunWith(MockitoJUnitRunner.class)
@@ -131,6 +143,8 @@ public class StockCardSummariesServiceTest {
   @Mock
   private HomeFacilityPermissionService homeFacilityPermissionService;
   @Mock
+  private StockVersionService stockVersionService;
+  @Mock
   // injected into StockCardBaseService via @InjectMocks; not referenced directly in this test
   @SuppressWarnings("PMD.UnusedPrivateField")
   private CancellationLinkResolver cancellationLinkResolver;
@@ -143,11 +157,24 @@ public class StockCardSummariesServiceTest {
   @Mock
   private OAuth2Authentication authentication;
 
+  private final PrefetchExecutor prefetchExecutor =
+      new PrefetchExecutor(new SimpleMeterRegistry(), 4, 10);
+
   @Before
   public void setUp() {
     SecurityContextHolder.setContext(securityContext);
     when(securityContext.getAuthentication()).thenReturn(authentication);
     when(authentication.isClientOnly()).thenReturn(false);
+
+    prefetchExecutor.start();
+    ReflectionTestUtils.setField(stockCardSummariesService, "prefetchExecutor", prefetchExecutor);
+    useSummariesCache(false);
+  }
+
+  @After
+  public void tearDown() {
+    prefetchExecutor.stop();
+    SecurityContextHolder.clearContext();
   }
 
   @Test
@@ -366,6 +393,88 @@ public class StockCardSummariesServiceTest {
         .canViewStockCard(any(UUID.class), any(UUID.class));
   }
 
+  @Test
+  public void shouldSearchLotsWhileApprovedProductsAreFetched() throws Exception {
+    OrderableDto orderable = new OrderableDtoDataBuilder().build();
+    OrderablesAggregator orderablesAggregator = new OrderablesAggregator(singletonList(
+        new ApprovedProductDto(orderable, null, null)));
+
+    StockCardSummariesV2SearchParams params =
+        new StockCardSummariesV2SearchParamsDataBuilder().build();
+
+    CountDownLatch lotsSearched = new CountDownLatch(1);
+
+    // approved products are only returned once the lot search has started, which would never
+    // happen if the two were fetched one after another
+    when(approvedProductReferenceDataService
+        .getApprovedProducts(
+            eq(params.getFacilityId()),
+            eq(params.getProgramIds()),
+            eq(params.getOrderableIds()),
+            eq(params.getOrderableCode()),
+            eq(params.getOrderableName())
+        ))
+        .thenAnswer(invocation -> lotsSearched.await(5, TimeUnit.SECONDS)
+            ? orderablesAggregator
+            : null);
+
+    when(lotReferenceDataService.getPage(any(RequestParameters.class)))
+        .thenAnswer(invocation -> {
+          lotsSearched.countDown();
+          return new PageImpl<>(Collections.emptyList());
+        });
+
+    when(orderableReferenceDataService.getPage(any(RequestParameters.class)))
+        .thenReturn(new PageImpl<>(Collections.emptyList()));
+
+    when(authentication.isClientOnly()).thenReturn(true);
+
+    StockCardSummaries result = stockCardSummariesService.findStockCards(params);
+
+    assertEquals(1, result.getPageOfApprovedProducts().size());
+  }
+
+  @Test
+  public void shouldReuseCachedSummariesUntilStockVersionChanges() {
+    useSummariesCache(true);
+    ProgramDto program = ProgramDto.builder().id(programId).build();
+    OrderablesAggregator orderablesAggregator = new OrderablesAggregator(singletonList(
+        new ApprovedProductDto(new OrderableDtoDataBuilder().build(), program, null)));
+
+    StockCardSummariesV2SearchParams params =
+        new StockCardSummariesV2SearchParamsDataBuilder().build();
+
+    when(approvedProductReferenceDataService
+        .getApprovedProducts(
+            eq(params.getFacilityId()),
+            eq(params.getProgramIds()),
+            eq(params.getOrderableIds()),
+            eq(params.getOrderableCode()),
+            eq(params.getOrderableName())
+        ))
+        .thenReturn(orderablesAggregator);
+    when(lotReferenceDataService.getPage(any(RequestParameters.class)))
+        .thenReturn(new PageImpl<>(Collections.emptyList()));
+    when(orderableReferenceDataService.getPage(any(RequestParameters.class)))
+        .thenReturn(new PageImpl<>(Collections.emptyList()));
+    when(homeFacilityPermissionService.checkFacilityAndHomeFacilityLinkage(any(UUID.class)))
+        .thenReturn(false);
+    when(stockVersionService.getVersions(params.getFacilityId(), params.getProgramIds()))
+        .thenReturn(singletonMap(programId, 1L))
+        .thenReturn(singletonMap(programId, 1L))
+        .thenReturn(singletonMap(programId, 2L));
+
+    StockCardSummaries first = stockCardSummariesService.findStockCards(params);
+    StockCardSummaries cached = stockCardSummariesService.findStockCards(params);
+    StockCardSummaries reloaded = stockCardSummariesService.findStockCards(params);
+
+    assertSame(first, cached);
+    assertNotSame(first, reloaded);
+    verify(approvedProductReferenceDataService, times(2)).getApprovedProducts(
+        any(UUID.class), anyList(), any(), any(), any());
+    verify(permissionService, times(3)).canViewStockCard(programId, params.getFacilityId());
+  }
+
   @Test(expected = PermissionMessageException.class)
   public void shouldThrowExceptionIfNoPermission() {
     ProgramDto program =
@@ -404,6 +513,32 @@ public class StockCardSummariesServiceTest {
     stockCardSummariesService.findStockCards(params);
   }
 
+  @Test
+  public void shouldNotViewStockCardsIfOneOfProgramsIsNotPermitted() {
+    UUID facilityId = randomUUID();
+    UUID otherProgramId = randomUUID();
+    when(homeFacilityPermissionService.checkFacilityAndHomeFacilityLinkage(facilityId))
+        .thenReturn(false);
+    when(permissionService.hasViewStockCardRight(programId, facilityId)).thenReturn(true);
+    when(permissionService.hasViewStockCardRight(otherProgramId, facilityId)).thenReturn(false);
+
+    assertTrue(stockCardSummariesService.canViewStockCards(
+        singletonList(programId), facilityId));
+    assertFalse(stockCardSummariesService.canViewStockCards(
+        asList(programId, otherProgramId), facilityId));
+  }
+
+  @Test
+  public void shouldViewStockCardsOfHomeFacilityWithoutProgramRights() {
+    UUID facilityId = randomUUID();
+    when(homeFacilityPermissionService.checkFacilityAndHomeFacilityLinkage(facilityId))
+        .thenReturn(true);
+
+    assertTrue(stockCardSummariesService.canViewStockCards(
+        singletonList(programId), facilityId));
+    verify(permissionService, never()).hasViewStockCardRight(any(UUID.class), any(UUID.class));
+  }
+
   @Test
   public void shouldAggregateStockCardsByCommodityTypes() {
     Map<UUID, OrderableFulfillDto> fulfillMap = new HashMap<>();
@@ -705,4 +840,9 @@ public class StockCardSummariesServiceTest {
     return calculatedStockOnHand;
   }
 
+  private void useSummariesCache(boolean enabled) {
+    ReflectionTestUtils.setField(stockCardSummariesService, "summariesCache",
+        new StockCardSummariesCache(stockVersionService, new SimpleMeterRegistry(), enabled, 10,
+            60));
+  }
 }
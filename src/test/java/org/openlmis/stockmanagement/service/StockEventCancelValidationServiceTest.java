@@ -49,7 +49,6 @@ import org.openlmis.stockmanagement.dto.StockEventCancellationLineErrorDto;
 import org.openlmis.stockmanagement.exception.StockEventCancellationException;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.repository.PhysicalInventoriesRepository;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.StockEventLineItemRepository;
 
 @SuppressWarnings("PMD.TooManyMethods")
@@ -63,7 +62,7 @@ public class StockEventCancelValidationServiceTest {
   private PhysicalInventoriesRepository physicalInventoriesRepository;
 
   @Mock
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   @InjectMocks
   private StockEventCancelValidationService service;
@@ -167,7 +166,7 @@ public class StockEventCancelValidationServiceTest {
     StockEvent event = eventWith(lineItem);
     when(stockEventLineItemRepository.findByReversesEventLineItemIdIn(anyCollection()))
         .thenReturn(emptyList());
-    when(reasonRepository.findByIdIn(anyCollection()))
+    when(reasonCatalog.findByIdIn(anyCollection()))
         .thenReturn(singletonList(cancelReason(reasonId)));
 
     StockEventCancellationLineErrorDto error =
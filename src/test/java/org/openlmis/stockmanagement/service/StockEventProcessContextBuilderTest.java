@@ -15,10 +15,15 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.util.ArrayList;
 import java.util.UUID;
 import org.junit.Before;
@@ -32,6 +37,7 @@ import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
 import org.openlmis.stockmanagement.dto.referencedata.UserDto;
+import org.openlmis.stockmanagement.service.StockEventProcessContextBuilder.LoadMode;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
@@ -45,7 +51,9 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(SecurityContextHolder.class)
@@ -105,6 +113,69 @@ public class StockEventProcessContextBuilderTest {
     testBuildContext(stockEventDto);
   }
 
+  @Test
+  public void shouldLoadResourcesBeforeValidationInEagerParallelMode() {
+    PrefetchExecutor prefetchExecutor = useEagerParallelMode();
+    StockEventDto stockEventDto = StockEventDtoDataBuilder.createStockEventDto();
+    ProgramDto programDto = new ProgramDto();
+    FacilityDto facilityDto = new FacilityDto();
+
+    when(authenticationHelper.getCurrentUser()).thenReturn(userDto);
+    when(programService.findOne(stockEventDto.getProgramId())).thenReturn(programDto);
+    when(facilityService.findOne(stockEventDto.getFacilityId())).thenReturn(facilityDto);
+
+    try {
+      final StockEventProcessContext context = contextBuilder.buildContext(stockEventDto);
+
+      verify(programService).findOne(stockEventDto.getProgramId());
+      verify(facilityService).findOne(stockEventDto.getFacilityId());
+      verify(authenticationHelper).getCurrentUser();
+      assertThat(context.getResourceLoadTimes().keySet(),
+          hasItems("USER", "PROGRAM", "FACILITY", "ORDERABLES", "LOTS", "STOCK_CARDS"));
+      assertThat(context.getProgram(), is(programDto));
+      assertThat(context.getFacility(), is(facilityDto));
+      verify(programService, times(1)).findOne(stockEventDto.getProgramId());
+    } finally {
+      prefetchExecutor.stop();
+    }
+  }
+
+  @Test
+  public void shouldLeaveFailedResourceToValidatorInEagerParallelMode() {
+    PrefetchExecutor prefetchExecutor = useEagerParallelMode();
+    StockEventDto stockEventDto = StockEventDtoDataBuilder.createStockEventDto();
+    IllegalStateException exception = new IllegalStateException("referencedata unavailable");
+
+    when(authenticationHelper.getCurrentUser()).thenReturn(userDto);
+    when(programService.findOne(stockEventDto.getProgramId())).thenThrow(exception);
+
+    try {
+      StockEventProcessContext context = contextBuilder.buildContext(stockEventDto);
+
+      try {
+        context.getProgram();
+        fail("exception expected");
+      } catch (IllegalStateException ex) {
+        assertThat(ex, is(exception));
+      }
+    } finally {
+      prefetchExecutor.stop();
+    }
+  }
+
+  private PrefetchExecutor useEagerParallelMode() {
+    PrefetchExecutor prefetchExecutor = new PrefetchExecutor(new SimpleMeterRegistry(), 4, 10);
+    prefetchExecutor.start();
+    // prefetch tasks restore the security context of their thread when they are done
+    PowerMockito.when(SecurityContextHolder.createEmptyContext())
+        .thenReturn(new SecurityContextImpl());
+
+    ReflectionTestUtils.setField(contextBuilder, "prefetchExecutor", prefetchExecutor);
+    ReflectionTestUtils.setField(contextBuilder, "loadMode", LoadMode.EAGER_PARALLEL);
+
+    return prefetchExecutor;
+  }
+
   private void testBuildContext(StockEventDto stockEventDto) {
     //given
     UUID lotId = UUID.randomUUID();
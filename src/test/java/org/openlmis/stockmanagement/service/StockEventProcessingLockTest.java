@@ -0,0 +1,228 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.dto.StockEventDto;
+import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
+import org.openlmis.stockmanagement.service.StockEventProcessingLock.LockMode;
+import org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StockEventProcessingLockTest {
+
+  private static final String FACILITY_PROGRAM_LOCK = "SELECT pg_advisory_xact_lock(hashtext(?))";
+  private static final String SHARED_LOCK = "SELECT pg_advisory_xact_lock_shared(hashtext(?))";
+  private static final String CARD_LOCK = "SELECT pg_advisory_xact_lock(hashtext(?), ?)";
+  private static final String LOCK_MODE = "lockMode";
+
+  @Mock
+  private EntityManager entityManager;
+
+  @Mock
+  private Session session;
+
+  @Mock
+  private Connection connection;
+
+  @Mock
+  private PreparedStatement statement;
+
+  @Spy
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @InjectMocks
+  private StockEventProcessingLock processingLock;
+
+  @Before
+  public void setUp() throws Exception {
+    when(entityManager.unwrap(Session.class)).thenReturn(session);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    doAnswer(invocation -> {
+      ((Work) invocation.getArguments()[0]).execute(connection);
+      return null;
+    }).when(session).doWork(any(Work.class));
+  }
+
+  @Test
+  public void shouldLockFacilityAndProgramInFacilityProgramMode() throws Exception {
+    ReflectionTestUtils.setField(processingLock, LOCK_MODE, LockMode.FACILITY_PROGRAM);
+    StockEventDto event = StockEventDtoDataBuilder.createStockEventDto();
+
+    processingLock.acquire(event);
+
+    verify(connection).prepareStatement(FACILITY_PROGRAM_LOCK);
+    verify(connection, never()).prepareStatement(CARD_LOCK);
+    verify(statement).setString(1, event.getFacilityId() + ":" + event.getProgramId());
+    assertEquals(1, meterRegistry.get(StockEventProcessingLock.LOCK_WAIT_METRIC)
+        .tag("facilityId", event.getFacilityId().toString())
+        .timer()
+        .count());
+  }
+
+  @Test
+  public void shouldLockTouchedCardsInAscendingOrderInStockCardMode() throws Exception {
+    ReflectionTestUtils.setField(processingLock, LOCK_MODE, LockMode.STOCK_CARD);
+    StockEventDto event = StockEventDtoDataBuilder.createStockEventDto();
+    StockEventLineItemDto second = StockEventDtoDataBuilder.createStockEventLineItem();
+    StockEventLineItemDto duplicate = StockEventDtoDataBuilder.createStockEventLineItem();
+    duplicate.setOrderableId(second.getOrderableId());
+    List<StockEventLineItemDto> lineItems = new ArrayList<>(event.getLineItems());
+    lineItems.addAll(Arrays.asList(second, duplicate));
+    event.setLineItems(lineItems);
+
+    processingLock.acquire(event);
+
+    List<Integer> keys = new ArrayList<>(StockEventProcessingLock.getStockCardKeys(event));
+    assertEquals(2, keys.size());
+
+    InOrder order = inOrder(connection, statement);
+    order.verify(connection).prepareStatement(SHARED_LOCK);
+    order.verify(connection).prepareStatement(CARD_LOCK);
+    order.verify(statement).setInt(2, keys.get(0));
+    order.verify(statement).setInt(2, keys.get(1));
+    verify(connection, never()).prepareStatement(FACILITY_PROGRAM_LOCK);
+    verify(statement, times(3)).execute();
+  }
+
+  @Test
+  public void shouldLockFacilityAndProgramForPhysicalInventoryInStockCardMode()
+      throws Exception {
+    ReflectionTestUtils.setField(processingLock, LOCK_MODE, LockMode.STOCK_CARD);
+    StockEventDto event = StockEventDtoDataBuilder.createNoSourceDestinationStockEventDto();
+    event.getLineItems().forEach(lineItem -> lineItem.setReasonId(null));
+
+    processingLock.acquire(event);
+
+    verify(connection).prepareStatement(FACILITY_PROGRAM_LOCK);
+    verify(statement, never()).setInt(anyInt(), anyInt());
+  }
+
+  @Test
+  public void shouldLockFacilityAndProgramExclusively() throws Exception {
+    UUID facilityId = UUID.randomUUID();
+    UUID programId = UUID.randomUUID();
+
+    processingLock.acquire(facilityId, programId);
+
+    verify(connection).prepareStatement(FACILITY_PROGRAM_LOCK);
+    verify(connection, never()).prepareStatement(SHARED_LOCK);
+    verify(statement).setString(1, facilityId + ":" + programId);
+  }
+
+  @Test
+  public void shouldLockCardsOfAllEventsOfBatchInAscendingOrderInStockCardMode()
+      throws Exception {
+    ReflectionTestUtils.setField(processingLock, LOCK_MODE, LockMode.STOCK_CARD);
+    StockEventDto first = StockEventDtoDataBuilder.createStockEventDto();
+    StockEventDto second = StockEventDtoDataBuilder.createStockEventDto();
+    second.setFacilityId(first.getFacilityId());
+    second.setProgramId(first.getProgramId());
+
+    List<Integer> keys = new ArrayList<>(StockEventProcessingLock.getStockCardKeys(first));
+    keys.addAll(StockEventProcessingLock.getStockCardKeys(second));
+    keys.sort(null);
+
+    processingLock.acquireAll(Arrays.asList(first, second));
+
+    InOrder order = inOrder(connection, statement);
+    order.verify(connection).prepareStatement(SHARED_LOCK);
+    order.verify(connection).prepareStatement(CARD_LOCK);
+    order.verify(statement).setInt(2, keys.get(0));
+    order.verify(statement).setInt(2, keys.get(1));
+    verify(connection, never()).prepareStatement(FACILITY_PROGRAM_LOCK);
+    verify(statement, times(3)).execute();
+  }
+
+  @Test
+  public void shouldLockFacilityAndProgramOfBatchWithPhysicalInventoryInStockCardMode()
+      throws Exception {
+    ReflectionTestUtils.setField(processingLock, LOCK_MODE, LockMode.STOCK_CARD);
+    StockEventDto adjustment = StockEventDtoDataBuilder.createStockEventDto();
+    StockEventDto physicalInventory =
+        StockEventDtoDataBuilder.createNoSourceDestinationStockEventDto();
+    physicalInventory.getLineItems().forEach(lineItem -> lineItem.setReasonId(null));
+    physicalInventory.setFacilityId(adjustment.getFacilityId());
+    physicalInventory.setProgramId(adjustment.getProgramId());
+
+    processingLock.acquireAll(Arrays.asList(adjustment, physicalInventory));
+
+    verify(connection).prepareStatement(FACILITY_PROGRAM_LOCK);
+    verify(connection, never()).prepareStatement(SHARED_LOCK);
+    verify(statement, never()).setInt(anyInt(), anyInt());
+  }
+
+  @Test
+  public void shouldLockFacilitiesAndProgramsOfBatchInAscendingOrder() throws Exception {
+    ReflectionTestUtils.setField(processingLock, LOCK_MODE, LockMode.FACILITY_PROGRAM);
+    StockEventDto first = StockEventDtoDataBuilder.createStockEventDto();
+    StockEventDto second = StockEventDtoDataBuilder.createStockEventDto();
+    List<String> keys = new ArrayList<>(Arrays.asList(
+        first.getFacilityId() + ":" + first.getProgramId(),
+        second.getFacilityId() + ":" + second.getProgramId()));
+    keys.sort(null);
+
+    processingLock.acquireAll(Arrays.asList(second, first));
+
+    InOrder order = inOrder(statement);
+    order.verify(statement).setString(1, keys.get(0));
+    order.verify(statement).setString(1, keys.get(1));
+    verify(connection, times(2)).prepareStatement(FACILITY_PROGRAM_LOCK);
+    verify(statement, never()).setInt(anyInt(), anyInt());
+  }
+
+  @Test
+  public void shouldUseSameKeyForSameOrderableAndLot() {
+    UUID orderableId = UUID.randomUUID();
+    StockEventDto first = StockEventDtoDataBuilder.createStockEventDto();
+    first.getLineItems().get(0).setOrderableId(orderableId);
+    StockEventDto second = StockEventDtoDataBuilder.createStockEventDto();
+    second.getLineItems().get(0).setOrderableId(orderableId);
+
+    assertEquals(StockEventProcessingLock.getStockCardKeys(first),
+        StockEventProcessingLock.getStockCardKeys(second));
+  }
+}
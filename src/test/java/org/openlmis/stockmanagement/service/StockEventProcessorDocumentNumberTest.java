@@ -15,22 +15,33 @@
 
 package org.openlmis.stockmanagement.service;
 
+import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import javax.persistence.EntityManager;
-import org.hibernate.Session;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.card.StockCard;
 import org.openlmis.stockmanagement.domain.event.EventOrigin;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
 import org.openlmis.stockmanagement.dto.StockEventDto;
@@ -39,8 +50,12 @@ import org.openlmis.stockmanagement.extension.point.StockEventPostProcessor;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
 import org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder;
 import org.openlmis.stockmanagement.util.StockEventProcessContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 
-@SuppressWarnings("PMD.UnusedPrivateField")
+@SuppressWarnings({"PMD.UnusedPrivateField", "PMD.TooManyMethods"})
 @RunWith(MockitoJUnitRunner.class)
 public class StockEventProcessorDocumentNumberTest {
 
@@ -68,11 +83,20 @@ public class StockEventProcessorDocumentNumberTest {
   @Mock
   private DocumentNumberGenerator documentNumberGenerator;
 
+  @Mock
+  private StockEventProcessingLock processingLock;
+
   @Mock
   private EntityManager entityManager;
 
   @Mock
-  private Session session;
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private StockVersionService stockVersionService;
+
+  @Spy
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
   @InjectMocks
   private StockEventProcessor processor;
@@ -82,7 +106,6 @@ public class StockEventProcessorDocumentNumberTest {
 
   @Before
   public void setUp() {
-    when(entityManager.unwrap(Session.class)).thenReturn(session);
     when(contextBuilder.buildContext(any(StockEventDto.class))).thenReturn(context);
     when(context.getCurrentUserId()).thenReturn(UUID.randomUUID());
     when(extensionManager.getExtension(any(String.class), any()))
@@ -122,6 +145,23 @@ public class StockEventProcessorDocumentNumberTest {
     assertEquals("2026-05-FAC001-0002", eventDto.getDocumentNumber());
   }
 
+  @Test
+  public void assignsDocumentNumberReservedBeforeWriteTransaction() {
+    StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
+    eventDto.setEventOrigin(EventOrigin.ISSUE);
+    eventDto.setDocumentNumber(null);
+    when(documentNumberGenerator.reserve(eventDto.getFacilityId()))
+        .thenReturn(Optional.of("2026-05-FAC001-0011"));
+
+    processor.process(eventDto);
+
+    InOrder inOrder = inOrder(documentNumberGenerator, transactionManager);
+    inOrder.verify(documentNumberGenerator).reserve(eventDto.getFacilityId());
+    inOrder.verify(transactionManager).getTransaction(any(TransactionDefinition.class));
+    verify(documentNumberGenerator, never()).generate(any(UUID.class));
+    assertEquals("2026-05-FAC001-0011", eventDto.getDocumentNumber());
+  }
+
   @Test
   public void preservesCallerSuppliedDocumentNumberWhenEventOriginIsSet() {
     StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
@@ -145,4 +185,96 @@ public class StockEventProcessorDocumentNumberTest {
     verify(documentNumberGenerator, never()).generate(any(UUID.class));
     assertNull(eventDto.getDocumentNumber());
   }
+
+  @Test
+  public void flushesAndRecordsStatementCountOfEvent() {
+    StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
+
+    processor.process(eventDto);
+
+    verify(entityManager).flush();
+    assertEquals(1, meterRegistry.get(StockEventProcessor.STATEMENTS_METRIC)
+        .tag("physicalInventory", "false")
+        .summary().count());
+  }
+
+  @Test
+  public void countsProcessedEventAndItsLineItems() {
+    StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
+
+    processor.process(eventDto);
+
+    assertEquals(1, meterRegistry.get(StockEventProcessor.EVENTS_METRIC)
+        .tag("physicalInventory", "false")
+        .counter().count(), 0);
+    assertEquals(eventDto.getLineItems().size(),
+        meterRegistry.get(StockEventProcessor.LINE_ITEMS_METRIC).counter().count(), 0);
+  }
+
+  @Test
+  public void validatesAndResolvesFacilityCodeBeforeWriteTransaction() {
+    StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
+    eventDto.setEventOrigin(EventOrigin.ISSUE);
+    eventDto.setDocumentNumber(null);
+
+    processor.process(eventDto);
+
+    InOrder inOrder = inOrder(contextBuilder, stockEventValidationsService,
+        documentNumberGenerator, transactionManager, processingLock, stockEventsRepository,
+        stockEventNotificationProcessor, stockVersionService);
+    inOrder.verify(contextBuilder).buildContext(eventDto);
+    inOrder.verify(stockEventValidationsService).validate(eventDto);
+    inOrder.verify(documentNumberGenerator).reserve(eventDto.getFacilityId());
+    inOrder.verify(transactionManager).getTransaction(any(TransactionDefinition.class));
+    inOrder.verify(processingLock).acquire(eventDto);
+    inOrder.verify(stockEventsRepository).save(any(StockEvent.class));
+    inOrder.verify(stockEventNotificationProcessor).findStockedOutCards(eventDto);
+    inOrder.verify(stockVersionService)
+        .increment(eventDto.getFacilityId(), eventDto.getProgramId());
+    inOrder.verify(transactionManager).commit(any());
+    assertEquals(1, meterRegistry.get(StockEventProcessor.TRANSACTION_METRIC)
+        .tag("physicalInventory", "false")
+        .timer().count());
+  }
+
+  @Test
+  public void processesValidatedEventWithContextItWasValidatedWith() {
+    StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
+    eventDto.setContext(context);
+
+    processor.processValidated(eventDto);
+
+    verify(contextBuilder, never()).buildContext(any(StockEventDto.class));
+    verify(stockEventValidationsService, never()).validate(any(StockEventDto.class));
+    verify(processingLock).acquire(eventDto);
+    verify(stockCardService).saveFromEvent(eq(eventDto), any(UUID.class));
+  }
+
+  @Test
+  public void notifiesStockEditorsOnceTransactionCommitted() {
+    StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
+    List<StockCard> stockedOutCards = singletonList(new StockCard());
+    when(stockEventNotificationProcessor.findStockedOutCards(eventDto))
+        .thenReturn(stockedOutCards);
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      processor.process(eventDto);
+
+      verify(stockEventNotificationProcessor, never()).notifyStockEditors(stockedOutCards);
+      TransactionSynchronizationUtils.triggerAfterCommit();
+      verify(stockEventNotificationProcessor).notifyStockEditors(stockedOutCards);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void returnsSavedEventWhenNotificationsFail() {
+    StockEventDto eventDto = StockEventDtoDataBuilder.createStockEventDto();
+    doThrow(new IllegalStateException("notification unavailable"))
+        .when(stockEventNotificationProcessor).notifyStockEditors(any());
+
+    assertNotNull(processor.process(eventDto));
+  }
 }
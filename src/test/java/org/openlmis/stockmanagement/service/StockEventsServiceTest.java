@@ -16,42 +16,55 @@
 package org.openlmis.stockmanagement.service;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.time.Month;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.Optional;
 import java.util.UUID;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.event.EventOrigin;
 import org.openlmis.stockmanagement.domain.event.StockEvent;
-import org.openlmis.stockmanagement.dto.StockCardDto;
-import org.openlmis.stockmanagement.dto.StockCardLineItemDto;
+import org.openlmis.stockmanagement.domain.sourcedestination.Node;
 import org.openlmis.stockmanagement.dto.StockEventHistoryDto;
 import org.openlmis.stockmanagement.dto.StockEventLineDetailDto;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.UserDto;
 import org.openlmis.stockmanagement.exception.ResourceNotFoundException;
+import org.openlmis.stockmanagement.repository.CalculatedStockOnHandRepository;
 import org.openlmis.stockmanagement.repository.StockCardLineItemRepository;
 import org.openlmis.stockmanagement.repository.StockEventsRepository;
+import org.openlmis.stockmanagement.repository.custom.StockCardLineItemRow;
+import org.openlmis.stockmanagement.repository.custom.StockEventCardLineCount;
 import org.openlmis.stockmanagement.repository.custom.StockEventLineItemAggregate;
 import org.openlmis.stockmanagement.repository.custom.StockEventSearchParams;
+import org.openlmis.stockmanagement.repository.custom.StockOnHandAnchor;
+import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
+import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.UserReferenceDataService;
-import org.openlmis.stockmanagement.testutils.StockCardLineItemDataBuilder;
 import org.openlmis.stockmanagement.testutils.StockEventDataBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -66,6 +79,8 @@ public class StockEventsServiceTest {
   private static final String DOC_2 = "DOC-2";
   private static final String DOC_3 = "DOC-3";
   private static final String ALICE = "alice";
+  private static final String PRODUCT_CODE = "ABC";
+  private static final LocalDate OCCURRED = LocalDate.of(2026, Month.FEBRUARY, 10);
 
   @Mock
   private StockEventsRepository stockEventsRepository;
@@ -82,6 +97,21 @@ public class StockEventsServiceTest {
   @Mock
   private PermissionService permissionService;
 
+  @Spy
+  private StockCardLineItemService stockCardLineItemService;
+
+  @Mock
+  private CalculatedStockOnHandRepository calculatedStockOnHandRepository;
+
+  @Mock
+  private CancellationLinkResolver cancellationLinkResolver;
+
+  @Mock
+  private OrderableReferenceDataService orderableReferenceDataService;
+
+  @Mock
+  private LotReferenceDataService lotReferenceDataService;
+
   @InjectMocks
   private StockEventsService stockEventsService;
 
@@ -171,76 +201,90 @@ public class StockEventsServiceTest {
         .withFacility(facility).withProgram(program).withEventOrigin(EventOrigin.ISSUE).build();
     UUID eventId = event.getId();
     UUID cardId = randomUUID();
+    UUID orderableId = randomUUID();
 
     when(stockEventsRepository.findById(eventId)).thenReturn(Optional.of(event));
-    when(stockCardLineItemRepository.findStockCardIdsByOriginEvent(eventId))
-        .thenReturn(singletonList(cardId));
-
-    StockCardLineItemDto matching = StockCardLineItemDto.builder()
-        .lineItem(new StockCardLineItemDataBuilder()
-            .withQuantity(7).withStockOnHand(20).withDocumentNumber("DOC-MATCH").build())
-        .originEventId(eventId).build();
-    StockCardLineItemDto other = StockCardLineItemDto.builder()
-        .lineItem(new StockCardLineItemDataBuilder()
-            .withQuantity(99).withStockOnHand(99).withDocumentNumber("DOC-OTHER").build())
-        .originEventId(randomUUID()).build();
-    StockCardDto cardDto = StockCardDto.builder()
-        .orderable(OrderableDto.builder().productCode("ABC").build())
-        .lineItems(asList(matching, other)).build();
-    when(stockCardService.findStockCardsByIds(anyCollection()))
-        .thenReturn(singletonList(cardDto));
+    when(stockCardLineItemRepository.countLineItemsByStockCardForOriginEvent(eventId))
+        .thenReturn(singletonList(new StockEventCardLineCount(cardId, orderableId, null, 1L)));
+    mockOrderables(orderable(orderableId, PRODUCT_CODE));
+    when(stockCardLineItemRepository.findSameDayLineItemsOfOriginEvent(eventId,
+        singleton(cardId))).thenReturn(asList(
+            row(cardId, randomUUID(), 5, true, 1, "DOC-OTHER"),
+            row(cardId, eventId, 7, false, 2, "DOC-MATCH")));
+    when(calculatedStockOnHandRepository.findStockOnHandBefore(singleton(cardId), OCCURRED))
+        .thenReturn(singletonList(new StockOnHandAnchor(cardId, 15)));
 
     Page<StockEventLineDetailDto> result =
         stockEventsService.findStockEventLineItems(eventId, pageable);
 
+    assertThat(result.getTotalElements(), is(1L));
     assertThat(result.getContent(), hasSize(1));
 
     StockEventLineDetailDto detail = result.getContent().get(0);
 
     assertThat(detail.getQuantity(), is(7));
-    assertThat(detail.getStockOnHand(), is(20));
+    assertThat(detail.getStockOnHand(), is(13));
     assertThat(detail.getDocumentNumber(), is("DOC-MATCH"));
+    assertThat(detail.getOrderable().getProductCode(), is(PRODUCT_CODE));
     verify(permissionService).canViewStockCard(program, facility);
+    verify(stockCardLineItemService).populateStockOnHandLineItems(anyList(), eq(15));
+    verify(stockCardService).assignSourceDestinationReasonNames(anyList());
+    verify(cancellationLinkResolver).attachCancellationLinks(anyList());
+  }
+
+  @Test
+  public void findStockEventLineItemsShouldStartFromZeroWithoutCalculatedStockOnHand() {
+    StockEvent event = new StockEventDataBuilder()
+        .withFacility(randomUUID()).withProgram(randomUUID())
+        .withEventOrigin(EventOrigin.RECEIVE).build();
+    UUID eventId = event.getId();
+    UUID cardId = randomUUID();
+    UUID orderableId = randomUUID();
+
+    when(stockEventsRepository.findById(eventId)).thenReturn(Optional.of(event));
+    when(stockCardLineItemRepository.countLineItemsByStockCardForOriginEvent(eventId))
+        .thenReturn(singletonList(new StockEventCardLineCount(cardId, orderableId, null, 1L)));
+    mockOrderables(orderable(orderableId, PRODUCT_CODE));
+    when(stockCardLineItemRepository.findSameDayLineItemsOfOriginEvent(eventId,
+        singleton(cardId))).thenReturn(singletonList(row(cardId, eventId, 4, true, 1, DOC_1)));
+
+    Page<StockEventLineDetailDto> result =
+        stockEventsService.findStockEventLineItems(eventId, pageable);
+
+    assertThat(result.getContent().get(0).getStockOnHand(), is(4));
   }
 
   @Test
   public void findStockEventLineItemsShouldReturnLinesNewestFirst() {
-    UUID facility = randomUUID();
-    UUID program = randomUUID();
     StockEvent event = new StockEventDataBuilder()
-        .withFacility(facility).withProgram(program).withEventOrigin(EventOrigin.ISSUE).build();
+        .withFacility(randomUUID()).withProgram(randomUUID())
+        .withEventOrigin(EventOrigin.RECEIVE).build();
     UUID eventId = event.getId();
     UUID cardId = randomUUID();
+    UUID orderableId = randomUUID();
 
     when(stockEventsRepository.findById(eventId)).thenReturn(Optional.of(event));
-    when(stockCardLineItemRepository.findStockCardIdsByOriginEvent(eventId))
-        .thenReturn(singletonList(cardId));
-
-    // Provided in the canonical comparator order (as card.getLineItems() yields them); the
-    // service must present them reversed (newest-first) to match the stock card view and
-    // stockEvent.jrxml.
-    StockCardLineItemDto first = StockCardLineItemDto.builder()
-        .lineItem(new StockCardLineItemDataBuilder().withDocumentNumber(DOC_1).build())
-        .originEventId(eventId).build();
-    StockCardLineItemDto second = StockCardLineItemDto.builder()
-        .lineItem(new StockCardLineItemDataBuilder().withDocumentNumber(DOC_2).build())
-        .originEventId(eventId).build();
-    StockCardLineItemDto third = StockCardLineItemDto.builder()
-        .lineItem(new StockCardLineItemDataBuilder().withDocumentNumber(DOC_3).build())
-        .originEventId(eventId).build();
-    StockCardDto cardDto = StockCardDto.builder()
-        .orderable(OrderableDto.builder().productCode("ABC").build())
-        .lineItems(asList(first, second, third)).build();
-    when(stockCardService.findStockCardsByIds(anyCollection()))
-        .thenReturn(singletonList(cardDto));
+    when(stockCardLineItemRepository.countLineItemsByStockCardForOriginEvent(eventId))
+        .thenReturn(singletonList(new StockEventCardLineCount(cardId, orderableId, null, 3L)));
+    mockOrderables(orderable(orderableId, PRODUCT_CODE));
+    // Returned out of order on purpose; the service must sort them in the stock card order, then
+    // present them reversed (newest-first) to match the stock card view and stockEvent.jrxml.
+    when(stockCardLineItemRepository.findSameDayLineItemsOfOriginEvent(eventId,
+        singleton(cardId))).thenReturn(asList(
+            row(cardId, eventId, 1, true, 2, DOC_2),
+            row(cardId, eventId, 1, true, 3, DOC_3),
+            row(cardId, eventId, 1, true, 1, DOC_1)));
 
     Page<StockEventLineDetailDto> result =
         stockEventsService.findStockEventLineItems(eventId, pageable);
 
     assertThat(result.getContent(), hasSize(3));
     assertThat(result.getContent().get(0).getDocumentNumber(), is(DOC_3));
+    assertThat(result.getContent().get(0).getStockOnHand(), is(3));
     assertThat(result.getContent().get(1).getDocumentNumber(), is(DOC_2));
+    assertThat(result.getContent().get(1).getStockOnHand(), is(2));
     assertThat(result.getContent().get(2).getDocumentNumber(), is(DOC_1));
+    assertThat(result.getContent().get(2).getStockOnHand(), is(1));
   }
 
   @Test
@@ -249,16 +293,27 @@ public class StockEventsServiceTest {
         .withFacility(randomUUID()).withProgram(randomUUID())
         .withEventOrigin(EventOrigin.ISSUE).build();
     UUID eventId = event.getId();
+    UUID productA = randomUUID();
+    UUID productB = randomUUID();
+    UUID lot = randomUUID();
+    UUID productAnoLot = randomUUID();
+    UUID productALot = randomUUID();
+    UUID productBnoLot = randomUUID();
 
     when(stockEventsRepository.findById(eventId)).thenReturn(Optional.of(event));
-    when(stockCardLineItemRepository.findStockCardIdsByOriginEvent(eventId))
-        .thenReturn(asList(randomUUID(), randomUUID(), randomUUID()));
-
-    StockCardDto productAnoLot = cardWithLine("AAA", null, eventId, DOC_1);
-    StockCardDto productALotL2 = cardWithLine("AAA", "L2", eventId, DOC_2);
-    StockCardDto productB = cardWithLine("BBB", null, eventId, DOC_3);
-    when(stockCardService.findStockCardsByIds(anyCollection()))
-        .thenReturn(asList(productB, productALotL2, productAnoLot));
+    when(stockCardLineItemRepository.countLineItemsByStockCardForOriginEvent(eventId))
+        .thenReturn(asList(
+            new StockEventCardLineCount(productBnoLot, productB, null, 1L),
+            new StockEventCardLineCount(productALot, productA, lot, 1L),
+            new StockEventCardLineCount(productAnoLot, productA, null, 1L)));
+    mockOrderables(orderable(productA, "AAA"), orderable(productB, "BBB"));
+    when(lotReferenceDataService.findByIds(singleton(lot)))
+        .thenReturn(singletonList(LotDto.builder().id(lot).lotCode("L2").build()));
+    when(stockCardLineItemRepository.findSameDayLineItemsOfOriginEvent(eq(eventId),
+        anyCollection())).thenReturn(asList(
+            row(productBnoLot, eventId, 1, true, 1, DOC_3),
+            row(productALot, eventId, 1, true, 1, DOC_2),
+            row(productAnoLot, eventId, 1, true, 1, DOC_1)));
 
     Page<StockEventLineDetailDto> result =
         stockEventsService.findStockEventLineItems(eventId, pageable);
@@ -266,19 +321,82 @@ public class StockEventsServiceTest {
     assertThat(result.getContent(), hasSize(3));
     assertThat(result.getContent().get(0).getDocumentNumber(), is(DOC_1));
     assertThat(result.getContent().get(1).getDocumentNumber(), is(DOC_2));
+    assertThat(result.getContent().get(1).getLot().getLotCode(), is("L2"));
     assertThat(result.getContent().get(2).getDocumentNumber(), is(DOC_3));
   }
 
-  private StockCardDto cardWithLine(String productCode, String lotCode, UUID eventId,
-      String documentNumber) {
-    StockCardLineItemDto line = StockCardLineItemDto.builder()
-        .lineItem(new StockCardLineItemDataBuilder().withDocumentNumber(documentNumber).build())
-        .originEventId(eventId).build();
-    return StockCardDto.builder()
-        .id(randomUUID())
-        .orderable(OrderableDto.builder().productCode(productCode).build())
-        .lot(lotCode == null ? null : LotDto.builder().lotCode(lotCode).build())
-        .lineItems(singletonList(line)).build();
+  @Test
+  public void findStockEventLineItemsShouldLoadOnlyStockCardsOfRequestedPage() {
+    StockEvent event = new StockEventDataBuilder()
+        .withFacility(randomUUID()).withProgram(randomUUID())
+        .withEventOrigin(EventOrigin.RECEIVE).build();
+    UUID eventId = event.getId();
+    UUID productA = randomUUID();
+    UUID productB = randomUUID();
+    UUID cardA = randomUUID();
+    UUID cardB = randomUUID();
+
+    when(stockEventsRepository.findById(eventId)).thenReturn(Optional.of(event));
+    when(stockCardLineItemRepository.countLineItemsByStockCardForOriginEvent(eventId))
+        .thenReturn(asList(
+            new StockEventCardLineCount(cardB, productB, null, 3L),
+            new StockEventCardLineCount(cardA, productA, null, 2L)));
+    mockOrderables(orderable(productA, "AAA"), orderable(productB, "BBB"));
+    when(stockCardLineItemRepository.findSameDayLineItemsOfOriginEvent(eventId,
+        singleton(cardB))).thenReturn(asList(
+            row(cardB, eventId, 1, true, 1, DOC_1),
+            row(cardB, eventId, 1, true, 2, DOC_2),
+            row(cardB, eventId, 1, true, 3, DOC_3)));
+
+    Page<StockEventLineDetailDto> result =
+        stockEventsService.findStockEventLineItems(eventId, PageRequest.of(1, 2));
+
+    assertThat(result.getTotalElements(), is(5L));
+    assertThat(result.getContent(), hasSize(2));
+    assertThat(result.getContent().get(0).getDocumentNumber(), is(DOC_3));
+    assertThat(result.getContent().get(1).getDocumentNumber(), is(DOC_2));
+  }
+
+  @Test
+  public void findStockEventLineItemsShouldReturnEmptyPageBeyondLastLine() {
+    StockEvent event = new StockEventDataBuilder()
+        .withFacility(randomUUID()).withProgram(randomUUID())
+        .withEventOrigin(EventOrigin.RECEIVE).build();
+    UUID eventId = event.getId();
+    UUID orderableId = randomUUID();
+
+    when(stockEventsRepository.findById(eventId)).thenReturn(Optional.of(event));
+    when(stockCardLineItemRepository.countLineItemsByStockCardForOriginEvent(eventId))
+        .thenReturn(singletonList(
+            new StockEventCardLineCount(randomUUID(), orderableId, null, 2L)));
+    mockOrderables(orderable(orderableId, "AAA"));
+
+    Page<StockEventLineDetailDto> result =
+        stockEventsService.findStockEventLineItems(eventId, PageRequest.of(1, 10));
+
+    assertThat(result.getTotalElements(), is(2L));
+    assertThat(result.getContent(), hasSize(0));
+    verify(stockCardLineItemRepository, never())
+        .findSameDayLineItemsOfOriginEvent(any(UUID.class), anyCollection());
+  }
+
+  private void mockOrderables(OrderableDto... orderables) {
+    when(orderableReferenceDataService.findByIds(anySet())).thenReturn(asList(orderables));
+  }
+
+  private OrderableDto orderable(UUID id, String productCode) {
+    return OrderableDto.builder().id(id).productCode(productCode).build();
+  }
+
+  // A line item occurred on OCCURRED and processed processedHour hours into that day; a positive
+  // one comes from a source, the others go to a destination.
+  private StockCardLineItemRow row(UUID cardId, UUID originEventId, int quantity,
+      boolean positive, int processedHour, String documentNumber) {
+    Node node = new Node();
+    node.setId(randomUUID());
+    return new StockCardLineItemRow(randomUUID(), cardId, originEventId, randomUUID(), quantity,
+        OCCURRED, ZonedDateTime.of(OCCURRED, LocalTime.of(processedHour, 0), ZoneOffset.UTC),
+        documentNumber, null, positive ? node : null, positive ? null : node);
   }
 
   @Test(expected = ResourceNotFoundException.class)
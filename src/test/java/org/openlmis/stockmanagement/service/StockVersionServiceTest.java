@@ -0,0 +1,67 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.service;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+
+import java.util.Arrays;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.repository.StockVersionRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StockVersionServiceTest {
+
+  // UUID.compareTo orders the high bits as signed numbers, so it would put the "8..." facility
+  // first; the facility and program key orders it last.
+  private static final UUID LOW_FACILITY_ID =
+      UUID.fromString("0a000000-0000-0000-0000-000000000000");
+  private static final UUID HIGH_FACILITY_ID =
+      UUID.fromString("8a000000-0000-0000-0000-000000000000");
+
+  @Mock
+  private StockVersionRepository stockVersionRepository;
+
+  @InjectMocks
+  private StockVersionService stockVersionService;
+
+  private UUID programId = UUID.randomUUID();
+
+  @Test
+  public void shouldIncrementVersionsOnceInFacilityProgramKeyOrder() {
+    stockVersionService.increment(Arrays.asList(
+        card(HIGH_FACILITY_ID), card(LOW_FACILITY_ID), card(HIGH_FACILITY_ID)));
+
+    InOrder order = inOrder(stockVersionRepository);
+    order.verify(stockVersionRepository).increment(LOW_FACILITY_ID, programId);
+    order.verify(stockVersionRepository, times(1)).increment(HIGH_FACILITY_ID, programId);
+    order.verifyNoMoreInteractions();
+  }
+
+  private StockCard card(UUID facilityId) {
+    return StockCard.builder()
+        .facilityId(facilityId)
+        .programId(programId)
+        .build();
+  }
+}
@@ -20,6 +20,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
@@ -96,6 +98,28 @@ public class BaseNotifierTest {
     assertEquals(ORDERABLE_NAME, baseNotifier.getOrderableName(orderableId));
   }
 
+  @Test
+  public void getProgramNamesShouldGetNamesFromIdsInBulk() {
+    when(program.getId()).thenReturn(programId);
+    when(programReferenceDataService.findByIds(Collections.singleton(programId)))
+        .thenReturn(Collections.singletonList(program));
+
+    Map<UUID, String> names = baseNotifier.getProgramNames(Collections.singleton(programId));
+
+    assertEquals(Collections.singletonMap(programId, PROGRAM_NAME), names);
+  }
+
+  @Test
+  public void getOrderableNamesShouldGetNamesFromIdsInBulk() {
+    when(orderable.getId()).thenReturn(orderableId);
+    when(orderableReferenceDataService.findByIds(Collections.singleton(orderableId)))
+        .thenReturn(Collections.singletonList(orderable));
+
+    Map<UUID, String> names = baseNotifier.getOrderableNames(Collections.singleton(orderableId));
+
+    assertEquals(Collections.singletonMap(orderableId, ORDERABLE_NAME), names);
+  }
+
   @Test
   public void getUrlToViewBinCardShouldGetUrlFromCard() {
     String urlToViewBinCard = MessageFormat.format(URL_TO_VIEW_BIN_CARD, stockCardId);
@@ -15,13 +15,21 @@
 
 package org.openlmis.stockmanagement.service.notifier;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
-import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.eq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.NOTIFICATION_NEAR_EXPIRY_CONTENT;
+import static org.openlmis.stockmanagement.i18n.MessageKeys.NOTIFICATION_NEAR_EXPIRY_ITEM;
 import static org.openlmis.stockmanagement.i18n.MessageKeys.NOTIFICATION_NEAR_EXPIRY_SUBJECT;
 import static org.openlmis.stockmanagement.service.PermissionService.STOCK_INVENTORIES_EDIT;
 import static org.openlmis.stockmanagement.service.notifier.BaseNotifierTest.FACILITY_NAME;
@@ -30,33 +38,50 @@ import static org.openlmis.stockmanagement.service.notifier.BaseNotifierTest.ORD
 import static org.openlmis.stockmanagement.service.notifier.BaseNotifierTest.PROGRAM_NAME;
 import static org.openlmis.stockmanagement.service.notifier.BaseNotifierTest.URL_TO_VIEW_BIN_CARD;
 
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Map;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.openlmis.stockmanagement.domain.card.StockCard;
+import org.openlmis.stockmanagement.domain.notification.NearExpiryNotificationRun;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.RightDto;
+import org.openlmis.stockmanagement.dto.referencedata.UserDto;
 import org.openlmis.stockmanagement.i18n.MessageService;
-import org.openlmis.stockmanagement.repository.StockCardRepository;
+import org.openlmis.stockmanagement.repository.CurrentStockOnHandRepository;
+import org.openlmis.stockmanagement.repository.NearExpiryNotificationRunRepository;
+import org.openlmis.stockmanagement.repository.custom.NearExpiryStockCard;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.RightReferenceDataService;
 import org.openlmis.stockmanagement.util.Message;
-import org.openlmis.stockmanagement.util.Message.LocalizedMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.test.util.ReflectionTestUtils;
 
+@SuppressWarnings("PMD.TooManyMethods")
 @RunWith(MockitoJUnitRunner.class)
 public class NearExpiryNotifierTest {
 
-  private static final String TEST_DATE = "2019-01-01";
-  
+  private static final LocalDate EXPIRATION_DATE = LocalDate.parse("2019-07-01");
+  private static final String SUBJECT = "Near expiry at ${facilityName}";
+  private static final String CONTENT = "Dear ${username}:\n${nearExpiryItems}";
+  private static final String ITEM =
+      "${orderableName}|${lotCode}|${programName}|${stockOnHand}|${expirationDate}"
+          + "|${urlToViewBinCard}";
+
   @Mock
   private LotReferenceDataService lotReferenceDataService;
 
@@ -67,115 +92,218 @@ public class NearExpiryNotifierTest {
   private MessageService messageService;
 
   @Mock
-  private StockCardRepository stockCardRepository;
+  private CurrentStockOnHandRepository currentStockOnHandRepository;
 
   @Mock
-  private StockCardNotifier stockCardNotifier;
+  private NearExpiryNotificationRunRepository notificationRunRepository;
 
   @Mock
-  private RightDto mockRight;
-
-  @Mock
-  private StockCard testStockCard;
+  private StockCardNotifier stockCardNotifier;
 
   @Mock
-  private LotDto expiringLot;
+  private RightDto right;
 
   @InjectMocks
   private NearExpiryNotifier nearExpiryNotifier;
-  
-  private UUID expiringLotId = UUID.randomUUID();
+
   private UUID rightId = UUID.randomUUID();
-  
+  private UUID facilityId = UUID.randomUUID();
+  private UUID programId = UUID.randomUUID();
+  private UUID orderableId = UUID.randomUUID();
+  private LotDto expiringLot = new LotDto();
+  private UserDto editor = new UserDto();
+
   @Before
   public void setUp() {
-    when(lotReferenceDataService.getAllLotsExpiringOn(any(LocalDate.class)))
+    ReflectionTestUtils.setField(nearExpiryNotifier, "clock",
+        Clock.fixed(Instant.parse("2019-01-01T00:00:00Z"), ZoneOffset.UTC));
+    ReflectionTestUtils.setField(nearExpiryNotifier, "catchUpDays", 7);
+    ReflectionTestUtils.setField(nearExpiryNotifier, "pageSize", 10);
+
+    expiringLot.setId(UUID.randomUUID());
+    expiringLot.setLotCode(LOT_CODE);
+    expiringLot.setExpirationDate(EXPIRATION_DATE);
+
+    editor.setId(UUID.randomUUID());
+    editor.setUsername("editor");
+    editor.setHomeFacilityId(facilityId);
+
+    lenient().when(notificationRunRepository.findFirstByOrderByExpirationDateDesc())
+        .thenReturn(Optional.empty());
+    lenient().when(lotReferenceDataService.getAllLotsExpiringOn(EXPIRATION_DATE))
         .thenReturn(Collections.singletonList(expiringLot));
-    when(rightReferenceDataService.findRight(STOCK_INVENTORIES_EDIT))
-        .thenReturn(mockRight);
-    when(mockRight.getId()).thenReturn(rightId);
-    when(stockCardRepository.findByLotIdIn(Collections.singleton(expiringLotId)))
-        .thenReturn(Collections.singletonList(testStockCard));
-    when(testStockCard.getId()).thenReturn(UUID.randomUUID());
-    when(testStockCard.getFacilityId()).thenReturn(UUID.randomUUID());
-    when(testStockCard.getProgramId()).thenReturn(UUID.randomUUID());
-    when(testStockCard.getOrderableId()).thenReturn(UUID.randomUUID());
-    when(testStockCard.getLotId()).thenReturn(expiringLotId);
-
-    when(stockCardNotifier.getFacilityName(any(UUID.class))).thenReturn(FACILITY_NAME);
-    when(stockCardNotifier.getProgramName(any(UUID.class))).thenReturn(PROGRAM_NAME);
-    when(stockCardNotifier.getOrderableName(any(UUID.class))).thenReturn(ORDERABLE_NAME);
-    when(stockCardNotifier.getDateFormatter()).thenReturn(DateTimeFormatter.ISO_LOCAL_DATE);
-    when(stockCardNotifier.getUrlToViewBinCard(any(UUID.class))).thenReturn(URL_TO_VIEW_BIN_CARD);
-
-    ReflectionTestUtils.setField(nearExpiryNotifier, "timeZoneId", "UTC");
-    ReflectionTestUtils.setField(nearExpiryNotifier, "expiringLotMap",
-        Collections.singletonMap(expiringLotId, expiringLot));
-    when(expiringLot.getId()).thenReturn(expiringLotId);
-    when(expiringLot.getLotCode()).thenReturn(LOT_CODE);
-    ReflectionTestUtils.setField(nearExpiryNotifier, "expirationDate", LocalDate.parse(TEST_DATE));
-
-    Message stockoutSubjectMessage = new Message(NOTIFICATION_NEAR_EXPIRY_SUBJECT);
-    LocalizedMessage stockoutSubjectLocalizedMessage =
-        stockoutSubjectMessage.new LocalizedMessage("Near expiry subject");
-    when(messageService.localize(stockoutSubjectMessage))
-        .thenReturn(stockoutSubjectLocalizedMessage);
-
-    Message stockoutContentMessage = new Message(NOTIFICATION_NEAR_EXPIRY_CONTENT);
-    LocalizedMessage stockoutContentLocalizedMessage =
-        stockoutSubjectMessage.new LocalizedMessage("Near expiry content");
-    when(messageService.localize(stockoutContentMessage))
-        .thenReturn(stockoutContentLocalizedMessage);
+    lenient().when(rightReferenceDataService.findRight(STOCK_INVENTORIES_EDIT))
+        .thenReturn(right);
+    lenient().when(right.getId()).thenReturn(rightId);
+
+    lenient().when(stockCardNotifier.getEditors(programId, facilityId, rightId))
+        .thenReturn(Collections.singletonList(editor));
+    lenient().when(stockCardNotifier.getDateFormatter())
+        .thenReturn(DateTimeFormatter.ISO_LOCAL_DATE);
+    lenient().when(stockCardNotifier.getFacilityName(any(UUID.class)))
+        .thenReturn(FACILITY_NAME);
+    lenient().when(stockCardNotifier.getProgramNames(anyCollection()))
+        .thenReturn(Collections.singletonMap(programId, PROGRAM_NAME));
+    lenient().when(stockCardNotifier.getOrderableNames(anyCollection()))
+        .thenReturn(Collections.singletonMap(orderableId, ORDERABLE_NAME));
+    lenient().when(stockCardNotifier.getUrlToViewBinCard(any(UUID.class)))
+        .thenReturn(URL_TO_VIEW_BIN_CARD);
+
+    mockMessage(NOTIFICATION_NEAR_EXPIRY_SUBJECT, SUBJECT);
+    mockMessage(NOTIFICATION_NEAR_EXPIRY_CONTENT, CONTENT);
+    mockMessage(NOTIFICATION_NEAR_EXPIRY_ITEM, ITEM);
   }
-  
+
   @Test
-  public void checkNearExpiryAndNotifyShouldNotifyIfExpiringStockFound() {
+  public void shouldSendOneDigestPerFacilityAndRecipient() {
+    // given
+    mockCards(mockCard(facilityId, 10), mockCard(facilityId, 5));
+
+    UserDto otherFacilityEditor = new UserDto();
+    otherFacilityEditor.setId(UUID.randomUUID());
+    otherFacilityEditor.setHomeFacilityId(UUID.randomUUID());
+    when(stockCardNotifier.getEditors(programId, facilityId, rightId))
+        .thenReturn(Arrays.asList(editor, otherFacilityEditor));
+
     // when
     nearExpiryNotifier.checkNearExpiryAndNotify();
-    
+
     // then
-    verify(stockCardNotifier).notifyStockEditors(any(StockCard.class), eq(rightId),
-        any(NotificationMessageParams.class));
+    ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+    verify(stockCardNotifier).notify(eq(editor), eq("Near expiry at " + FACILITY_NAME),
+        content.capture());
+    verify(stockCardNotifier, never()).notify(eq(otherFacilityEditor), anyString(), anyString());
+    assertEquals("Dear editor:\n"
+        + itemOf(10) + "\n"
+        + itemOf(5), content.getValue());
+    verify(stockCardNotifier).getProgramNames(Collections.singleton(programId));
   }
-  
+
   @Test
-  public void checkNearExpiryAndNotifyShouldNotNotifyIfExpiringStockNotFound() {
+  public void shouldSendSeparateDigestsForEachFacility() {
     // given
-    when(stockCardRepository.findByLotIdIn(Collections.singleton(expiringLotId)))
-        .thenReturn(Collections.emptyList());
+    UUID otherFacilityId = UUID.randomUUID();
+    UserDto otherEditor = new UserDto();
+    otherEditor.setId(UUID.randomUUID());
+    otherEditor.setHomeFacilityId(otherFacilityId);
+    when(stockCardNotifier.getEditors(programId, otherFacilityId, rightId))
+        .thenReturn(Collections.singletonList(otherEditor));
+
+    mockCards(mockCard(facilityId, 10), mockCard(otherFacilityId, 5));
 
     // when
     nearExpiryNotifier.checkNearExpiryAndNotify();
-    
+
     // then
-    verify(stockCardNotifier, times(0)).notifyStockEditors(
-        any(StockCard.class), eq(rightId), any(NotificationMessageParams.class));
+    verify(stockCardNotifier).notify(eq(editor), anyString(), anyString());
+    verify(stockCardNotifier).notify(eq(otherEditor), anyString(), anyString());
   }
-  
+
   @Test
-  public void constructSubstitutionMapShouldConstructSubstitutionMap() {
+  public void shouldNotifyOtherFacilitiesIfOneHasNoSupervisoryNode() {
+    // given
+    UUID otherFacilityId = UUID.randomUUID();
+    when(stockCardNotifier.getEditors(programId, otherFacilityId, rightId))
+        .thenThrow(new IllegalArgumentException("There is no supervisory node"));
+
+    mockCards(mockCard(otherFacilityId, 5), mockCard(facilityId, 10));
+
     // when
-    Map<String, String> valuesMap = nearExpiryNotifier.constructSubstitutionMap(testStockCard);
+    nearExpiryNotifier.checkNearExpiryAndNotify();
 
     // then
-    assertEquals(FACILITY_NAME, valuesMap.get("facilityName"));
-    assertEquals(PROGRAM_NAME, valuesMap.get("programName"));
-    assertEquals(ORDERABLE_NAME, valuesMap.get("orderableName"));
-    assertEquals(LOT_CODE, valuesMap.get("lotCode"));
-    assertEquals(TEST_DATE, valuesMap.get("expirationDate"));
-    assertEquals(URL_TO_VIEW_BIN_CARD, valuesMap.get("urlToViewBinCard"));
+    verify(stockCardNotifier, times(1)).notify(any(UserDto.class), anyString(), anyString());
+    verify(stockCardNotifier).notify(eq(editor), anyString(), anyString());
   }
-  
+
   @Test
-  public void constructSubstitutionMapShouldReturnEmptyLotCodeForNoLot() {
+  public void shouldNotNotifyIfExpiringStockNotFound() {
     // given
-    ReflectionTestUtils.setField(nearExpiryNotifier, "expiringLotMap",
-        Collections.singletonMap(expiringLotId, null));
-    
+    mockCards();
+
     // when
-    Map<String, String> valuesMap = nearExpiryNotifier.constructSubstitutionMap(testStockCard);
+    nearExpiryNotifier.checkNearExpiryAndNotify();
 
     // then
-    assertEquals("", valuesMap.get("lotCode"));
+    verify(stockCardNotifier, never()).notify(any(UserDto.class), anyString(), anyString());
+    verify(notificationRunRepository).save(any(NearExpiryNotificationRun.class));
+  }
+
+  @Test
+  public void shouldNotLookForStockCardsIfNoLotsExpire() {
+    // given
+    when(lotReferenceDataService.getAllLotsExpiringOn(EXPIRATION_DATE))
+        .thenReturn(Collections.emptyList());
+
+    // when
+    nearExpiryNotifier.checkNearExpiryAndNotify();
+
+    // then
+    verify(currentStockOnHandRepository, never())
+        .findInStockCardsOfLots(anyCollection(), any(Pageable.class));
+    verify(notificationRunRepository).save(any(NearExpiryNotificationRun.class));
+  }
+
+  @Test
+  public void shouldCheckOnlyTodaysExpirationDateOnFirstRun() {
+    assertEquals(Collections.singletonList(EXPIRATION_DATE),
+        nearExpiryNotifier.getExpirationDatesToCheck(EXPIRATION_DATE));
+  }
+
+  @Test
+  public void shouldCatchUpOnExpirationDatesMissedSinceLastRun() {
+    mockLastRun(EXPIRATION_DATE.minusDays(3));
+
+    assertEquals(
+        Arrays.asList(EXPIRATION_DATE.minusDays(2), EXPIRATION_DATE.minusDays(1), EXPIRATION_DATE),
+        nearExpiryNotifier.getExpirationDatesToCheck(EXPIRATION_DATE));
+  }
+
+  @Test
+  public void shouldCatchUpAtMostCatchUpDays() {
+    mockLastRun(EXPIRATION_DATE.minusMonths(1));
+
+    List<LocalDate> dates = nearExpiryNotifier.getExpirationDatesToCheck(EXPIRATION_DATE);
+
+    assertEquals(8, dates.size());
+    assertEquals(EXPIRATION_DATE.minusDays(7), dates.get(0));
+  }
+
+  @Test
+  public void shouldNotCheckExpirationDatesTwice() {
+    mockLastRun(EXPIRATION_DATE);
+
+    assertThat(nearExpiryNotifier.getExpirationDatesToCheck(EXPIRATION_DATE), empty());
+    assertThat(nearExpiryNotifier.getExpirationDatesToCheck(EXPIRATION_DATE.plusDays(1)),
+        not(empty()));
+  }
+
+  private void mockMessage(String key, String text) {
+    Message message = new Message(key);
+    lenient().when(messageService.localize(message))
+        .thenReturn(message.new LocalizedMessage(text));
+  }
+
+  private void mockLastRun(LocalDate expirationDate) {
+    when(notificationRunRepository.findFirstByOrderByExpirationDateDesc())
+        .thenReturn(Optional.of(new NearExpiryNotificationRun(expirationDate,
+            ZonedDateTime.now(ZoneOffset.UTC))));
+  }
+
+  private NearExpiryStockCard mockCard(UUID facility, int stockOnHand) {
+    return new NearExpiryStockCard(UUID.randomUUID(), facility, programId, orderableId,
+        expiringLot.getId(), stockOnHand);
+  }
+
+  private void mockCards(NearExpiryStockCard... cards) {
+    when(currentStockOnHandRepository.findInStockCardsOfLots(
+        eq(Collections.singleton(expiringLot.getId())), any(Pageable.class)))
+        .thenAnswer(invocation -> new SliceImpl<>(Arrays.asList(cards),
+            invocation.getArgument(1), false));
+  }
+
+  private String itemOf(int stockOnHand) {
+    return String.join("|", ORDERABLE_NAME, LOT_CODE, PROGRAM_NAME,
+        String.valueOf(stockOnHand), EXPIRATION_DATE.toString(), URL_TO_VIEW_BIN_CARD);
   }
 }
@@ -24,6 +24,7 @@ import static org.powermock.api.mockito.PowerMockito.when;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.net.URI;
 import java.util.Collections;
 import java.util.HashMap;
@@ -36,6 +37,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableFulfillDto;
+import org.openlmis.stockmanagement.http.RemoteCallGuard;
+import org.openlmis.stockmanagement.http.SingleFlight;
 import org.openlmis.stockmanagement.service.AuthService;
 import org.openlmis.stockmanagement.testutils.OrderableFulfillDtoDataBuilder;
 import org.springframework.http.HttpEntity;
@@ -71,6 +74,10 @@ public class OrderableFulfillReferenceDataServiceTest {
     when(objectMapper.getTypeFactory()).thenReturn(factory);
     when(authService.obtainAccessToken()).thenReturn("token");
     ReflectionTestUtils.setField(service, "restTemplate", restTemplate);
+    ReflectionTestUtils.setField(service, "remoteCallGuard",
+        new RemoteCallGuard(new SimpleMeterRegistry(), 20, 10, 50, 30000, 20, 0));
+    ReflectionTestUtils.setField(service, "singleFlight",
+        new SingleFlight(new SimpleMeterRegistry()));
   }
 
   @Test
@@ -0,0 +1,100 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.stockmanagement.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.openlmis.stockmanagement.util.ProfilerMetrics.STAGE_METRIC;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.profiler.Profiler;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+public class ProfilerMetricsTest {
+
+  private static final String PROFILER = "PROCESS";
+  private static final String ENDPOINT = "endpoint";
+  private static final String STAGE = "stage";
+  private static final String VALIDATE = "VALIDATE";
+
+  private MeterRegistry registry = new SimpleMeterRegistry();
+
+  @After
+  public void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  public void shouldRecordTotalAndEveryStage() {
+    Profiler profiler = new Profiler(PROFILER);
+    profiler.start(VALIDATE);
+    profiler.start("SAVE");
+    profiler.stop();
+
+    ProfilerMetrics.record(profiler, registry);
+
+    assertEquals(1, stageTimer(ProfilerMetrics.TOTAL_STAGE).count());
+    assertEquals(1, stageTimer(VALIDATE).count());
+    assertEquals(1, stageTimer("SAVE").count());
+  }
+
+  @Test
+  public void shouldNameNestedStagesAfterTheirPath() {
+    Profiler profiler = new Profiler(PROFILER);
+    Profiler nested = profiler.startNested("SAVE_AND_GENERATE_LINE_ITEMS");
+    nested.start("SAVE_EVENT");
+    profiler.stop();
+
+    ProfilerMetrics.record(profiler, registry);
+
+    assertEquals(1, stageTimer("SAVE_AND_GENERATE_LINE_ITEMS").count());
+    assertEquals(1, stageTimer("SAVE_AND_GENERATE_LINE_ITEMS/SAVE_EVENT").count());
+  }
+
+  @Test
+  public void shouldTagStagesWithMatchedEndpointPattern() {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/stockEvents");
+    request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/stockEvents");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+    Profiler profiler = new Profiler(PROFILER);
+    profiler.start(VALIDATE);
+    profiler.stop();
+
+    ProfilerMetrics.record(profiler, registry);
+
+    assertNotNull(registry.find(STAGE_METRIC)
+        .tag(ENDPOINT, "POST /api/stockEvents")
+        .tag(STAGE, VALIDATE)
+        .timer());
+  }
+
+  private Timer stageTimer(String stage) {
+    return registry.get(STAGE_METRIC)
+        .tag(ENDPOINT, ProfilerMetrics.NO_ENDPOINT)
+        .tag("profiler", PROFILER)
+        .tag(STAGE, stage)
+        .timer();
+  }
+}
@@ -34,23 +34,23 @@ import org.openlmis.stockmanagement.domain.reason.ReasonCategory;
 import org.openlmis.stockmanagement.domain.reason.ReasonType;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReasonByNameDeferredLoaderTest {
   private static final List<String> TEST_OBJECT_KEYS = asList("TEST123", "TEST321", "TEST!@#");
   @Mock
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   @Test
   public void shouldLoadAllLotsAsSingleCall() {
-    when(reasonRepository.findByNameIn(anyCollection())).then(
+    when(reasonCatalog.findByNameIn(anyCollection())).then(
         invocation -> ((Collection<String>) invocation.getArgument(0)).stream().map(
             key -> StockCardLineItemReason.builder().reasonType(ReasonType.BALANCE_ADJUSTMENT)
                 .reasonCategory(ReasonCategory.ADJUSTMENT).name(key).build())
             .collect(Collectors.toList()));
 
-    final ReasonByNameDeferredLoader loader = new ReasonByNameDeferredLoader(reasonRepository);
+    final ReasonByNameDeferredLoader loader = new ReasonByNameDeferredLoader(reasonCatalog);
 
     for (String testKey : TEST_OBJECT_KEYS) {
       loader.deferredLoad(testKey);
@@ -58,12 +58,12 @@ public class ReasonByNameDeferredLoaderTest {
 
     loader.loadDeferredObjects();
 
-    verify(reasonRepository, only()).findByNameIn(anyCollection());
+    verify(reasonCatalog, only()).findByNameIn(anyCollection());
   }
 
   @Test
   public void shouldThrowExceptionIfLotNotFound() {
-    final ReasonByNameDeferredLoader loader = new ReasonByNameDeferredLoader(reasonRepository);
+    final ReasonByNameDeferredLoader loader = new ReasonByNameDeferredLoader(reasonCatalog);
 
     loader.deferredLoad(TEST_OBJECT_KEYS.get(0));
 
@@ -27,12 +27,12 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.reason.StockCardLineItemReason;
 import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.repository.NodeRepository;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
 import org.openlmis.stockmanagement.repository.StockCardRepository;
-import org.openlmis.stockmanagement.repository.ValidDestinationAssignmentRepository;
-import org.openlmis.stockmanagement.repository.ValidSourceAssignmentRepository;
 import org.openlmis.stockmanagement.service.CalculatedStockOnHandService;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.service.StockEventProcessContextBuilder;
+import org.openlmis.stockmanagement.service.ValidDestinationService;
+import org.openlmis.stockmanagement.service.ValidSourceService;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
@@ -58,7 +58,7 @@ public abstract class BaseValidatorTest {
   LotReferenceDataService lotReferenceDataService;
 
   @Mock
-  StockCardLineItemReasonRepository reasonRepository;
+  ReasonCatalog reasonCatalog;
 
   @Mock
   NodeRepository nodeRepository;
@@ -70,10 +70,10 @@ public abstract class BaseValidatorTest {
   CalculatedStockOnHandService calculatedStockOnHandService;
 
   @Mock
-  ValidSourceAssignmentRepository validSourceAssignmentRepository;
+  ValidSourceService validSourceService;
 
   @Mock
-  ValidDestinationAssignmentRepository validDestinationAssignmentRepository;
+  ValidDestinationService validDestinationService;
 
   @InjectMocks
   private StockEventProcessContextBuilder contextBuilder;
@@ -95,7 +95,7 @@ public abstract class BaseValidatorTest {
   }
 
   void setReasons(StockEventDto event, List<StockCardLineItemReason> reasons) {
-    lenient().when(reasonRepository.findByIdIn(event.getReasonIds()))
+    lenient().when(reasonCatalog.findByIdIn(event.getReasonIds()))
         .thenReturn(reasons);
   }
 
@@ -31,7 +31,6 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
-import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.reason.ValidReasonAssignment;
 import org.openlmis.stockmanagement.dto.StockEventAdjustmentDto;
@@ -40,7 +39,6 @@ import org.openlmis.stockmanagement.dto.StockEventLineItemDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityTypeDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.openlmis.stockmanagement.repository.ValidReasonAssignmentRepository;
 
 @RunWith(MockitoJUnitRunner.class)
 public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidatorTest {
@@ -48,9 +46,6 @@ public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidat
   @Rule
   public ExpectedException expectedException = none();
 
-  @Mock
-  private ValidReasonAssignmentRepository validReasonRepository;
-
   @InjectMocks
   private PhysicalInventoryAdjustmentReasonsValidator validator;
   private UUID reasonId = UUID.randomUUID();
@@ -66,7 +61,7 @@ public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidat
             generateLineItem(generateAdjustment(reasonId, 5))));
     setContext(stockEventDto);
 
-    when(validReasonRepository
+    when(reasonCatalog
         .findByProgramIdAndFacilityTypeIdAndReasonId(
             any(UUID.class), any(UUID.class), any(UUID.class)))
         .thenReturn(new ValidReasonAssignment());
@@ -89,7 +84,7 @@ public class PhysicalInventoryAdjustmentReasonsValidatorTest extends BaseValidat
 
     validator.validate(stockEventDto);
 
-    verify(validReasonRepository)
+    verify(reasonCatalog)
         .findByProgramIdAndFacilityTypeIdAndReasonId(
             stockEventDto.getProgramId(), facilityTypeId, reasonId);
   }
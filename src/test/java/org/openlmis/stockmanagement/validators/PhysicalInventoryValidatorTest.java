@@ -38,6 +38,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.domain.physicalinventory.PhysicalInventory;
+import org.openlmis.stockmanagement.dto.PhysicalInventoryDraftPatchDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryDto;
 import org.openlmis.stockmanagement.dto.PhysicalInventoryLineItemDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
@@ -136,6 +137,30 @@ public class PhysicalInventoryValidatorTest {
     validator.validateEmptyDraft(physicalInventoryDto);
   }
 
+  @Test
+  public void shouldPassDraftChangesWithOnlyRemovedLineItems() {
+    UUID id = randomUUID();
+    PhysicalInventoryLineItemDto removed = new PhysicalInventoryLineItemDto();
+    removed.setOrderableId(randomUUID());
+
+    validator.validateDraftChanges(new PhysicalInventoryDraftPatchDto(
+        id, 1L, null, Collections.singletonList(removed)), id);
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void shouldRejectDraftChangesWithoutVersion() {
+    UUID id = randomUUID();
+
+    validator.validateDraftChanges(new PhysicalInventoryDraftPatchDto(
+        id, null, newInventory().getLineItems(), null), id);
+  }
+
+  @Test(expected = ValidationMessageException.class)
+  public void shouldRejectDraftChangesWhenIdMismatch() {
+    validator.validateDraftChanges(new PhysicalInventoryDraftPatchDto(
+        randomUUID(), 1L, newInventory().getLineItems(), null), randomUUID());
+  }
+
   private void testValidateBasedOnIfExistingIsDraft(boolean isDraft) {
     PhysicalInventoryDto inventory = newInventory();
     PhysicalInventory existingInventory = mock(PhysicalInventory.class);
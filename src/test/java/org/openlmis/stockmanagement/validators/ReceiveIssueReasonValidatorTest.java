@@ -106,7 +106,7 @@ public class ReceiveIssueReasonValidatorTest extends BaseValidatorTest  {
     stockEventDto.getLineItems().get(0).setReasonId(reasonId);
     setContext(stockEventDto);
 
-    when(reasonRepository.findByIdIn(singleton(reasonId)))
+    when(reasonCatalog.findByIdIn(singleton(reasonId)))
         .thenReturn(singletonList(creditAdhocReason));
 
     creditAdhocReason.setId(reasonId);
@@ -128,7 +128,7 @@ public class ReceiveIssueReasonValidatorTest extends BaseValidatorTest  {
     stockEventDto.getLineItems().get(0).setReasonId(reasonId);
     setContext(stockEventDto);
 
-    when(reasonRepository.findByIdIn(singleton(reasonId)))
+    when(reasonCatalog.findByIdIn(singleton(reasonId)))
         .thenReturn(singletonList(debitAdhocReason));
 
     debitAdhocReason.setId(reasonId);
@@ -192,7 +192,7 @@ public class ReceiveIssueReasonValidatorTest extends BaseValidatorTest  {
 
     setContext(stockEventDto);
 
-    when(reasonRepository.findByIdIn(singleton(reasonId)))
+    when(reasonCatalog.findByIdIn(singleton(reasonId)))
         .thenReturn(singletonList(mockedReason));
 
     //when
@@ -17,7 +17,6 @@ package org.openlmis.stockmanagement.validators;
 
 import static java.util.Collections.singletonList;
 import static org.hamcrest.core.StringContains.containsString;
-import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
@@ -43,7 +42,6 @@ import org.openlmis.stockmanagement.dto.StockEventDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityTypeDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
-import org.springframework.data.domain.Pageable;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SourceDestinationAssignmentValidatorTest extends BaseValidatorTest {
@@ -70,12 +68,12 @@ public class SourceDestinationAssignmentValidatorTest extends BaseValidatorTest
     when(validDestinationAssignment.getNode()).thenReturn(node);
     when(node.getId()).thenReturn(UUID.randomUUID());
 
-    lenient().when(validSourceAssignmentRepository
-        .findByProgramIdInAndFacilityTypeId(anyList(), any(UUID.class), any(Pageable.class)))
+    lenient().when(validSourceService
+        .findSourceAssignments(any(UUID.class), any(UUID.class)))
         .thenReturn(singletonList(validSourceAssignment));
 
-    when(validDestinationAssignmentRepository
-        .findByProgramIdInAndFacilityTypeId(anyList(), any(UUID.class), any(Pageable.class)))
+    when(validDestinationService
+        .findDestinationAssignments(any(UUID.class), any(UUID.class)))
         .thenReturn(singletonList(validDestinationAssignment));
   }
 
@@ -104,8 +102,8 @@ public class SourceDestinationAssignmentValidatorTest extends BaseValidatorTest
     eventDto.getLineItems().get(0).setSourceId(UUID.randomUUID());
     eventDto.getLineItems().get(0).setDestinationId(null);
 
-    when(validSourceAssignmentRepository
-        .findByProgramIdInAndFacilityTypeId(anyList(), any(UUID.class), any(Pageable.class)))
+    when(validSourceService
+        .findSourceAssignments(any(UUID.class), any(UUID.class)))
         .thenReturn(new ArrayList<>());
 
     expectedEx.expect(ValidationMessageException.class);
@@ -124,8 +122,8 @@ public class SourceDestinationAssignmentValidatorTest extends BaseValidatorTest
     eventDto.getLineItems().get(0).setDestinationId(UUID.randomUUID());
     eventDto.getLineItems().get(0).setSourceId(null);
 
-    when(validDestinationAssignmentRepository
-        .findByProgramIdInAndFacilityTypeId(anyList(), any(UUID.class), any(Pageable.class)))
+    when(validDestinationService
+        .findDestinationAssignments(any(UUID.class), any(UUID.class)))
         .thenReturn(new ArrayList<>());
 
     expectedEx.expect(ValidationMessageException.class);
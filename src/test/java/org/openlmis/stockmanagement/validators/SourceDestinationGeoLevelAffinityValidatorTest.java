@@ -15,16 +15,16 @@
 
 package org.openlmis.stockmanagement.validators;
 
-import static java.util.Arrays.asList;
 import static java.util.UUID.randomUUID;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.openlmis.stockmanagement.testutils.ValidSourceDestinationDtoDataBuilder.createValidSourceDestinationDto;
 
+import com.google.common.collect.ImmutableSet;
 import java.util.Collections;
-import java.util.List;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Rule;
@@ -32,42 +32,30 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
-import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.stockmanagement.dto.StockEventDto;
-import org.openlmis.stockmanagement.dto.ValidSourceDestinationDto;
 import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.exception.ValidationMessageException;
 import org.openlmis.stockmanagement.i18n.MessageKeys;
-import org.openlmis.stockmanagement.service.ValidDestinationService;
-import org.openlmis.stockmanagement.service.ValidSourceService;
 import org.openlmis.stockmanagement.testutils.StockEventDtoDataBuilder;
-import org.openlmis.stockmanagement.web.Pagination;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SourceDestinationGeoLevelAffinityValidatorTest extends BaseValidatorTest {
 
-  private static final String ORGANIZATION_NODE_NAME = "ORGANIZATION_NODE_NAME";
-  private static final String FACILITY_NODE_NAME = "FACILITY_NODE_NAME";
   private static final String CONTEXT_FACILITY_NAME = "CONTEXT_FACILITY";
 
-  @Mock
-  private ValidDestinationService validDestinationService;
-
-  @Mock
-  private ValidSourceService validSourceService;
-
   @InjectMocks
   private SourceDestinationGeoLevelAffinityValidator sourceDestinationGeoLeveLAffinityValidator;
 
   @Rule
   public ExpectedException expectedEx = ExpectedException.none();
 
+  private FacilityDto facility = FacilityDto.builder().name(CONTEXT_FACILITY_NAME).build();
+
   @Before
   public void setUp() throws Exception {
     super.setUp();
+    lenient().when(facilityService.findOne(any(UUID.class))).thenReturn(facility);
   }
 
   @Test
@@ -75,15 +63,10 @@ public class SourceDestinationGeoLevelAffinityValidatorTest extends BaseValidato
     UUID sourceId = UUID.randomUUID();
     StockEventDto stockEventDto = StockEventDtoDataBuilder
         .createWithSourceAndDestination(sourceId, null);
+    setContext(stockEventDto);
 
-    List<ValidSourceDestinationDto> validDestinationAssignments = asList(
-        createValidSourceDestinationDto(sourceId, FACILITY_NODE_NAME),
-        createValidSourceDestinationDto(randomUUID(), ORGANIZATION_NODE_NAME));
-
-    when(
-        validSourceService.findSources(Collections.singletonList(stockEventDto.getProgramId()),
-        stockEventDto.getFacilityId(), null, Pageable.unpaged()))
-        .thenReturn(Pagination.getPage(validDestinationAssignments));
+    when(validSourceService.findValidSourceNodeIds(stockEventDto.getProgramId(), facility))
+        .thenReturn(ImmutableSet.of(sourceId, randomUUID()));
 
     sourceDestinationGeoLeveLAffinityValidator.validate(stockEventDto);
   }
@@ -93,60 +76,24 @@ public class SourceDestinationGeoLevelAffinityValidatorTest extends BaseValidato
     UUID destinationId = UUID.randomUUID();
     StockEventDto stockEventDto = StockEventDtoDataBuilder
         .createWithSourceAndDestination(null, destinationId);
-
-    List<ValidSourceDestinationDto> validDestinationAssignments = asList(
-        createValidSourceDestinationDto(destinationId, FACILITY_NODE_NAME),
-        createValidSourceDestinationDto(randomUUID(), ORGANIZATION_NODE_NAME));
-
-    when(
-        validDestinationService.findDestinations(Collections.singletonList(
-            stockEventDto.getProgramId()), stockEventDto.getFacilityId(),
-            null, Pageable.unpaged()))
-        .thenReturn(Pagination.getPage(validDestinationAssignments));
-
-    sourceDestinationGeoLeveLAffinityValidator.validate(stockEventDto);
-  }
-
-  @Test
-  public void shouldRejectSourceWhenGeoAffinityNotMatch() {
-    UUID sourceId = UUID.randomUUID();
-    StockEventDto stockEventDto = StockEventDtoDataBuilder
-        .createWithSourceAndDestination(sourceId, null);
-
-    FacilityDto facility = FacilityDto.builder().name(CONTEXT_FACILITY_NAME).build();
-    when(facilityService.findOne(any(UUID.class))).thenReturn(facility);
     setContext(stockEventDto);
 
-    List<ValidSourceDestinationDto> validDestinationAssignments = asList(
-        createValidSourceDestinationDto(randomUUID(), FACILITY_NODE_NAME),
-        createValidSourceDestinationDto(randomUUID(), ORGANIZATION_NODE_NAME));
-
-    when(
-        validSourceService.findSources(Collections.singletonList(stockEventDto.getProgramId()),
-        stockEventDto.getFacilityId(), null, Pageable.unpaged()))
-        .thenReturn(Pagination.getPage(validDestinationAssignments));
-
-    expectedEx.expect(ValidationMessageException.class);
-    expectedEx.expectMessage(MessageKeys.ERROR_SOURCE_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY);
+    when(validDestinationService
+        .findValidDestinationNodeIds(stockEventDto.getProgramId(), facility))
+        .thenReturn(ImmutableSet.of(destinationId, randomUUID()));
 
     sourceDestinationGeoLeveLAffinityValidator.validate(stockEventDto);
   }
 
   @Test
-  public void shouldRejectSourceWhenValidDestinationAssignmentsIsEmpty() {
+  public void shouldRejectSourceWhenGeoAffinityNotMatch() {
     UUID sourceId = UUID.randomUUID();
     StockEventDto stockEventDto = StockEventDtoDataBuilder
         .createWithSourceAndDestination(sourceId, null);
-
-    FacilityDto facility = FacilityDto.builder().name(CONTEXT_FACILITY_NAME).build();
-
-    when(facilityService.findOne(any(UUID.class))).thenReturn(facility);
     setContext(stockEventDto);
 
-    when(
-        validSourceService.findSources(Collections.singletonList(stockEventDto.getProgramId()),
-        stockEventDto.getFacilityId(), null, Pageable.unpaged()))
-        .thenReturn(Page.empty());
+    when(validSourceService.findValidSourceNodeIds(stockEventDto.getProgramId(), facility))
+        .thenReturn(ImmutableSet.of(randomUUID(), randomUUID()));
 
     expectedEx.expect(ValidationMessageException.class);
     expectedEx.expectMessage(MessageKeys.ERROR_SOURCE_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY);
@@ -155,21 +102,14 @@ public class SourceDestinationGeoLevelAffinityValidatorTest extends BaseValidato
   }
 
   @Test
-  public void shouldRejectSourceWithMessageWhenGeoAffinityNotMatch() {
+  public void shouldRejectSourceWhenValidSourceAssignmentsIsEmpty() {
     UUID sourceId = UUID.randomUUID();
     StockEventDto stockEventDto = StockEventDtoDataBuilder
         .createWithSourceAndDestination(sourceId, null);
-    FacilityDto facility = FacilityDto.builder().name(CONTEXT_FACILITY_NAME).build();
-    when(facilityService.findOne(any(UUID.class))).thenReturn(facility);
     setContext(stockEventDto);
 
-    List<ValidSourceDestinationDto> validDestinationAssignments = asList(
-        createValidSourceDestinationDto(randomUUID(), FACILITY_NODE_NAME),
-        createValidSourceDestinationDto(randomUUID(), ORGANIZATION_NODE_NAME));
-
-    when(validSourceService.findSources(Collections.singletonList(stockEventDto.getProgramId()),
-        stockEventDto.getFacilityId(),  null, Pageable.unpaged()))
-        .thenReturn(Pagination.getPage(validDestinationAssignments));
+    when(validSourceService.findValidSourceNodeIds(stockEventDto.getProgramId(), facility))
+        .thenReturn(Collections.emptySet());
 
     expectedEx.expect(ValidationMessageException.class);
     expectedEx.expectMessage(MessageKeys.ERROR_SOURCE_ASSIGNMENT_NO_MATCH_GEO_LEVEL_AFFINITY);
@@ -182,19 +122,11 @@ public class SourceDestinationGeoLevelAffinityValidatorTest extends BaseValidato
     UUID destinationId = UUID.randomUUID();
     StockEventDto stockEventDto = StockEventDtoDataBuilder
         .createWithSourceAndDestination(null, destinationId);
-
-    FacilityDto facility = FacilityDto.builder().name(CONTEXT_FACILITY_NAME).build();
-    when(facilityService.findOne(any(UUID.class))).thenReturn(facility);
     setContext(stockEventDto);
 
-    List<ValidSourceDestinationDto> validDestinationAssignments = asList(
-        createValidSourceDestinationDto(randomUUID(), FACILITY_NODE_NAME),
-        createValidSourceDestinationDto(randomUUID(), ORGANIZATION_NODE_NAME));
-
-    when(validDestinationService.findDestinations(
-        Collections.singletonList(stockEventDto.getProgramId()),
-          stockEventDto.getFacilityId(), null, Pageable.unpaged()))
-            .thenReturn(Pagination.getPage(validDestinationAssignments));
+    when(validDestinationService
+        .findValidDestinationNodeIds(stockEventDto.getProgramId(), facility))
+        .thenReturn(ImmutableSet.of(randomUUID(), randomUUID()));
 
     expectedEx.expect(ValidationMessageException.class);
     expectedEx.expectMessage(
@@ -207,14 +139,24 @@ public class SourceDestinationGeoLevelAffinityValidatorTest extends BaseValidato
   public void shouldSkipValidationIfPhysicalInventory() {
     StockEventDto stockEventDto = StockEventDtoDataBuilder
         .createNoSourceDestinationStockEventDto();
-
     stockEventDto.getLineItems().forEach(lineItem -> lineItem.setReasonId(null));
 
     sourceDestinationGeoLeveLAffinityValidator.validate(stockEventDto);
 
-    verify(validDestinationService, times(0))
-            .findDestinations(any(), any(), any(), any());
-    verify(validSourceService, times(0))
-            .findSources(any(), any(), any(), any());
+    verify(validDestinationService, never()).findValidDestinationNodeIds(any(), any());
+    verify(validSourceService, never()).findValidSourceNodeIds(any(), any());
+  }
+
+  @Test
+  public void shouldSkipValidationIfFacilityIsNotFound() {
+    UUID sourceId = UUID.randomUUID();
+    StockEventDto stockEventDto = StockEventDtoDataBuilder
+        .createWithSourceAndDestination(sourceId, null);
+    when(facilityService.findOne(eq(stockEventDto.getFacilityId()))).thenReturn(null);
+    setContext(stockEventDto);
+
+    sourceDestinationGeoLeveLAffinityValidator.validate(stockEventDto);
+
+    verify(validSourceService, never()).findValidSourceNodeIds(any(), any());
   }
 }
@@ -0,0 +1,110 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.stockmanagement.web;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.stockmanagement.repository.custom.StockCardVersion;
+import org.openlmis.stockmanagement.service.StockVersionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StockETagsTest {
+
+  private static final String RESOURCE = "stockCardSummaries";
+
+  private final UUID facilityId = UUID.randomUUID();
+  private final UUID programId = UUID.randomUUID();
+  private final UUID orderableId1 = UUID.randomUUID();
+  private final UUID orderableId2 = UUID.randomUUID();
+
+  @Mock
+  private StockVersionService stockVersionService;
+
+  @InjectMocks
+  private StockETags stockETags;
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(stockETags, "maxAgeSeconds", 3600L);
+  }
+
+  @Test
+  public void shouldChangeStockCardTagWithVersion() {
+    UUID stockCardId = UUID.randomUUID();
+
+    String etag = stockETags.ofStockCard(
+        new StockCardVersion(stockCardId, facilityId, programId, 1L));
+
+    assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+    assertEquals(etag, stockETags.ofStockCard(
+        new StockCardVersion(stockCardId, facilityId, programId, 1L)));
+    assertNotEquals(etag, stockETags.ofStockCard(
+        new StockCardVersion(stockCardId, facilityId, programId, 2L)));
+  }
+
+  @Test
+  public void shouldChangeFacilityTagWithVersions() {
+    when(stockVersionService.getVersions(facilityId, singleton(programId)))
+        .thenReturn(singletonMap(programId, 1L))
+        .thenReturn(singletonMap(programId, 2L));
+
+    assertNotEquals(
+        stockETags.ofFacility(RESOURCE, facilityId, singleton(programId)),
+        stockETags.ofFacility(RESOURCE, facilityId, singleton(programId)));
+  }
+
+  @Test
+  public void shouldNotDependOnOrderOfIds() {
+    when(stockVersionService.getVersions(facilityId, singleton(programId)))
+        .thenReturn(singletonMap(programId, 1L));
+
+    assertEquals(
+        stockETags.ofFacility(RESOURCE, facilityId, singleton(programId),
+            asList(orderableId1, orderableId2)),
+        stockETags.ofFacility(RESOURCE, facilityId, singleton(programId),
+            asList(orderableId2, orderableId1)));
+    assertNotEquals(
+        stockETags.ofFacility(RESOURCE, facilityId, singleton(programId), "code"),
+        stockETags.ofFacility(RESOURCE, facilityId, singleton(programId), "name"));
+  }
+
+  @Test
+  public void shouldTellConditionalRequests() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    assertFalse(StockETags.isConditional(new ServletWebRequest(request)));
+
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"tag\"");
+    assertTrue(StockETags.isConditional(new ServletWebRequest(request)));
+  }
+}
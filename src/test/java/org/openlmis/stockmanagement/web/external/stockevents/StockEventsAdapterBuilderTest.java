@@ -15,14 +15,22 @@
 
 package org.openlmis.stockmanagement.web.external.stockevents;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.Optional.of;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -36,7 +44,7 @@ import org.openlmis.stockmanagement.dto.referencedata.FacilityDto;
 import org.openlmis.stockmanagement.dto.referencedata.LotDto;
 import org.openlmis.stockmanagement.dto.referencedata.OrderableDto;
 import org.openlmis.stockmanagement.dto.referencedata.ProgramDto;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.service.referencedata.FacilityReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.LotReferenceDataService;
 import org.openlmis.stockmanagement.service.referencedata.OrderableReferenceDataService;
@@ -53,7 +61,7 @@ public class StockEventsAdapterBuilderTest {
   @Mock
   private LotReferenceDataService lotReferenceDataService;
   @Mock
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   @Test
   public void shouldCreateStockEventDto() {
@@ -72,7 +80,7 @@ public class StockEventsAdapterBuilderTest {
         .thenReturn(singletonList(testLot));
     when(orderableReferenceDataService.findByExactCodes(singleton(testOrderable.getProductCode())))
         .thenReturn(singletonList(testOrderable));
-    when(reasonRepository.findByNameIn(singleton(testReason.getName())))
+    when(reasonCatalog.findByNameIn(singleton(testReason.getName())))
         .thenReturn(singletonList(testReason));
 
     final StockEventLineItemExternalDto testItemDto = new StockEventLineItemExternalDto();
@@ -91,7 +99,7 @@ public class StockEventsAdapterBuilderTest {
 
     final StockEventsAdapterBuilder stockEventsAdapterBuilder =
         new StockEventsAdapterBuilder(facilityReferenceDataService, programReferenceDataService,
-            orderableReferenceDataService, lotReferenceDataService, reasonRepository);
+            orderableReferenceDataService, lotReferenceDataService, reasonCatalog);
 
     final StockEventDto result = stockEventsAdapterBuilder.build(testDto);
 
@@ -109,4 +117,74 @@ public class StockEventsAdapterBuilderTest {
     assertEquals(testItemDto.getQuantity(), resultItemDto.getQuantity());
     assertEquals(testItemDto.getOccurredDate(), resultItemDto.getOccurredDate());
   }
+
+  @Test
+  public void shouldResolveCodesOnceForWholeBatch() {
+    final FacilityDto testFacility = FacilityDto.builder().id(UUID.randomUUID())
+        .code("TestFacility1").build();
+    final ProgramDto testProgram = ProgramDto.builder().id(UUID.randomUUID())
+        .code("TestProgram1").build();
+    final OrderableDto firstOrderable = OrderableDto.builder().id(UUID.randomUUID())
+        .productCode("FirstOrderable").build();
+    final OrderableDto secondOrderable = OrderableDto.builder().id(UUID.randomUUID())
+        .productCode("SecondOrderable").build();
+    final StockCardLineItemReason testReason = StockCardLineItemReason.builder().name("TestReason")
+        .reasonCategory(ReasonCategory.ADJUSTMENT).reasonType(ReasonType.BALANCE_ADJUSTMENT)
+        .build();
+    testReason.setId(UUID.randomUUID());
+
+    when(facilityReferenceDataService.findByCode(testFacility.getCode()))
+        .thenReturn(of(testFacility));
+    when(programReferenceDataService.findByCode(testProgram.getCode())).thenReturn(of(testProgram));
+    when(orderableReferenceDataService.findByExactCodes(new HashSet<>(asList(
+        firstOrderable.getProductCode(), secondOrderable.getProductCode()))))
+        .thenReturn(asList(firstOrderable, secondOrderable));
+    when(reasonCatalog.findByNameIn(singleton(testReason.getName())))
+        .thenReturn(singletonList(testReason));
+
+    final StockEventExternalDto firstEvent = createExternalEvent(testFacility, testProgram,
+        asList(firstOrderable, secondOrderable), testReason);
+    final StockEventExternalDto secondEvent = createExternalEvent(testFacility, testProgram,
+        singletonList(secondOrderable), testReason);
+
+    final StockEventsAdapterBuilder stockEventsAdapterBuilder =
+        new StockEventsAdapterBuilder(facilityReferenceDataService, programReferenceDataService,
+            orderableReferenceDataService, lotReferenceDataService, reasonCatalog);
+
+    final List<StockEventDto> result =
+        stockEventsAdapterBuilder.build(asList(firstEvent, secondEvent));
+
+    assertEquals(2, result.size());
+    assertEquals(testFacility.getId(), result.get(1).getFacilityId());
+    assertEquals(testProgram.getId(), result.get(1).getProgramId());
+    assertEquals(2, result.get(0).getLineItems().size());
+    assertEquals(firstOrderable.getId(), result.get(0).getLineItems().get(0).getOrderableId());
+    assertEquals(secondOrderable.getId(), result.get(0).getLineItems().get(1).getOrderableId());
+    assertEquals(1, result.get(1).getLineItems().size());
+    assertEquals(secondOrderable.getId(), result.get(1).getLineItems().get(0).getOrderableId());
+    assertEquals(testReason.getId(), result.get(1).getLineItems().get(0).getReasonId());
+
+    verify(facilityReferenceDataService, times(1)).findByCode(any());
+    verify(programReferenceDataService, times(1)).findByCode(any());
+    verify(orderableReferenceDataService, times(1)).findByExactCodes(any());
+    verify(reasonCatalog, times(1)).findByNameIn(any());
+  }
+
+  private StockEventExternalDto createExternalEvent(FacilityDto facility, ProgramDto program,
+      List<OrderableDto> orderables, StockCardLineItemReason reason) {
+    final StockEventExternalDto event = new StockEventExternalDto();
+    event.setFacility(facility.getCode());
+    event.setProgram(program.getCode());
+    event.setItems(orderables.stream()
+        .map(orderable -> {
+          StockEventLineItemExternalDto item = new StockEventLineItemExternalDto();
+          item.setOrderable(orderable.getProductCode());
+          item.setReason(reason.getName());
+          item.setOccurredDate(LocalDate.of(2025, 1, 1));
+          item.setQuantity(5);
+          return item;
+        })
+        .collect(Collectors.toList()));
+    return event;
+  }
 }
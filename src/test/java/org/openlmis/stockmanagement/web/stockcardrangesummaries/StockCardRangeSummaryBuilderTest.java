@@ -33,7 +33,7 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.openlmis.stockmanagement.repository.StockCardLineItemReasonRepository;
+import org.openlmis.stockmanagement.service.ReasonCatalog;
 import org.openlmis.stockmanagement.service.StockCardAggregate;
 import org.openlmis.stockmanagement.testutils.ObjectReferenceDtoDataBuilder;
 import org.openlmis.stockmanagement.testutils.StockCardRangeSummaryDtoDataBuilder;
@@ -50,7 +50,7 @@ public class StockCardRangeSummaryBuilderTest {
   private static final String ORDERABLES = "orderables";
 
   @Mock
-  private StockCardLineItemReasonRepository reasonRepository;
+  private ReasonCatalog reasonCatalog;
 
   @InjectMocks
   private StockCardRangeSummaryBuilder builder;
@@ -89,7 +89,7 @@ public class StockCardRangeSummaryBuilderTest {
 
     pageable = PageRequest.of(0, 10);
 
-    when(reasonRepository.existsByTag(any())).thenReturn(true);
+    when(reasonCatalog.existsByTag(any())).thenReturn(true);
   }
 
   @Test
@@ -191,7 +191,7 @@ public class StockCardRangeSummaryBuilderTest {
   public void shouldNotIncludeNotExistingTag() {
     final UUID orderableId3 = randomUUID();
 
-    when(reasonRepository.existsByTag(tag2)).thenReturn(false);
+    when(reasonCatalog.existsByTag(tag2)).thenReturn(false);
 
     groupedStockCards = ImmutableMap.of(
         orderableId1, aggregate1,